@@ -3,6 +3,7 @@ plugins {
     id("signing")
     id("maven-publish")
     id("io.freefair.lombok") version "8.12.2.1"
+    id("me.champeau.jmh") version "0.7.2"
     id("io.github.gradle-nexus.publish-plugin") version "2.0.0"
 }
 
@@ -18,10 +19,43 @@ dependencies {
     testRuntimeOnly("org.junit.platform:junit-platform-launcher")
 }
 
+// Classes in this source set replace their Java 8 counterparts when running on Java 21+.
+val java21: SourceSet by sourceSets.creating {
+    java.srcDir("src/main/java21")
+}
+
 tasks {
     test {
         useJUnitPlatform()
+        // Keeps the heap small enough for tests to check huge Content-Length headers aren't allocated up front.
+        maxHeapSize = "512m"
+    }
+
+    named<JavaCompile>(java21.compileJavaTaskName) {
+        javaCompiler.set(project.javaToolchains.compilerFor {
+            languageVersion.set(JavaLanguageVersion.of(21))
+        })
+        options.release.set(21)
+    }
+
+    jar {
+        into("META-INF/versions/21") {
+            from(java21.output)
+        }
+        manifest {
+            attributes("Multi-Release" to "true")
+        }
+    }
+}
+
+// Benchmarks live in src/jmh/java, and are run with `./gradlew jmh`.
+// Use -PjmhIncludes=<regex> to only run some of them.
+jmh {
+    jmhVersion.set("1.37")
+    if (project.hasProperty("jmhIncludes")) {
+        includes.set(listOf(project.property("jmhIncludes").toString()))
     }
+    resultFormat.set("JSON")
 }
 
 java {
@@ -0,0 +1,73 @@
+package net.insprill.fetch4j;
+
+import net.insprill.fetch4j.util.URLUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static net.insprill.fetch4j.Params.params;
+
+/**
+ * Benchmarks building the parameters of a request.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ParamsBenchmark {
+
+    private static final String URL = "https://example.com/api/v1/items";
+
+    private Params noQueries;
+    private Params queries;
+    private RequestTemplate template;
+
+    @Setup
+    public void setUp() {
+        noQueries = params();
+        queries = params()
+                .query("page", 3)
+                .query("limit", 100)
+                .query("sort", "created_at")
+                .query("filter", "name contains \"fetch 4j\"")
+                .query("fields", "id,name,description");
+        template = FetchClient.getDefault().compile(URL + "/{id}", queries);
+    }
+
+    @Benchmark
+    public Params construct() {
+        return params()
+                .method(Params.Method.POST)
+                .contentType(Params.ContentType.JSON)
+                .header("Authorization", "Bearer 0123456789abcdef")
+                .query("page", 3)
+                .body("{\"name\":\"fetch4j\"}");
+    }
+
+    @Benchmark
+    public String addQueryParams_None() {
+        return URLUtils.addQueryParams(URL, noQueries);
+    }
+
+    @Benchmark
+    public String addQueryParams_Five() {
+        return URLUtils.addQueryParams(URL, queries);
+    }
+
+    @Benchmark
+    public String template_Expand() {
+        return template.expand(12345);
+    }
+
+}
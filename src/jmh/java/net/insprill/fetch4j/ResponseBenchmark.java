@@ -0,0 +1,172 @@
+package net.insprill.fetch4j;
+
+import net.insprill.fetch4j.transport.Exchange;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks reading response bodies and headers, without any network I/O.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ResponseBenchmark {
+
+    private static final Map<String, List<String>> HEADERS;
+
+    static {
+        Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        headers.put("Content-Type", Collections.singletonList("text/plain; charset=utf-8"));
+        headers.put("Date", Collections.singletonList("Sat, 17 Oct 2026 12:00:00 GMT"));
+        headers.put("Server", Collections.singletonList("benchmark"));
+        HEADERS = Collections.unmodifiableMap(headers);
+    }
+
+    @Param({"128", "65536", "4194304"})
+    public int bodySize;
+
+    private byte[] body;
+    private BufferPool bufferPool;
+    private Response response;
+
+    @Setup
+    public void setUp() {
+        body = new byte[bodySize];
+        Arrays.fill(body, (byte) 'a');
+        bufferPool = BufferPool.builder().maxBufferSize(4 * 1024 * 1024).build();
+        response = new Response(new BytesExchange(body), false);
+    }
+
+    @Benchmark
+    public byte[] buffered() {
+        return new Response(new BytesExchange(body), false).getBodyBytes();
+    }
+
+    @Benchmark
+    public byte[] buffered_UnknownLength() {
+        return new Response(new BytesExchange(body, false), false).getBodyBytes();
+    }
+
+    @Benchmark
+    public String buffered_Pooled() throws IOException {
+        try (Response response = new Response(new BytesExchange(body), false, bufferPool)) {
+            return response.getBody();
+        }
+    }
+
+    @Benchmark
+    public ByteBuffer buffered_View() {
+        return new Response(new BytesExchange(body), false).asByteBuffer();
+    }
+
+    @Benchmark
+    public String buffered_String() {
+        return new Response(new BytesExchange(body), false).getBody();
+    }
+
+    @Benchmark
+    public void streamed(Blackhole blackhole) throws IOException {
+        try (Response response = new Response(new BytesExchange(body), true);
+             InputStream in = response.getBodyStream()) {
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                blackhole.consume(n);
+            }
+        }
+    }
+
+    @Benchmark
+    public void headers(Blackhole blackhole) {
+        blackhole.consume(response.getContentType());
+        blackhole.consume(response.getContentEncoding());
+        blackhole.consume(response.getContentLength());
+        blackhole.consume(response.getHeader("server"));
+        blackhole.consume(response.getHeader("X-Missing"));
+    }
+
+    /**
+     * An exchange serving a body from memory.
+     */
+    private static final class BytesExchange implements Exchange {
+
+        private final byte[] body;
+        private final Map<String, List<String>> headers;
+
+        BytesExchange(byte[] body) {
+            this(body, true);
+        }
+
+        BytesExchange(byte[] body, boolean contentLength) {
+            this.body = body;
+            if (contentLength) {
+                Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+                headers.putAll(HEADERS);
+                headers.put("Content-Length", Collections.singletonList(String.valueOf(body.length)));
+                this.headers = Collections.unmodifiableMap(headers);
+            } else {
+                this.headers = HEADERS;
+            }
+        }
+
+        @Override
+        public int getStatus() {
+            return 200;
+        }
+
+        @Override
+        public String getStatusText() {
+            return "OK";
+        }
+
+        @Override
+        public String getHeader(String name) {
+            List<String> values = headers.get(name);
+            return values == null ? null : values.get(0);
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public InputStream getBody() {
+            return new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+    }
+
+}
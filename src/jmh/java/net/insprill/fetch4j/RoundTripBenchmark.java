@@ -0,0 +1,118 @@
+package net.insprill.fetch4j;
+
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static net.insprill.fetch4j.Params.params;
+
+/**
+ * Benchmarks full request/response round-trips against an embedded HTTP server on the loopback interface.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RoundTripBenchmark {
+
+    @Param({"128", "1048576"})
+    public int bodySize;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private FetchClient client;
+    private String url;
+    private byte[] requestBody;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        byte[] responseBody = new byte[bodySize];
+        Arrays.fill(responseBody, (byte) 'a');
+        requestBody = responseBody;
+
+        // Otherwise small responses are held back by Nagle's algorithm, measuring delayed ACKs instead of the client.
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        serverExecutor = Executors.newFixedThreadPool(64);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        server.setExecutor(serverExecutor);
+        server.createContext("/", exchange -> {
+            try (InputStream in = exchange.getRequestBody()) {
+                byte[] buf = new byte[8192];
+                while (in.read(buf) != -1) ;
+            }
+            exchange.sendResponseHeaders(200, responseBody.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(responseBody);
+            }
+        });
+        server.start();
+        url = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/";
+        client = FetchClient.builder().build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        client.close();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public byte[] get_1Thread() {
+        return client.fetch(url).getBodyBytes();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public byte[] get_8Threads() {
+        return client.fetch(url).getBodyBytes();
+    }
+
+    @Benchmark
+    @Threads(32)
+    public byte[] get_32Threads() {
+        return client.fetch(url).getBodyBytes();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int post_1Thread() {
+        return client.fetch(url, params()
+                .method(Params.Method.POST)
+                .body(requestBody)).getStatus();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public int post_8Threads() {
+        return client.fetch(url, params()
+                .method(Params.Method.POST)
+                .body(requestBody)).getStatus();
+    }
+
+}
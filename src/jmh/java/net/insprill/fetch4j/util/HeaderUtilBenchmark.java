@@ -0,0 +1,35 @@
+package net.insprill.fetch4j.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks parsing the charset out of {@code Content-Type} headers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class HeaderUtilBenchmark {
+
+    @Param({"application/json", "text/html; charset=utf-8", "multipart/form-data; boundary=something; charset=ISO-8859-1"})
+    public String contentType;
+
+    @Benchmark
+    public String getContentCharset() {
+        return HeaderUtil.getContentCharset(contentType);
+    }
+
+}
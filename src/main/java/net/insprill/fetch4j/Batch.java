@@ -0,0 +1,157 @@
+package net.insprill.fetch4j;
+
+import net.insprill.fetch4j.exception.FetchException;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * Runs a batch of fetch operations on a client's executor, keeping at most a set number in flight overall and per host.
+ * Hosts with requests waiting take turns, and each host's requests are started in the order they were given.
+ */
+final class Batch {
+
+    private final FetchClient client;
+    private final Executor executor;
+    private final int maxConcurrency;
+    private final int maxConcurrencyPerHost;
+    private final Consumer<BatchResult> sink;
+    private final Map<String, HostQueue> hosts = new HashMap<>();
+    /**
+     * Hosts with requests waiting and room for more in flight, in the order they'll be started.
+     */
+    private final ArrayDeque<HostQueue> ready = new ArrayDeque<>();
+    private int running;
+
+    /**
+     * @param client  The client to fetch with.
+     * @param options The batch options.
+     * @param sink    Called with each result as its request completes, on the thread that performed it.
+     */
+    Batch(FetchClient client, BatchOptions options, Consumer<BatchResult> sink) {
+        this.client = client;
+        this.executor = client.getExecutor();
+        this.maxConcurrency = options.getMaxConcurrency();
+        this.maxConcurrencyPerHost = options.getMaxConcurrencyPerHost();
+        this.sink = sink;
+    }
+
+    /**
+     * Queues the requests and starts as many as allowed.
+     *
+     * @param requests The requests, indexed by their position.
+     */
+    void start(List<Request> requests) {
+        synchronized (this) {
+            for (int i = 0; i < requests.size(); i++) {
+                Request request = requests.get(i);
+                HostQueue host = hosts.computeIfAbsent(hostKey(request.getUrl()), k -> new HostQueue());
+                host.pending.add(new Item(i, request, host));
+                if (!host.ready) {
+                    host.ready = true;
+                    ready.add(host);
+                }
+            }
+        }
+        dispatch();
+    }
+
+    private void dispatch() {
+        while (true) {
+            List<Item> toStart = new ArrayList<>();
+            synchronized (this) {
+                while (running < maxConcurrency && !ready.isEmpty()) {
+                    HostQueue host = ready.poll();
+                    toStart.add(host.pending.poll());
+                    host.running++;
+                    running++;
+                    host.ready = !host.pending.isEmpty() && host.running < maxConcurrencyPerHost;
+                    if (host.ready) {
+                        ready.add(host);
+                    }
+                }
+            }
+            boolean rejected = false;
+            for (Item item : toStart) {
+                try {
+                    executor.execute(() -> run(item));
+                } catch (RejectedExecutionException e) {
+                    // Loop instead of dispatching from here, so a shut down executor can't overflow the stack.
+                    release(item);
+                    sink.accept(new BatchResult(item.index, item.request, null, e));
+                    rejected = true;
+                }
+            }
+            if (!rejected)
+                return;
+        }
+    }
+
+    private void run(Item item) {
+        BatchResult result = null;
+        try {
+            Response response = client.fetch(item.request.getUrl(), item.request.getParams());
+            result = new BatchResult(item.index, item.request, response, null);
+        } catch (RuntimeException e) {
+            result = new BatchResult(item.index, item.request, null, e);
+        } catch (Throwable e) {
+            // Reading the body can sneakily throw an IOException, which must still complete the request's result.
+            result = new BatchResult(item.index, item.request, null, new FetchException(e));
+        } finally {
+            release(item);
+            try {
+                sink.accept(result);
+            } finally {
+                dispatch();
+            }
+        }
+    }
+
+    private synchronized void release(Item item) {
+        HostQueue host = item.host;
+        host.running--;
+        running--;
+        if (!host.ready && !host.pending.isEmpty()) {
+            host.ready = true;
+            ready.add(host);
+        }
+    }
+
+    private static String hostKey(String url) {
+        try {
+            URL parsed = new URL(url);
+            return parsed.getProtocol().toLowerCase(Locale.ROOT) + "://" + parsed.getHost().toLowerCase(Locale.ROOT) + ":" + parsed.getPort();
+        } catch (MalformedURLException e) {
+            // Fails as soon as it's fetched, so doesn't matter which host it's counted against.
+            return "";
+        }
+    }
+
+    private static final class HostQueue {
+        private final ArrayDeque<Item> pending = new ArrayDeque<>();
+        private int running;
+        private boolean ready;
+    }
+
+    private static final class Item {
+        private final int index;
+        private final Request request;
+        private final HostQueue host;
+
+        Item(int index, Request request, HostQueue host) {
+            this.index = index;
+            this.request = request;
+            this.host = host;
+        }
+    }
+
+}
@@ -0,0 +1,55 @@
+package net.insprill.fetch4j;
+
+import lombok.Getter;
+
+/**
+ * Builder used to set options for batches of fetch operations.
+ *
+ * @see FetchClient#fetchAll(java.util.Collection, BatchOptions)
+ */
+@Getter
+public class BatchOptions {
+
+    /**
+     * @return Convenience method for constructing a new options builder.
+     */
+    public static BatchOptions batchOptions() {
+        return new BatchOptions();
+    }
+
+    private int maxConcurrency = 64;
+    private int maxConcurrencyPerHost = 8;
+
+    /**
+     * Sets the maximum number of requests in flight at once across all hosts.
+     * Requests also wait for free threads in the client's executor. Defaults to 64.
+     *
+     * @param maxConcurrency Maximum requests in flight.
+     * @return The options builder.
+     * @throws IllegalArgumentException If {@code maxConcurrency} is less than 1.
+     */
+    public BatchOptions maxConcurrency(int maxConcurrency) {
+        if (maxConcurrency < 1)
+            throw new IllegalArgumentException("maxConcurrency must be at least 1");
+        this.maxConcurrency = maxConcurrency;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of requests in flight at once to a single host.
+     * Hosts with requests waiting take turns, so one slow host doesn't hold up the others.
+     * Values above the client's {@link FetchClient.Builder#maxConnectionsPerHost(int)} only make requests
+     * wait on the connection pool instead. Defaults to 8.
+     *
+     * @param maxConcurrencyPerHost Maximum requests in flight per host.
+     * @return The options builder.
+     * @throws IllegalArgumentException If {@code maxConcurrencyPerHost} is less than 1.
+     */
+    public BatchOptions maxConcurrencyPerHost(int maxConcurrencyPerHost) {
+        if (maxConcurrencyPerHost < 1)
+            throw new IllegalArgumentException("maxConcurrencyPerHost must be at least 1");
+        this.maxConcurrencyPerHost = maxConcurrencyPerHost;
+        return this;
+    }
+
+}
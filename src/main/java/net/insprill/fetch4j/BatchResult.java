@@ -0,0 +1,55 @@
+package net.insprill.fetch4j;
+
+import lombok.Getter;
+
+/**
+ * The outcome of a single request in a batch, holding either its response or the exception it failed with.
+ *
+ * @see FetchClient#fetchAll(java.util.Collection, BatchOptions)
+ */
+@Getter
+public final class BatchResult {
+
+    /**
+     * The position of the request in the batch.
+     */
+    private final int index;
+    /**
+     * The request.
+     */
+    private final Request request;
+    /**
+     * The response, or {@code null} if the request failed.
+     */
+    private final Response response;
+    /**
+     * The exception the request failed with, or {@code null} if it succeeded.
+     */
+    private final RuntimeException error;
+
+    BatchResult(int index, Request request, Response response, RuntimeException error) {
+        this.index = index;
+        this.request = request;
+        this.response = response;
+        this.error = error;
+    }
+
+    /**
+     * Checks if a response was received. The response itself may still have an error status.
+     *
+     * @return True if a response was received, false if the request failed.
+     */
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchResult={" +
+                "index=" + index +
+                ", request=" + request +
+                (error == null ? ", status=" + response.getStatus() : ", error=" + error) +
+                "}";
+    }
+
+}
@@ -0,0 +1,142 @@
+package net.insprill.fetch4j;
+
+import lombok.NonNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Processes a response body incrementally, as it's read from the connection, instead of buffering it into memory.
+ * Handlers run on the thread performing the fetch operation, and the body is only read as fast as they consume it,
+ * so a slow handler applies backpressure to the server through TCP flow control rather than growing a buffer.
+ * <pre>
+ * long records = Fetch.fetch("https://example.com/events.ndjson", params(), BodyHandler.ofLines(line -> ...));
+ * </pre>
+ * The body is handled regardless of the response status, so handlers that care should check {@link Response#ok()} first.
+ *
+ * @param <T> The type of the result.
+ * @see FetchClient#fetch(String, Params, BodyHandler)
+ * @see Fetch#fetch(String, Params, BodyHandler)
+ */
+@FunctionalInterface
+public interface BodyHandler<T> {
+
+    /**
+     * Handles the body of a streamed response. The response is closed once the handler returns.
+     *
+     * @param response The response, whose body is read with {@link Response#getBodyStream()}.
+     * @return The result of the fetch operation.
+     * @throws IOException If an I/O error occurs while reading the body.
+     */
+    T handle(Response response) throws IOException;
+
+    /**
+     * Passes each line of the body to a consumer as soon as it has been received, decoded with the response's charset.
+     * Lines may be terminated by {@code \n} or {@code \r\n}, which aren't included.
+     *
+     * @param consumer Consumes each line.
+     * @return A handler resulting in the number of lines consumed.
+     */
+    static BodyHandler<Long> ofLines(@NonNull Consumer<String> consumer) {
+        return response -> {
+            long lines = 0;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(response.getBodyStream(), response.getCharset()))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    consumer.accept(line);
+                    lines++;
+                }
+            }
+            return lines;
+        };
+    }
+
+    /**
+     * Parses each record of a newline-delimited JSON (NDJSON) body as soon as it has been received,
+     * passing it to a consumer. Blank lines are skipped.
+     *
+     * @param parser   Parses a single JSON record, using the JSON library of your choice.
+     * @param consumer Consumes each parsed record.
+     * @param <R>      The type of the parsed records.
+     * @return A handler resulting in the number of records consumed.
+     */
+    static <R> BodyHandler<Long> ofNdjson(@NonNull Function<String, ? extends R> parser, @NonNull Consumer<? super R> consumer) {
+        return response -> {
+            long records = 0;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(response.getBodyStream(), response.getCharset()))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.trim().isEmpty()) {
+                        consumer.accept(parser.apply(line));
+                        records++;
+                    }
+                }
+            }
+            return records;
+        };
+    }
+
+    /**
+     * Passes the body to a consumer in chunks of a fixed size, with only the last one possibly being smaller.
+     * The same buffer is reused for every chunk, so it's only valid until the consumer returns.
+     *
+     * @param chunkSize The size of each chunk in bytes.
+     * @param consumer  Consumes a read-only view of each chunk.
+     * @return A handler resulting in the number of bytes consumed.
+     * @throws IllegalArgumentException If {@code chunkSize} is less than 1.
+     */
+    static BodyHandler<Long> ofChunks(int chunkSize, @NonNull Consumer<ByteBuffer> consumer) {
+        if (chunkSize < 1)
+            throw new IllegalArgumentException("chunkSize must be at least 1");
+        return response -> {
+            byte[] chunk = new byte[chunkSize];
+            ByteBuffer view = ByteBuffer.wrap(chunk).asReadOnlyBuffer();
+            long total = 0;
+            try (InputStream body = response.getBodyStream()) {
+                while (true) {
+                    int length = 0;
+                    int n = 0;
+                    while (length < chunkSize && (n = body.read(chunk, length, chunkSize - length)) != -1) {
+                        length += n;
+                    }
+                    if (length > 0) {
+                        view.clear().limit(length);
+                        consumer.accept(view);
+                        total += length;
+                    }
+                    if (n == -1)
+                        return total;
+                }
+            }
+        };
+    }
+
+    /**
+     * Writes the body to an output stream as it's received. The stream is flushed, but not closed, once the body ends.
+     *
+     * @param sink The stream to write the body to.
+     * @return A handler resulting in the number of bytes written.
+     */
+    static BodyHandler<Long> ofSink(@NonNull OutputStream sink) {
+        return response -> {
+            byte[] buffer = new byte[8192];
+            long total = 0;
+            try (InputStream body = response.getBodyStream()) {
+                int n;
+                while ((n = body.read(buffer)) != -1) {
+                    sink.write(buffer, 0, n);
+                    total += n;
+                }
+            }
+            sink.flush();
+            return total;
+        };
+    }
+
+}
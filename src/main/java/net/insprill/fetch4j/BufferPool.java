@@ -0,0 +1,197 @@
+package net.insprill.fetch4j;
+
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of buffers response bodies are read into, so they can be reused instead of allocated for every response.
+ * Buffers are pooled in power of two sizes, and returned to the pool when the {@link Response} holding them is closed.
+ * Responses which aren't closed simply leave their buffer to be garbage collected.
+ * <p>
+ * Pools are thread-safe, and may be shared between clients.
+ *
+ * @see FetchClient.Builder#bufferPool(BufferPool)
+ */
+public final class BufferPool {
+
+    private static final int MIN_BUFFER_SHIFT = 12;
+
+    @Getter
+    private final boolean direct;
+    /**
+     * The largest buffer kept in the pool. Larger bodies get their own buffer, which isn't pooled.
+     */
+    @Getter
+    private final int maxBufferSize;
+    /**
+     * The maximum total capacity of the buffers kept in the pool.
+     */
+    @Getter
+    private final long maxPooledBytes;
+    private final Deque<ByteBuffer>[] buffers;
+    private final AtomicLong pooledBytes = new AtomicLong();
+
+    private BufferPool(Builder builder) {
+        this.direct = builder.direct;
+        this.maxBufferSize = builder.maxBufferSize;
+        this.maxPooledBytes = builder.maxPooledBytes;
+        this.buffers = newDeques(sizeClass(maxBufferSize) + 1);
+    }
+
+    /**
+     * Creates the per-size-class deques. Generic arrays can't be created directly, so this is the only unchecked cast.
+     */
+    @SuppressWarnings("unchecked")
+    private static Deque<ByteBuffer>[] newDeques(int count) {
+        Deque<ByteBuffer>[] deques = (Deque<ByteBuffer>[]) new Deque<?>[count];
+        for (int i = 0; i < count; i++) {
+            deques[i] = new ConcurrentLinkedDeque<>();
+        }
+        return deques;
+    }
+
+    /**
+     * @return A new builder for configuring a pool.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Gets the total capacity of the buffers currently waiting in the pool.
+     *
+     * @return The pooled capacity in bytes.
+     */
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+    /**
+     * Takes a cleared buffer with at least the given capacity from the pool, allocating one if none are free.
+     *
+     * @param minCapacity The minimum capacity.
+     * @return The buffer.
+     */
+    ByteBuffer acquire(int minCapacity) {
+        if (minCapacity > maxBufferSize)
+            return allocate(minCapacity);
+        int sizeClass = sizeClass(minCapacity);
+        ByteBuffer buffer = buffers[sizeClass].pollFirst();
+        if (buffer == null)
+            return allocate(1 << (sizeClass + MIN_BUFFER_SHIFT));
+        pooledBytes.addAndGet(-buffer.capacity());
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool, unless it wasn't allocated by it or the pool is full.
+     * The buffer mustn't be used after being released.
+     *
+     * @param buffer The buffer.
+     */
+    void release(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        if (buffer.isDirect() != direct || capacity > maxBufferSize || Integer.bitCount(capacity) != 1 || capacity < (1 << MIN_BUFFER_SHIFT))
+            return;
+        long pooled;
+        do {
+            pooled = pooledBytes.get();
+            if (pooled + capacity > maxPooledBytes)
+                return;
+        } while (!pooledBytes.compareAndSet(pooled, pooled + capacity));
+        // Most recently used first, as it's the most likely to still be in the CPU's caches.
+        buffers[sizeClass(capacity)].offerFirst(buffer);
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * Gets the index of the smallest pooled size that fits a capacity.
+     */
+    private static int sizeClass(int capacity) {
+        if (capacity <= 1 << MIN_BUFFER_SHIFT)
+            return 0;
+        return 32 - Integer.numberOfLeadingZeros(capacity - 1) - MIN_BUFFER_SHIFT;
+    }
+
+    @Override
+    public String toString() {
+        return "BufferPool={" +
+                "direct=" + direct +
+                ", maxBufferSize=" + maxBufferSize +
+                ", pooledBytes=" + getPooledBytes() + "/" + maxPooledBytes +
+                "}";
+    }
+
+    /**
+     * Builder used to configure a {@link BufferPool}.
+     */
+    public static class Builder {
+
+        private boolean direct;
+        private int maxBufferSize = 1024 * 1024;
+        private long maxPooledBytes = 16 * 1024 * 1024;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets whether buffers are allocated outside the Java heap.
+         * Direct buffers avoid a copy when written to channels, but must be copied to be decoded as a String.
+         * Defaults to false.
+         *
+         * @param direct Whether to use direct buffers.
+         * @return The pool builder.
+         */
+        public Builder direct(boolean direct) {
+            this.direct = direct;
+            return this;
+        }
+
+        /**
+         * Sets the largest buffer kept in the pool. Bodies larger than this are read into a buffer of their own,
+         * which is left to be garbage collected. Rounded up to a power of two. Defaults to 1 MiB.
+         *
+         * @param maxBufferSize Maximum buffer size in bytes.
+         * @return The pool builder.
+         * @throws IllegalArgumentException If {@code maxBufferSize} is less than 4 KiB or more than 1 GiB.
+         */
+        public Builder maxBufferSize(int maxBufferSize) {
+            if (maxBufferSize < 1 << MIN_BUFFER_SHIFT || maxBufferSize > 1 << 30)
+                throw new IllegalArgumentException("maxBufferSize must be between 4 KiB and 1 GiB");
+            this.maxBufferSize = Integer.highestOneBit(maxBufferSize - 1) << 1;
+            return this;
+        }
+
+        /**
+         * Sets the maximum total capacity of the buffers kept in the pool. Buffers released while it's full are dropped.
+         * Defaults to 16 MiB.
+         *
+         * @param maxPooledBytes Maximum pooled bytes.
+         * @return The pool builder.
+         * @throws IllegalArgumentException If {@code maxPooledBytes} is negative.
+         */
+        public Builder maxPooledBytes(long maxPooledBytes) {
+            if (maxPooledBytes < 0)
+                throw new IllegalArgumentException("maxPooledBytes must not be negative");
+            this.maxPooledBytes = maxPooledBytes;
+            return this;
+        }
+
+        /**
+         * @return A new pool with this builder's configuration.
+         */
+        public BufferPool build() {
+            return new BufferPool(this);
+        }
+
+    }
+
+}
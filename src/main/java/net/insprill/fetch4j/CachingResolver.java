@@ -0,0 +1,309 @@
+package net.insprill.fetch4j;
+
+import lombok.NonNull;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A resolver caching the addresses of another, so hosts are only looked up once per TTL regardless of the JVM's DNS settings.
+ * Concurrent lookups of the same host share a single query, and entries close to expiring are refreshed in the background
+ * when used, so busy hosts never wait on DNS. Failed lookups aren't cached.
+ * <p>
+ * The JVM's resolver doesn't expose the TTLs of DNS records, so entries expire after a configured TTL instead.
+ * Hosts can also be pinned to fixed addresses, bypassing DNS entirely.
+ *
+ * @see FetchClient.Builder#resolver(Resolver)
+ */
+public final class CachingResolver implements Resolver {
+
+    private final Resolver delegate;
+    private final long ttlNanos;
+    private final long refreshAheadNanos;
+    private final int maxEntries;
+    private final Executor executor;
+    private final Map<String, List<InetAddress>> pinned;
+    private final Map<String, Entry> cache = new ConcurrentHashMap<>();
+
+    private CachingResolver(Builder builder) {
+        this.delegate = builder.delegate;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(builder.ttlMillis);
+        this.refreshAheadNanos = builder.refreshAhead ? ttlNanos / 10 : 0;
+        this.maxEntries = builder.maxEntries;
+        this.executor = builder.executor;
+        this.pinned = new HashMap<>(builder.pinned);
+    }
+
+    /**
+     * @return A new builder for configuring a resolver.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public List<InetAddress> resolve(String host) throws UnknownHostException {
+        String key = host.toLowerCase(Locale.ROOT);
+        List<InetAddress> addresses = pinned.get(key);
+        if (addresses != null)
+            return addresses;
+        long now = System.nanoTime();
+        Entry entry = cache.get(key);
+        if (entry != null && !entry.isExpired(now)) {
+            if (refreshAheadNanos > 0 && entry.isDone() && now - entry.expiresAt + refreshAheadNanos >= 0
+                    && entry.refreshing.compareAndSet(false, true)) {
+                executor.execute(() -> refresh(key, host, entry));
+            }
+            return entry.await();
+        }
+        Entry created = new Entry();
+        Entry current = cache.compute(key, (k, existing) -> existing == null || existing.isExpired(now) ? created : existing);
+        if (current == created) {
+            evictIfFull();
+            lookup(key, host, created);
+        }
+        return current.await();
+    }
+
+    /**
+     * Resolves hosts in the background, so requests to them don't have to wait for DNS.
+     *
+     * @param hosts The hosts to resolve.
+     * @return A future completed once all hosts have been resolved, or exceptionally if any couldn't be.
+     */
+    public CompletableFuture<Void> prefetch(String... hosts) {
+        CompletableFuture<?>[] lookups = new CompletableFuture<?>[hosts.length];
+        for (int i = 0; i < hosts.length; i++) {
+            String host = hosts[i];
+            lookups[i] = CompletableFuture.runAsync(() -> {
+                try {
+                    resolve(host);
+                } catch (UnknownHostException e) {
+                    throw new CompletionException(e);
+                }
+            }, executor);
+        }
+        return CompletableFuture.allOf(lookups);
+    }
+
+    /**
+     * Removes a host from the cache, so it's looked up again the next time it's used.
+     *
+     * @param host The host.
+     */
+    public void invalidate(String host) {
+        cache.remove(host.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Removes all hosts from the cache.
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * Gets the number of hosts in the cache, including ones still being looked up and ones that have expired.
+     *
+     * @return The number of cached hosts.
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    private void lookup(String key, String host, Entry entry) throws UnknownHostException {
+        try {
+            List<InetAddress> addresses = delegate.resolve(host);
+            if (addresses == null || addresses.isEmpty())
+                throw new UnknownHostException(host + ": no addresses");
+            entry.expiresAt = System.nanoTime() + ttlNanos;
+            entry.addresses.complete(Collections.unmodifiableList(new ArrayList<>(addresses)));
+        } catch (UnknownHostException | RuntimeException e) {
+            cache.remove(key, entry);
+            entry.addresses.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private void refresh(String key, String host, Entry stale) {
+        Entry fresh = new Entry();
+        try {
+            lookup(key, host, fresh);
+            cache.replace(key, stale, fresh);
+        } catch (UnknownHostException | RuntimeException e) {
+            // Keep using the current addresses until they expire.
+            stale.refreshing.set(false);
+        }
+    }
+
+    /**
+     * Removes expired entries once the cache is over its limit, then the ones closest to expiring if it's still full.
+     * Hosts still being looked up are never evicted, so callers waiting for them keep sharing the query.
+     */
+    private void evictIfFull() {
+        if (cache.size() <= maxEntries)
+            return;
+        long now = System.nanoTime();
+        cache.values().removeIf(entry -> entry.isExpired(now));
+        int excess = cache.size() - maxEntries * 9 / 10;
+        if (excess <= 0)
+            return;
+        List<Map.Entry<String, Entry>> entries = new ArrayList<>();
+        for (Map.Entry<String, Entry> entry : cache.entrySet()) {
+            if (entry.getValue().isDone()) {
+                entries.add(entry);
+            }
+        }
+        entries.sort((a, b) -> Long.compare(a.getValue().expiresAt - now, b.getValue().expiresAt - now));
+        for (int i = 0; i < excess && i < entries.size(); i++) {
+            cache.remove(entries.get(i).getKey(), entries.get(i).getValue());
+        }
+    }
+
+    /**
+     * A host's addresses, which may still be being looked up.
+     */
+    private static final class Entry {
+        private final CompletableFuture<List<InetAddress>> addresses = new CompletableFuture<>();
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        /**
+         * When the addresses expire, in {@link System#nanoTime()} terms. Only valid once they've been looked up.
+         */
+        private volatile long expiresAt;
+
+        boolean isDone() {
+            return addresses.isDone() && !addresses.isCompletedExceptionally();
+        }
+
+        boolean isExpired(long now) {
+            return addresses.isCompletedExceptionally() || (addresses.isDone() && now - expiresAt >= 0);
+        }
+
+        List<InetAddress> await() throws UnknownHostException {
+            try {
+                return addresses.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof UnknownHostException)
+                    throw (UnknownHostException) e.getCause();
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Builder used to configure a {@link CachingResolver}.
+     */
+    public static class Builder {
+
+        private Resolver delegate = Resolver.SYSTEM;
+        private long ttlMillis = 60000;
+        private boolean refreshAhead = true;
+        private int maxEntries = 1024;
+        private Executor executor = Fetch.DEFAULT_EXECUTOR;
+        private final Map<String, List<InetAddress>> pinned = new HashMap<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the resolver whose results are cached. Defaults to {@link Resolver#SYSTEM}.
+         *
+         * @param delegate The resolver.
+         * @return The resolver builder.
+         */
+        public Builder delegate(@NonNull Resolver delegate) {
+            this.delegate = delegate;
+            return this;
+        }
+
+        /**
+         * Sets how long a host's addresses are cached for. Defaults to one minute.
+         *
+         * @param ttlMillis TTL in milliseconds.
+         * @return The resolver builder.
+         * @throws IllegalArgumentException If {@code ttlMillis} is negative.
+         */
+        public Builder ttl(long ttlMillis) {
+            if (ttlMillis < 0)
+                throw new IllegalArgumentException("ttlMillis must not be negative");
+            this.ttlMillis = ttlMillis;
+            return this;
+        }
+
+        /**
+         * Sets whether hosts used during the last tenth of their TTL are looked up again in the background,
+         * so they don't expire while in use. Defaults to true.
+         *
+         * @param refreshAhead Whether to refresh entries before they expire.
+         * @return The resolver builder.
+         */
+        public Builder refreshAhead(boolean refreshAhead) {
+            this.refreshAhead = refreshAhead;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of hosts cached. Defaults to 1024.
+         *
+         * @param maxEntries Maximum cached hosts.
+         * @return The resolver builder.
+         * @throws IllegalArgumentException If {@code maxEntries} is less than 1.
+         */
+        public Builder maxEntries(int maxEntries) {
+            if (maxEntries < 1)
+                throw new IllegalArgumentException("maxEntries must be at least 1");
+            this.maxEntries = maxEntries;
+            return this;
+        }
+
+        /**
+         * Sets the executor background lookups are performed on. Defaults to {@link Fetch#DEFAULT_EXECUTOR}.
+         *
+         * @param executor The executor.
+         * @return The resolver builder.
+         */
+        public Builder executor(@NonNull Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Pins a host to fixed addresses, which are used instead of looking it up.
+         *
+         * @param host      The host name.
+         * @param addresses The addresses, in the order they should be tried.
+         * @return The resolver builder.
+         * @throws IllegalArgumentException If no addresses are given.
+         */
+        public Builder pin(@NonNull String host, @NonNull InetAddress... addresses) {
+            if (addresses.length == 0)
+                throw new IllegalArgumentException("At least one address must be given");
+            pinned.put(host.toLowerCase(Locale.ROOT), Collections.unmodifiableList(new ArrayList<>(Arrays.asList(addresses))));
+            return this;
+        }
+
+        /**
+         * @return A new resolver with this builder's configuration.
+         */
+        public CachingResolver build() {
+            return new CachingResolver(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,59 @@
+package net.insprill.fetch4j;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Decodes a response body compressed with a {@code Content-Encoding}.
+ * Decoders wrap the body as it's read, so compressed bodies are never buffered in their compressed form.
+ * <p>
+ * {@code gzip} and {@code deflate} are supported out of the box. Others, like {@code br},
+ * can be added with {@link FetchClient.Builder#contentDecoder(String, ContentDecoder)}.
+ *
+ * @see Params#decompress(boolean)
+ */
+@FunctionalInterface
+public interface ContentDecoder {
+
+    /**
+     * Decodes the {@code gzip} content coding.
+     */
+    ContentDecoder GZIP = in -> new GZIPInputStream(in, 8192);
+
+    /**
+     * Decodes the {@code deflate} content coding.
+     * Also accepts raw deflate data without the zlib wrapper, as some servers send it that way.
+     */
+    ContentDecoder DEFLATE = in -> {
+        BufferedInputStream buffered = new BufferedInputStream(in, 8192);
+        buffered.mark(2);
+        int cmf = buffered.read();
+        int flg = buffered.read();
+        buffered.reset();
+        boolean zlib = (cmf & 0x0F) == 8 && flg != -1 && ((cmf << 8) | flg) % 31 == 0;
+        return new InflaterInputStream(buffered, new Inflater(!zlib), 8192) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inf.end();
+                }
+            }
+        };
+    };
+
+    /**
+     * Wraps a compressed body with a stream decoding it.
+     *
+     * @param in The compressed body.
+     * @return A stream of the decoded body. Closing it must close {@code in}.
+     * @throws IOException If an I/O error occurs while reading the start of the body.
+     */
+    InputStream decode(InputStream in) throws IOException;
+
+}
@@ -0,0 +1,242 @@
+package net.insprill.fetch4j;
+
+import net.insprill.fetch4j.transport.Exchange;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An exchange whose body is transparently decoded from its {@code Content-Encoding}.
+ * The {@code Content-Encoding} and {@code Content-Length} headers are hidden, as they describe the body on the wire.
+ */
+final class DecodingExchange implements Exchange {
+
+    /**
+     * How much of the body to read past the end of the decoded data, so the connection can be reused.
+     */
+    private static final int MAX_TRAILING_BYTES = 65536;
+
+    private final Exchange exchange;
+    private final List<ContentDecoder> decoders;
+    private final Map<String, List<String>> headers;
+    private DecodingStream body;
+
+    private DecodingExchange(Exchange exchange, List<ContentDecoder> decoders) {
+        this.exchange = exchange;
+        this.decoders = decoders;
+        Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (Map.Entry<String, List<String>> header : exchange.getHeaders().entrySet()) {
+            // Skip the null name HttpURLConnection gives the status line, which a TreeMap can't hold.
+            if (header.getKey() != null && !isHidden(header.getKey())) {
+                headers.put(header.getKey(), header.getValue());
+            }
+        }
+        this.headers = Collections.unmodifiableMap(headers);
+    }
+
+    /**
+     * Wraps an exchange to decode its body, if it's encoded with codings all supported by the given decoders.
+     *
+     * @param exchange The exchange.
+     * @param method   The request method.
+     * @param decoders Decoders by lower-case coding name.
+     * @return A decoding exchange, or {@code exchange} itself if its body doesn't need or can't be decoded.
+     */
+    static Exchange wrap(Exchange exchange, Params.Method method, Map<String, ContentDecoder> decoders) {
+        String encoding = exchange.getHeader("Content-Encoding");
+        if (encoding == null || method == Params.Method.HEAD || exchange.getStatus() == 204 || exchange.getStatus() == 304)
+            return exchange;
+        List<ContentDecoder> chain = new ArrayList<>(1);
+        for (String coding : encoding.split(",")) {
+            coding = coding.trim().toLowerCase(Locale.ROOT);
+            if (coding.isEmpty() || coding.equals("identity"))
+                continue;
+            ContentDecoder decoder = decoders.get(coding);
+            if (decoder == null)
+                return exchange;
+            // Codings are listed in the order they were applied, so are undone last to first.
+            chain.add(0, decoder);
+        }
+        return chain.isEmpty() ? exchange : new DecodingExchange(exchange, chain);
+    }
+
+    @Override
+    public int getStatus() {
+        return exchange.getStatus();
+    }
+
+    @Override
+    public String getStatusText() {
+        return exchange.getStatusText();
+    }
+
+    @Override
+    public String getHeader(String name) {
+        return isHidden(name) ? null : exchange.getHeader(name);
+    }
+
+    @Override
+    public Map<String, List<String>> getHeaders() {
+        return headers;
+    }
+
+    @Override
+    public InputStream getBody() throws IOException {
+        if (body == null) {
+            InputStream raw = exchange.getBody();
+            if (raw == null)
+                return null;
+            body = new DecodingStream(raw);
+        }
+        return body;
+    }
+
+    @Override
+    public void disconnect() {
+        exchange.disconnect();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (body != null) {
+            body.close();
+        } else {
+            exchange.close();
+        }
+    }
+
+    private static boolean isHidden(String name) {
+        return "Content-Encoding".equalsIgnoreCase(name) || "Content-Length".equalsIgnoreCase(name);
+    }
+
+    /**
+     * Decodes the body as it's read, only creating the decoders on the first read
+     * so an empty body, or one that's never read, doesn't fail to decode.
+     */
+    private final class DecodingStream extends InputStream {
+
+        private final InputStream raw;
+        private InputStream decoded;
+        private boolean eof;
+
+        DecodingStream(InputStream raw) {
+            this.raw = raw;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (eof)
+                return -1;
+            if (decoded == null && !open())
+                return -1;
+            int n = decoded.read(b, off, len);
+            if (n == -1) {
+                eof = true;
+                drainTrailingBytes();
+            }
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return decoded == null || eof ? 0 : decoded.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (decoded != null) {
+                decoded.close();
+            } else {
+                raw.close();
+            }
+        }
+
+        private boolean open() throws IOException {
+            int first = raw.read();
+            if (first == -1) {
+                eof = true;
+                return false;
+            }
+            InputStream in = new PrependedStream(first, raw);
+            for (ContentDecoder decoder : decoders) {
+                in = decoder.decode(in);
+            }
+            decoded = in;
+            return true;
+        }
+
+        /**
+         * Decoders may stop reading at the end of their data without seeing the end of the body,
+         * which would keep the connection from being released.
+         */
+        private void drainTrailingBytes() throws IOException {
+            byte[] buf = new byte[512];
+            int total = 0;
+            int n;
+            while (total < MAX_TRAILING_BYTES && (n = raw.read(buf)) != -1) {
+                total += n;
+            }
+        }
+
+    }
+
+    /**
+     * A stream with a byte that was already read put back at its front.
+     */
+    private static final class PrependedStream extends InputStream {
+
+        private final InputStream in;
+        private int first;
+
+        PrependedStream(int first, InputStream in) {
+            this.first = first;
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (first != -1) {
+                int b = first;
+                first = -1;
+                return b;
+            }
+            return in.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            if (first != -1) {
+                b[off] = (byte) first;
+                first = -1;
+                return 1;
+            }
+            return in.read(b, off, len);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (first != -1 ? 1 : 0) + in.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+    }
+
+}
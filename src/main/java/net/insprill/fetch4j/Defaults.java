@@ -0,0 +1,239 @@
+package net.insprill.fetch4j;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * The defaults {@link Params} fall back to for anything a request doesn't set itself.
+ * Defaults are immutable, so can be safely shared between threads, and requests layer their own
+ * headers and query parameters on top of them without copying them.
+ * <p>
+ * Requests use the defaults of the client sending them, set with {@link FetchClient.Builder#defaults(Defaults)},
+ * unless they were created with {@link Params#params(Defaults)}. Clients without their own use the {@link #getGlobal() global defaults}.
+ *
+ * @see Params
+ */
+@Getter
+public final class Defaults {
+
+    /**
+     * The built-in defaults, following redirects, using caches and decompressing responses,
+     * with one minute timeouts and no headers or query parameters.
+     */
+    public static final Defaults STANDARD = builder().build();
+
+    private static final AtomicReference<Defaults> GLOBAL = new AtomicReference<>(STANDARD);
+
+    private final boolean followRedirects;
+    private final boolean useCaches;
+    private final boolean decompress;
+    private final int connectionTimeout;
+    private final int readTimeout;
+    /**
+     * An unmodifiable Map of the default request headers.
+     */
+    private final Map<String, String> headers;
+    /**
+     * An unmodifiable Map of the default query parameters.
+     */
+    private final Map<String, Object> queries;
+
+    private Defaults(Builder builder) {
+        this.followRedirects = builder.followRedirects;
+        this.useCaches = builder.useCaches;
+        this.decompress = builder.decompress;
+        this.connectionTimeout = builder.connectionTimeout;
+        this.readTimeout = builder.readTimeout;
+        this.headers = builder.headers.isEmpty() ? Collections.emptyMap() : Collections.unmodifiableMap(new HashMap<>(builder.headers));
+        this.queries = builder.queries.isEmpty() ? Collections.emptyMap() : Collections.unmodifiableMap(new LinkedHashMap<>(builder.queries));
+    }
+
+    /**
+     * @return A new builder, starting from the {@link #STANDARD} defaults.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Gets the defaults used by clients which weren't given their own.
+     *
+     * @return The global defaults.
+     */
+    public static Defaults getGlobal() {
+        return GLOBAL.get();
+    }
+
+    /**
+     * Replaces the defaults used by clients which weren't given their own.
+     * Applies to all requests sent afterwards, including ones whose {@link Params} were already created.
+     *
+     * @param defaults The new global defaults.
+     */
+    public static void setGlobal(@NonNull Defaults defaults) {
+        GLOBAL.set(defaults);
+    }
+
+    /**
+     * Atomically replaces the global defaults with a modified copy.
+     *
+     * @param update Modifies a builder starting from the current global defaults.
+     */
+    static void updateGlobal(UnaryOperator<Builder> update) {
+        GLOBAL.updateAndGet(current -> update.apply(current.toBuilder()).build());
+    }
+
+    /**
+     * @return A new builder starting from these defaults.
+     */
+    public Builder toBuilder() {
+        Builder builder = new Builder();
+        builder.followRedirects = followRedirects;
+        builder.useCaches = useCaches;
+        builder.decompress = decompress;
+        builder.connectionTimeout = connectionTimeout;
+        builder.readTimeout = readTimeout;
+        builder.headers.putAll(headers);
+        builder.queries.putAll(queries);
+        return builder;
+    }
+
+    /**
+     * Builder used to configure {@link Defaults}.
+     */
+    public static class Builder {
+
+        private boolean followRedirects = true;
+        private boolean useCaches = true;
+        private boolean decompress = true;
+        private int connectionTimeout = 60000;
+        private int readTimeout = 60000;
+        private final Map<String, String> headers = new HashMap<>();
+        private final Map<String, Object> queries = new LinkedHashMap<>();
+
+        private Builder() {
+        }
+
+        /**
+         * @param followRedirects Whether requests follow redirects. Defaults to true.
+         * @return The defaults builder.
+         * @see Params#followRedirects(boolean)
+         */
+        public Builder followRedirects(boolean followRedirects) {
+            this.followRedirects = followRedirects;
+            return this;
+        }
+
+        /**
+         * @param useCaches Whether requests use caches. Defaults to true.
+         * @return The defaults builder.
+         * @see Params#useCaches(boolean)
+         */
+        public Builder useCaches(boolean useCaches) {
+            this.useCaches = useCaches;
+            return this;
+        }
+
+        /**
+         * @param decompress Whether response bodies are decompressed. Defaults to true.
+         * @return The defaults builder.
+         * @see Params#decompress(boolean)
+         */
+        public Builder decompress(boolean decompress) {
+            this.decompress = decompress;
+            return this;
+        }
+
+        /**
+         * @param timeoutMillis The connection timeout in milliseconds. Defaults to one minute.
+         * @return The defaults builder.
+         * @see Params#connectionTimeout(int)
+         */
+        public Builder connectionTimeout(int timeoutMillis) {
+            this.connectionTimeout = timeoutMillis;
+            return this;
+        }
+
+        /**
+         * @param timeoutMillis The read timeout in milliseconds. Defaults to one minute.
+         * @return The defaults builder.
+         * @see Params#readTimeout(int)
+         */
+        public Builder readTimeout(int timeoutMillis) {
+            this.readTimeout = timeoutMillis;
+            return this;
+        }
+
+        /**
+         * Sets a header sent with every request, unless the request sets it itself.
+         *
+         * @param key   Header key.
+         * @param value Header value, or {@code null} to remove it.
+         * @return The defaults builder.
+         */
+        public Builder header(@NonNull String key, String value) {
+            if (value == null) {
+                headers.remove(key);
+            } else {
+                headers.put(key, value);
+            }
+            return this;
+        }
+
+        /**
+         * Replaces all default headers.
+         *
+         * @param headers The headers.
+         * @return The defaults builder.
+         */
+        public Builder headers(@NonNull Map<String, String> headers) {
+            this.headers.clear();
+            this.headers.putAll(headers);
+            return this;
+        }
+
+        /**
+         * Sets a query parameter added to every request, unless the request sets it itself.
+         *
+         * @param key   Query key.
+         * @param value Query value, or {@code null} to remove it. Will be automatically converted to a string.
+         * @return The defaults builder.
+         */
+        public Builder query(@NonNull String key, Object value) {
+            if (value == null) {
+                queries.remove(key);
+            } else {
+                queries.put(key, value);
+            }
+            return this;
+        }
+
+        /**
+         * Replaces all default query parameters.
+         *
+         * @param queries The query parameters.
+         * @return The defaults builder.
+         */
+        public Builder queries(@NonNull Map<String, Object> queries) {
+            this.queries.clear();
+            this.queries.putAll(queries);
+            return this;
+        }
+
+        /**
+         * @return New defaults with this builder's configuration.
+         */
+        public Defaults build() {
+            return new Defaults(this);
+        }
+
+    }
+
+}
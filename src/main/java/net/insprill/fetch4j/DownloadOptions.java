@@ -0,0 +1,67 @@
+package net.insprill.fetch4j;
+
+import lombok.Getter;
+
+/**
+ * Builder used to set options for segmented downloads.
+ *
+ * @see FetchClient#download(String, Params, java.nio.file.Path, DownloadOptions)
+ */
+@Getter
+public class DownloadOptions {
+
+    /**
+     * @return Convenience method for constructing a new options builder.
+     */
+    public static DownloadOptions downloadOptions() {
+        return new DownloadOptions();
+    }
+
+    private int segments = 4;
+    private long minSegmentSize = 1024 * 1024;
+    private boolean resume = true;
+
+    /**
+     * Sets the maximum number of ranges the file is split into and fetched in parallel.
+     * Segments also wait for free threads in the client's executor and connections in its pool. Defaults to 4.
+     *
+     * @param segments Maximum number of segments.
+     * @return The options builder.
+     * @throws IllegalArgumentException If {@code segments} is less than 1.
+     */
+    public DownloadOptions segments(int segments) {
+        if (segments < 1)
+            throw new IllegalArgumentException("segments must be at least 1");
+        this.segments = segments;
+        return this;
+    }
+
+    /**
+     * Sets the smallest range worth fetching on its own connection, so small files are split into fewer segments.
+     * Defaults to 1 MiB.
+     *
+     * @param minSegmentSize Minimum segment size in bytes.
+     * @return The options builder.
+     * @throws IllegalArgumentException If {@code minSegmentSize} is less than 1.
+     */
+    public DownloadOptions minSegmentSize(long minSegmentSize) {
+        if (minSegmentSize < 1)
+            throw new IllegalArgumentException("minSegmentSize must be at least 1");
+        this.minSegmentSize = minSegmentSize;
+        return this;
+    }
+
+    /**
+     * Sets whether progress is recorded next to the file, so a download that failed part way through
+     * only fetches the remaining ranges when it's started again. Downloads are only resumed if the server
+     * reports the same length and validator ({@code ETag} or {@code Last-Modified}) as before. Defaults to true.
+     *
+     * @param resume Whether to record progress and resume from it.
+     * @return The options builder.
+     */
+    public DownloadOptions resume(boolean resume) {
+        this.resume = resume;
+        return this;
+    }
+
+}
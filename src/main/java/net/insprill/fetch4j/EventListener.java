@@ -0,0 +1,169 @@
+package net.insprill.fetch4j;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.List;
+
+/**
+ * Listener for the phases of a fetch operation, for collecting metrics such as per-phase latencies.
+ * All methods do nothing by default, so only the events of interest need to be overridden.
+ * <p>
+ * Events for a single fetch operation are delivered in order on the thread performing it,
+ * or the thread reading a streamed body. Durations are measured with {@link System#nanoTime()}.
+ * Not all events are delivered for every operation: reused connections skip the DNS and connect events,
+ * and requests sent through {@link java.net.HttpURLConnection} only deliver the events around the call itself.
+ * <p>
+ * Listeners are called synchronously, so should return quickly and never throw.
+ *
+ * @see FetchClient.Builder#eventListener(EventListener)
+ * @see FetchClient.Builder#eventListenerFactory(Factory)
+ * @see Params#eventListener(EventListener)
+ */
+public abstract class EventListener {
+
+    /**
+     * A listener that ignores all events.
+     */
+    public static final EventListener NONE = new EventListener() {
+    };
+
+    /**
+     * Called when a fetch operation starts, before anything is sent.
+     *
+     * @param url    The URL being fetched, including query parameters.
+     * @param params The parameters of the request.
+     */
+    public void callStart(URL url, Params params) {
+    }
+
+    /**
+     * Called when a response is served from the client's cache without contacting the server.
+     */
+    public void cacheHit() {
+    }
+
+    /**
+     * Called before resolving a host name.
+     *
+     * @param host The host name.
+     */
+    public void dnsStart(String host) {
+    }
+
+    /**
+     * Called after resolving a host name.
+     *
+     * @param host          The host name.
+     * @param addresses     The addresses it resolved to.
+     * @param durationNanos How long resolving took.
+     */
+    public void dnsEnd(String host, List<InetAddress> addresses, long durationNanos) {
+    }
+
+    /**
+     * Called before opening a connection.
+     *
+     * @param address The address being connected to.
+     */
+    public void connectStart(InetSocketAddress address) {
+    }
+
+    /**
+     * Called after the TLS handshake of a secure connection.
+     *
+     * @param protocol      The negotiated TLS version, like {@code TLSv1.3}.
+     * @param durationNanos How long the handshake took.
+     */
+    public void secureConnectEnd(String protocol, long durationNanos) {
+    }
+
+    /**
+     * Called after a connection has been opened, including the TLS handshake for secure connections.
+     *
+     * @param address       The address connected to.
+     * @param durationNanos How long connecting took.
+     */
+    public void connectEnd(InetSocketAddress address, long durationNanos) {
+    }
+
+    /**
+     * Called when opening a connection fails.
+     *
+     * @param address       The address being connected to.
+     * @param error         The cause of the failure.
+     * @param durationNanos How long was spent trying to connect.
+     */
+    public void connectFailed(InetSocketAddress address, IOException error, long durationNanos) {
+    }
+
+    /**
+     * Called once a connection to send the request over has been obtained.
+     *
+     * @param reused        True if the connection was reused from a previous request, false if it was newly opened.
+     * @param durationNanos How long obtaining the connection took, including waiting for one to be free.
+     */
+    public void connectionAcquired(boolean reused, long durationNanos) {
+    }
+
+    /**
+     * Called after the request body has been sent.
+     *
+     * @param bytes         The number of bytes sent, after any compression.
+     * @param durationNanos How long sending the body took.
+     */
+    public void requestBodyEnd(long bytes, long durationNanos) {
+    }
+
+    /**
+     * Called once the final response's status and headers have been received, after any redirects.
+     *
+     * @param status               The response code.
+     * @param timeToFirstByteNanos How long since the call started.
+     */
+    public void responseHeadersEnd(int status, long timeToFirstByteNanos) {
+    }
+
+    /**
+     * Called once the response body has been fully read, or closed early.
+     *
+     * @param bytes         The number of bytes read, before any decompression.
+     * @param durationNanos How long since the response headers were received.
+     */
+    public void responseBodyEnd(long bytes, long durationNanos) {
+    }
+
+    /**
+     * Called when a fetch operation completes, once its response body has been fully read or closed.
+     *
+     * @param durationNanos How long since the call started.
+     */
+    public void callEnd(long durationNanos) {
+    }
+
+    /**
+     * Called when a fetch operation fails, either while sending the request or reading the response body.
+     *
+     * @param error         The cause of the failure.
+     * @param durationNanos How long since the call started.
+     */
+    public void callFailed(Throwable error, long durationNanos) {
+    }
+
+    /**
+     * Creates a listener for each fetch operation, so listeners can keep per-operation state.
+     */
+    @FunctionalInterface
+    public interface Factory {
+
+        /**
+         * @param url    The URL being fetched, including query parameters.
+         * @param params The parameters of the request.
+         * @return The listener for the operation.
+         */
+        EventListener create(URL url, Params params);
+
+    }
+
+}
@@ -0,0 +1,249 @@
+package net.insprill.fetch4j;
+
+import lombok.Getter;
+import net.insprill.fetch4j.exception.FetchException;
+import net.insprill.fetch4j.util.ExecutorUtil;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A subscription to a server-sent event ({@code text/event-stream}) endpoint, delivering events to a {@link Listener}
+ * as they're received. The stream is read on a thread of its own, a virtual thread on Java 21 and newer,
+ * rather than one of the client's executor's, as it's occupied until the source is closed.
+ * <p>
+ * When the connection is lost or the server ends the stream, the source reconnects after the reconnection delay,
+ * which the server may change with the {@code retry} field, sending the last event ID in the {@code Last-Event-ID} header
+ * so the server can resume where it left off. The source stops reconnecting once closed, when the server responds with
+ * {@code 204 No Content}, or when it responds with another status or content type, which isn't retried.
+ * <p>
+ * Servers should send comments often enough to keep the connection from reaching the read timeout of the request's parameters,
+ * or the timeout should be raised, as reaching it is treated like a lost connection.
+ *
+ * @see FetchClient#subscribe(String, Params, EventSource.Listener)
+ * @see Fetch#subscribe(String, Params, EventSource.Listener)
+ */
+public final class EventSource implements Closeable {
+
+    private static final long DEFAULT_RECONNECT_DELAY_MILLIS = 3000;
+    private static final ThreadFactory THREAD_FACTORY = ExecutorUtil.newLongRunningThreadFactory("fetch4j-event-source-");
+
+    private final FetchClient client;
+    @Getter
+    private final String url;
+    private final Params params;
+    private final Listener listener;
+    private final CountDownLatch closedLatch = new CountDownLatch(1);
+    private volatile boolean closed;
+    private volatile Response response;
+    /**
+     * The ID of the last event received, sent when reconnecting.
+     */
+    @Getter
+    private volatile String lastEventId = "";
+    /**
+     * How long to wait before reconnecting, in milliseconds.
+     */
+    @Getter
+    private volatile long reconnectDelayMillis = DEFAULT_RECONNECT_DELAY_MILLIS;
+
+    EventSource(FetchClient client, String url, Params params, Listener listener) {
+        this.client = client;
+        this.url = url;
+        this.params = params.copy()
+                .header("Accept", "text/event-stream")
+                .header("Cache-Control", "no-cache")
+                .useCaches(false);
+        this.listener = listener;
+    }
+
+    /**
+     * Starts reading the stream on a new thread.
+     */
+    void start() {
+        THREAD_FACTORY.newThread(this::run).start();
+    }
+
+    /**
+     * Checks if the source has stopped, either by being closed or failing in a way that isn't retried.
+     *
+     * @return True if the source won't receive any more events, false otherwise.
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Stops the source, disconnecting from the server. No more events are delivered once this returns,
+     * apart from one that was already being delivered.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        closedLatch.countDown();
+        Response response = this.response;
+        if (response != null) {
+            response.disconnect();
+        }
+    }
+
+    private void run() {
+        try {
+            while (!closed) {
+                try {
+                    if (!connect())
+                        return;
+                } catch (Exception e) {
+                    if (closed)
+                        return;
+                    listener.onFailure(this, e);
+                }
+                if (closedLatch.await(reconnectDelayMillis, TimeUnit.MILLISECONDS))
+                    return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closed = true;
+            closedLatch.countDown();
+            listener.onClosed(this);
+        }
+    }
+
+    /**
+     * Connects to the server and reads events until the stream ends.
+     *
+     * @return True if the source should reconnect, false otherwise.
+     */
+    private boolean connect() {
+        Params request = params.copy();
+        if (!lastEventId.isEmpty()) {
+            request.header("Last-Event-ID", lastEventId);
+        }
+        return client.fetch(url, request, this::read);
+    }
+
+    private boolean read(Response response) throws IOException {
+        if (response.getStatus() == 204)
+            return false;
+        String contentType = response.getHeader("Content-Type");
+        if (response.getStatus() != 200 || contentType == null
+                || !contentType.split(";")[0].trim().toLowerCase(Locale.ROOT).equals("text/event-stream")) {
+            listener.onFailure(this, new FetchException("Unexpected response for an event stream: " + response.getStatus() + " " + contentType));
+            return false;
+        }
+        this.response = response;
+        if (closed) {
+            response.disconnect();
+            return false;
+        }
+        listener.onOpen(this, response);
+
+        // Event streams are always UTF-8, regardless of the content type.
+        BufferedReader reader = new BufferedReader(new InputStreamReader(response.getBodyStream(), StandardCharsets.UTF_8));
+        StringBuilder data = new StringBuilder();
+        String type = null;
+        String line = reader.readLine();
+        if (line != null && line.startsWith("\uFEFF")) {
+            line = line.substring(1);
+        }
+        for (; line != null && !closed; line = reader.readLine()) {
+            if (line.isEmpty()) {
+                if (data.length() > 0) {
+                    data.setLength(data.length() - 1);
+                    listener.onEvent(this, new ServerSentEvent(type == null || type.isEmpty() ? "message" : type, data.toString(), lastEventId));
+                }
+                data.setLength(0);
+                type = null;
+                continue;
+            }
+            int colon = line.indexOf(':');
+            if (colon == 0)
+                continue;
+            String field = colon == -1 ? line : line.substring(0, colon);
+            int valueStart = colon == -1 ? line.length() : colon + 1;
+            if (valueStart < line.length() && line.charAt(valueStart) == ' ') {
+                valueStart++;
+            }
+            String value = line.substring(valueStart);
+            switch (field) {
+                case "event":
+                    type = value;
+                    break;
+                case "data":
+                    data.append(value).append('\n');
+                    break;
+                case "id":
+                    if (value.indexOf('\0') == -1) {
+                        lastEventId = value;
+                    }
+                    break;
+                case "retry":
+                    if (!value.isEmpty() && value.chars().allMatch(c -> c >= '0' && c <= '9')) {
+                        try {
+                            reconnectDelayMillis = Long.parseLong(value);
+                        } catch (NumberFormatException ignored) {
+                            // Too large, so keep the current delay.
+                        }
+                    }
+                    break;
+                default:
+                    // Unknown fields are ignored.
+                    break;
+            }
+        }
+        // An incomplete event at the end of the stream is discarded.
+        return !closed;
+    }
+
+    /**
+     * Listener for the events of an {@link EventSource}, called on the thread reading the stream.
+     * Listeners should never throw, as exceptions are treated like a lost connection.
+     */
+    public abstract static class Listener {
+
+        /**
+         * Called when a connection to the server is established, including each time the source reconnects.
+         *
+         * @param source   The event source.
+         * @param response The response, whose body is the event stream.
+         */
+        public void onOpen(EventSource source, Response response) {
+        }
+
+        /**
+         * Called for each event received.
+         *
+         * @param source The event source.
+         * @param event  The event.
+         */
+        public abstract void onEvent(EventSource source, ServerSentEvent event);
+
+        /**
+         * Called when connecting fails or the connection is lost, before reconnecting,
+         * or when the server responds with a status or content type that isn't retried, before closing.
+         *
+         * @param source The event source.
+         * @param error  The cause of the failure.
+         */
+        public void onFailure(EventSource source, Throwable error) {
+        }
+
+        /**
+         * Called once the source has stopped and won't deliver any more events.
+         *
+         * @param source The event source.
+         */
+        public void onClosed(EventSource source) {
+        }
+
+    }
+
+}
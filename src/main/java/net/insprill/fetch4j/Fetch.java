@@ -1,25 +1,27 @@
 package net.insprill.fetch4j;
 
-import lombok.SneakyThrows;
 import lombok.experimental.UtilityClass;
+import net.insprill.fetch4j.exception.FetchException;
 import net.insprill.fetch4j.exception.HostNotFoundException;
 import net.insprill.fetch4j.exception.InvalidCharsetException;
 import net.insprill.fetch4j.exception.InvalidURLException;
 import net.insprill.fetch4j.exception.TimeoutException;
-import net.insprill.fetch4j.util.URLUtils;
+import net.insprill.fetch4j.util.ExecutorUtil;
 
-import java.io.IOException;
-import java.net.HttpURLConnection;
-import java.net.SocketTimeoutException;
-import java.net.URL;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
-import java.util.Map;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
 
 /**
- * Class used to perform fetch operations.
+ * Class used to perform fetch operations through the {@link FetchClient#getDefault() default client}.
  *
  * @see Params
+ * @see FetchClient
  */
 @UtilityClass
 public class Fetch {
@@ -29,6 +31,12 @@ public class Fetch {
      */
     public static final Charset DEFAULT_CHARSET = StandardCharsets.UTF_8;
 
+    /**
+     * The executor used for asynchronous fetch operations when others are not specified.
+     * On Java 21 and newer, this runs each operation on a virtual thread. Otherwise, it's a bounded pool of daemon threads.
+     */
+    public static final Executor DEFAULT_EXECUTOR = ExecutorUtil.newDefaultExecutor();
+
     /**
      * Performs a fetch operation with default parameters.
      *
@@ -54,35 +62,236 @@ public Response fetch(String url) {
      * @throws HostNotFoundException   If the requested host is not found.
      * @throws InvalidCharsetException If an invalid Content-Type header charset was used for formatting query parameters.
      */
-    @SneakyThrows
     public Response fetch(String url, Params params) {
-        url = URLUtils.addQueryParams(url, params);
-        HttpURLConnection conn;
-        try {
-            conn = (HttpURLConnection) new URL(url).openConnection();
-        } catch (IOException e) {
-            throw new InvalidURLException(e);
-        }
-        for (Map.Entry<String, String> header : params.getHeaders().entrySet()) {
-            conn.setRequestProperty(header.getKey(), header.getValue());
-        }
-        conn.setRequestMethod(params.getMethod().name());
-        conn.setInstanceFollowRedirects(params.isFollowRedirects());
-        conn.setConnectTimeout(params.getConnectionTimeout());
-        conn.setReadTimeout(params.getReadTimeout());
-        conn.setUseCaches(params.isUseCaches());
-        try {
-            if (params.getBody() != null) {
-                conn.setDoOutput(true);
-                conn.getOutputStream().write(params.getBody());
-            }
-            conn.connect(); // Connect if we don't have a body to send. Won't do anything if already connected.
-        } catch (SocketTimeoutException e) {
-            throw new TimeoutException(e);
-        } catch (IOException e) {
-            throw new HostNotFoundException(e);
-        }
-        return new Response(conn);
+        return FetchClient.getDefault().fetch(url, params);
+    }
+
+    /**
+     * Performs a fetch operation with default parameters, streaming the response body.
+     *
+     * @param url URL to fetch.
+     * @return A streaming {@link Response}. Must be closed once the body has been consumed.
+     * @throws InvalidURLException     If the URL provided is malformed.
+     * @throws TimeoutException        If the request times out.
+     * @throws HostNotFoundException   If the requested host is not found.
+     * @throws InvalidCharsetException If an invalid Content-Type header charset was used for formatting query parameters.
+     * @see Response#getBodyStream()
+     */
+    public Response stream(String url) {
+        return stream(url, new Params());
+    }
+
+    /**
+     * Performs a fetch operation, streaming the response body instead of buffering it into memory.
+     *
+     * @param url    URL to fetch.
+     * @param params Parameters to include in the request.
+     * @return A streaming {@link Response}. Must be closed once the body has been consumed.
+     * @throws InvalidURLException     If the URL provided is malformed.
+     * @throws TimeoutException        If the request times out.
+     * @throws HostNotFoundException   If the requested host is not found.
+     * @throws InvalidCharsetException If an invalid Content-Type header charset was used for formatting query parameters.
+     * @see Params#streamBody(boolean)
+     * @see Response#getBodyStream()
+     */
+    public Response stream(String url, Params params) {
+        return FetchClient.getDefault().stream(url, params);
+    }
+
+    /**
+     * Performs a fetch operation with default parameters, processing the response body incrementally as it's received.
+     *
+     * @param url     URL to fetch.
+     * @param handler Handles the response body.
+     * @param <T>     The type of the handler's result.
+     * @return The handler's result.
+     * @throws InvalidURLException     If the URL provided is malformed.
+     * @throws TimeoutException        If the request times out.
+     * @throws HostNotFoundException   If the requested host is not found.
+     * @throws InvalidCharsetException If an invalid Content-Type header charset was used for formatting query parameters.
+     */
+    public <T> T fetch(String url, BodyHandler<T> handler) {
+        return fetch(url, new Params(), handler);
+    }
+
+    /**
+     * Performs a fetch operation, processing the response body incrementally as it's received
+     * instead of buffering it into memory.
+     *
+     * @param url     URL to fetch.
+     * @param params  Parameters to include in the request.
+     * @param handler Handles the response body.
+     * @param <T>     The type of the handler's result.
+     * @return The handler's result.
+     * @throws InvalidURLException     If the URL provided is malformed.
+     * @throws TimeoutException        If the request times out.
+     * @throws HostNotFoundException   If the requested host is not found.
+     * @throws InvalidCharsetException If an invalid Content-Type header charset was used for formatting query parameters.
+     * @see BodyHandler
+     */
+    public <T> T fetch(String url, Params params, BodyHandler<T> handler) {
+        return FetchClient.getDefault().fetch(url, params, handler);
+    }
+
+    /**
+     * Subscribes to a server-sent event stream with default parameters.
+     *
+     * @param url      URL of the event stream.
+     * @param listener Listener receiving the events.
+     * @return The event source, which must be closed to stop receiving events.
+     * @see FetchClient#subscribe(String, Params, EventSource.Listener)
+     */
+    public EventSource subscribe(String url, EventSource.Listener listener) {
+        return FetchClient.getDefault().subscribe(url, listener);
+    }
+
+    /**
+     * Subscribes to a server-sent event stream, delivering events to the listener as they're received
+     * and reconnecting when the connection is lost.
+     *
+     * @param url      URL of the event stream.
+     * @param params   Parameters to include in the request.
+     * @param listener Listener receiving the events.
+     * @return The event source, which must be closed to stop receiving events.
+     * @see FetchClient#subscribe(String, Params, EventSource.Listener)
+     */
+    public EventSource subscribe(String url, Params params, EventSource.Listener listener) {
+        return FetchClient.getDefault().subscribe(url, params, listener);
+    }
+
+    /**
+     * Performs a fetch operation with default parameters, writing the response body straight to a file.
+     *
+     * @param url  URL to fetch.
+     * @param path The file to write the body to. Will be replaced if it already exists.
+     * @return The number of bytes written.
+     * @throws InvalidURLException     If the URL provided is malformed.
+     * @throws TimeoutException        If the request times out.
+     * @throws HostNotFoundException   If the requested host is not found.
+     * @throws InvalidCharsetException If an invalid Content-Type header charset was used for formatting query parameters.
+     */
+    public long download(String url, Path path) {
+        return download(url, new Params(), path);
+    }
+
+    /**
+     * Performs a fetch operation, writing the response body straight to a file without buffering it into memory.
+     * The body is written regardless of the response status. To check it first, use {@link #stream(String, Params)}
+     * and {@link Response#transferTo(Path)}.
+     *
+     * @param url    URL to fetch.
+     * @param params Parameters to include in the request.
+     * @param path   The file to write the body to. Will be replaced if it already exists.
+     * @return The number of bytes written.
+     * @throws InvalidURLException     If the URL provided is malformed.
+     * @throws TimeoutException        If the request times out.
+     * @throws HostNotFoundException   If the requested host is not found.
+     * @throws InvalidCharsetException If an invalid Content-Type header charset was used for formatting query parameters.
+     */
+    public long download(String url, Params params, Path path) {
+        return FetchClient.getDefault().download(url, params, path);
+    }
+
+    /**
+     * Downloads a file as several byte ranges fetched in parallel, falling back to a single stream
+     * if the server doesn't support ranges. Failed downloads can be resumed by downloading them again.
+     *
+     * @param url     URL to fetch.
+     * @param params  Parameters to include in the requests.
+     * @param path    The file to write the body to. Will be replaced if it already exists, unless the download is resumed.
+     * @param options Options for how the file is split and whether the download can be resumed.
+     * @return The length of the file, including any ranges downloaded by an earlier attempt.
+     * @throws InvalidURLException   If the URL provided is malformed.
+     * @throws TimeoutException      If the request times out.
+     * @throws HostNotFoundException If the requested host is not found.
+     * @throws FetchException        If the server responds with an unsuccessful status, or doesn't return a requested range.
+     * @see FetchClient#download(String, Params, Path, DownloadOptions)
+     */
+    public long download(String url, Params params, Path path, DownloadOptions options) {
+        return FetchClient.getDefault().download(url, params, path, options);
+    }
+
+    /**
+     * Performs a fetch operation asynchronously with default parameters on the {@link #DEFAULT_EXECUTOR}.
+     *
+     * @param url URL to fetch.
+     * @return A future completed with the {@link Response}, or exceptionally with any exception {@link #fetch(String, Params)} may throw.
+     */
+    public CompletableFuture<Response> fetchAsync(String url) {
+        return fetchAsync(url, new Params());
+    }
+
+    /**
+     * Performs a fetch operation asynchronously on the {@link #DEFAULT_EXECUTOR}.
+     *
+     * @param url    URL to fetch.
+     * @param params Parameters to include in the request.
+     * @return A future completed with the {@link Response}, or exceptionally with any exception {@link #fetch(String, Params)} may throw.
+     */
+    public CompletableFuture<Response> fetchAsync(String url, Params params) {
+        return FetchClient.getDefault().fetchAsync(url, params);
+    }
+
+    /**
+     * Performs a fetch operation asynchronously.
+     *
+     * @param url      URL to fetch.
+     * @param params   Parameters to include in the request.
+     * @param executor The executor to perform the fetch operation on.
+     * @return A future completed with the {@link Response}, or exceptionally with any exception {@link #fetch(String, Params)} may throw.
+     */
+    public CompletableFuture<Response> fetchAsync(String url, Params params, Executor executor) {
+        return FetchClient.getDefault().fetchAsync(url, params, executor);
+    }
+
+    /**
+     * Performs a batch of fetch operations in parallel with default options, waiting for all of them to complete.
+     *
+     * @param requests The requests to perform.
+     * @return The results, in the same order as the requests.
+     * @see FetchClient#fetchAll(Collection, BatchOptions)
+     */
+    public List<BatchResult> fetchAll(Collection<Request> requests) {
+        return FetchClient.getDefault().fetchAll(requests);
+    }
+
+    /**
+     * Performs a batch of fetch operations in parallel, waiting for all of them to complete.
+     * A request failing doesn't affect the others, as its exception is captured in its result instead.
+     *
+     * @param requests The requests to perform.
+     * @param options  Options limiting how many requests are in flight at once.
+     * @return The results, in the same order as the requests.
+     * @see FetchClient#fetchAll(Collection, BatchOptions)
+     */
+    public List<BatchResult> fetchAll(Collection<Request> requests, BatchOptions options) {
+        return FetchClient.getDefault().fetchAll(requests, options);
+    }
+
+    /**
+     * Performs a batch of fetch operations in parallel, returning their results as they complete.
+     *
+     * @param requests The requests to perform.
+     * @param options  Options limiting how many requests are in flight at once.
+     * @return A sequential stream of the results, in the order they completed.
+     * @see FetchClient#fetchAllAsCompleted(Collection, BatchOptions)
+     */
+    public Stream<BatchResult> fetchAllAsCompleted(Collection<Request> requests, BatchOptions options) {
+        return FetchClient.getDefault().fetchAllAsCompleted(requests, options);
+    }
+
+    /**
+     * Compiles a request template for the default client, so a request can be sent repeatedly without rebuilding its URL and parameters.
+     *
+     * @param url    URL to fetch, which may contain {@code {name}} placeholders for values bound when it's sent.
+     * @param params Parameters to include in the request. Later changes to them don't affect the template.
+     * @return The template.
+     * @throws InvalidURLException     If the URL provided is malformed.
+     * @throws InvalidCharsetException If an invalid Content-Type header charset was used for formatting query parameters.
+     * @see FetchClient#compile(String, Params)
+     */
+    public RequestTemplate compile(String url, Params params) {
+        return FetchClient.getDefault().compile(url, params);
     }
 
 }
@@ -0,0 +1,1093 @@
+package net.insprill.fetch4j;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.SneakyThrows;
+import net.insprill.fetch4j.cache.HttpCache;
+import net.insprill.fetch4j.exception.FetchException;
+import net.insprill.fetch4j.exception.HostNotFoundException;
+import net.insprill.fetch4j.exception.InvalidCharsetException;
+import net.insprill.fetch4j.exception.InvalidURLException;
+import net.insprill.fetch4j.exception.RateLimitException;
+import net.insprill.fetch4j.exception.TimeoutException;
+import net.insprill.fetch4j.transport.AsyncTransport;
+import net.insprill.fetch4j.transport.ConnectionPool;
+import net.insprill.fetch4j.transport.EventLoopTransport;
+import net.insprill.fetch4j.transport.Exchange;
+import net.insprill.fetch4j.transport.Http1Transport;
+import net.insprill.fetch4j.transport.Http2Transport;
+import net.insprill.fetch4j.transport.SocketConnector;
+import net.insprill.fetch4j.transport.Transport;
+import net.insprill.fetch4j.transport.UrlConnectionTransport;
+import net.insprill.fetch4j.util.URLUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.CookieHandler;
+import java.net.MalformedURLException;
+import java.net.ProtocolException;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.ResponseCache;
+import java.net.SocketTimeoutException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A client performing fetch operations, owning the connections and threads used by them.
+ * Clients are thread-safe, and should be shared so their connections can be reused.
+ * <p>
+ * Requests are sent over the client's own HTTP/1.1 connection pool, or HTTP/2 if enabled with
+ * {@link Builder#version(Version)}, unless they rely on JVM-wide settings
+ * only {@link java.net.HttpURLConnection} honours (a proxy, an installed {@link ResponseCache} or {@link CookieHandler}),
+ * in which case they're sent through it instead.
+ *
+ * @see Fetch
+ * @see FetchClient#builder()
+ */
+public class FetchClient implements Closeable {
+
+    private static final int MAX_REDIRECTS = 20;
+
+    @Getter
+    private final ConnectionPool connectionPool;
+    @Getter
+    private final Executor executor;
+    private final Transport transport;
+    private final Transport urlConnectionTransport = new UrlConnectionTransport();
+    private final Map<String, ContentDecoder> contentDecoders;
+    private final String acceptEncoding;
+    @Getter
+    private final HttpCache cache;
+    @Getter
+    private final BufferPool bufferPool;
+    @Getter
+    private final RateLimiter rateLimiter;
+    private final SingleFlight singleFlight;
+    private final EventListener.Factory eventListenerFactory;
+    @Getter
+    private final RetryPolicy retryPolicy;
+    private final Defaults defaults;
+
+    private FetchClient(Builder builder) {
+        this.defaults = builder.defaults;
+        this.retryPolicy = builder.retryPolicy;
+        this.cache = builder.cache;
+        this.bufferPool = builder.bufferPool;
+        this.rateLimiter = builder.rateLimiter;
+        this.singleFlight = builder.singleFlight ? new SingleFlight() : null;
+        this.eventListenerFactory = builder.eventListenerFactory;
+        this.contentDecoders = new LinkedHashMap<>(builder.contentDecoders);
+        this.acceptEncoding = String.join(", ", contentDecoders.keySet());
+        SocketConnector connector = new SocketConnector(builder.resolver, builder.happyEyeballs, builder.socketOptions);
+        this.connectionPool = new ConnectionPool(builder.maxConnectionsPerHost, builder.idleTimeoutMillis, builder.keepAliveTtlMillis,
+                builder.maxPipelineDepth, connector);
+        this.executor = builder.executor;
+        if (builder.transport != null) {
+            this.transport = builder.transport;
+        } else if (builder.eventLoops > 0) {
+            this.transport = new EventLoopTransport(builder.eventLoops, builder.maxConnectionsPerHost, builder.idleTimeoutMillis,
+                    builder.keepAliveTtlMillis, connector, new Http1Transport(connectionPool));
+        } else if (builder.version == Version.HTTP_1_1) {
+            this.transport = new Http1Transport(connectionPool);
+        } else {
+            this.transport = new Http2Transport(new Http1Transport(connectionPool), builder.version == Version.HTTP_2_PRIOR_KNOWLEDGE, connector);
+        }
+    }
+
+    /**
+     * Gets the client used by {@link Fetch}.
+     *
+     * @return The default client.
+     */
+    public static FetchClient getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * @return A new builder for configuring a client.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Performs a fetch operation with default parameters.
+     *
+     * @param url URL to fetch.
+     * @return A {@link Response}.
+     * @throws InvalidURLException     If the URL provided is malformed.
+     * @throws TimeoutException        If the request times out.
+     * @throws HostNotFoundException   If the requested host is not found.
+     * @throws InvalidCharsetException If an invalid Content-Type header charset was used for formatting query parameters.
+     */
+    public Response fetch(String url) {
+        return fetch(url, new Params());
+    }
+
+    /**
+     * Performs a fetch operation.
+     * Failed attempts are retried, and slow ones hedged, according to the {@link RetryPolicy} of the request or client.
+     *
+     * @param url    URL to fetch.
+     * @param params Parameters to include in the request.
+     * @return A {@link Response}.
+     * @throws InvalidURLException     If the URL provided is malformed.
+     * @throws TimeoutException        If the request times out.
+     * @throws HostNotFoundException   If the requested host is not found.
+     * @throws InvalidCharsetException If an invalid Content-Type header charset was used for formatting query parameters.
+     * @throws RateLimitException      If the client's {@link RateLimiter} didn't allow the request to be sent in time.
+     */
+    public Response fetch(String url, Params params) {
+        Params request = bindDefaults(params);
+        return fetch(toURL(URLUtils.addQueryParams(url, request)), request);
+    }
+
+    /**
+     * Performs a fetch operation on a URL which already has its query parameters added.
+     */
+    Response fetch(URL target, Params params) {
+        // Coalesced responses share their body, so it can't be returned to a pool by any one of them.
+        if (singleFlight != null && SingleFlight.canCoalesce(params))
+            return singleFlight.execute(target, params, () -> fetch(target, params, null));
+        return fetch(target, params, bufferPool);
+    }
+
+    private Response fetch(URL target, Params params, BufferPool bufferPool) {
+        RetryPolicy policy = params.getRetryPolicy() != null ? params.getRetryPolicy() : retryPolicy;
+        if (!policy.isEnabled())
+            return fetchOnce(target, params, bufferPool);
+        return new RetryingFetch(policy, params.getMethod(), executor, () -> fetchOnce(target, params, bufferPool)).execute();
+    }
+
+    private Response fetchOnce(URL target, Params params, BufferPool bufferPool) {
+        Params request = prepare(target, params);
+        EventListener listener = request.getEventListener();
+        long callStart = System.nanoTime();
+        listener.callStart(target, request);
+        Exchange exchange;
+        try {
+            exchange = execute(target, request);
+        } catch (IOException | RuntimeException e) {
+            throw callFailed(e, listener, callStart);
+        }
+        return toResponse(exchange, request, listener, callStart, bufferPool);
+    }
+
+    /**
+     * Performs a fetch operation through the {@link AsyncTransport}, without blocking a thread while waiting for the response.
+     * The response is created on the executor, so the transport's threads are never blocked by decoding it or by callers.
+     */
+    private CompletableFuture<Response> fetchOnceAsync(URL target, Params params, Executor executor) {
+        Params request = prepare(target, params);
+        EventListener listener = request.getEventListener();
+        long callStart = System.nanoTime();
+        listener.callStart(target, request);
+        CompletableFuture<Response> response = new CompletableFuture<>();
+        executeAsync(target, request, executor, 0).whenComplete((exchange, error) -> {
+            try {
+                executor.execute(() -> {
+                    try {
+                        if (error != null)
+                            throw callFailed(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error, listener, callStart);
+                        response.complete(toResponse(exchange, request, listener, callStart, bufferPool));
+                    } catch (RuntimeException e) {
+                        response.completeExceptionally(e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                response.completeExceptionally(e);
+            }
+        });
+        return response;
+    }
+
+    /**
+     * Adds the client's Accept-Encoding header and event listener to a request, copying it if either is needed.
+     */
+    private Params prepare(URL target, Params params) {
+        boolean addAcceptEncoding = params.isDecompress() && !acceptEncoding.isEmpty() && !hasHeader(params, "Accept-Encoding");
+        EventListener listener = params.getEventListener();
+        if (listener == EventListener.NONE) {
+            EventListener created = eventListenerFactory.create(target, params);
+            listener = created == null ? EventListener.NONE : created;
+        }
+        Params request = params;
+        if (addAcceptEncoding || listener != params.getEventListener()) {
+            request = params.copy().eventListener(listener);
+            if (addAcceptEncoding) {
+                request.header("Accept-Encoding", acceptEncoding);
+            }
+        }
+        return request;
+    }
+
+    private Response toResponse(Exchange exchange, Params params, EventListener listener, long callStart, BufferPool bufferPool) {
+        if (listener != EventListener.NONE) {
+            long headersEnd = System.nanoTime();
+            listener.responseHeadersEnd(exchange.getStatus(), headersEnd - callStart);
+            exchange = new ObservingExchange(exchange, listener, callStart, headersEnd);
+        }
+        if (params.isDecompress()) {
+            exchange = DecodingExchange.wrap(exchange, params.getMethod(), contentDecoders);
+        }
+        return new Response(exchange, params.getMethod(), params.isStreamBody(), bufferPool);
+    }
+
+    /**
+     * Notifies the listener of a failed request, and converts the error into the exception thrown for it.
+     */
+    private static RuntimeException callFailed(Throwable error, EventListener listener, long callStart) {
+        listener.callFailed(error, System.nanoTime() - callStart);
+        if (error instanceof SocketTimeoutException)
+            return new TimeoutException(error);
+        if (error instanceof IOException)
+            return new HostNotFoundException(error);
+        if (error instanceof RuntimeException)
+            return (RuntimeException) error;
+        return new FetchException(error);
+    }
+
+    /**
+     * Performs a fetch operation with default parameters, streaming the response body.
+     *
+     * @param url URL to fetch.
+     * @return A streaming {@link Response}. Must be closed once the body has been consumed.
+     * @see #fetch(String, Params)
+     * @see Response#getBodyStream()
+     */
+    public Response stream(String url) {
+        return stream(url, new Params());
+    }
+
+    /**
+     * Performs a fetch operation, streaming the response body instead of buffering it into memory.
+     *
+     * @param url    URL to fetch.
+     * @param params Parameters to include in the request.
+     * @return A streaming {@link Response}. Must be closed once the body has been consumed.
+     * @see #fetch(String, Params)
+     * @see Response#getBodyStream()
+     */
+    public Response stream(String url, Params params) {
+        return fetch(url, params.copy().streamBody(true));
+    }
+
+    /**
+     * Performs a fetch operation with default parameters, processing the response body incrementally as it's received.
+     *
+     * @param url     URL to fetch.
+     * @param handler Handles the response body.
+     * @param <T>     The type of the handler's result.
+     * @return The handler's result.
+     * @see #fetch(String, Params, BodyHandler)
+     */
+    public <T> T fetch(String url, BodyHandler<T> handler) {
+        return fetch(url, new Params(), handler);
+    }
+
+    /**
+     * Performs a fetch operation, processing the response body incrementally as it's received
+     * instead of buffering it into memory. The response is closed once the handler returns.
+     *
+     * @param url     URL to fetch.
+     * @param params  Parameters to include in the request.
+     * @param handler Handles the response body.
+     * @param <T>     The type of the handler's result.
+     * @return The handler's result.
+     * @see #fetch(String, Params)
+     * @see BodyHandler
+     */
+    @SneakyThrows
+    public <T> T fetch(String url, Params params, BodyHandler<T> handler) {
+        try (Response response = stream(url, params)) {
+            return handler.handle(response);
+        }
+    }
+
+    /**
+     * Subscribes to a server-sent event stream with default parameters.
+     *
+     * @param url      URL of the event stream.
+     * @param listener Listener receiving the events.
+     * @return The event source, which must be closed to stop receiving events.
+     * @see #subscribe(String, Params, EventSource.Listener)
+     */
+    public EventSource subscribe(String url, EventSource.Listener listener) {
+        return subscribe(url, new Params(), listener);
+    }
+
+    /**
+     * Subscribes to a server-sent event stream, delivering events to the listener as they're received
+     * and reconnecting when the connection is lost. The stream is read on a thread of its own, not this client's executor.
+     * Connection failures are reported to the listener instead of being thrown.
+     *
+     * @param url      URL of the event stream.
+     * @param params   Parameters to include in the request. Copied, so later changes don't affect the subscription.
+     * @param listener Listener receiving the events.
+     * @return The event source, which must be closed to stop receiving events.
+     * @see EventSource
+     */
+    public EventSource subscribe(@NonNull String url, @NonNull Params params, @NonNull EventSource.Listener listener) {
+        EventSource source = new EventSource(this, url, params, listener);
+        source.start();
+        return source;
+    }
+
+    /**
+     * Performs a fetch operation with default parameters, writing the response body straight to a file.
+     *
+     * @param url  URL to fetch.
+     * @param path The file to write the body to. Will be replaced if it already exists.
+     * @return The number of bytes written.
+     * @see #fetch(String, Params)
+     */
+    public long download(String url, Path path) {
+        return download(url, new Params(), path);
+    }
+
+    /**
+     * Performs a fetch operation, writing the response body straight to a file without buffering it into memory.
+     * The body is written regardless of the response status. To check it first, use {@link #stream(String, Params)}
+     * and {@link Response#transferTo(Path)}.
+     *
+     * @param url    URL to fetch.
+     * @param params Parameters to include in the request.
+     * @param path   The file to write the body to. Will be replaced if it already exists.
+     * @return The number of bytes written.
+     * @see #fetch(String, Params)
+     */
+    public long download(String url, Params params, Path path) {
+        try (Response response = stream(url, params)) {
+            return response.transferTo(path);
+        }
+    }
+
+    /**
+     * Downloads a file as several byte ranges fetched in parallel on this client's executor,
+     * each written straight into place in the file, which is preallocated to the full length.
+     * The server is first probed with a {@code HEAD} request, and the body is downloaded as a single stream
+     * like {@link #download(String, Params, Path)} if it doesn't report a length and support for byte ranges.
+     * <p>
+     * When {@link DownloadOptions#resume(boolean) resuming} is enabled, progress is recorded in a file named after the
+     * download with {@code .download} appended, which is deleted once the download completes.
+     * If the download fails, downloading the same URL to the same file again only fetches the remaining ranges.
+     *
+     * @param url     URL to fetch.
+     * @param params  Parameters to include in the requests.
+     * @param path    The file to write the body to. Will be replaced if it already exists, unless the download is resumed.
+     * @param options Options for how the file is split and whether the download can be resumed.
+     * @return The length of the file, including any ranges downloaded by an earlier attempt.
+     * @throws FetchException If the server responds with an unsuccessful status, doesn't return a requested range,
+     *                        or a range ends early.
+     * @see #download(String, Params, Path)
+     */
+    public long download(String url, Params params, Path path, DownloadOptions options) {
+        return new SegmentedDownload(this, url, params, path, options).execute();
+    }
+
+    /**
+     * Performs a fetch operation asynchronously with default parameters on this client's executor.
+     *
+     * @param url URL to fetch.
+     * @return A future completed with the {@link Response}, or exceptionally with any exception {@link #fetch(String, Params)} may throw.
+     */
+    public CompletableFuture<Response> fetchAsync(String url) {
+        return fetchAsync(url, new Params());
+    }
+
+    /**
+     * Performs a fetch operation asynchronously on this client's executor.
+     *
+     * @param url    URL to fetch.
+     * @param params Parameters to include in the request.
+     * @return A future completed with the {@link Response}, or exceptionally with any exception {@link #fetch(String, Params)} may throw.
+     */
+    public CompletableFuture<Response> fetchAsync(String url, Params params) {
+        return fetchAsync(url, params, executor);
+    }
+
+    /**
+     * Performs a fetch operation asynchronously.
+     * <p>
+     * If the client was built with {@link Builder#eventLoops(int) event loops}, requests are sent without blocking a thread
+     * while waiting for the response, and the executor is only used to create the {@link Response} once it has arrived.
+     * Requests which must wait for something else, like retries, the rate limiter, the cache, coalescing
+     * or a streamed body, are performed on the executor.
+     *
+     * @param url      URL to fetch.
+     * @param params   Parameters to include in the request.
+     * @param executor The executor to perform the fetch operation on.
+     * @return A future completed with the {@link Response}, or exceptionally with any exception {@link #fetch(String, Params)} may throw.
+     */
+    public CompletableFuture<Response> fetchAsync(String url, Params params, Executor executor) {
+        if (transport instanceof AsyncTransport) {
+            Params request = bindDefaults(params);
+            URL target;
+            try {
+                target = toURL(URLUtils.addQueryParams(url, request));
+            } catch (RuntimeException e) {
+                CompletableFuture<Response> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                return failed;
+            }
+            if (canFetchAsync(target, request))
+                return fetchOnceAsync(target, request, executor);
+        }
+        return CompletableFuture.supplyAsync(() -> fetch(url, params), executor);
+    }
+
+    /**
+     * Performs a batch of fetch operations with default options, waiting for all of them to complete.
+     *
+     * @param requests The requests to perform.
+     * @return The results, in the same order as the requests.
+     * @see #fetchAll(Collection, BatchOptions)
+     */
+    public List<BatchResult> fetchAll(Collection<Request> requests) {
+        return fetchAll(requests, new BatchOptions());
+    }
+
+    /**
+     * Performs a batch of fetch operations in parallel on this client's executor, waiting for all of them to complete.
+     * A request failing doesn't affect the others, as its exception is captured in its result instead.
+     * Streamed responses must each be closed once their body has been consumed.
+     *
+     * @param requests The requests to perform.
+     * @param options  Options limiting how many requests are in flight at once.
+     * @return The results, in the same order as the requests.
+     * @see #fetchAllAsCompleted(Collection, BatchOptions)
+     */
+    public List<BatchResult> fetchAll(Collection<Request> requests, BatchOptions options) {
+        List<Request> list = new ArrayList<>(requests);
+        if (list.isEmpty())
+            return Collections.emptyList();
+        BatchResult[] results = new BatchResult[list.size()];
+        AtomicInteger remaining = new AtomicInteger(list.size());
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        new Batch(this, options, result -> {
+            results[result.getIndex()] = result;
+            if (remaining.decrementAndGet() == 0) {
+                done.complete(null);
+            }
+        }).start(list);
+        done.join();
+        return Collections.unmodifiableList(Arrays.asList(results));
+    }
+
+    /**
+     * Performs a batch of fetch operations in parallel on this client's executor, returning their results as they complete.
+     * The requests are started straight away, and the returned stream blocks until the next result is available.
+     * A request failing doesn't affect the others, as its exception is captured in its result instead.
+     * Streamed responses must each be closed once their body has been consumed.
+     *
+     * @param requests The requests to perform.
+     * @param options  Options limiting how many requests are in flight at once.
+     * @return A sequential stream of the results, in the order they completed.
+     * @see #fetchAll(Collection, BatchOptions)
+     */
+    public Stream<BatchResult> fetchAllAsCompleted(Collection<Request> requests, BatchOptions options) {
+        List<Request> list = new ArrayList<>(requests);
+        BlockingQueue<BatchResult> results = new LinkedBlockingQueue<>();
+        new Batch(this, options, results::add).start(list);
+        Iterator<BatchResult> iterator = new Iterator<BatchResult>() {
+            private int taken;
+
+            @Override
+            public boolean hasNext() {
+                return taken < list.size();
+            }
+
+            @Override
+            public BatchResult next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                try {
+                    BatchResult result = results.take();
+                    taken++;
+                    return result;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new FetchException(e);
+                }
+            }
+        };
+        int characteristics = Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.SIZED | Spliterator.SUBSIZED;
+        return StreamSupport.stream(Spliterators.spliterator(iterator, list.size(), characteristics), false);
+    }
+
+    /**
+     * Closes all idle connections, the transport, and stops the connection pool's eviction timer.
+     * The executor isn't shut down, as it may be shared with other clients.
+     */
+    @Override
+    public void close() {
+        transport.close();
+        urlConnectionTransport.close();
+        connectionPool.close();
+    }
+
+    private Exchange execute(URL url, Params params) throws IOException {
+        Exchange exchange = send(url, params);
+        for (int redirects = 0; ; redirects++) {
+            URL target = redirectTarget(url, params, exchange, redirects);
+            if (target == null)
+                return exchange;
+            discard(exchange);
+            params = redirectParams(params, exchange.getStatus());
+            url = target;
+            exchange = send(url, params);
+        }
+    }
+
+    /**
+     * Sends a request through the {@link AsyncTransport}, following redirects.
+     * Redirects are followed from the executor, so the transport's threads aren't used to send the next request.
+     */
+    private CompletableFuture<Exchange> executeAsync(URL url, Params params, Executor executor, int redirects) {
+        return sendAsync(url, params, executor).thenCompose(exchange -> {
+            if (!params.isFollowRedirects() || !isRedirect(exchange.getStatus()))
+                return CompletableFuture.completedFuture(exchange);
+            return CompletableFuture.supplyAsync(() -> redirectTarget(url, params, exchange, redirects), executor).thenCompose(target -> {
+                if (target == null)
+                    return CompletableFuture.completedFuture(exchange);
+                discard(exchange);
+                return executeAsync(target, redirectParams(params, exchange.getStatus()), executor, redirects + 1);
+            });
+        });
+    }
+
+    private CompletableFuture<Exchange> sendAsync(URL url, Params params, Executor executor) {
+        // A redirect may lead somewhere only HttpURLConnection can reach, like through a proxy.
+        if (transportFor(url, params) == transport)
+            return ((AsyncTransport) transport).executeAsync(url, params);
+        return CompletableFuture.supplyAsync(() -> sendUnchecked(url, params), executor);
+    }
+
+    @SneakyThrows
+    private Exchange sendUnchecked(URL url, Params params) {
+        return send(url, params);
+    }
+
+    /**
+     * Checks if a request can be sent through the {@link AsyncTransport}, which is only worthwhile if nothing on the way blocks.
+     */
+    private boolean canFetchAsync(URL target, Params params) {
+        RetryPolicy policy = params.getRetryPolicy() != null ? params.getRetryPolicy() : retryPolicy;
+        return !params.isStreamBody()
+                && ((AsyncTransport) transport).canExecuteAsync(params)
+                && transportFor(target, params) == transport
+                && rateLimiter == null
+                && (cache == null || !params.isUseCaches())
+                && (singleFlight == null || !SingleFlight.canCoalesce(params))
+                && !policy.isEnabled();
+    }
+
+    /**
+     * Gets where a redirect leads.
+     *
+     * @return The URL to follow the redirect to, or {@code null} if the response isn't a redirect which should be followed.
+     * @throws FetchException If the server redirected too many times.
+     */
+    private static URL redirectTarget(URL url, Params params, Exchange exchange, int redirects) {
+        if (!params.isFollowRedirects() || !isRedirect(exchange.getStatus()))
+            return null;
+        String location = exchange.getHeader("Location");
+        if (location == null)
+            return null;
+        URL target;
+        try {
+            target = new URL(url, location);
+        } catch (MalformedURLException e) {
+            return null;
+        }
+        // Never downgrade from https to http, or redirect to other protocols.
+        if (!target.getProtocol().equalsIgnoreCase(url.getProtocol()) && !target.getProtocol().equalsIgnoreCase("https"))
+            return null;
+        if (redirects == MAX_REDIRECTS) {
+            exchange.disconnect();
+            throw new FetchException(new ProtocolException("Server redirected too many times (" + MAX_REDIRECTS + ")"));
+        }
+        return target;
+    }
+
+    /**
+     * Gets the parameters to follow a redirect with, which switch to a {@code GET} without a body where browsers would.
+     */
+    private static Params redirectParams(Params params, int status) {
+        Params.Method method = params.getMethod();
+        if ((status == 303 && method != Params.Method.HEAD) || (status <= 302 && method == Params.Method.POST))
+            return params.copy().method(Params.Method.GET).body((byte[]) null);
+        return params;
+    }
+
+    private Exchange send(URL url, Params params) throws IOException {
+        Transport transport = transportFor(url, params);
+        if (rateLimiter != null) {
+            transport = rateLimiter.limit(transport);
+        }
+        if (cache != null && params.isUseCaches())
+            return cache.execute(url, params, transport);
+        return transport.execute(url, params);
+    }
+
+    private Transport transportFor(URL url, Params params) {
+        if (params.isUseCaches() && ResponseCache.getDefault() != null)
+            return urlConnectionTransport;
+        if (CookieHandler.getDefault() != null)
+            return urlConnectionTransport;
+        ProxySelector proxySelector = ProxySelector.getDefault();
+        if (proxySelector != null) {
+            try {
+                for (Proxy proxy : proxySelector.select(url.toURI())) {
+                    if (proxy.type() != Proxy.Type.DIRECT)
+                        return urlConnectionTransport;
+                }
+            } catch (URISyntaxException | IllegalArgumentException ignored) {
+                // Let the transport fail on it.
+            }
+        }
+        return transport;
+    }
+
+    private static boolean hasHeader(Params params, String name) {
+        for (String key : params.mergedHeaders().keySet()) {
+            if (name.equalsIgnoreCase(key))
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean isRedirect(int status) {
+        return status == 301 || status == 302 || status == 303 || status == 307 || status == 308;
+    }
+
+    /**
+     * Reads the rest of a small response body so the connection can be reused, or closes it otherwise.
+     */
+    private static void discard(Exchange exchange) {
+        try (InputStream body = exchange.getBody()) {
+            if (body == null)
+                return;
+            byte[] buf = new byte[4096];
+            int total = 0;
+            int n;
+            while (total < 65536 && (n = body.read(buf)) != -1) {
+                total += n;
+            }
+        } catch (IOException ignored) {
+            exchange.disconnect();
+        }
+    }
+
+    /**
+     * Compiles a request template, so a request can be sent repeatedly without rebuilding its URL and parameters.
+     *
+     * @param url    URL to fetch, which may contain {@code {name}} placeholders for values bound when it's sent.
+     * @param params Parameters to include in the request. Later changes to them don't affect the template.
+     * @return The template.
+     * @throws InvalidURLException     If the URL provided is malformed.
+     * @throws InvalidCharsetException If an invalid Content-Type header charset was used for formatting query parameters.
+     * @see RequestTemplate
+     */
+    public RequestTemplate compile(String url, Params params) {
+        Params frozen = params.withDefaults(params.hasDefaults() ? params.getDefaults() : getDefaults());
+        if (frozen.isDecompress() && !acceptEncoding.isEmpty() && !hasHeader(frozen, "Accept-Encoding")) {
+            frozen.header("Accept-Encoding", acceptEncoding);
+        }
+        return new RequestTemplate(this, url, frozen.flatten());
+    }
+
+    /**
+     * Gets the defaults requests sent by this client fall back to, unless they were created with their own.
+     *
+     * @return The client's defaults, or the {@link Defaults#getGlobal() global defaults} if it wasn't given any.
+     */
+    public Defaults getDefaults() {
+        return defaults != null ? defaults : Defaults.getGlobal();
+    }
+
+    /**
+     * Makes requests without their own defaults fall back to the client's, without copying either's headers or queries.
+     */
+    private Params bindDefaults(Params params) {
+        if (defaults == null || params.hasDefaults())
+            return params;
+        return params.withDefaults(defaults);
+    }
+
+    static URL toURL(String url) {
+        URL target;
+        try {
+            target = new URL(url);
+        } catch (MalformedURLException e) {
+            throw new InvalidURLException(e);
+        }
+        String protocol = target.getProtocol();
+        if (!protocol.equalsIgnoreCase("http") && !protocol.equalsIgnoreCase("https"))
+            throw new InvalidURLException(new MalformedURLException("Unsupported protocol: " + protocol));
+        return target;
+    }
+
+    private static class DefaultHolder {
+        private static final FetchClient INSTANCE = builder().build();
+    }
+
+    /**
+     * The HTTP version a client prefers to use.
+     */
+    public enum Version {
+        /**
+         * Always use HTTP/1.1.
+         */
+        HTTP_1_1,
+        /**
+         * Use HTTP/2 for {@code https} hosts negotiating it with ALPN, and HTTP/1.1 otherwise.
+         */
+        HTTP_2,
+        /**
+         * Like {@link #HTTP_2}, but also assume plain {@code http} hosts support HTTP/2 (h2c with prior knowledge).
+         */
+        HTTP_2_PRIOR_KNOWLEDGE,
+    }
+
+    /**
+     * Builder used to configure a {@link FetchClient}.
+     */
+    public static class Builder {
+
+        private int maxConnectionsPerHost = 64;
+        private long idleTimeoutMillis = 5000;
+        private long keepAliveTtlMillis = 300000;
+        private Executor executor = Fetch.DEFAULT_EXECUTOR;
+        private Version version = Version.HTTP_1_1;
+        private Transport transport;
+        private HttpCache cache;
+        private BufferPool bufferPool;
+        private RateLimiter rateLimiter;
+        private boolean singleFlight;
+        private Resolver resolver = Resolver.SYSTEM;
+        private boolean happyEyeballs = true;
+        private SocketOptions socketOptions = SocketOptions.DEFAULT;
+        private int maxPipelineDepth = 1;
+        private int eventLoops;
+        private EventListener.Factory eventListenerFactory = (url, params) -> EventListener.NONE;
+        private RetryPolicy retryPolicy = RetryPolicy.NONE;
+        private Defaults defaults;
+        private final Map<String, ContentDecoder> contentDecoders = new LinkedHashMap<>();
+
+        private Builder() {
+            contentDecoders.put("gzip", ContentDecoder.GZIP);
+            contentDecoders.put("deflate", ContentDecoder.DEFLATE);
+        }
+
+        /**
+         * Sets the HTTP version the client prefers to use. Defaults to {@link Version#HTTP_1_1}.
+         *
+         * @param version The HTTP version.
+         * @return The client builder.
+         */
+        public Builder version(Version version) {
+            this.version = version;
+            return this;
+        }
+
+        /**
+         * Sets a custom transport to send requests with, replacing the one selected by {@link #version(Version)}.
+         * The transport will be closed along with the client.
+         *
+         * @param transport The transport.
+         * @return The client builder.
+         */
+        public Builder transport(Transport transport) {
+            this.transport = transport;
+            return this;
+        }
+
+        /**
+         * Sets the cache responses are stored in and served from, for requests with {@link Params#useCaches(boolean)} enabled.
+         * Caches may be shared between clients. Defaults to none.
+         *
+         * @param cache The cache, or {@code null} to disable caching.
+         * @return The client builder.
+         */
+        public Builder cache(HttpCache cache) {
+            this.cache = cache;
+            return this;
+        }
+
+        /**
+         * Sets the pool buffered response bodies are read into. Responses then return their buffer to the pool
+         * when closed, after which their body can no longer be read. Defaults to none,
+         * allocating a buffer for each response which is left to be garbage collected.
+         *
+         * @param bufferPool The buffer pool, or {@code null} to allocate buffers per response.
+         * @return The client builder.
+         */
+        public Builder bufferPool(BufferPool bufferPool) {
+            this.bufferPool = bufferPool;
+            return this;
+        }
+
+        /**
+         * Sets the limiter the rate and concurrency of requests sent by the client are limited by.
+         * Requests which can't be sent within the limiter's maximum wait fail with a
+         * {@link net.insprill.fetch4j.exception.RateLimitException}. Defaults to none.
+         *
+         * @param rateLimiter The rate limiter, or {@code null} to not limit requests.
+         * @return The client builder.
+         */
+        public Builder rateLimiter(RateLimiter rateLimiter) {
+            this.rateLimiter = rateLimiter;
+            return this;
+        }
+
+        /**
+         * Sets whether identical {@code GET} and {@code HEAD} requests sent while one is already in flight share its response,
+         * instead of each being sent. Coalesced requests get a Response of their own with the same status, headers and body,
+         * or the same exception if the request failed. Requests are identical if they have the same URL, headers
+         * and redirect, cache and decompression settings, with the timeouts and retry policy of the first applying to all.
+         * Requests which stream their body, have a body, or have their own {@link Params#eventListener(EventListener) event listener}
+         * are never coalesced, and coalesced responses aren't read into the {@link #bufferPool(BufferPool) buffer pool}.
+         * Defaults to false.
+         *
+         * @param singleFlight Whether to coalesce identical concurrent requests.
+         * @return The client builder.
+         */
+        public Builder singleFlight(boolean singleFlight) {
+            this.singleFlight = singleFlight;
+            return this;
+        }
+
+        /**
+         * Sets the resolver host names are looked up with when opening connections.
+         * Defaults to {@link Resolver#SYSTEM}, which relies on the JVM's DNS cache.
+         *
+         * @param resolver The resolver, like a {@link CachingResolver}.
+         * @return The client builder.
+         */
+        public Builder resolver(@NonNull Resolver resolver) {
+            this.resolver = resolver;
+            return this;
+        }
+
+        /**
+         * Sets whether connections to hosts with several addresses are raced as described in RFC 8305 (happy eyeballs),
+         * so an unreachable address or address family only delays connecting by a few hundred milliseconds.
+         * If disabled, addresses are tried one after another, each for up to the connection timeout. Defaults to true.
+         *
+         * @param happyEyeballs Whether to race connections.
+         * @return The client builder.
+         */
+        public Builder happyEyeballs(boolean happyEyeballs) {
+            this.happyEyeballs = happyEyeballs;
+            return this;
+        }
+
+        /**
+         * Sets the options sockets opened by the client are configured with, like {@code TCP_NODELAY} and buffer sizes.
+         * Defaults to {@link SocketOptions#DEFAULT}.
+         *
+         * @param socketOptions The socket options.
+         * @return The client builder.
+         */
+        public Builder socketOptions(@NonNull SocketOptions socketOptions) {
+            this.socketOptions = socketOptions;
+            return this;
+        }
+
+        /**
+         * Enables HTTP/1.1 pipelining. Once a host has {@link #maxConnectionsPerHost(int) the maximum number of connections}
+         * open, {@code GET} and {@code HEAD} requests without a body are sent on a connection already in use,
+         * instead of waiting for one to be released. Their responses are read in order, so a slow response delays
+         * the ones behind it, and if the server closes the connection the requests behind it are sent again.
+         * Streamed requests are never pipelined. Defaults to 1, disabling pipelining.
+         *
+         * @param maxDepth The maximum number of requests in flight on a single connection.
+         * @return The client builder.
+         * @throws IllegalArgumentException If {@code maxDepth} is less than 1.
+         */
+        public Builder pipelining(int maxDepth) {
+            if (maxDepth < 1)
+                throw new IllegalArgumentException("maxDepth must be at least 1");
+            this.maxPipelineDepth = maxDepth;
+            return this;
+        }
+
+        /**
+         * Sends HTTP/1.1 requests over non-blocking connections, multiplexed by this many event loop threads,
+         * instead of blocking a thread per request. {@link FetchClient#fetchAsync(String, Params)} then doesn't occupy
+         * a thread while waiting for the response, so the number of requests in flight, like long polls, is limited by
+         * {@link #maxConnectionsPerHost(int)} and file descriptors rather than threads.
+         * Responses are received in full before being returned, and streamed requests and responses use the
+         * connection pool instead. {@link EventListener}s are notified on the event loop threads, so must not block.
+         * Defaults to 0, disabling event loops.
+         *
+         * @param threads The number of event loop threads, usually one or two.
+         * @return The client builder.
+         * @throws IllegalArgumentException If {@code threads} is negative.
+         */
+        public Builder eventLoops(int threads) {
+            if (threads < 0)
+                throw new IllegalArgumentException("threads must not be negative");
+            this.eventLoops = threads;
+            return this;
+        }
+
+        /**
+         * Sets a listener notified of the events of every request sent by the client,
+         * unless one is set with {@link Params#eventListener(EventListener)}.
+         * The listener is shared between requests, so must be thread-safe. Defaults to {@link EventListener#NONE}.
+         *
+         * @param eventListener The listener.
+         * @return The client builder.
+         * @see #eventListenerFactory(EventListener.Factory)
+         */
+        public Builder eventListener(@NonNull EventListener eventListener) {
+            this.eventListenerFactory = (url, params) -> eventListener;
+            return this;
+        }
+
+        /**
+         * Sets a factory creating a listener for each request sent by the client,
+         * unless one is set with {@link Params#eventListener(EventListener)}.
+         *
+         * @param eventListenerFactory The listener factory.
+         * @return The client builder.
+         * @see #eventListener(EventListener)
+         */
+        public Builder eventListenerFactory(@NonNull EventListener.Factory eventListenerFactory) {
+            this.eventListenerFactory = eventListenerFactory;
+            return this;
+        }
+
+        /**
+         * Sets how requests sent by the client are retried if they fail,
+         * unless one is set with {@link Params#retryPolicy(RetryPolicy)}. Defaults to {@link RetryPolicy#NONE}.
+         *
+         * @param retryPolicy The retry policy.
+         * @return The client builder.
+         */
+        public Builder retryPolicy(@NonNull RetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * Sets the defaults requests sent by the client fall back to, unless they were created with
+         * {@link Params#params(Defaults)}. Defaults to the {@link Defaults#getGlobal() global defaults} at the time each request is sent.
+         *
+         * @param defaults The defaults, or {@code null} to use the global defaults.
+         * @return The client builder.
+         */
+        public Builder defaults(Defaults defaults) {
+            this.defaults = defaults;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of connections open to a single host at once.
+         * Requests exceeding this wait for a connection to be released, for up to the connection timeout.
+         * Defaults to 64.
+         *
+         * @param maxConnectionsPerHost Maximum connections per host.
+         * @return The client builder.
+         */
+        public Builder maxConnectionsPerHost(int maxConnectionsPerHost) {
+            this.maxConnectionsPerHost = maxConnectionsPerHost;
+            return this;
+        }
+
+        /**
+         * Sets how long a connection may be idle in the pool before being closed.
+         * Defaults to 5 seconds.
+         *
+         * @param timeoutMillis Timeout in milliseconds.
+         * @return The client builder.
+         */
+        public Builder idleTimeout(long timeoutMillis) {
+            this.idleTimeoutMillis = timeoutMillis;
+            return this;
+        }
+
+        /**
+         * Sets how long a connection may be reused for after being opened.
+         * A shorter {@code Keep-Alive} timeout sent by the server takes precedence.
+         * Defaults to 5 minutes.
+         *
+         * @param ttlMillis TTL in milliseconds.
+         * @return The client builder.
+         */
+        public Builder keepAliveTtl(long ttlMillis) {
+            this.keepAliveTtlMillis = ttlMillis;
+            return this;
+        }
+
+        /**
+         * Sets the executor asynchronous fetch operations are performed on.
+         * Defaults to {@link Fetch#DEFAULT_EXECUTOR}.
+         *
+         * @param executor The executor.
+         * @return The client builder.
+         */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Registers a decoder for a {@code Content-Encoding}, replacing any existing one for it.
+         * Registered codings are advertised in the {@code Accept-Encoding} header of requests with
+         * {@link Params#decompress(boolean)} enabled, in the order they were registered.
+         * {@code gzip} and {@code deflate} are registered by default.
+         *
+         * @param coding  The content coding, like {@code br}.
+         * @param decoder The decoder, or {@code null} to stop accepting the coding.
+         * @return The client builder.
+         */
+        public Builder contentDecoder(String coding, ContentDecoder decoder) {
+            String name = coding.trim().toLowerCase(Locale.ROOT);
+            if (decoder == null) {
+                contentDecoders.remove(name);
+            } else {
+                contentDecoders.put(name, decoder);
+            }
+            return this;
+        }
+
+        /**
+         * @return A new client with this builder's configuration.
+         * @throws IllegalStateException If event loops were enabled along with HTTP/2 or a custom transport.
+         */
+        public FetchClient build() {
+            if (eventLoops > 0 && (version != Version.HTTP_1_1 || transport != null))
+                throw new IllegalStateException("Event loops can only be used with HTTP/1.1 and the client's own transport");
+            return new FetchClient(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,163 @@
+package net.insprill.fetch4j;
+
+import net.insprill.fetch4j.transport.Exchange;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An exchange notifying an {@link EventListener} once its body has been read or closed, ending the call.
+ * Bytes are counted as they come from the transport, before any decoding.
+ */
+final class ObservingExchange implements Exchange {
+
+    private final Exchange exchange;
+    private final EventListener listener;
+    private final long callStart;
+    private final long headersEnd;
+    private CountingStream body;
+    private long bytes;
+    private boolean finished;
+
+    ObservingExchange(Exchange exchange, EventListener listener, long callStart, long headersEnd) {
+        this.exchange = exchange;
+        this.listener = listener;
+        this.callStart = callStart;
+        this.headersEnd = headersEnd;
+    }
+
+    @Override
+    public int getStatus() {
+        return exchange.getStatus();
+    }
+
+    @Override
+    public String getStatusText() {
+        return exchange.getStatusText();
+    }
+
+    @Override
+    public String getHeader(String name) {
+        return exchange.getHeader(name);
+    }
+
+    @Override
+    public Map<String, List<String>> getHeaders() {
+        return exchange.getHeaders();
+    }
+
+    @Override
+    public InputStream getBody() throws IOException {
+        if (body == null) {
+            InputStream raw;
+            try {
+                raw = exchange.getBody();
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+                throw e;
+            }
+            if (raw == null) {
+                finish();
+                return null;
+            }
+            body = new CountingStream(raw);
+        }
+        return body;
+    }
+
+    @Override
+    public void disconnect() {
+        exchange.disconnect();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (body != null) {
+            body.close();
+        } else {
+            exchange.close();
+            finish();
+        }
+    }
+
+    private void finish() {
+        if (finished)
+            return;
+        finished = true;
+        long now = System.nanoTime();
+        listener.responseBodyEnd(bytes, now - headersEnd);
+        listener.callEnd(now - callStart);
+    }
+
+    private void fail(Throwable error) {
+        if (finished)
+            return;
+        finished = true;
+        listener.callFailed(error, System.nanoTime() - callStart);
+    }
+
+    private final class CountingStream extends FilterInputStream {
+
+        CountingStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                int b = in.read();
+                if (b == -1) {
+                    finish();
+                } else {
+                    bytes++;
+                }
+                return b;
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+                throw e;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            try {
+                int n = in.read(b, off, len);
+                if (n == -1) {
+                    finish();
+                } else {
+                    bytes += n;
+                }
+                return n;
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+                throw e;
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            bytes += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                in.close();
+            } finally {
+                finish();
+            }
+        }
+
+    }
+
+}
@@ -1,15 +1,24 @@
 package net.insprill.fetch4j;
 
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NonNull;
-import lombok.Setter;
 import net.insprill.fetch4j.exception.InvalidMethodException;
 
+import java.io.InputStream;
 import java.nio.charset.Charset;
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Builder used to set parameters for fetch operations.
@@ -19,21 +28,6 @@
 @Getter
 public class Params {
 
-    @Setter
-    private static boolean defaultFollowRedirects = true;
-    @Setter
-    private static boolean defaultUseCaches = true;
-    @Setter
-    private static int defaultConnectionTimeout = 60000;
-    @Setter
-    private static int defaultReadTimeout = 60000;
-    @Setter
-    @NonNull
-    private static Map<String, String> defaultHeaders = new HashMap<>();
-    @Setter
-    @NonNull
-    private static Map<String, Object> defaultQueries = new HashMap<>();
-
     /**
      * @return Convenience method for constructing a new parameter builder.
      */
@@ -41,14 +35,134 @@ public static Params params() {
         return new Params();
     }
 
+    /**
+     * @param defaults The defaults to fall back to, instead of the client's.
+     * @return Convenience method for constructing a new parameter builder.
+     */
+    public static Params params(Defaults defaults) {
+        return new Params(defaults);
+    }
+
+    /**
+     * Sets whether requests follow redirects by default.
+     *
+     * @param followRedirects Follow redirects.
+     * @deprecated in favor of {@link Defaults}, set per client with {@link FetchClient.Builder#defaults(Defaults)}. May be removed in the future.
+     */
+    @Deprecated
+    public static void setDefaultFollowRedirects(boolean followRedirects) {
+        Defaults.updateGlobal(defaults -> defaults.followRedirects(followRedirects));
+    }
+
+    /**
+     * Sets whether requests use caches by default.
+     *
+     * @param useCaches Whether to use caches.
+     * @deprecated in favor of {@link Defaults}, set per client with {@link FetchClient.Builder#defaults(Defaults)}. May be removed in the future.
+     */
+    @Deprecated
+    public static void setDefaultUseCaches(boolean useCaches) {
+        Defaults.updateGlobal(defaults -> defaults.useCaches(useCaches));
+    }
+
+    /**
+     * Sets whether response bodies are decompressed by default.
+     *
+     * @param decompress Whether to decompress response bodies.
+     * @deprecated in favor of {@link Defaults}, set per client with {@link FetchClient.Builder#defaults(Defaults)}. May be removed in the future.
+     */
+    @Deprecated
+    public static void setDefaultDecompress(boolean decompress) {
+        Defaults.updateGlobal(defaults -> defaults.decompress(decompress));
+    }
+
+    /**
+     * Sets the default connection timeout.
+     *
+     * @param timeoutMillis Timeout in milliseconds.
+     * @deprecated in favor of {@link Defaults}, set per client with {@link FetchClient.Builder#defaults(Defaults)}. May be removed in the future.
+     */
+    @Deprecated
+    public static void setDefaultConnectionTimeout(int timeoutMillis) {
+        Defaults.updateGlobal(defaults -> defaults.connectionTimeout(timeoutMillis));
+    }
+
+    /**
+     * Sets the default read timeout.
+     *
+     * @param timeoutMillis Timeout in milliseconds.
+     * @deprecated in favor of {@link Defaults}, set per client with {@link FetchClient.Builder#defaults(Defaults)}. May be removed in the future.
+     */
+    @Deprecated
+    public static void setDefaultReadTimeout(int timeoutMillis) {
+        Defaults.updateGlobal(defaults -> defaults.readTimeout(timeoutMillis));
+    }
+
+    /**
+     * Replaces the headers sent with every request by default.
+     *
+     * @param headers The headers.
+     * @deprecated in favor of {@link Defaults}, set per client with {@link FetchClient.Builder#defaults(Defaults)}. May be removed in the future.
+     */
+    @Deprecated
+    public static void setDefaultHeaders(@NonNull Map<String, String> headers) {
+        Defaults.updateGlobal(defaults -> defaults.headers(headers));
+    }
+
+    /**
+     * Replaces the query parameters added to every request by default.
+     *
+     * @param queries The query parameters.
+     * @deprecated in favor of {@link Defaults}, set per client with {@link FetchClient.Builder#defaults(Defaults)}. May be removed in the future.
+     */
+    @Deprecated
+    public static void setDefaultQueries(@NonNull Map<String, Object> queries) {
+        Defaults.updateGlobal(defaults -> defaults.queries(queries));
+    }
+
+    /**
+     * The defaults to fall back to, or {@code null} to use the client's.
+     */
+    @Getter(AccessLevel.NONE)
+    private Defaults defaults;
     private Method method = Method.GET;
-    private final Map<String, String> headers = new HashMap<>(defaultHeaders);
-    private final Map<String, Object> queries = new HashMap<>(defaultQueries);
-    private boolean followRedirects = defaultFollowRedirects;
-    private boolean useCaches = defaultUseCaches;
-    private int connectionTimeout = defaultConnectionTimeout;
-    private int readTimeout = defaultReadTimeout;
+    // Only what's been set on this request, layered over the defaults' when read.
+    @Getter(AccessLevel.NONE)
+    private final Layered<String> headers = new Layered<>(Defaults::getHeaders, new HashMap<>(4));
+    @Getter(AccessLevel.NONE)
+    private final Layered<Object> queries = new Layered<>(Defaults::getQueries, new LinkedHashMap<>(4));
+    @Getter(AccessLevel.NONE)
+    private Boolean followRedirects;
+    @Getter(AccessLevel.NONE)
+    private Boolean useCaches;
+    @Getter(AccessLevel.NONE)
+    private Boolean decompress;
+    @Getter(AccessLevel.NONE)
+    private Integer connectionTimeout;
+    @Getter(AccessLevel.NONE)
+    private Integer readTimeout;
     private byte[] body;
+    private Supplier<InputStream> bodySupplier;
+    private long bodyLength = -1;
+    private boolean compressBody;
+    private boolean streamBody;
+    private EventListener eventListener = EventListener.NONE;
+    private RetryPolicy retryPolicy;
+
+    /**
+     * Constructs a new parameter builder, falling back to the defaults of the client sending the request.
+     */
+    public Params() {
+    }
+
+    /**
+     * Constructs a new parameter builder.
+     *
+     * @param defaults The defaults to fall back to, instead of the client's.
+     */
+    public Params(@NonNull Defaults defaults) {
+        this.defaults = defaults;
+    }
 
     /**
      * Sets the request method. The default method is GET.
@@ -96,7 +210,7 @@ public Params method(String method) {
      * @return The parameter builder.
      */
     public Params header(String key, String value) {
-        headers.put(key, value);
+        headers.set(key, value);
         return this;
     }
 
@@ -108,7 +222,7 @@ public Params header(String key, String value) {
      * @return The parameter builder.
      */
     public Params query(String key, Object value) {
-        queries.put(key, value);
+        queries.set(key, value);
         return this;
     }
 
@@ -161,16 +275,74 @@ public Params followRedirects(boolean followRedirects) {
      * Sets whether to use caches for this request.
      * Sometimes it's important to be able to ignore the caches
      * (e.g., the "reload" button in a browser).
+     * Applies to the client's {@link net.insprill.fetch4j.cache.HttpCache}, and any installed {@link java.net.ResponseCache}.
      * Defaults to true.
      *
      * @param useCaches Whether to use caches.
      * @return The parameter builder.
+     * @see FetchClient.Builder#cache(net.insprill.fetch4j.cache.HttpCache)
      */
     public Params useCaches(boolean useCaches) {
         this.useCaches = useCaches;
         return this;
     }
 
+    /**
+     * Sets whether compressed response bodies should be transparently decompressed.
+     * When enabled, an {@code Accept-Encoding} header listing the client's supported codings is sent
+     * unless one was set, and bodies are decoded as they're read, with the {@code Content-Encoding}
+     * and {@code Content-Length} headers removed from the {@link Response}.
+     * When disabled, the body is returned exactly as it was sent over the wire.
+     * Defaults to true.
+     *
+     * @param decompress Whether to decompress response bodies.
+     * @return The parameter builder.
+     * @see ContentDecoder
+     */
+    public Params decompress(boolean decompress) {
+        this.decompress = decompress;
+        return this;
+    }
+
+    /**
+     * Sets whether the response body should be streamed instead of being buffered into memory.
+     * When enabled, the body must be read through {@link Response#getBodyStream()} or {@link Response#getBodyChannel()},
+     * and the {@link Response} closed once done with it.
+     * Defaults to false.
+     *
+     * @param streamBody Whether to stream the response body.
+     * @return The parameter builder.
+     * @see Fetch#stream(String, Params)
+     */
+    public Params streamBody(boolean streamBody) {
+        this.streamBody = streamBody;
+        return this;
+    }
+
+    /**
+     * Sets a listener for the events of this request, used instead of the client's.
+     *
+     * @param eventListener The listener.
+     * @return The parameter builder.
+     * @see FetchClient.Builder#eventListener(EventListener)
+     */
+    public Params eventListener(@NonNull EventListener eventListener) {
+        this.eventListener = eventListener;
+        return this;
+    }
+
+    /**
+     * Sets how this request is retried if it fails, used instead of the client's.
+     *
+     * @param retryPolicy The retry policy, or {@code null} to use the client's.
+     * @return The parameter builder.
+     * @see FetchClient.Builder#retryPolicy(RetryPolicy)
+     */
+    public Params retryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+        return this;
+    }
+
     /**
      * Sets the connection timeout.
      *
@@ -225,8 +397,7 @@ public Params body(String body) {
      * @see #contentType(String)
      */
     public Params body(String body, Charset charset) {
-        this.body = body.getBytes(charset);
-        return this;
+        return body(body.getBytes(charset));
     }
 
     /**
@@ -238,9 +409,336 @@ public Params body(String body, Charset charset) {
      */
     public Params body(byte[] body) {
         this.body = body;
+        this.bodySupplier = null;
+        this.bodyLength = -1;
+        return this;
+    }
+
+    /**
+     * Set's the request body to a stream, which is sent without being buffered into memory and closed once sent.
+     * As the stream can only be read once, the request can't be resent if it needs to be retried or redirected
+     * with a 307 or 308 status. Use {@link #body(Supplier, long)} if it needs to be.
+     *
+     * @param body   Request body.
+     * @param length The number of bytes in the body, or -1 if unknown, in which case it's sent in chunks.
+     * @return The parameter builder.
+     * @see #contentType(String)
+     */
+    public Params body(InputStream body, long length) {
+        AtomicBoolean opened = new AtomicBoolean();
+        return body(() -> {
+            if (opened.getAndSet(true))
+                throw new IllegalStateException("The request body stream has already been sent, and can't be sent again");
+            return body;
+        }, length);
+    }
+
+    /**
+     * Set's the request body to streams opened from a supplier, which are sent without being buffered into memory
+     * and closed once sent. The supplier is called each time the request is sent, including retries and redirects.
+     *
+     * @param body   Supplier opening a new stream of the request body.
+     * @param length The number of bytes in the body, or -1 if unknown, in which case it's sent in chunks.
+     * @return The parameter builder.
+     * @see #contentType(String)
+     */
+    public Params body(Supplier<InputStream> body, long length) {
+        this.body = null;
+        this.bodySupplier = body;
+        this.bodyLength = length;
         return this;
     }
 
+    /**
+     * Sets whether the request body should be compressed with gzip as it's sent,
+     * setting the {@code Content-Encoding} header accordingly.
+     * The server must support gzip encoded requests.
+     * As the compressed length isn't known ahead of time, the body is sent in chunks.
+     * Defaults to false.
+     *
+     * @param compressBody Whether to compress the request body.
+     * @return The parameter builder.
+     */
+    public Params compressBody(boolean compressBody) {
+        this.compressBody = compressBody;
+        return this;
+    }
+
+    /**
+     * Gets the defaults these parameters fall back to.
+     *
+     * @return The defaults given when constructing them, or the {@link Defaults#getGlobal() global defaults} if none were.
+     */
+    public Defaults getDefaults() {
+        return defaults != null ? defaults : Defaults.getGlobal();
+    }
+
+    /**
+     * @return True if defaults were given when constructing these parameters, false if they fall back to the client's.
+     */
+    boolean hasDefaults() {
+        return defaults != null;
+    }
+
+    /**
+     * Gets the request headers, including the default headers this request didn't override.
+     * Changing the Map with {@link Map#put}, {@link Map#putAll}, {@link Map#remove} or {@link Map#clear} changes
+     * this request's headers, after which it no longer falls back to the default headers.
+     * Its key, value and entry views can't be changed.
+     *
+     * @return A Map of the request headers.
+     */
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Gets the query parameters, including the default query parameters this request didn't override.
+     * Changing the Map with {@link Map#put}, {@link Map#putAll}, {@link Map#remove} or {@link Map#clear} changes
+     * this request's query parameters, after which it no longer falls back to the default query parameters.
+     * Its key, value and entry views can't be changed.
+     *
+     * @return A Map of the query parameters.
+     */
+    public Map<String, Object> getQueries() {
+        return queries;
+    }
+
+    /**
+     * @return An unmodifiable snapshot of the request headers, layered over the defaults.
+     */
+    Map<String, String> mergedHeaders() {
+        return headers.merged();
+    }
+
+    /**
+     * @return Whether the connection should follow redirects.
+     */
+    public boolean isFollowRedirects() {
+        return followRedirects != null ? followRedirects : getDefaults().isFollowRedirects();
+    }
+
+    /**
+     * @return Whether to use caches for this request.
+     */
+    public boolean isUseCaches() {
+        return useCaches != null ? useCaches : getDefaults().isUseCaches();
+    }
+
+    /**
+     * @return Whether compressed response bodies should be transparently decompressed.
+     */
+    public boolean isDecompress() {
+        return decompress != null ? decompress : getDefaults().isDecompress();
+    }
+
+    /**
+     * @return The connection timeout in milliseconds.
+     */
+    public int getConnectionTimeout() {
+        return connectionTimeout != null ? connectionTimeout : getDefaults().getConnectionTimeout();
+    }
+
+    /**
+     * @return The read timeout in milliseconds.
+     */
+    public int getReadTimeout() {
+        return readTimeout != null ? readTimeout : getDefaults().getReadTimeout();
+    }
+
+    private static <V> Map<String, V> merge(Map<String, V> defaults, Map<String, V> overrides) {
+        if (overrides.isEmpty())
+            return defaults;
+        if (defaults.isEmpty())
+            return Collections.unmodifiableMap(overrides);
+        Map<String, V> merged = new LinkedHashMap<>(defaults);
+        merged.putAll(overrides);
+        return Collections.unmodifiableMap(merged);
+    }
+
+    /**
+     * A request's own headers or query parameters, read as a Map layered over the defaults.
+     * Writing to the Map detaches it from the defaults by copying them in, like parameters created before
+     * {@link Defaults} did, so a value can be removed or replaced whether it came from the defaults or not.
+     */
+    private final class Layered<V> extends AbstractMap<String, V> {
+        private final Function<Defaults, Map<String, V>> defaultValues;
+        private final Map<String, V> own;
+        private final Map<String, V> ownView;
+        private boolean detached;
+        private Merged<V> merged;
+
+        Layered(Function<Defaults, Map<String, V>> defaultValues, Map<String, V> own) {
+            this.defaultValues = defaultValues;
+            this.own = own;
+            this.ownView = Collections.unmodifiableMap(own);
+        }
+
+        Map<String, V> merged() {
+            if (detached)
+                return ownView;
+            Defaults defaults = getDefaults();
+            Merged<V> merged = this.merged;
+            if (merged == null || merged.defaults != defaults) {
+                this.merged = merged = new Merged<>(defaults, Params.merge(defaultValues.apply(defaults), own));
+            }
+            return merged.map;
+        }
+
+        void set(String key, V value) {
+            own.put(key, value);
+            merged = null;
+        }
+
+        void copyFrom(Layered<V> other) {
+            own.putAll(other.own);
+            detached = other.detached;
+            merged = null;
+        }
+
+        void reset() {
+            own.clear();
+            detached = false;
+            merged = null;
+        }
+
+        private void detach() {
+            if (detached)
+                return;
+            Map<String, V> values = new LinkedHashMap<>(merged());
+            own.clear();
+            own.putAll(values);
+            detached = true;
+            merged = null;
+        }
+
+        @Override
+        public V get(Object key) {
+            return merged().get(key);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return merged().containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return merged().size();
+        }
+
+        @Override
+        public Set<String> keySet() {
+            return merged().keySet();
+        }
+
+        @Override
+        public Collection<V> values() {
+            return merged().values();
+        }
+
+        @Override
+        public Set<Entry<String, V>> entrySet() {
+            return merged().entrySet();
+        }
+
+        @Override
+        public V put(String key, V value) {
+            detach();
+            return own.put(key, value);
+        }
+
+        @Override
+        public V remove(Object key) {
+            detach();
+            return own.remove(key);
+        }
+
+        @Override
+        public void clear() {
+            detach();
+            own.clear();
+        }
+    }
+
+    /**
+     * A request's values layered over the defaults they were merged with, kept until either changes.
+     * Immutable, so it can be shared by threads sending the same parameters.
+     */
+    private static final class Merged<V> {
+        private final Defaults defaults;
+        private final Map<String, V> map;
+
+        Merged(Defaults defaults, Map<String, V> map) {
+            this.defaults = defaults;
+            this.map = map;
+        }
+    }
+
+    /**
+     * Creates a copy of these parameters, so they can be changed for a follow-up request
+     * without affecting the original. The defaults are shared rather than copied.
+     *
+     * @return A copy of these parameters.
+     */
+    public Params copy() {
+        return withDefaults(defaults);
+    }
+
+    /**
+     * Creates a copy of these parameters with their headers, query parameters and settings folded into its defaults,
+     * so reading them doesn't need to layer them over the defaults again.
+     *
+     * @return A flattened copy of these parameters.
+     */
+    Params flatten() {
+        Defaults flattened = getDefaults().toBuilder()
+                .headers(getHeaders())
+                .queries(getQueries())
+                .followRedirects(isFollowRedirects())
+                .useCaches(isUseCaches())
+                .decompress(isDecompress())
+                .connectionTimeout(getConnectionTimeout())
+                .readTimeout(getReadTimeout())
+                .build();
+        Params copy = withDefaults(flattened);
+        copy.headers.reset();
+        copy.queries.reset();
+        copy.followRedirects = null;
+        copy.useCaches = null;
+        copy.decompress = null;
+        copy.connectionTimeout = null;
+        copy.readTimeout = null;
+        return copy;
+    }
+
+    /**
+     * Creates a copy of these parameters falling back to other defaults.
+     *
+     * @param defaults The defaults, or {@code null} to use the client's.
+     * @return A copy of these parameters.
+     */
+    Params withDefaults(Defaults defaults) {
+        Params copy = new Params();
+        copy.defaults = defaults;
+        copy.method = method;
+        copy.headers.copyFrom(headers);
+        copy.queries.copyFrom(queries);
+        copy.followRedirects = followRedirects;
+        copy.useCaches = useCaches;
+        copy.decompress = decompress;
+        copy.connectionTimeout = connectionTimeout;
+        copy.readTimeout = readTimeout;
+        copy.body = body;
+        copy.bodySupplier = bodySupplier;
+        copy.bodyLength = bodyLength;
+        copy.compressBody = compressBody;
+        copy.streamBody = streamBody;
+        copy.eventListener = eventListener;
+        copy.retryPolicy = retryPolicy;
+        return copy;
+    }
+
     /**
      * The method used when making a request.
      */
@@ -0,0 +1,436 @@
+package net.insprill.fetch4j;
+
+import lombok.NonNull;
+import net.insprill.fetch4j.exception.RateLimitException;
+import net.insprill.fetch4j.transport.Exchange;
+import net.insprill.fetch4j.transport.Transport;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Limits the rate and concurrency of requests sent by a client, so quotas enforced by servers aren't exceeded.
+ * Requests are grouped by key, which is their scheme, host and port unless set with {@link Builder#key(Function)},
+ * and each key is limited independently.
+ * <p>
+ * Rates are limited with a token bucket, tracked as a single atomic timestamp per key (GCRA),
+ * so requests to different keys never contend and requests to the same key don't take a lock.
+ * Requests over either limit wait for up to {@link Builder#maxWait(long)}, and are failed with a
+ * {@link RateLimitException} if they would have to wait for longer.
+ * Servers can also slow requests down with {@code Retry-After} on 429 and 503 responses, or with
+ * {@code RateLimit-Remaining} and {@code RateLimit-Reset} once their quota runs out.
+ * <p>
+ * Limiters are thread-safe, and may be shared between clients to apply a limit to all of them.
+ * Each redirect and retry is limited like a new request, while responses served from an {@link net.insprill.fetch4j.cache.HttpCache} aren't limited.
+ *
+ * @see FetchClient.Builder#rateLimiter(RateLimiter)
+ */
+public final class RateLimiter {
+
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final int maxInFlight;
+    private final long maxWaitNanos;
+    private final Function<URL, String> keyFunction;
+    private final boolean adaptive;
+    private final long maxPauseNanos;
+    private final Map<String, Limit> limits = new ConcurrentHashMap<>();
+
+    private RateLimiter(Builder builder) {
+        this.intervalNanos = builder.intervalNanos;
+        this.toleranceNanos = (builder.burst - 1) * builder.intervalNanos;
+        this.maxInFlight = builder.maxInFlight;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(builder.maxWaitMillis);
+        this.keyFunction = builder.keyFunction;
+        this.adaptive = builder.adaptive;
+        this.maxPauseNanos = TimeUnit.MILLISECONDS.toNanos(builder.maxPauseMillis);
+    }
+
+    /**
+     * @return A new builder for configuring a rate limiter.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Gets the key requests to a URL are limited by when no key function is set.
+     *
+     * @param url The URL.
+     * @return The URL's scheme, host and port.
+     */
+    public static String hostKey(URL url) {
+        int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+        return url.getProtocol().toLowerCase(Locale.ROOT) + "://" + url.getHost().toLowerCase(Locale.ROOT) + ":" + port;
+    }
+
+    /**
+     * Wraps a transport, so requests sent through it are limited.
+     */
+    Transport limit(Transport transport) {
+        return (url, params) -> execute(transport, url, params);
+    }
+
+    private Exchange execute(Transport transport, URL url, Params params) throws IOException {
+        String key = keyFunction.apply(url);
+        Limit limit = limits.computeIfAbsent(key == null ? "" : key, Limit::new);
+        limit.acquire();
+        Exchange exchange;
+        try {
+            exchange = transport.execute(url, params);
+        } catch (IOException | RuntimeException e) {
+            limit.release();
+            throw e;
+        }
+        if (adaptive) {
+            limit.observe(exchange);
+        }
+        return limit.inFlight == null ? exchange : new LimitedExchange(exchange, limit);
+    }
+
+    /**
+     * Works out how long a response asks for requests to stop being sent for.
+     *
+     * @return The delay in milliseconds, or -1 if it doesn't ask for one.
+     */
+    static long pauseMillis(Exchange exchange) {
+        long delay = -1;
+        int status = exchange.getStatus();
+        if (status == 429 || status == 503) {
+            delay = RetryPolicy.parseRetryAfter(exchange.getHeader("Retry-After"));
+        }
+        String remaining = exchange.getHeader("RateLimit-Remaining");
+        String reset = exchange.getHeader("RateLimit-Reset");
+        String combined = exchange.getHeader("RateLimit");
+        if (combined != null) {
+            // Later drafts of the RateLimit header fields combine them into a single header, like "remaining=0, reset=30".
+            for (String part : combined.split("[,;]")) {
+                String[] pair = part.split("=", 2);
+                if (pair.length != 2)
+                    continue;
+                String name = pair[0].trim().toLowerCase(Locale.ROOT);
+                if (name.equals("remaining") || name.equals("r")) {
+                    remaining = pair[1];
+                } else if (name.equals("reset") || name.equals("t")) {
+                    reset = pair[1];
+                }
+            }
+        }
+        if (remaining != null && reset != null) {
+            try {
+                if (Long.parseLong(remaining.trim()) <= 0) {
+                    delay = Math.max(delay, TimeUnit.SECONDS.toMillis(Long.parseLong(reset.trim())));
+                }
+            } catch (NumberFormatException ignored) {
+                // Not a quota we understand.
+            }
+        }
+        return delay;
+    }
+
+    /**
+     * The limits of a single key.
+     */
+    private final class Limit {
+
+        private final String key;
+        private final Semaphore inFlight;
+        /**
+         * The theoretical arrival time of the next request, in {@link System#nanoTime()} terms.
+         * Requests may be sent once it's no more than the burst tolerance ahead of the current time.
+         */
+        private final AtomicLong nextArrival = new AtomicLong(System.nanoTime());
+
+        Limit(String key) {
+            this.key = key;
+            this.inFlight = maxInFlight > 0 ? new Semaphore(maxInFlight, true) : null;
+        }
+
+        void acquire() {
+            long start = System.nanoTime();
+            try {
+                if (inFlight != null && !(maxWaitNanos == 0 ? inFlight.tryAcquire() : inFlight.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS)))
+                    throw new RateLimitException("Too many requests in flight to " + key + " (" + maxInFlight + ")");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RateLimitException("Interrupted while waiting to send a request to " + key);
+            }
+            try {
+                long wait = reserve(maxWaitNanos - (System.nanoTime() - start));
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+            } catch (InterruptedException e) {
+                release();
+                Thread.currentThread().interrupt();
+                throw new RateLimitException("Interrupted while waiting to send a request to " + key);
+            } catch (RuntimeException e) {
+                release();
+                throw e;
+            }
+        }
+
+        /**
+         * Reserves the next slot for a request, if it's soon enough.
+         *
+         * @param budgetNanos The longest the request may wait.
+         * @return How long to wait until the reserved slot, in nanoseconds.
+         * @throws RateLimitException If the next slot is too far away.
+         */
+        private long reserve(long budgetNanos) {
+            while (true) {
+                long now = System.nanoTime();
+                long arrival = nextArrival.get();
+                long wait = Math.max(0, arrival - toleranceNanos - now);
+                if (wait > 0 && wait > budgetNanos)
+                    throw new RateLimitException("Rate limit for " + key + " exceeded, next request allowed in "
+                            + TimeUnit.NANOSECONDS.toMillis(wait) + "ms");
+                if (intervalNanos == 0 && wait == 0)
+                    return 0;
+                long next = (arrival - now > 0 ? arrival : now) + intervalNanos;
+                if (nextArrival.compareAndSet(arrival, next))
+                    return wait;
+            }
+        }
+
+        void release() {
+            if (inFlight != null) {
+                inFlight.release();
+            }
+        }
+
+        void observe(Exchange exchange) {
+            long delay = pauseMillis(exchange);
+            if (delay <= 0)
+                return;
+            // Pushing the next arrival past the tolerance only lets a single request through when the pause ends,
+            // with the burst then refilling at the usual rate.
+            long until = System.nanoTime() + Math.min(TimeUnit.MILLISECONDS.toNanos(delay), maxPauseNanos) + toleranceNanos;
+            nextArrival.accumulateAndGet(until, (current, paused) -> paused - current > 0 ? paused : current);
+        }
+
+    }
+
+    /**
+     * An exchange releasing its in-flight permit once its body has been read or closed.
+     */
+    private static final class LimitedExchange implements Exchange {
+
+        private final Exchange exchange;
+        private final Limit limit;
+        private final AtomicBoolean released = new AtomicBoolean();
+        private InputStream body;
+
+        LimitedExchange(Exchange exchange, Limit limit) {
+            this.exchange = exchange;
+            this.limit = limit;
+        }
+
+        @Override
+        public int getStatus() {
+            return exchange.getStatus();
+        }
+
+        @Override
+        public String getStatusText() {
+            return exchange.getStatusText();
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return exchange.getHeader(name);
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaders() {
+            return exchange.getHeaders();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (body != null)
+                return body;
+            InputStream raw;
+            try {
+                raw = exchange.getBody();
+            } catch (IOException | RuntimeException e) {
+                release();
+                throw e;
+            }
+            if (raw == null) {
+                release();
+                return null;
+            }
+            body = new FilterInputStream(raw) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b == -1) {
+                        release();
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int n = super.read(b, off, len);
+                    if (n == -1) {
+                        release();
+                    }
+                    return n;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        release();
+                    }
+                }
+            };
+            return body;
+        }
+
+        @Override
+        public void disconnect() {
+            try {
+                exchange.disconnect();
+            } finally {
+                release();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                exchange.close();
+            } finally {
+                release();
+            }
+        }
+
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                limit.release();
+            }
+        }
+
+    }
+
+    /**
+     * Builder used to configure a {@link RateLimiter}.
+     */
+    public static class Builder {
+
+        private long intervalNanos;
+        private int burst = 1;
+        private int maxInFlight;
+        private long maxWaitMillis = 30000;
+        private Function<URL, String> keyFunction = RateLimiter::hostKey;
+        private boolean adaptive = true;
+        private long maxPauseMillis = 60000;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the rate requests to each key are limited to. Up to {@code burst} requests may be sent at once
+         * after a quiet period, after which they're spaced evenly. Not limited by default.
+         *
+         * @param permitsPerSecond The number of requests allowed per second.
+         * @param burst            The number of requests that may be sent at once.
+         * @return The limiter builder.
+         * @throws IllegalArgumentException If {@code permitsPerSecond} isn't positive, or {@code burst} is less than 1.
+         */
+        public Builder rate(double permitsPerSecond, int burst) {
+            if (!(permitsPerSecond > 0))
+                throw new IllegalArgumentException("permitsPerSecond must be positive");
+            if (burst < 1)
+                throw new IllegalArgumentException("burst must be at least 1");
+            this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+            this.burst = burst;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of requests to each key which may be in flight at once.
+         * A request stays in flight until its body has been fully read or its response closed. Not limited by default.
+         *
+         * @param maxInFlight Maximum requests in flight per key.
+         * @return The limiter builder.
+         * @throws IllegalArgumentException If {@code maxInFlight} is less than 1.
+         */
+        public Builder maxInFlight(int maxInFlight) {
+            if (maxInFlight < 1)
+                throw new IllegalArgumentException("maxInFlight must be at least 1");
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        /**
+         * Sets how long requests over a limit wait to be sent, in order, before failing with a {@link RateLimitException}.
+         * Defaults to 30 seconds.
+         *
+         * @param maxWaitMillis Maximum wait in milliseconds, or {@code 0} to fail immediately.
+         * @return The limiter builder.
+         * @throws IllegalArgumentException If {@code maxWaitMillis} is negative.
+         */
+        public Builder maxWait(long maxWaitMillis) {
+            if (maxWaitMillis < 0)
+                throw new IllegalArgumentException("maxWaitMillis must not be negative");
+            this.maxWaitMillis = maxWaitMillis;
+            return this;
+        }
+
+        /**
+         * Sets how requests are grouped, with each group being limited independently.
+         * Defaults to {@link RateLimiter#hostKey(URL)}. Limits are kept for every key seen, so keys should come from a bounded set.
+         *
+         * @param keyFunction Gets the key of a request's URL.
+         * @return The limiter builder.
+         */
+        public Builder key(@NonNull Function<URL, String> keyFunction) {
+            this.keyFunction = keyFunction;
+            return this;
+        }
+
+        /**
+         * Sets whether servers can pause requests to a key, with {@code Retry-After} on 429 and 503 responses,
+         * or {@code RateLimit-Remaining: 0} and {@code RateLimit-Reset}. Pauses longer than {@code maxPauseMillis} are shortened to it.
+         * Defaults to true, pausing for up to a minute.
+         *
+         * @param adaptive       Whether to pause requests when servers ask.
+         * @param maxPauseMillis The longest pause, in milliseconds.
+         * @return The limiter builder.
+         * @throws IllegalArgumentException If {@code maxPauseMillis} is negative.
+         */
+        public Builder adaptive(boolean adaptive, long maxPauseMillis) {
+            if (maxPauseMillis < 0)
+                throw new IllegalArgumentException("maxPauseMillis must not be negative");
+            this.adaptive = adaptive;
+            this.maxPauseMillis = maxPauseMillis;
+            return this;
+        }
+
+        /**
+         * @return A new rate limiter with this builder's configuration.
+         */
+        public RateLimiter build() {
+            return new RateLimiter(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,51 @@
+package net.insprill.fetch4j;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * A URL to fetch along with the parameters to fetch it with, used for batches of fetch operations.
+ *
+ * @see FetchClient#fetchAll(java.util.Collection, BatchOptions)
+ */
+@Getter
+public final class Request {
+
+    private final String url;
+    private final Params params;
+
+    private Request(String url, Params params) {
+        this.url = url;
+        this.params = params;
+    }
+
+    /**
+     * Creates a request with default parameters.
+     *
+     * @param url URL to fetch.
+     * @return The request.
+     */
+    public static Request of(@NonNull String url) {
+        return new Request(url, new Params());
+    }
+
+    /**
+     * Creates a request.
+     *
+     * @param url    URL to fetch.
+     * @param params Parameters to include in the request.
+     * @return The request.
+     */
+    public static Request of(@NonNull String url, @NonNull Params params) {
+        return new Request(url, params);
+    }
+
+    @Override
+    public String toString() {
+        return "Request={" +
+                "method=" + params.getMethod() +
+                ", url=" + url +
+                "}";
+    }
+
+}
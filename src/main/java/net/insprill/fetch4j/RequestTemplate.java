@@ -0,0 +1,174 @@
+package net.insprill.fetch4j;
+
+import net.insprill.fetch4j.exception.InvalidCharsetException;
+import net.insprill.fetch4j.exception.InvalidURLException;
+import net.insprill.fetch4j.util.URLUtils;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A request compiled once and sent any number of times, for requests sent repeatedly like polling an endpoint.
+ * The query parameters are encoded into the URL, the parameters are frozen and the charset is looked up when compiling,
+ * so sending a request without placeholders only has to build the response.
+ * <p>
+ * The URL may contain {@code {name}} placeholders, which are replaced with percent-encoded values each time it's sent:
+ * <pre>
+ * RequestTemplate template = client.compile("https://example.com/api/items/{id}", params().query("fields", "name"));
+ * Response response = template.fetch(42);
+ * </pre>
+ * Templates are immutable and thread-safe.
+ *
+ * @see FetchClient#compile(String, Params)
+ * @see Fetch#compile(String, Params)
+ */
+public final class RequestTemplate {
+
+    private final FetchClient client;
+    private final Params params;
+    private final Charset charset;
+    /**
+     * The parts of the URL around the placeholders, so there's always one more than there are placeholders.
+     */
+    private final String[] literals;
+    private final String[] variables;
+    /**
+     * The parsed URL if there are no placeholders.
+     */
+    private final URL url;
+    private final int expectedLength;
+
+    RequestTemplate(FetchClient client, String url, Params params) {
+        this.client = client;
+        this.params = params;
+        this.charset = lookupCharset(URLUtils.getQueryCharset(params));
+        String withQueries = URLUtils.addQueryParams(url, params);
+
+        List<String> literals = new ArrayList<>();
+        List<String> variables = new ArrayList<>();
+        int start = 0;
+        int open;
+        while ((open = withQueries.indexOf('{', start)) != -1) {
+            int close = withQueries.indexOf('}', open);
+            if (close == -1)
+                throw new InvalidURLException(new MalformedURLException("Unclosed placeholder in " + url));
+            literals.add(withQueries.substring(start, open));
+            variables.add(withQueries.substring(open + 1, close));
+            start = close + 1;
+        }
+        literals.add(withQueries.substring(start));
+        this.literals = literals.toArray(new String[0]);
+        this.variables = variables.toArray(new String[0]);
+        // Validate the URL up front, filling placeholders with something harmless.
+        URL parsed = FetchClient.toURL(String.join("x", literals));
+        this.url = this.variables.length == 0 ? parsed : null;
+        this.expectedLength = withQueries.length() + 16 * this.variables.length;
+    }
+
+    /**
+     * Gets the names of the URL's placeholders, in the order their values are bound.
+     *
+     * @return An unmodifiable list of placeholder names.
+     */
+    public List<String> getVariables() {
+        return Collections.unmodifiableList(Arrays.asList(variables));
+    }
+
+    /**
+     * Sends the request.
+     *
+     * @param values The values of the URL's placeholders, in the order they appear. Converted to strings with {@link String#valueOf(Object)}.
+     * @return A {@link Response}, which must be closed if the template's parameters stream the body.
+     * @throws IllegalArgumentException If the number of values doesn't match the number of placeholders.
+     * @see FetchClient#fetch(String, Params)
+     */
+    public Response fetch(Object... values) {
+        return client.fetch(toURL(values), params);
+    }
+
+    /**
+     * Sends the request.
+     *
+     * @param values The values of the URL's placeholders by name. Converted to strings with {@link String#valueOf(Object)}.
+     * @return A {@link Response}, which must be closed if the template's parameters stream the body.
+     * @throws IllegalArgumentException If a placeholder has no value.
+     * @see FetchClient#fetch(String, Params)
+     */
+    public Response fetch(Map<String, ?> values) {
+        return client.fetch(toURL(values), params);
+    }
+
+    /**
+     * Sends the request asynchronously on the client's executor.
+     *
+     * @param values The values of the URL's placeholders, in the order they appear.
+     * @return A future completed with the {@link Response}, or exceptionally with any exception {@link #fetch(Object...)} may throw.
+     */
+    public CompletableFuture<Response> fetchAsync(Object... values) {
+        return CompletableFuture.supplyAsync(() -> fetch(values), client.getExecutor());
+    }
+
+    /**
+     * Builds the URL the request would be sent to.
+     *
+     * @param values The values of the URL's placeholders, in the order they appear.
+     * @return The URL.
+     * @throws IllegalArgumentException If the number of values doesn't match the number of placeholders.
+     */
+    public String expand(Object... values) {
+        if (values.length != variables.length)
+            throw new IllegalArgumentException("Expected " + variables.length + " values, but got " + values.length);
+        if (variables.length == 0)
+            return literals[0];
+        StringBuilder builder = new StringBuilder(expectedLength);
+        for (int i = 0; i < variables.length; i++) {
+            builder.append(literals[i]);
+            URLUtils.encode(String.valueOf(values[i]), charset, builder);
+        }
+        return builder.append(literals[variables.length]).toString();
+    }
+
+    private URL toURL(Object... values) {
+        if (url != null && values.length == 0)
+            return url;
+        return FetchClient.toURL(expand(values));
+    }
+
+    private URL toURL(Map<String, ?> values) {
+        if (url != null)
+            return url;
+        Object[] ordered = new Object[variables.length];
+        for (int i = 0; i < variables.length; i++) {
+            if (!values.containsKey(variables[i]))
+                throw new IllegalArgumentException("No value for placeholder " + variables[i]);
+            ordered[i] = values.get(variables[i]);
+        }
+        return FetchClient.toURL(expand(ordered));
+    }
+
+    private static Charset lookupCharset(String name) {
+        try {
+            return Charset.forName(name);
+        } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+            throw new InvalidCharsetException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RequestTemplate={" +
+                "method=" + params.getMethod() +
+                ", url=" + String.join("{}", literals) +
+                "}";
+    }
+
+}
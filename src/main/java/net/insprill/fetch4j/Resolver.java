@@ -0,0 +1,36 @@
+package net.insprill.fetch4j;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Resolves host names to the addresses connections are opened to.
+ * When a host resolves to several addresses, they're raced as described in RFC 8305 (happy eyeballs),
+ * starting with the first, unless disabled with {@link FetchClient.Builder#happyEyeballs(boolean)}.
+ * <p>
+ * Resolvers are called by every request opening a new connection, so must be thread-safe.
+ * Requests sent through {@link java.net.HttpURLConnection}, like ones through a proxy, use the JVM's resolver instead.
+ *
+ * @see FetchClient.Builder#resolver(Resolver)
+ * @see CachingResolver
+ */
+@FunctionalInterface
+public interface Resolver {
+
+    /**
+     * Resolves hosts with {@link InetAddress#getAllByName(String)}, relying on the JVM's own cache.
+     */
+    Resolver SYSTEM = host -> Arrays.asList(InetAddress.getAllByName(host));
+
+    /**
+     * Resolves a host name.
+     *
+     * @param host The host name, or an IP address literal.
+     * @return The host's addresses, in the order they should be tried. Must not be empty.
+     * @throws UnknownHostException If the host couldn't be resolved.
+     */
+    List<InetAddress> resolve(String host) throws UnknownHostException;
+
+}
@@ -1,50 +1,139 @@
 package net.insprill.fetch4j;
 
 import lombok.SneakyThrows;
-import net.insprill.fetch4j.util.HeaderUtil;
+import net.insprill.fetch4j.cache.CacheControl;
+import net.insprill.fetch4j.transport.Exchange;
+import net.insprill.fetch4j.transport.UrlConnectionTransport;
 
-import java.io.ByteArrayOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
 import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 /**
  * Class containing information about a response from a fetch operation.
+ * <p>
+ * Responses created with {@link Params#streamBody(boolean)} enabled don't buffer their body,
+ * and must be closed once the body has been consumed.
+ * Responses from a client with a {@link FetchClient.Builder#bufferPool(BufferPool) buffer pool} should be closed
+ * once they're no longer needed, returning their body's buffer to the pool.
  *
  * @see Fetch
  */
-public class Response {
+public class Response implements Closeable {
 
     private static final byte[] EMPTY_RESPONSE_BODY = new byte[0];
+    private static final long TRANSFER_CHUNK_SIZE = 8 * 1024 * 1024;
+    private static final int INITIAL_BUFFER_SIZE = 4096;
+    /**
+     * The largest buffer allocated up front from the {@code content-length} header, so one header can't force a huge
+     * allocation. Longer bodies grow their buffer as they arrive.
+     */
+    private static final int MAX_INITIAL_BUFFER_SIZE = 256 * 1024;
+    private static final int MAX_BUFFER_SIZE = Integer.MAX_VALUE - 8;
 
-    private final HttpURLConnection conn;
-    private final byte[] responseBody;
+    private final Exchange exchange;
+    private final ResponseHeaders headers;
+    private final BufferPool bufferPool;
+    /**
+     * Whether the response has no body by its framing, whatever its {@code content-length} header says.
+     */
+    private final boolean bodiless;
+    private InputStream bodyStream;
+    private boolean bodyStreamConsumed;
+    /**
+     * The buffered body, between position zero and the limit.
+     */
+    private ByteBuffer responseBody;
+    private boolean released;
+    private Charset charset;
+    private Decoded decoded;
 
     /**
-     * Constructs a new Response from a connected {@link HttpURLConnection}.
+     * Constructs a new Response from a connected {@link HttpURLConnection}, buffering the response body.
      *
      * @param conn Connection to server.
      */
-    @SneakyThrows
     protected Response(HttpURLConnection conn) {
-        this.conn = conn;
-        try (InputStream body = (getStatus() >= 400) ? conn.getErrorStream() : conn.getInputStream()) {
-            if (body == null) {
-                responseBody = EMPTY_RESPONSE_BODY;
-                return;
-            }
-            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-            int nRead;
-            byte[] data = new byte[4096];
-            while ((nRead = body.read(data, 0, data.length)) != -1) {
-                buffer.write(data, 0, nRead);
-            }
-            responseBody = buffer.toByteArray();
+        this(new UrlConnectionTransport.UrlConnectionExchange(conn), false);
+    }
+
+    /**
+     * Constructs a new Response from an {@link Exchange} whose body hasn't been read yet.
+     *
+     * @param exchange   Exchange with the server.
+     * @param streamBody Whether the response body should be streamed instead of buffered.
+     */
+    protected Response(Exchange exchange, boolean streamBody) {
+        this(exchange, streamBody, null);
+    }
+
+    /**
+     * Constructs a new Response from an {@link Exchange} whose body hasn't been read yet.
+     *
+     * @param exchange   Exchange with the server.
+     * @param streamBody Whether the response body should be streamed instead of buffered.
+     * @param bufferPool The pool to take the buffer the body is read into from, or {@code null} to allocate one.
+     */
+    protected Response(Exchange exchange, boolean streamBody, BufferPool bufferPool) {
+        this(exchange, null, streamBody, bufferPool);
+    }
+
+    /**
+     * Constructs a new Response from an {@link Exchange} whose body hasn't been read yet.
+     *
+     * @param exchange   Exchange with the server.
+     * @param method     The request method, or {@code null} if unknown.
+     * @param streamBody Whether the response body should be streamed instead of buffered.
+     * @param bufferPool The pool to take the buffer the body is read into from, or {@code null} to allocate one.
+     */
+    @SneakyThrows
+    Response(Exchange exchange, Params.Method method, boolean streamBody, BufferPool bufferPool) {
+        this.exchange = exchange;
+        this.headers = new ResponseHeaders(exchange.getHeaders());
+        this.bufferPool = bufferPool;
+        int status = exchange.getStatus();
+        this.bodiless = method == Params.Method.HEAD || (status >= 100 && status < 200) || status == 204 || status == 304;
+        InputStream body = exchange.getBody();
+        if (streamBody) {
+            bodyStream = (body == null) ? new ByteArrayInputStream(EMPTY_RESPONSE_BODY) : body;
+        } else {
+            responseBody = readBody(body);
         }
     }
 
+    /**
+     * Constructs a new Response sharing the status, headers and buffered body of another,
+     * for requests coalesced into a single call.
+     *
+     * @param shared Response with a buffered body, which mustn't be from a buffer pool.
+     */
+    Response(Response shared) {
+        this.exchange = shared.exchange;
+        this.headers = shared.headers;
+        this.bufferPool = null;
+        this.bodiless = shared.bodiless;
+        this.responseBody = shared.getBufferedBody();
+        this.charset = shared.charset;
+        this.decoded = shared.decoded;
+    }
+
     /**
      * Checks if the request is OK (Status code 200-299).
      *
@@ -65,9 +154,8 @@ public boolean ok() {
      *
      * @return The response message, or {@code null}
      */
-    @SneakyThrows
     public int getStatus() {
-        return conn.getResponseCode();
+        return exchange.getStatus();
     }
 
     /**
@@ -81,9 +169,8 @@ public int getStatus() {
      *
      * @return The response message, or {@code null}
      */
-    @SneakyThrows
     public String getStatusText() {
-        return conn.getResponseMessage();
+        return exchange.getStatusText();
     }
 
     /**
@@ -97,13 +184,24 @@ public boolean hasHeader(String name) {
     }
 
     /**
-     * Gets the value of a response header.
+     * Gets the last value of a response header, matching the name case-insensitively.
      *
      * @param name Key to get value from.
      * @return Value of a response header, or null if it doesn't exist.
      */
     public String getHeader(String name) {
-        return conn.getHeaderField(name);
+        return headers.get(name);
+    }
+
+    /**
+     * Gets all values of a response header, in the order they were received.
+     *
+     * @param name Header name.
+     * @return An unmodifiable List of the header's values, or an empty List if it doesn't exist.
+     */
+    public List<String> getHeaderValues(String name) {
+        List<String> values = headers.getAll(name);
+        return values == null ? Collections.emptyList() : values;
     }
 
     /**
@@ -115,35 +213,32 @@ public String getHeader(String name) {
      * @return a Map of header fields
      */
     public Map<String, List<String>> getHeaders() {
-        return conn.getHeaderFields();
+        return exchange.getHeaders();
     }
 
     /**
-     * Gets the response's content type.
+     * Gets the response's content type, without any parameters like {@code charset}.
      *
-     * @return The content type.
+     * @return The content type, or {@code null} if the response has no {@code content-type} header.
      */
     public String getContentType() {
-        return conn.getContentType().split(";")[0];
+        return headers.getMediaType();
     }
 
     /**
-     * Attempts to get the content encoding of the response.
-     * Will first check the {@code content-encoding} header, and if not set
-     * will check the {@code content-type} header for a {@code charset} parameter.
+     * Attempts to get the character encoding of the response from the {@code charset} parameter
+     * of the {@code content-type} header.
+     * This isn't the {@code content-encoding} header, which names the compression applied to the body,
+     * and is removed when the body is decompressed.
      *
-     * @return The content encoding, or {@code nulls} if none could be found.
+     * @return The character encoding, or {@code null} if none could be found.
+     * @see Params#decompress(boolean)
      */
     public String getContentEncoding() {
-        String encoding = conn.getContentEncoding();
-        if (encoding != null) {
-            return encoding;
-        }
-        String contentType = conn.getContentType();
-        if (contentType == null) {
+        if (!headers.hasContentType()) {
             return Fetch.DEFAULT_CHARSET.name();
         }
-        return HeaderUtil.getContentCharset(contentType);
+        return headers.getCharset();
     }
 
     /**
@@ -152,48 +247,203 @@ public String getContentEncoding() {
      * @return The content length.
      */
     public long getContentLength() {
-        return conn.getContentLengthLong() == -1 ? responseBody.length : conn.getContentLengthLong();
+        long contentLength = headers.getContentLength();
+        if (contentLength != -1)
+            return contentLength;
+        return responseBody == null ? -1 : responseBody.limit();
+    }
+
+    /**
+     * Gets the directives of the response's {@code cache-control} headers,
+     * or {@code no-cache} if there are none but a {@code pragma: no-cache} header.
+     * The headers are only parsed once.
+     *
+     * @return The cache directives, which are {@link CacheControl#EMPTY} if there are none.
+     */
+    public CacheControl getCacheControl() {
+        return headers.getCacheControl();
     }
 
     /**
      * Gets the response body as a String, decoding it with the encoding returned from the server,
      * or UTF-8 if none or an invalid one was provided.
+     * If the response is streamed, the remainder of the body will be buffered into memory first.
+     * The decoded body is cached, so calling this again returns the same String.
      *
      * @return The response body.
      */
-    @SneakyThrows
     public String getBody() {
-        String encoding = (getContentEncoding() != null && Charset.isSupported(getContentEncoding()))
-                ? getContentEncoding()
-                : Fetch.DEFAULT_CHARSET.name();
-        return getBody(Charset.forName(encoding));
+        return getBody(getCharset());
     }
 
     /**
      * Gets the response body as a String.
+     * The body decoded with the last charset used is cached, so decoding with the same one again returns the same String.
      *
      * @param charset Charset to decode response body with.
      * @return The response body.
      */
-    @SneakyThrows
     public String getBody(Charset charset) {
-        return new String(responseBody, charset);
+        ByteBuffer body = getBufferedBody();
+        Decoded decoded = this.decoded;
+        if (decoded != null && decoded.charset.equals(charset))
+            return decoded.text;
+        String text = body.hasArray()
+                ? new String(body.array(), body.arrayOffset(), body.limit(), charset)
+                : charset.decode(body.duplicate()).toString();
+        this.decoded = new Decoded(charset, text);
+        return text;
+    }
+
+    /**
+     * Gets the response body decoded as characters, like {@link #getBody()}.
+     * The body is only decoded once, no matter how many times this or {@link #getBody()} is called.
+     *
+     * @return The decoded response body.
+     */
+    public CharSequence asCharSequence() {
+        return getBody();
+    }
+
+    /**
+     * Gets a Reader over the response body, decoded with the encoding returned from the server, or UTF-8.
+     * If the body hasn't been decoded yet, it's decoded while being read, without creating a String of the whole body.
+     *
+     * @return A new Reader over the response body.
+     * @throws IllegalStateException If the body has already been consumed through {@link #getBodyStream()},
+     *                               or released by closing the response.
+     * @see #asCharSequence()
+     */
+    public Reader asReader() {
+        Charset charset = getCharset();
+        ByteBuffer body = getBufferedBody();
+        Decoded decoded = this.decoded;
+        if (decoded != null && decoded.charset.equals(charset))
+            return new StringReader(decoded.text);
+        return new InputStreamReader(viewStream(body), charset);
     }
 
     /**
-     * Gets the response body's bytes.
+     * Gets a read-only view of the buffered response body, without copying it.
+     * If the response is streamed, the remainder of the body will be buffered into memory first.
+     * Each call returns a new view, positioned at the start of the body.
+     * If the body's buffer was pooled, the view mustn't be used after the response is closed.
+     *
+     * @return A read-only ByteBuffer over the response body.
+     * @throws IllegalStateException If the body has already been consumed through {@link #getBodyStream()},
+     *                               or released by closing the response.
+     * @see #getBodyBytes()
+     */
+    public ByteBuffer asByteBuffer() {
+        return getBufferedBody().asReadOnlyBuffer();
+    }
+
+    /**
+     * Gets an InputStream over the buffered response body, without copying it.
+     * Unlike {@link #getBodyStream()}, streamed responses are buffered into memory first,
+     * so the body can be read any number of times.
+     * If the body's buffer was pooled, the stream mustn't be read after the response is closed.
+     *
+     * @return A new InputStream over the response body.
+     * @throws IllegalStateException If the body has already been consumed through {@link #getBodyStream()},
+     *                               or released by closing the response.
+     */
+    public InputStream asInputStream() {
+        return viewStream(getBufferedBody());
+    }
+
+    /**
+     * Gets a copy of the response body's bytes.
+     * If the response is streamed, the remainder of the body will be buffered into memory first.
+     * Use {@link #asByteBuffer()} to read the body without copying it.
      *
      * @return The bytes making up the response body.
+     * @throws IllegalStateException If the body has already been consumed through {@link #getBodyStream()},
+     *                               or released by closing the response.
      */
     public byte[] getBodyBytes() {
-        int len = responseBody.length;
+        ByteBuffer responseBody = getBufferedBody();
+        int len = responseBody.limit();
         if (len == 0)
             return EMPTY_RESPONSE_BODY;
         byte[] resBody = new byte[len];
-        System.arraycopy(responseBody, 0, resBody, 0, len);
+        responseBody.duplicate().get(resBody);
         return resBody;
     }
 
+    /**
+     * Gets an InputStream of the response body.
+     * For streamed responses, this is the stream coming directly from the server, which should be closed
+     * (or the Response closed) once done reading it. Otherwise, it's a stream over the buffered body,
+     * which mustn't be read after the response is closed if its buffer was pooled.
+     *
+     * @return The response body as an InputStream.
+     * @throws IllegalStateException If the body was released by closing the response.
+     * @see Params#streamBody(boolean)
+     */
+    public InputStream getBodyStream() {
+        checkNotReleased();
+        if (responseBody != null)
+            return viewStream(responseBody);
+        bodyStreamConsumed = true;
+        return bodyStream;
+    }
+
+    /**
+     * Gets a channel over the response body.
+     *
+     * @return The response body as a ReadableByteChannel.
+     * @see #getBodyStream()
+     */
+    public ReadableByteChannel getBodyChannel() {
+        return Channels.newChannel(getBodyStream());
+    }
+
+    /**
+     * Writes the response body to a file, replacing it if it already exists.
+     * Streamed bodies are transferred straight from the connection to the file with {@link FileChannel#transferFrom},
+     * without being buffered into memory.
+     *
+     * @param path The file to write the body to.
+     * @return The number of bytes written.
+     * @throws IllegalStateException If the body has already been consumed through {@link #getBodyStream()},
+     *                               or released by closing the response.
+     * @see Fetch#download(String, Params, Path)
+     */
+    @SneakyThrows
+    public long transferTo(Path path) {
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            checkNotReleased();
+            if (!isStreamed()) {
+                ByteBuffer body = responseBody.duplicate();
+                while (body.hasRemaining()) {
+                    file.write(body);
+                }
+                return responseBody.limit();
+            }
+            if (bodyStreamConsumed)
+                throw new IllegalStateException("The response body has already been consumed as a stream");
+            long written = 0;
+            try (ReadableByteChannel body = getBodyChannel()) {
+                long n;
+                while ((n = file.transferFrom(body, written, TRANSFER_CHUNK_SIZE)) > 0) {
+                    written += n;
+                }
+            }
+            return written;
+        }
+    }
+
+    /**
+     * Checks if the response body is being streamed instead of buffered into memory.
+     *
+     * @return True if the body is streamed and hasn't been buffered yet, false otherwise.
+     * @see Params#streamBody(boolean)
+     */
+    public boolean isStreamed() {
+        return responseBody == null;
+    }
+
     /**
      * Forces the connection to the server to be terminated.
      * It is <b>NOT</b> required to call this method unless you absolutely need to.
@@ -202,15 +452,221 @@ public byte[] getBodyBytes() {
      * it will be automatically closed.
      */
     public void disconnect() {
-        conn.disconnect();
+        exchange.disconnect();
+    }
+
+    /**
+     * Closes the response body stream if the response is streamed, allowing the connection to be reused.
+     * If the body was buffered into a pooled buffer, the buffer is returned to the pool,
+     * and the body can no longer be read. Otherwise, does nothing if the body has been buffered.
+     *
+     * @see FetchClient.Builder#bufferPool(BufferPool)
+     */
+    @Override
+    @SneakyThrows
+    public void close() {
+        if (bodyStream != null) {
+            bodyStream.close();
+        }
+        if (bufferPool != null && responseBody != null && !released) {
+            released = true;
+            bufferPool.release(responseBody);
+        }
     }
 
     @Override
     public String toString() {
         return "Response={" +
-                "headers=" + conn.getHeaderFields() +
-                ", body=" + getBody() +
+                "headers=" + getHeaders() +
+                ", body=" + (released ? "<released>" : isStreamed() ? "<streamed>" : getBody()) +
                 "}";
     }
 
+    /**
+     * Gets the charset the body is decoded with by default,
+     * from the {@code charset} parameter of the {@code content-type} header, or UTF-8 if none or an invalid one was provided.
+     *
+     * @return The charset.
+     * @see #getContentEncoding()
+     */
+    public Charset getCharset() {
+        if (charset == null) {
+            String encoding = getContentEncoding();
+            try {
+                charset = encoding != null && Charset.isSupported(encoding) ? Charset.forName(encoding) : Fetch.DEFAULT_CHARSET;
+            } catch (IllegalCharsetNameException e) {
+                charset = Fetch.DEFAULT_CHARSET;
+            }
+        }
+        return charset;
+    }
+
+    private static InputStream viewStream(ByteBuffer body) {
+        if (body.hasArray())
+            return new ByteArrayInputStream(body.array(), body.arrayOffset(), body.limit());
+        return new ByteBufferInputStream(body.duplicate());
+    }
+
+    private void checkNotReleased() {
+        if (released)
+            throw new IllegalStateException("The response body has been released by closing the response");
+    }
+
+    private ByteBuffer getBufferedBody() {
+        checkNotReleased();
+        if (responseBody == null) {
+            if (bodyStreamConsumed)
+                throw new IllegalStateException("The response body has already been consumed as a stream");
+            responseBody = readBody(bodyStream);
+            bodyStream = null;
+        }
+        return responseBody;
+    }
+
+    /**
+     * Reads a body into a buffer, sized to fit it exactly if its length is known.
+     * Buffers for long bodies start at {@link #MAX_INITIAL_BUFFER_SIZE} and grow towards the length as bytes arrive.
+     */
+    @SneakyThrows
+    private ByteBuffer readBody(InputStream stream) {
+        if (stream == null)
+            return ByteBuffer.wrap(EMPTY_RESPONSE_BODY);
+        long contentLength = bodiless ? 0 : getHeaderContentLength();
+        try (InputStream body = stream) {
+            if (bufferPool != null && contentLength != 0)
+                return readPooled(body, contentLength);
+            byte[] buffer = contentLength == 0 ? EMPTY_RESPONSE_BODY : new byte[initialBufferSize(contentLength)];
+            int length = 0;
+            while (true) {
+                int n = length < buffer.length ? body.read(buffer, length, buffer.length - length) : body.read();
+                if (n == -1)
+                    break;
+                if (length == buffer.length) {
+                    // The body is longer than expected, so this read was a single byte.
+                    buffer = Arrays.copyOf(buffer, grow(buffer.length, contentLength));
+                    buffer[length++] = (byte) n;
+                } else {
+                    length += n;
+                }
+            }
+            // Only trim bodies much smaller than the initial guess, as growing leaves the buffer at least half full.
+            if (length < buffer.length / 2)
+                buffer = Arrays.copyOf(buffer, length);
+            return ByteBuffer.wrap(buffer, 0, length);
+        }
+    }
+
+    private ByteBuffer readPooled(InputStream body, long contentLength) throws IOException {
+        ByteBuffer buffer = bufferPool.acquire(initialBufferSize(contentLength));
+        ReadableByteChannel channel = buffer.hasArray() ? null : Channels.newChannel(body);
+        try {
+            while (true) {
+                if (!buffer.hasRemaining()) {
+                    int b = body.read();
+                    if (b == -1)
+                        break;
+                    ByteBuffer larger = bufferPool.acquire(grow(buffer.capacity(), contentLength));
+                    buffer.flip();
+                    larger.put(buffer);
+                    bufferPool.release(buffer);
+                    buffer = larger;
+                    buffer.put((byte) b);
+                    continue;
+                }
+                int n;
+                if (channel == null) {
+                    n = body.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                    if (n > 0) {
+                        buffer.position(buffer.position() + n);
+                    }
+                } else {
+                    n = channel.read(buffer);
+                }
+                if (n == -1)
+                    break;
+            }
+        } catch (IOException | RuntimeException e) {
+            bufferPool.release(buffer);
+            throw e;
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Gets the body length from the {@code content-length} header, or -1 if it's unknown or too large to buffer.
+     */
+    private long getHeaderContentLength() {
+        long length = headers.getContentLength();
+        return length <= MAX_BUFFER_SIZE ? length : -1;
+    }
+
+    private static int initialBufferSize(long contentLength) {
+        return contentLength > 0 ? (int) Math.min(contentLength, MAX_INITIAL_BUFFER_SIZE) : INITIAL_BUFFER_SIZE;
+    }
+
+    /**
+     * Gets the capacity to grow a full buffer to, which is no more than the body's expected length if it's longer.
+     */
+    private static int grow(int capacity, long contentLength) {
+        if (capacity >= MAX_BUFFER_SIZE)
+            throw new OutOfMemoryError("Response body is too large to buffer");
+        int grown = (int) Math.min(Math.max((long) capacity * 2, INITIAL_BUFFER_SIZE), MAX_BUFFER_SIZE);
+        return contentLength > capacity ? (int) Math.min(grown, contentLength) : grown;
+    }
+
+    /**
+     * A body decoded with a charset.
+     */
+    private static final class Decoded {
+        private final Charset charset;
+        private final String text;
+
+        Decoded(Charset charset, String text) {
+            this.charset = charset;
+            this.text = text;
+        }
+    }
+
+    /**
+     * A stream over a buffer that's not backed by an array.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0)
+                return 0;
+            if (!buffer.hasRemaining())
+                return -1;
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+
+    }
+
 }
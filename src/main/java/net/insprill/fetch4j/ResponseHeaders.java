@@ -0,0 +1,160 @@
+package net.insprill.fetch4j;
+
+import net.insprill.fetch4j.cache.CacheControl;
+import net.insprill.fetch4j.util.HeaderUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A case-insensitive index of a response's headers, built once when the response is created.
+ * Names are kept in an open-addressed table keyed by an ASCII case-insensitive hash, so a lookup
+ * neither lower-cases the name nor walks a tree of String comparisons.
+ * The media type, charset and length of the body are parsed up front, and {@code Cache-Control} directives on first use.
+ */
+final class ResponseHeaders {
+
+    private final String[] names;
+    private final int[] hashes;
+    private final List<String>[] values;
+    private final int mask;
+    private final boolean hasContentType;
+    private final String mediaType;
+    private final String charset;
+    private final long contentLength;
+    private volatile CacheControl cacheControl;
+
+    /**
+     * Indexes the headers of a response.
+     *
+     * @param headers The headers, whose values are in the order they were received.
+     *                Names differing only in case are merged, and a {@code null} name, like the status line
+     *                {@link java.net.HttpURLConnection} includes, is ignored.
+     */
+    @SuppressWarnings("unchecked")
+    ResponseHeaders(Map<String, List<String>> headers) {
+        int capacity = Integer.highestOneBit(Math.max(8, headers.size() * 2) - 1) << 1;
+        this.names = new String[capacity];
+        this.hashes = new int[capacity];
+        this.values = (List<String>[]) new List<?>[capacity];
+        this.mask = capacity - 1;
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (header.getKey() != null && header.getValue() != null && !header.getValue().isEmpty()) {
+                put(header.getKey(), header.getValue());
+            }
+        }
+        String contentType = get("Content-Type");
+        this.hasContentType = contentType != null;
+        this.mediaType = contentType == null ? null : HeaderUtil.getMediaType(contentType);
+        this.charset = contentType == null ? null : HeaderUtil.getContentCharset(contentType);
+        this.contentLength = parseLength(get("Content-Length"));
+    }
+
+    /**
+     * @param name Header name.
+     * @return The last value of the header, or {@code null} if it doesn't exist.
+     */
+    String get(String name) {
+        List<String> values = getAll(name);
+        return values == null ? null : values.get(values.size() - 1);
+    }
+
+    /**
+     * @param name Header name.
+     * @return An unmodifiable List of the header's values, or {@code null} if it doesn't exist.
+     */
+    List<String> getAll(String name) {
+        int hash = hash(name);
+        for (int i = hash & mask; names[i] != null; i = (i + 1) & mask) {
+            if (hashes[i] == hash && names[i].equalsIgnoreCase(name))
+                return values[i];
+        }
+        return null;
+    }
+
+    /**
+     * @return True if the response has a {@code Content-Type} header.
+     */
+    boolean hasContentType() {
+        return hasContentType;
+    }
+
+    /**
+     * @return The media type of the {@code Content-Type} header, without parameters, or {@code null} if there isn't one.
+     */
+    String getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * @return The {@code charset} parameter of the {@code Content-Type} header, or {@code null} if there isn't one.
+     */
+    String getCharset() {
+        return charset;
+    }
+
+    /**
+     * @return The {@code Content-Length} header, or -1 if it's missing or invalid.
+     */
+    long getContentLength() {
+        return contentLength;
+    }
+
+    /**
+     * @return The directives of the {@code Cache-Control} headers, or of {@code Pragma: no-cache} if there are none.
+     */
+    CacheControl getCacheControl() {
+        CacheControl cacheControl = this.cacheControl;
+        if (cacheControl == null) {
+            // Parsing is idempotent, so racing threads may each parse without locking.
+            this.cacheControl = cacheControl = CacheControl.parse(getAll("Cache-Control"), get("Pragma"));
+        }
+        return cacheControl;
+    }
+
+    private void put(String name, List<String> headerValues) {
+        int hash = hash(name);
+        int i = hash & mask;
+        for (; names[i] != null; i = (i + 1) & mask) {
+            if (hashes[i] == hash && names[i].equalsIgnoreCase(name)) {
+                // The headers weren't case-insensitive, so the same header was split across names.
+                List<String> merged = new ArrayList<>(values[i]);
+                merged.addAll(headerValues);
+                values[i] = Collections.unmodifiableList(merged);
+                return;
+            }
+        }
+        names[i] = name;
+        hashes[i] = hash;
+        values[i] = Collections.unmodifiableList(headerValues);
+    }
+
+    /**
+     * Hashes a header name, ignoring the case of ASCII letters, as header names are ASCII tokens.
+     */
+    private static int hash(String name) {
+        int hash = 0;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            hash = 31 * hash + c;
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static long parseLength(String value) {
+        if (value == null)
+            return -1;
+        try {
+            long length = Long.parseLong(value.trim());
+            return length >= 0 ? length : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+}
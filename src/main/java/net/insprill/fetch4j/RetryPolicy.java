@@ -0,0 +1,409 @@
+package net.insprill.fetch4j;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+import net.insprill.fetch4j.exception.FetchException;
+import net.insprill.fetch4j.exception.HostNotFoundException;
+import net.insprill.fetch4j.exception.TimeoutException;
+import net.insprill.fetch4j.util.HttpDates;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Configures how failed fetch operations are retried, and whether slow ones are hedged with a second attempt.
+ * Policies are immutable and thread-safe, so can be shared between clients and requests.
+ * <p>
+ * Only idempotent methods are retried or hedged by default, as retrying others may apply their side effects twice.
+ * Request bodies set with {@link Params#body(java.io.InputStream, long)} can only be sent once,
+ * so use {@link Params#body(java.util.function.Supplier, long)} for requests that may be retried.
+ *
+ * @see FetchClient.Builder#retryPolicy(RetryPolicy)
+ * @see Params#retryPolicy(RetryPolicy)
+ */
+@Getter
+public final class RetryPolicy {
+
+    /**
+     * A policy that never retries or hedges requests.
+     */
+    public static final RetryPolicy NONE = builder().maxAttempts(1).build();
+
+    private static final Set<Params.Method> IDEMPOTENT_METHODS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            Params.Method.GET, Params.Method.HEAD, Params.Method.PUT, Params.Method.DELETE, Params.Method.OPTIONS, Params.Method.TRACE
+    )));
+    private static final int MIN_HEDGE_SAMPLES = 20;
+    /**
+     * The shortest delay hedging adapts to, so fast backends with sub-millisecond responses don't get every request hedged.
+     */
+    private static final long MIN_HEDGE_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * The maximum number of times a request is sent, including the first attempt.
+     */
+    private final int maxAttempts;
+    /**
+     * The delay before the first retry, in milliseconds.
+     */
+    private final long initialBackoffMillis;
+    /**
+     * The maximum delay between attempts, in milliseconds.
+     */
+    private final long maxBackoffMillis;
+    /**
+     * How much the delay grows by after each attempt.
+     */
+    private final double backoffMultiplier;
+    /**
+     * The fraction of each delay that's randomized.
+     */
+    private final double jitter;
+    /**
+     * The response codes which are retried.
+     */
+    private final Set<Integer> retryableStatuses;
+    /**
+     * Tests whether a failed attempt should be retried.
+     */
+    private final Predicate<FetchException> retryableException;
+    /**
+     * Whether requests with non-idempotent methods, like POST, are also retried.
+     */
+    private final boolean retryNonIdempotent;
+    /**
+     * Whether the {@code Retry-After} header is used as the delay before retrying.
+     */
+    private final boolean respectRetryAfter;
+    /**
+     * The longest {@code Retry-After} delay to wait for, in milliseconds.
+     */
+    private final long maxRetryAfterMillis;
+    /**
+     * The delay before sending a hedged attempt in milliseconds, or -1 if hedging is disabled.
+     */
+    private final long hedgeDelayMillis;
+    /**
+     * The percentile of recent response times used as the hedging delay, or 0 to always use the fixed delay.
+     */
+    private final double hedgePercentile;
+    @Getter(AccessLevel.NONE)
+    private final LatencyTracker latencies;
+
+    private RetryPolicy(Builder builder) {
+        this.maxAttempts = builder.maxAttempts;
+        this.initialBackoffMillis = builder.initialBackoffMillis;
+        this.maxBackoffMillis = builder.maxBackoffMillis;
+        this.backoffMultiplier = builder.backoffMultiplier;
+        this.jitter = builder.jitter;
+        this.retryableStatuses = Collections.unmodifiableSet(new HashSet<>(builder.retryableStatuses));
+        this.retryableException = builder.retryableException;
+        this.retryNonIdempotent = builder.retryNonIdempotent;
+        this.respectRetryAfter = builder.respectRetryAfter;
+        this.maxRetryAfterMillis = builder.maxRetryAfterMillis;
+        this.hedgeDelayMillis = builder.hedgeDelayMillis;
+        this.hedgePercentile = builder.hedgePercentile;
+        this.latencies = hedgePercentile > 0 ? new LatencyTracker() : null;
+    }
+
+    /**
+     * @return A new builder for configuring a retry policy.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Checks if a request method can be sent more than once without changing its outcome.
+     *
+     * @param method The request method.
+     * @return True if the method is idempotent, false otherwise.
+     */
+    public static boolean isIdempotent(Params.Method method) {
+        return IDEMPOTENT_METHODS.contains(method);
+    }
+
+    /**
+     * @return True if this policy may send a request more than once, false otherwise.
+     */
+    boolean isEnabled() {
+        return maxAttempts > 1 || hedgeDelayMillis >= 0;
+    }
+
+    boolean canRetry(Params.Method method) {
+        return maxAttempts > 1 && (retryNonIdempotent || isIdempotent(method));
+    }
+
+    boolean canHedge(Params.Method method) {
+        return hedgeDelayMillis >= 0 && isIdempotent(method);
+    }
+
+    /**
+     * Works out the delay before retrying after an attempt failed.
+     *
+     * @param attempt The attempt that failed, starting at 1.
+     * @return The delay in milliseconds.
+     */
+    long backoffMillis(int attempt) {
+        double backoff = initialBackoffMillis * Math.pow(backoffMultiplier, attempt - 1);
+        backoff = Math.min(backoff, maxBackoffMillis);
+        return (long) (backoff * (1 - jitter * ThreadLocalRandom.current().nextDouble()));
+    }
+
+    /**
+     * Works out the delay before retrying after an attempt got a retryable response.
+     *
+     * @param attempt  The attempt, starting at 1.
+     * @param response The response.
+     * @return The delay in milliseconds, or -1 if the server asked to wait for longer than allowed.
+     */
+    long retryDelayMillis(int attempt, Response response) {
+        if (respectRetryAfter) {
+            long retryAfter = parseRetryAfter(response.getHeader("Retry-After"));
+            if (retryAfter > maxRetryAfterMillis)
+                return -1;
+            if (retryAfter >= 0)
+                return retryAfter;
+        }
+        return backoffMillis(attempt);
+    }
+
+    /**
+     * @return The current delay before sending a hedged attempt, in nanoseconds.
+     */
+    long currentHedgeDelayNanos() {
+        long percentile = latencies == null ? -1 : latencies.percentile(hedgePercentile, MIN_HEDGE_SAMPLES);
+        if (percentile == -1)
+            return TimeUnit.MILLISECONDS.toNanos(hedgeDelayMillis);
+        return Math.max(percentile, MIN_HEDGE_DELAY_NANOS);
+    }
+
+    /**
+     * Records how long a successful attempt took, for working out the hedging delay.
+     *
+     * @param durationNanos The duration of the attempt.
+     */
+    void recordLatency(long durationNanos) {
+        if (latencies != null) {
+            latencies.record(durationNanos);
+        }
+    }
+
+    /**
+     * @param value The value of a {@code Retry-After} header.
+     * @return The delay it asks for in milliseconds, or -1 if it's missing or invalid.
+     */
+    static long parseRetryAfter(String value) {
+        if (value == null)
+            return -1;
+        try {
+            long seconds = Long.parseLong(value.trim());
+            return seconds < 0 ? -1 : TimeUnit.SECONDS.toMillis(seconds);
+        } catch (NumberFormatException e) {
+            long date = HttpDates.parse(value);
+            return date == -1 ? -1 : Math.max(0, date - System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Keeps the durations of recent attempts in a ring buffer.
+     */
+    private static final class LatencyTracker {
+
+        private final long[] samples = new long[128];
+        private int count;
+        private int next;
+
+        synchronized void record(long durationNanos) {
+            samples[next] = durationNanos;
+            next = (next + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+        }
+
+        synchronized long percentile(double percentile, int minSamples) {
+            if (count < minSamples)
+                return -1;
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100 * count) - 1;
+            return sorted[Math.max(0, Math.min(index, count - 1))];
+        }
+
+    }
+
+    /**
+     * Builder used to configure a {@link RetryPolicy}.
+     */
+    public static class Builder {
+
+        private int maxAttempts = 3;
+        private long initialBackoffMillis = 100;
+        private long maxBackoffMillis = 10000;
+        private double backoffMultiplier = 2;
+        private double jitter = 0.5;
+        private Set<Integer> retryableStatuses = new HashSet<>(Arrays.asList(408, 429, 500, 502, 503, 504));
+        private Predicate<FetchException> retryableException = e -> e instanceof TimeoutException || e instanceof HostNotFoundException;
+        private boolean retryNonIdempotent;
+        private boolean respectRetryAfter = true;
+        private long maxRetryAfterMillis = 60000;
+        private long hedgeDelayMillis = -1;
+        private double hedgePercentile;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the maximum number of times a request is sent, including the first attempt.
+         * Defaults to 3.
+         *
+         * @param maxAttempts Maximum attempts.
+         * @return The policy builder.
+         * @throws IllegalArgumentException If {@code maxAttempts} is less than 1.
+         */
+        public Builder maxAttempts(int maxAttempts) {
+            if (maxAttempts < 1)
+                throw new IllegalArgumentException("maxAttempts must be at least 1");
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * Sets the exponential backoff between attempts. The delay starts at {@code initialMillis},
+         * and is multiplied by {@code multiplier} after each attempt, up to {@code maxMillis}.
+         * Defaults to 100 milliseconds, doubling up to 10 seconds.
+         *
+         * @param initialMillis The delay before the first retry, in milliseconds.
+         * @param maxMillis     The maximum delay, in milliseconds.
+         * @param multiplier    How much the delay grows by after each attempt.
+         * @return The policy builder.
+         * @throws IllegalArgumentException If a delay is negative, or the multiplier is less than 1.
+         */
+        public Builder backoff(long initialMillis, long maxMillis, double multiplier) {
+            if (initialMillis < 0 || maxMillis < 0)
+                throw new IllegalArgumentException("Backoff delays must not be negative");
+            if (multiplier < 1)
+                throw new IllegalArgumentException("Backoff multiplier must be at least 1");
+            this.initialBackoffMillis = initialMillis;
+            this.maxBackoffMillis = maxMillis;
+            this.backoffMultiplier = multiplier;
+            return this;
+        }
+
+        /**
+         * Sets the fraction of each backoff delay that's randomized, so clients failing at the same time
+         * don't all retry at the same time. {@code 0} disables jitter, and {@code 1} picks a delay anywhere
+         * between zero and the full backoff. Defaults to 0.5.
+         *
+         * @param jitter The fraction of the delay to randomize, from 0 to 1.
+         * @return The policy builder.
+         * @throws IllegalArgumentException If {@code jitter} is outside of 0 to 1.
+         */
+        public Builder jitter(double jitter) {
+            if (jitter < 0 || jitter > 1)
+                throw new IllegalArgumentException("jitter must be between 0 and 1");
+            this.jitter = jitter;
+            return this;
+        }
+
+        /**
+         * Sets the response codes which are retried.
+         * Defaults to 408, 429, 500, 502, 503 and 504.
+         *
+         * @param statuses The response codes.
+         * @return The policy builder.
+         */
+        public Builder retryableStatuses(@NonNull Integer... statuses) {
+            this.retryableStatuses = new HashSet<>(Arrays.asList(statuses));
+            return this;
+        }
+
+        /**
+         * Sets which failed attempts are retried.
+         * Defaults to {@link TimeoutException}s and {@link HostNotFoundException}s, which include connections being refused or reset.
+         *
+         * @param retryableException Tests whether a failed attempt should be retried.
+         * @return The policy builder.
+         */
+        public Builder retryableException(@NonNull Predicate<FetchException> retryableException) {
+            this.retryableException = retryableException;
+            return this;
+        }
+
+        /**
+         * Sets whether requests with non-idempotent methods, like POST, are also retried.
+         * These may have been processed by the server before failing, so are only safe to retry if the server deduplicates them.
+         * Defaults to false.
+         *
+         * @param retryNonIdempotent Whether to retry non-idempotent requests.
+         * @return The policy builder.
+         */
+        public Builder retryNonIdempotent(boolean retryNonIdempotent) {
+            this.retryNonIdempotent = retryNonIdempotent;
+            return this;
+        }
+
+        /**
+         * Sets whether the {@code Retry-After} header of a retryable response is used as the delay before retrying,
+         * instead of the backoff. Responses asking to wait for longer than {@code maxMillis} are returned without retrying.
+         * Defaults to true, waiting for up to a minute.
+         *
+         * @param respectRetryAfter Whether to use the {@code Retry-After} header.
+         * @param maxMillis         The longest delay to wait for, in milliseconds.
+         * @return The policy builder.
+         */
+        public Builder respectRetryAfter(boolean respectRetryAfter, long maxMillis) {
+            this.respectRetryAfter = respectRetryAfter;
+            this.maxRetryAfterMillis = maxMillis;
+            return this;
+        }
+
+        /**
+         * Enables hedging, sending a second attempt of an idempotent request if the first hasn't got a response
+         * after a fixed delay, and using whichever response arrives first.
+         * The slower attempt isn't aborted, but its response is discarded.
+         * Disabled by default.
+         *
+         * @param delayMillis The delay before sending the second attempt, in milliseconds.
+         * @return The policy builder.
+         * @see #hedgeAtPercentile(double, long)
+         */
+        public Builder hedgeDelay(long delayMillis) {
+            if (delayMillis < 0)
+                throw new IllegalArgumentException("delayMillis must not be negative");
+            this.hedgeDelayMillis = delayMillis;
+            this.hedgePercentile = 0;
+            return this;
+        }
+
+        /**
+         * Enables hedging like {@link #hedgeDelay(long)}, but with the delay adapting to a percentile of the response times
+         * of recent requests using this policy, like the 95th. Until enough have been sent, the initial delay is used.
+         * The adapted delay is never less than a millisecond.
+         *
+         * @param percentile   The percentile of recent response times, above 0 and up to 100.
+         * @param initialDelay The delay used until enough response times have been recorded, in milliseconds.
+         * @return The policy builder.
+         */
+        public Builder hedgeAtPercentile(double percentile, long initialDelay) {
+            if (percentile <= 0 || percentile > 100)
+                throw new IllegalArgumentException("percentile must be above 0 and up to 100");
+            hedgeDelay(initialDelay);
+            this.hedgePercentile = percentile;
+            return this;
+        }
+
+        /**
+         * @return A new retry policy with this builder's configuration.
+         */
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+
+    }
+
+}
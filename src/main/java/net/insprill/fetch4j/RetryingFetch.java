@@ -0,0 +1,149 @@
+package net.insprill.fetch4j;
+
+import net.insprill.fetch4j.exception.FetchException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Performs a fetch operation according to a {@link RetryPolicy}, retrying failed attempts and hedging slow ones.
+ */
+final class RetryingFetch {
+
+    private final RetryPolicy policy;
+    private final Executor executor;
+    private final Supplier<Response> attempt;
+    private final boolean retry;
+    private final boolean hedge;
+
+    /**
+     * @param policy   The retry policy.
+     * @param method   The request method.
+     * @param executor The executor hedged attempts are performed on.
+     * @param attempt  Performs a single attempt.
+     */
+    RetryingFetch(RetryPolicy policy, Params.Method method, Executor executor, Supplier<Response> attempt) {
+        this.policy = policy;
+        this.executor = executor;
+        this.attempt = attempt;
+        this.retry = policy.canRetry(method);
+        this.hedge = policy.canHedge(method);
+    }
+
+    Response execute() {
+        for (int attempts = 1; ; attempts++) {
+            boolean last = !retry || attempts >= policy.getMaxAttempts();
+            Response response;
+            try {
+                response = hedge ? hedged() : timed();
+            } catch (FetchException e) {
+                if (last || !policy.getRetryableException().test(e))
+                    throw e;
+                sleep(policy.backoffMillis(attempts));
+                continue;
+            }
+            if (last || !policy.getRetryableStatuses().contains(response.getStatus()))
+                return response;
+            long delay = policy.retryDelayMillis(attempts, response);
+            if (delay < 0)
+                return response;
+            closeQuietly(response);
+            sleep(delay);
+        }
+    }
+
+    private Response timed() {
+        long start = System.nanoTime();
+        Response response = attempt.get();
+        policy.recordLatency(System.nanoTime() - start);
+        return response;
+    }
+
+    /**
+     * Performs an attempt, sending a second one if it's slower than the hedging delay,
+     * and returning whichever responds first. Only fails if both do.
+     * An attempt the executor hasn't started by the time it's waited for is made on the calling thread instead,
+     * as that thread may belong to the executor, with the attempt queued behind it.
+     */
+    private Response hedged() {
+        StealableTask<Response> primary = StealableTask.submit(this::timed, executor);
+        try {
+            try {
+                return primary.getFuture().get(policy.currentHedgeDelayNanos(), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                // Too slow, so hedge below.
+            }
+            // If the executor hasn't got round to the attempt, it's too busy for a hedge to help.
+            if (primary.runIfNotStarted())
+                return primary.getFuture().get();
+            StealableTask<Response> secondary = StealableTask.submit(this::timed, executor);
+            CompletableFuture<Response> winner = new CompletableFuture<>();
+            AtomicInteger failures = new AtomicInteger();
+            BiConsumer<Response, Throwable> firstResponse = (response, error) -> {
+                if (error != null) {
+                    if (failures.incrementAndGet() == 2) {
+                        winner.completeExceptionally(error);
+                    }
+                } else if (!winner.complete(response)) {
+                    closeQuietly(response);
+                }
+            };
+            primary.getFuture().whenComplete(firstResponse);
+            secondary.getFuture().whenComplete(firstResponse);
+            // The primary attempt is running, so will complete. If it fails without a winner, the hedge has to be waited for.
+            CompletableFuture.anyOf(winner, primary.getFuture()).handle((result, error) -> null).get();
+            if (!winner.isDone()) {
+                secondary.runIfNotStarted();
+            }
+            try {
+                return winner.get();
+            } finally {
+                secondary.cancelIfNotStarted();
+            }
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FetchException(e);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FetchException(e);
+        }
+    }
+
+    private static RuntimeException unwrap(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        if (error instanceof RuntimeException)
+            return (RuntimeException) error;
+        if (error instanceof Error)
+            throw (Error) error;
+        return new FetchException(error);
+    }
+
+    /**
+     * Releases the connection of a response that's being discarded.
+     */
+    private static void closeQuietly(Response response) {
+        try {
+            response.close();
+        } catch (Exception ignored) {
+            // Discarded anyway. Only closing a streamed body can fail.
+        }
+    }
+
+}
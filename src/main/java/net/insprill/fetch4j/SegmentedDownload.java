@@ -0,0 +1,280 @@
+package net.insprill.fetch4j;
+
+import lombok.SneakyThrows;
+import net.insprill.fetch4j.exception.FetchException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Downloads a file as several byte ranges fetched in parallel, written straight into place with positional writes.
+ * Progress is recorded in a file next to the download, so a failed download can resume from the remaining ranges.
+ */
+final class SegmentedDownload {
+
+    /**
+     * Appended to the file name to get the file progress is recorded in.
+     */
+    static final String STATE_SUFFIX = ".download";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /**
+     * How much each segment writes between recording progress.
+     */
+    private static final long CHECKPOINT_BYTES = 4 * 1024 * 1024;
+
+    private final FetchClient client;
+    private final String url;
+    private final Params params;
+    private final Path path;
+    private final Path statePath;
+    private final DownloadOptions options;
+    private volatile boolean aborted;
+
+    SegmentedDownload(FetchClient client, String url, Params params, Path path, DownloadOptions options) {
+        this.client = client;
+        this.url = url;
+        this.params = params;
+        this.path = path;
+        this.statePath = path.resolveSibling(path.getFileName() + STATE_SUFFIX);
+        this.options = options;
+    }
+
+    /**
+     * Performs the download, falling back to a single stream if the server doesn't support ranges.
+     *
+     * @return The length of the file.
+     */
+    @SneakyThrows
+    long execute() {
+        long length;
+        String validator;
+        boolean ranges;
+        // The probe has no body, so it's streamed rather than given a buffer.
+        try (Response probe = client.fetch(url, params.copy().method(Params.Method.HEAD).decompress(false).useCaches(false).streamBody(true))) {
+            length = probe.ok() ? probe.getContentLength() : -1;
+            String acceptRanges = probe.getHeader("Accept-Ranges");
+            ranges = acceptRanges != null && acceptRanges.toLowerCase(Locale.ROOT).contains("bytes");
+            validator = getValidator(probe);
+        }
+        if (!ranges || length <= 0)
+            return downloadWhole();
+
+        boolean recordProgress = options.isResume() && validator != null;
+        List<Segment> resumed = recordProgress ? loadState(length, validator) : null;
+        boolean resuming = resumed != null;
+        if (!resuming) {
+            Files.deleteIfExists(statePath);
+        }
+        List<Segment> segments = resuming ? resumed : split(length);
+        try (FileChannel file = resuming
+                ? FileChannel.open(path, StandardOpenOption.WRITE)
+                : FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (!resuming) {
+                // Preallocate the file, so segments can be written in any order.
+                file.write(ByteBuffer.wrap(new byte[1]), length - 1);
+            }
+            List<StealableTask<Void>> tasks = new ArrayList<>();
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            for (Segment segment : segments) {
+                if (segment.isComplete())
+                    continue;
+                StealableTask<Void> task = StealableTask.submit(() -> {
+                    fetch(file, segment, validator, recordProgress, length, segments);
+                    return null;
+                }, client.getExecutor());
+                // Stop the other segments as soon as one fails, rather than waiting for them to finish.
+                task.getFuture().whenComplete((result, error) -> {
+                    if (error != null && !(error instanceof CancellationException)) {
+                        failure.compareAndSet(null, error);
+                        aborted = true;
+                    }
+                });
+                tasks.add(task);
+            }
+            // Fetch the segments the executor hasn't started here, rather than blocking a thread it may need for them.
+            for (StealableTask<Void> task : tasks) {
+                if (aborted) {
+                    task.cancelIfNotStarted();
+                } else {
+                    task.runIfNotStarted();
+                }
+            }
+            for (StealableTask<Void> task : tasks) {
+                task.getFuture().handle((result, error) -> null).join();
+            }
+            if (failure.get() != null) {
+                if (recordProgress) {
+                    saveState(file, length, validator, segments);
+                }
+                throw failure.get();
+            }
+        }
+        Files.deleteIfExists(statePath);
+        return length;
+    }
+
+    /**
+     * Downloads the file as a single stream, like {@link FetchClient#download(String, Params, Path)},
+     * but only writing the body of a successful response.
+     */
+    @SneakyThrows
+    private long downloadWhole() {
+        // Any progress recorded for ranges is of no use to a single stream.
+        Files.deleteIfExists(statePath);
+        try (Response response = client.stream(url, params)) {
+            if (!response.ok())
+                throw new FetchException("Server responded with " + response.getStatus() + " " + response.getStatusText());
+            try {
+                return response.transferTo(path);
+            } catch (Throwable e) {
+                Files.deleteIfExists(path);
+                throw e;
+            }
+        }
+    }
+
+    @SneakyThrows
+    private void fetch(FileChannel file, Segment segment, String validator, boolean recordProgress, long length, List<Segment> segments) {
+        Params request = params.copy()
+                .streamBody(true)
+                .decompress(false)
+                .useCaches(false)
+                .header("Range", "bytes=" + segment.position + "-" + segment.end);
+        if (validator != null) {
+            request.header("If-Range", validator);
+        }
+        try (Response response = client.fetch(url, request)) {
+            String contentRange = response.getHeader("Content-Range");
+            if (response.getStatus() != 206 || contentRange == null || !contentRange.trim().startsWith("bytes " + segment.position + "-"))
+                throw new FetchException("Server didn't return the requested range, as the file changed or ranges aren't supported: "
+                        + response.getStatus() + " " + contentRange);
+            InputStream body = response.getBodyStream();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+            long sinceCheckpoint = 0;
+            while (!aborted && !segment.isComplete()) {
+                int n = body.read(buffer, 0, (int) Math.min(buffer.length, segment.end - segment.position + 1));
+                if (n == -1)
+                    throw new FetchException("Range " + segment.position + "-" + segment.end + " ended early");
+                wrapped.clear();
+                wrapped.limit(n);
+                long position = segment.position;
+                while (wrapped.hasRemaining()) {
+                    position += file.write(wrapped, position);
+                }
+                segment.position = position;
+                sinceCheckpoint += n;
+                if (recordProgress && sinceCheckpoint >= CHECKPOINT_BYTES) {
+                    saveState(file, length, validator, segments);
+                    sinceCheckpoint = 0;
+                }
+            }
+        }
+    }
+
+    private List<Segment> split(long length) {
+        int count = (int) Math.max(1, Math.min(options.getSegments(), length / options.getMinSegmentSize()));
+        long size = length / count;
+        List<Segment> segments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long start = i * size;
+            segments.add(new Segment(start, i == count - 1 ? length - 1 : start + size - 1, start));
+        }
+        return segments;
+    }
+
+    /**
+     * Records the progress of each segment, once the data written so far has reached the disk.
+     */
+    private synchronized void saveState(FileChannel file, long length, String validator, List<Segment> segments) throws IOException {
+        file.force(false);
+        Properties state = new Properties();
+        state.setProperty("url", url);
+        state.setProperty("length", Long.toString(length));
+        state.setProperty("validator", validator);
+        state.setProperty("segments", Integer.toString(segments.size()));
+        for (int i = 0; i < segments.size(); i++) {
+            Segment segment = segments.get(i);
+            state.setProperty("segment." + i, segment.start + "," + segment.end + "," + segment.position);
+        }
+        Path temp = statePath.resolveSibling(statePath.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            state.store(out, null);
+        }
+        Files.move(temp, statePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Loads the progress of an earlier attempt, if it was downloading the same version of the same file.
+     *
+     * @return The segments, or {@code null} if there's nothing to resume.
+     */
+    private List<Segment> loadState(long length, String validator) {
+        Properties state = new Properties();
+        try (InputStream in = Files.newInputStream(statePath)) {
+            state.load(in);
+            if (!url.equals(state.getProperty("url"))
+                    || !Long.toString(length).equals(state.getProperty("length"))
+                    || !validator.equals(state.getProperty("validator"))
+                    || Files.size(path) != length)
+                return null;
+            int count = Integer.parseInt(state.getProperty("segments"));
+            List<Segment> segments = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String[] parts = state.getProperty("segment." + i).split(",");
+                segments.add(new Segment(Long.parseLong(parts[0]), Long.parseLong(parts[1]), Long.parseLong(parts[2])));
+            }
+            return segments;
+        } catch (IOException | RuntimeException e) {
+            // Missing or unreadable, so start again.
+            return null;
+        }
+    }
+
+    /**
+     * Gets a validator for the {@code If-Range} header, which must be a strong ETag or a date.
+     */
+    private static String getValidator(Response response) {
+        String etag = response.getHeader("ETag");
+        if (etag != null && !etag.startsWith("W/"))
+            return etag;
+        return response.getHeader("Last-Modified");
+    }
+
+    /**
+     * An inclusive range of the file.
+     */
+    private static final class Segment {
+        private final long start;
+        private final long end;
+        /**
+         * The next byte to fetch.
+         */
+        private volatile long position;
+
+        Segment(long start, long end, long position) {
+            this.start = start;
+            this.end = end;
+            this.position = position;
+        }
+
+        boolean isComplete() {
+            return position > end;
+        }
+    }
+
+}
@@ -0,0 +1,42 @@
+package net.insprill.fetch4j;
+
+import lombok.Getter;
+
+/**
+ * An event received from a server-sent event stream.
+ *
+ * @see EventSource
+ */
+@Getter
+public final class ServerSentEvent {
+
+    /**
+     * The event type, from the {@code event} field, or {@code message} if it had none.
+     */
+    private final String type;
+    /**
+     * The event data, with the lines of multiple {@code data} fields joined by {@code \n}.
+     */
+    private final String data;
+    /**
+     * The last event ID set by an {@code id} field, which may have been sent with an earlier event.
+     * Empty if none has been set.
+     */
+    private final String lastEventId;
+
+    ServerSentEvent(String type, String data, String lastEventId) {
+        this.type = type;
+        this.data = data;
+        this.lastEventId = lastEventId;
+    }
+
+    @Override
+    public String toString() {
+        return "ServerSentEvent={" +
+                "type=" + type +
+                ", lastEventId=" + lastEventId +
+                ", data=" + data +
+                "}";
+    }
+
+}
@@ -0,0 +1,95 @@
+package net.insprill.fetch4j;
+
+import lombok.EqualsAndHashCode;
+import lombok.SneakyThrows;
+
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical requests sent at the same time, so only the first is sent
+ * and the others share its response, or the exception it failed with.
+ * Requests are only coalesced while one is in flight, so responses aren't reused once it's finished.
+ */
+final class SingleFlight {
+
+    private final Map<Key, CompletableFuture<Response>> calls = new ConcurrentHashMap<>();
+
+    /**
+     * Checks if a request can share another's response. Only buffered {@code GET} and {@code HEAD} requests
+     * without a body or their own event listener can be.
+     *
+     * @param params The request's parameters.
+     * @return True if the request can be coalesced, false otherwise.
+     */
+    static boolean canCoalesce(Params params) {
+        return (params.getMethod() == Params.Method.GET || params.getMethod() == Params.Method.HEAD)
+                && !params.isStreamBody()
+                && params.getBody() == null
+                && params.getBodySupplier() == null
+                && params.getEventListener() == EventListener.NONE;
+    }
+
+    /**
+     * Sends a request, unless an identical one is already in flight, in which case its response is shared.
+     *
+     * @param url    The request's URL, including its query parameters.
+     * @param params The request's parameters.
+     * @param fetch  Sends the request, returning a buffered response which isn't from a buffer pool.
+     * @return A response of the request's own, sharing the body of the one actually received.
+     */
+    @SneakyThrows
+    Response execute(URL url, Params params, Supplier<Response> fetch) {
+        Key key = new Key(url.toExternalForm(), params.getMethod(), params.mergedHeaders(),
+                params.isFollowRedirects(), params.isUseCaches(), params.isDecompress());
+        CompletableFuture<Response> call = calls.get(key);
+        if (call == null) {
+            CompletableFuture<Response> created = new CompletableFuture<>();
+            call = calls.putIfAbsent(key, created);
+            if (call == null) {
+                try {
+                    Response response = fetch.get();
+                    created.complete(response);
+                    return response;
+                } catch (Throwable e) {
+                    created.completeExceptionally(e);
+                    throw e;
+                } finally {
+                    calls.remove(key, created);
+                }
+            }
+        }
+        try {
+            return new Response(call.join());
+        } catch (CompletionException e) {
+            throw e.getCause() != null ? e.getCause() : e;
+        }
+    }
+
+    /**
+     * The parts of a request which affect its response.
+     */
+    @EqualsAndHashCode
+    private static final class Key {
+        private final String url;
+        private final Params.Method method;
+        private final Map<String, String> headers;
+        private final boolean followRedirects;
+        private final boolean useCaches;
+        private final boolean decompress;
+
+        Key(String url, Params.Method method, Map<String, String> headers, boolean followRedirects, boolean useCaches, boolean decompress) {
+            this.url = url;
+            this.method = method;
+            this.headers = headers;
+            this.followRedirects = followRedirects;
+            this.useCaches = useCaches;
+            this.decompress = decompress;
+        }
+    }
+
+}
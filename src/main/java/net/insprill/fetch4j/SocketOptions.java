@@ -0,0 +1,144 @@
+package net.insprill.fetch4j;
+
+import lombok.Getter;
+
+/**
+ * Options for the sockets opened by a client's own transports. Options are immutable, so can be shared between clients.
+ * Requests sent through {@link java.net.HttpURLConnection}, like ones through a proxy, use the JVM's defaults instead.
+ *
+ * @see FetchClient.Builder#socketOptions(SocketOptions)
+ */
+@Getter
+public final class SocketOptions {
+
+    /**
+     * The options used when none are set.
+     */
+    public static final SocketOptions DEFAULT = builder().build();
+
+    /**
+     * Whether Nagle's algorithm is disabled ({@code TCP_NODELAY}).
+     */
+    private final boolean tcpNoDelay;
+    /**
+     * Whether TCP keep-alive probes are sent on idle connections ({@code SO_KEEPALIVE}).
+     */
+    private final boolean keepAlive;
+    /**
+     * The size of the socket's send buffer in bytes ({@code SO_SNDBUF}), or {@code 0} for the OS default.
+     */
+    private final int sendBufferSize;
+    /**
+     * The size of the socket's receive buffer in bytes ({@code SO_RCVBUF}), or {@code 0} for the OS default.
+     */
+    private final int receiveBufferSize;
+    /**
+     * The size of the buffers requests are written through and responses are read through, in bytes.
+     */
+    private final int bufferSize;
+
+    private SocketOptions(Builder builder) {
+        this.tcpNoDelay = builder.tcpNoDelay;
+        this.keepAlive = builder.keepAlive;
+        this.sendBufferSize = builder.sendBufferSize;
+        this.receiveBufferSize = builder.receiveBufferSize;
+        this.bufferSize = builder.bufferSize;
+    }
+
+    /**
+     * @return A new builder for configuring socket options.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public String toString() {
+        return "SocketOptions{" +
+                "tcpNoDelay=" + tcpNoDelay +
+                ", keepAlive=" + keepAlive +
+                ", sendBufferSize=" + sendBufferSize +
+                ", receiveBufferSize=" + receiveBufferSize +
+                ", bufferSize=" + bufferSize +
+                '}';
+    }
+
+    /**
+     * Builder used to configure {@link SocketOptions}.
+     */
+    public static class Builder {
+
+        private boolean tcpNoDelay = true;
+        private boolean keepAlive;
+        private int sendBufferSize;
+        private int receiveBufferSize;
+        private int bufferSize = 8192;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets whether Nagle's algorithm is disabled, so small writes like request heads are sent immediately.
+         * Defaults to true.
+         *
+         * @param tcpNoDelay Whether to set {@code TCP_NODELAY}.
+         * @return The options builder.
+         */
+        public Builder tcpNoDelay(boolean tcpNoDelay) {
+            this.tcpNoDelay = tcpNoDelay;
+            return this;
+        }
+
+        /**
+         * Sets whether TCP keep-alive probes are sent on idle connections, detecting dead peers. Defaults to false.
+         *
+         * @param keepAlive Whether to set {@code SO_KEEPALIVE}.
+         * @return The options builder.
+         */
+        public Builder keepAlive(boolean keepAlive) {
+            this.keepAlive = keepAlive;
+            return this;
+        }
+
+        /**
+         * Sets the sizes of the socket's send and receive buffers, which bound how much can be in flight on a connection.
+         * Larger receive buffers help downloads over high latency links. Defaults to the OS defaults.
+         *
+         * @param sendBufferSize    Send buffer size in bytes, or {@code 0} for the OS default.
+         * @param receiveBufferSize Receive buffer size in bytes, or {@code 0} for the OS default.
+         * @return The options builder.
+         * @throws IllegalArgumentException If a size is negative.
+         */
+        public Builder socketBufferSizes(int sendBufferSize, int receiveBufferSize) {
+            if (sendBufferSize < 0 || receiveBufferSize < 0)
+                throw new IllegalArgumentException("Buffer sizes must not be negative");
+            this.sendBufferSize = sendBufferSize;
+            this.receiveBufferSize = receiveBufferSize;
+            return this;
+        }
+
+        /**
+         * Sets the size of the buffers requests are written through and responses are read through.
+         * Response heads are parsed straight out of the read buffer. Defaults to 8 KiB.
+         *
+         * @param bufferSize Buffer size in bytes.
+         * @return The options builder.
+         * @throws IllegalArgumentException If {@code bufferSize} is less than 512 bytes.
+         */
+        public Builder bufferSize(int bufferSize) {
+            if (bufferSize < 512)
+                throw new IllegalArgumentException("bufferSize must be at least 512 bytes");
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        /**
+         * @return New socket options with this builder's configuration.
+         */
+        public SocketOptions build() {
+            return new SocketOptions(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,80 @@
+package net.insprill.fetch4j;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * A task submitted to an executor, which a thread waiting for it can run itself if the executor hasn't started it yet.
+ * A thread of a bounded executor waiting for work queued behind it on the same executor would otherwise deadlock
+ * once every thread is waiting like it.
+ *
+ * @param <T> The type of the task's result.
+ */
+final class StealableTask<T> implements Runnable {
+
+    private final Supplier<T> task;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final CompletableFuture<T> future = new CompletableFuture<>();
+
+    private StealableTask(Supplier<T> task) {
+        this.task = task;
+    }
+
+    /**
+     * Submits a task to an executor. If the executor rejects it, it's left for the waiting thread to run.
+     *
+     * @param task     The task.
+     * @param executor The executor to run it on.
+     * @return The submitted task.
+     */
+    static <T> StealableTask<T> submit(Supplier<T> task, Executor executor) {
+        StealableTask<T> submitted = new StealableTask<>(task);
+        try {
+            executor.execute(submitted);
+        } catch (RejectedExecutionException ignored) {
+            // Run by whoever waits for it.
+        }
+        return submitted;
+    }
+
+    @Override
+    public void run() {
+        runIfNotStarted();
+    }
+
+    /**
+     * Runs the task on the calling thread, unless it has already been started or cancelled.
+     *
+     * @return True if the task was run, false otherwise.
+     */
+    boolean runIfNotStarted() {
+        if (!started.compareAndSet(false, true))
+            return false;
+        try {
+            future.complete(task.get());
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+        }
+        return true;
+    }
+
+    /**
+     * Cancels the task if it hasn't been started, so the executor doesn't run it once it gets round to it.
+     */
+    void cancelIfNotStarted() {
+        if (started.compareAndSet(false, true)) {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * @return A future completed with the result of the task, or cancelled if the task was.
+     */
+    CompletableFuture<T> getFuture() {
+        return future;
+    }
+
+}
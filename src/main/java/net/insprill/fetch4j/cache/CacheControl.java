@@ -0,0 +1,140 @@
+package net.insprill.fetch4j.cache;
+
+import lombok.Getter;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The directives of {@code Cache-Control} headers, as described in RFC 7234 section 5.2.
+ * Durations are in seconds, or -1 if absent.
+ *
+ * @see net.insprill.fetch4j.Response#getCacheControl()
+ */
+@Getter
+public final class CacheControl {
+
+    /**
+     * No directives.
+     */
+    public static final CacheControl EMPTY = new CacheControl();
+
+    boolean noCache;
+    boolean noStore;
+    boolean mustRevalidate;
+    boolean isPublic;
+    boolean onlyIfCached;
+    long maxAge = -1;
+    long sMaxAge = -1;
+    long maxStale = -1;
+    long minFresh = -1;
+
+    private CacheControl() {
+    }
+
+    /**
+     * Parses all values of a {@code Cache-Control} header.
+     * A {@code Pragma: no-cache} header is treated as {@code no-cache} when there are none.
+     *
+     * @param values The header values, or {@code null} if there are none.
+     * @param pragma The {@code Pragma} header value, or {@code null} if there isn't one.
+     * @return The parsed directives.
+     */
+    public static CacheControl parse(List<String> values, String pragma) {
+        if (values == null || values.isEmpty()) {
+            if (pragma == null || !pragma.toLowerCase(Locale.ROOT).contains("no-cache"))
+                return EMPTY;
+            CacheControl cacheControl = new CacheControl();
+            cacheControl.noCache = true;
+            return cacheControl;
+        }
+        CacheControl cacheControl = new CacheControl();
+        for (String value : values) {
+            cacheControl.parse(value);
+        }
+        return cacheControl;
+    }
+
+    private void parse(String value) {
+        int pos = 0;
+        int len = value.length();
+        while (pos < len) {
+            int end = pos;
+            while (end < len && value.charAt(end) != ',' && value.charAt(end) != '=') {
+                end++;
+            }
+            String directive = value.substring(pos, end).trim().toLowerCase(Locale.ROOT);
+            String argument = null;
+            pos = end;
+            if (pos < len && value.charAt(pos) == '=') {
+                pos++;
+                if (pos < len && value.charAt(pos) == '"') {
+                    int close = value.indexOf('"', pos + 1);
+                    if (close == -1)
+                        close = len;
+                    argument = value.substring(pos + 1, close);
+                    pos = close + 1;
+                    while (pos < len && value.charAt(pos) != ',') {
+                        pos++;
+                    }
+                } else {
+                    end = value.indexOf(',', pos);
+                    if (end == -1)
+                        end = len;
+                    argument = value.substring(pos, end).trim();
+                    pos = end;
+                }
+            }
+            pos++; // Skip the comma.
+            apply(directive, argument);
+        }
+    }
+
+    private void apply(String directive, String argument) {
+        switch (directive) {
+            case "no-cache":
+                noCache = true;
+                break;
+            case "no-store":
+                noStore = true;
+                break;
+            case "must-revalidate":
+            case "proxy-revalidate":
+                mustRevalidate = true;
+                break;
+            case "public":
+                isPublic = true;
+                break;
+            case "only-if-cached":
+                onlyIfCached = true;
+                break;
+            case "max-age":
+                maxAge = parseSeconds(argument, -1);
+                break;
+            case "s-maxage":
+                sMaxAge = parseSeconds(argument, -1);
+                break;
+            case "max-stale":
+                maxStale = parseSeconds(argument, Long.MAX_VALUE);
+                break;
+            case "min-fresh":
+                minFresh = parseSeconds(argument, -1);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static long parseSeconds(String argument, long defaultValue) {
+        if (argument == null || argument.isEmpty())
+            return defaultValue;
+        try {
+            long seconds = Long.parseLong(argument);
+            return Math.max(0, seconds);
+        } catch (NumberFormatException e) {
+            // Too large values count as the maximum, others are invalid.
+            return argument.chars().allMatch(Character::isDigit) ? Long.MAX_VALUE : defaultValue;
+        }
+    }
+
+}
@@ -0,0 +1,233 @@
+package net.insprill.fetch4j.cache;
+
+import net.insprill.fetch4j.transport.Exchange;
+import net.insprill.fetch4j.util.HttpDates;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A stored response, along with what's needed to select it and work out its freshness.
+ */
+final class CacheEntry {
+
+    private static final String[] UNUPDATABLE_HEADERS = {
+            "Connection", "Keep-Alive", "Proxy-Authenticate", "Proxy-Authorization", "TE", "Trailer", "Transfer-Encoding",
+            "Upgrade", "Content-Length", "Content-Encoding", "Content-Type",
+    };
+
+    final String url;
+    /**
+     * Values of the request headers named by the response's {@code Vary} header, keyed by lower-case name.
+     */
+    final Map<String, String> varyHeaders;
+    final int status;
+    final String statusText;
+    final Map<String, List<String>> headers;
+    final long requestTime;
+    final long responseTime;
+    /**
+     * The body, if it's held in memory.
+     */
+    final byte[] body;
+    /**
+     * The file holding the body, if it isn't held in memory.
+     */
+    final Path bodyFile;
+    final long bodyLength;
+
+    CacheEntry(String url, Map<String, String> varyHeaders, int status, String statusText, Map<String, List<String>> headers,
+               long requestTime, long responseTime, byte[] body, Path bodyFile, long bodyLength) {
+        this.url = url;
+        this.varyHeaders = varyHeaders;
+        this.status = status;
+        this.statusText = statusText;
+        this.headers = headers;
+        this.requestTime = requestTime;
+        this.responseTime = responseTime;
+        this.body = body;
+        this.bodyFile = bodyFile;
+        this.bodyLength = bodyLength;
+    }
+
+    /**
+     * Copies the headers of an exchange into a case-insensitive map.
+     *
+     * @param headers The headers.
+     * @return An unmodifiable, case-insensitive copy of the headers.
+     */
+    static Map<String, List<String>> copyHeaders(Map<String, List<String>> headers) {
+        Map<String, List<String>> copy = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            // HttpURLConnection includes the status line with a null name.
+            if (header.getKey() != null) {
+                copy.put(header.getKey(), Collections.unmodifiableList(header.getValue()));
+            }
+        }
+        return Collections.unmodifiableMap(copy);
+    }
+
+    String getHeader(String name) {
+        List<String> values = headers.get(name);
+        return values == null || values.isEmpty() ? null : values.get(values.size() - 1);
+    }
+
+    CacheControl getCacheControl() {
+        return CacheControl.parse(headers.get("Cache-Control"), getHeader("Pragma"));
+    }
+
+    /**
+     * Checks whether this entry can be used without revalidating it, as described in RFC 7234 section 4.2.
+     *
+     * @param now            The current time in milliseconds.
+     * @param requestControl The request's cache directives.
+     * @return True if the entry is fresh enough for the request, false otherwise.
+     */
+    boolean isFresh(long now, CacheControl requestControl) {
+        CacheControl responseControl = getCacheControl();
+        if (requestControl.noCache || responseControl.noCache)
+            return false;
+        long lifetime = getFreshnessLifetime(responseControl);
+        if (requestControl.maxAge != -1) {
+            lifetime = Math.min(lifetime, toMillis(requestControl.maxAge));
+        }
+        long age = getAge(now);
+        if (requestControl.minFresh != -1) {
+            age = saturatedAdd(age, toMillis(requestControl.minFresh));
+        }
+        if (requestControl.maxStale != -1 && !responseControl.mustRevalidate) {
+            lifetime = saturatedAdd(lifetime, toMillis(requestControl.maxStale));
+        }
+        return age < lifetime;
+    }
+
+    /**
+     * @return True if the entry has a validator it can be revalidated with, false otherwise.
+     */
+    boolean hasValidator() {
+        return getHeader("ETag") != null || getHeader("Last-Modified") != null;
+    }
+
+    /**
+     * Creates the entry to store after a {@code 304 Not Modified} response, as described in RFC 7234 section 4.3.4.
+     *
+     * @param notModified  The headers of the 304 response.
+     * @param requestTime  When the revalidation request was sent.
+     * @param responseTime When the revalidation response was received.
+     * @return The updated entry.
+     */
+    CacheEntry update(Map<String, List<String>> notModified, long requestTime, long responseTime) {
+        Map<String, List<String>> updated = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        updated.putAll(headers);
+        for (Map.Entry<String, List<String>> header : notModified.entrySet()) {
+            if (header.getKey() != null && isUpdatable(header.getKey())) {
+                updated.put(header.getKey(), Collections.unmodifiableList(header.getValue()));
+            }
+        }
+        return new CacheEntry(url, varyHeaders, status, statusText, Collections.unmodifiableMap(updated),
+                requestTime, responseTime, body, bodyFile, bodyLength);
+    }
+
+    /**
+     * @param body The body held in memory.
+     * @return A copy of this entry with its body held in memory.
+     */
+    CacheEntry withBody(byte[] body) {
+        return new CacheEntry(url, varyHeaders, status, statusText, headers, requestTime, responseTime, body, null, body.length);
+    }
+
+    /**
+     * @return An estimate of the memory used by this entry.
+     */
+    long getWeight() {
+        long weight = 256 + url.length() * 2L + (body == null ? 0 : body.length);
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            weight += 64 + header.getKey().length() * 2L;
+            for (String value : header.getValue()) {
+                weight += 32 + value.length() * 2L;
+            }
+        }
+        return weight;
+    }
+
+    /**
+     * @return A new exchange serving this entry.
+     */
+    Exchange toExchange() {
+        return new CachedExchange(status, statusText, headers, () -> {
+            if (body != null)
+                return new ByteArrayInputStream(body);
+            return Files.newInputStream(bodyFile);
+        });
+    }
+
+    private long getFreshnessLifetime(CacheControl responseControl) {
+        if (responseControl.maxAge != -1)
+            return toMillis(responseControl.maxAge);
+        long date = getServedDate();
+        String expires = getHeader("Expires");
+        if (expires != null) {
+            long expiresAt = HttpDates.parse(expires);
+            return expiresAt == -1 ? 0 : Math.max(0, expiresAt - date);
+        }
+        // Heuristic freshness, as suggested by RFC 7234 section 4.2.2, for responses without explicit expiry.
+        long lastModified = HttpDates.parse(getHeader("Last-Modified"));
+        if (lastModified != -1 && HttpCache.isHeuristicallyCacheable(status) && !url.contains("?")) {
+            return Math.max(0, (date - lastModified) / 10);
+        }
+        return 0;
+    }
+
+    private long getServedDate() {
+        long date = HttpDates.parse(getHeader("Date"));
+        return date == -1 ? responseTime : date;
+    }
+
+    private long getAge(long now) {
+        long apparentAge = Math.max(0, responseTime - getServedDate());
+        long ageValue = 0;
+        String age = getHeader("Age");
+        if (age != null) {
+            try {
+                ageValue = toMillis(Math.max(0, Long.parseLong(age.trim())));
+            } catch (NumberFormatException ignored) {
+                // Invalid Age headers are ignored.
+            }
+        }
+        long correctedAge = saturatedAdd(ageValue, responseTime - requestTime);
+        return saturatedAdd(Math.max(apparentAge, correctedAge), Math.max(0, now - responseTime));
+    }
+
+    private static boolean isUpdatable(String name) {
+        for (String header : UNUPDATABLE_HEADERS) {
+            if (header.equalsIgnoreCase(name))
+                return false;
+        }
+        return true;
+    }
+
+    private static long toMillis(long seconds) {
+        return seconds > Long.MAX_VALUE / 1000 ? Long.MAX_VALUE : seconds * 1000;
+    }
+
+    private static long saturatedAdd(long a, long b) {
+        long sum = a + b;
+        return ((a ^ sum) & (b ^ sum)) < 0 ? Long.MAX_VALUE : sum;
+    }
+
+    /**
+     * Opens a stored body.
+     */
+    @FunctionalInterface
+    interface BodyOpener {
+        InputStream open() throws IOException;
+    }
+
+}
@@ -0,0 +1,75 @@
+package net.insprill.fetch4j.cache;
+
+import net.insprill.fetch4j.transport.Exchange;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An exchange served from the cache instead of the network.
+ */
+final class CachedExchange implements Exchange {
+
+    private final int status;
+    private final String statusText;
+    private final Map<String, List<String>> headers;
+    private final CacheEntry.BodyOpener bodyOpener;
+    private InputStream body;
+
+    /**
+     * @param status     The response code.
+     * @param statusText The response message.
+     * @param headers    Unmodifiable, case-insensitive response headers.
+     * @param bodyOpener Opens the body, or {@code null} if there isn't one.
+     */
+    CachedExchange(int status, String statusText, Map<String, List<String>> headers, CacheEntry.BodyOpener bodyOpener) {
+        this.status = status;
+        this.statusText = statusText;
+        this.headers = headers;
+        this.bodyOpener = bodyOpener;
+    }
+
+    @Override
+    public int getStatus() {
+        return status;
+    }
+
+    @Override
+    public String getStatusText() {
+        return statusText;
+    }
+
+    @Override
+    public String getHeader(String name) {
+        List<String> values = headers.get(name);
+        return values == null || values.isEmpty() ? null : values.get(values.size() - 1);
+    }
+
+    @Override
+    public Map<String, List<String>> getHeaders() {
+        return headers;
+    }
+
+    @Override
+    public InputStream getBody() throws IOException {
+        if (body == null && bodyOpener != null) {
+            body = bodyOpener.open();
+        }
+        return body;
+    }
+
+    @Override
+    public void disconnect() {
+        // There's no connection.
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (body != null) {
+            body.close();
+        }
+    }
+
+}
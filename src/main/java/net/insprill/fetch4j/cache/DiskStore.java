@@ -0,0 +1,359 @@
+package net.insprill.fetch4j.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The on-disk tier of the cache, evicting the least recently used entries once over its size.
+ * Each entry is stored as a {@code .meta} file holding its status and headers, and a {@code .body} file.
+ */
+final class DiskStore {
+
+    private static final int FORMAT_VERSION = 1;
+    private static final String META_SUFFIX = ".meta";
+    private static final String BODY_SUFFIX = ".body";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path directory;
+    private final long maxSize;
+    /**
+     * The size of each stored entry, by key, in least recently used order.
+     */
+    private final Map<String, Long> index = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+
+    DiskStore(Path directory, long maxSize) throws IOException {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        Files.createDirectories(directory);
+        List<Path> metas = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    Files.deleteIfExists(file);
+                } else if (name.endsWith(META_SUFFIX)) {
+                    metas.add(file);
+                }
+            }
+        }
+        metas.sort(Comparator.comparing(DiskStore::lastModified));
+        for (Path meta : metas) {
+            String name = meta.getFileName().toString();
+            String key = name.substring(0, name.length() - META_SUFFIX.length());
+            Path body = bodyFile(key);
+            if (!Files.exists(body)) {
+                Files.deleteIfExists(meta);
+                continue;
+            }
+            long entrySize = Files.size(meta) + Files.size(body);
+            index.put(key, entrySize);
+            size += entrySize;
+        }
+        evict();
+    }
+
+    /**
+     * Creates a temporary file to write a body to before it's stored.
+     *
+     * @return The temporary file.
+     * @throws IOException If the file couldn't be created.
+     */
+    Path newTempFile() throws IOException {
+        return Files.createTempFile(directory, "body", TEMP_SUFFIX);
+    }
+
+    synchronized CacheEntry get(String url) {
+        String key = key(url);
+        if (!index.containsKey(key))
+            return null;
+        Path meta = metaFile(key);
+        CacheEntry entry;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(meta)))) {
+            entry = readEntry(in, bodyFile(key));
+        } catch (IOException e) {
+            delete(key);
+            return null;
+        }
+        if (!entry.url.equals(url))
+            return null;
+        try {
+            // Keep the order of entries across restarts.
+            Files.setLastModifiedTime(meta, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException ignored) {
+            // Only affects eviction order.
+        }
+        return entry;
+    }
+
+    /**
+     * Stores an entry, moving its body into place.
+     *
+     * @param entry    The entry.
+     * @param tempBody The temporary file holding the body, from {@link #newTempFile()}.
+     */
+    synchronized void put(CacheEntry entry, Path tempBody) {
+        String key = key(entry.url);
+        try {
+            move(tempBody, bodyFile(key));
+            writeMeta(key, entry);
+        } catch (IOException e) {
+            delete(key);
+            return;
+        }
+        account(key);
+        evict();
+    }
+
+    /**
+     * Replaces the headers of a stored entry, keeping its body.
+     *
+     * @param entry The updated entry.
+     */
+    synchronized void update(CacheEntry entry) {
+        String key = key(entry.url);
+        if (!index.containsKey(key))
+            return;
+        try {
+            writeMeta(key, entry);
+        } catch (IOException e) {
+            delete(key);
+            return;
+        }
+        account(key);
+        evict();
+    }
+
+    synchronized void remove(String url) {
+        delete(key(url));
+    }
+
+    synchronized void clear() {
+        for (String key : new ArrayList<>(index.keySet())) {
+            delete(key);
+        }
+    }
+
+    synchronized long getSize() {
+        return size;
+    }
+
+    private void writeMeta(String key, CacheEntry entry) throws IOException {
+        Path temp = Files.createTempFile(directory, "meta", TEMP_SUFFIX);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            writeEntry(out, entry);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        move(temp, metaFile(key));
+    }
+
+    private void account(String key) {
+        Long previous = index.remove(key);
+        if (previous != null) {
+            size -= previous;
+        }
+        try {
+            long entrySize = Files.size(metaFile(key)) + Files.size(bodyFile(key));
+            index.put(key, entrySize);
+            size += entrySize;
+        } catch (IOException e) {
+            delete(key);
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+        while (size > maxSize && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            it.remove();
+            size -= eldest.getValue();
+            deleteFiles(eldest.getKey());
+        }
+    }
+
+    private void delete(String key) {
+        Long previous = index.remove(key);
+        if (previous != null) {
+            size -= previous;
+        }
+        deleteFiles(key);
+    }
+
+    private void deleteFiles(String key) {
+        try {
+            Files.deleteIfExists(metaFile(key));
+            Files.deleteIfExists(bodyFile(key));
+        } catch (IOException ignored) {
+            // Overwritten or cleaned up on the next start.
+        }
+    }
+
+    private Path metaFile(String key) {
+        return directory.resolve(key + META_SUFFIX);
+    }
+
+    private Path bodyFile(String key) {
+        return directory.resolve(key + BODY_SUFFIX);
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static String key(String url) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // region Serialization
+
+    private static void writeEntry(DataOutputStream out, CacheEntry entry) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        writeString(out, entry.url);
+        out.writeInt(entry.varyHeaders.size());
+        for (Map.Entry<String, String> header : entry.varyHeaders.entrySet()) {
+            writeString(out, header.getKey());
+            writeString(out, header.getValue());
+        }
+        out.writeInt(entry.status);
+        writeString(out, entry.statusText);
+        out.writeLong(entry.requestTime);
+        out.writeLong(entry.responseTime);
+        out.writeLong(entry.bodyLength);
+        out.writeInt(entry.headers.size());
+        for (Map.Entry<String, List<String>> header : entry.headers.entrySet()) {
+            writeString(out, header.getKey());
+            out.writeInt(header.getValue().size());
+            for (String value : header.getValue()) {
+                writeString(out, value);
+            }
+        }
+    }
+
+    private static CacheEntry readEntry(DataInputStream in, Path bodyFile) throws IOException {
+        if (in.readInt() != FORMAT_VERSION)
+            throw new IOException("Unsupported cache entry version");
+        String url = readString(in);
+        int varyCount = in.readInt();
+        Map<String, String> varyHeaders = new LinkedHashMap<>();
+        for (int i = 0; i < varyCount; i++) {
+            varyHeaders.put(readString(in), readString(in));
+        }
+        int status = in.readInt();
+        String statusText = readString(in);
+        long requestTime = in.readLong();
+        long responseTime = in.readLong();
+        long bodyLength = in.readLong();
+        int headerCount = in.readInt();
+        Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (int i = 0; i < headerCount; i++) {
+            String name = readString(in);
+            int valueCount = in.readInt();
+            List<String> values = new ArrayList<>(valueCount);
+            for (int j = 0; j < valueCount; j++) {
+                values.add(readString(in));
+            }
+            headers.put(name, Collections.unmodifiableList(values));
+        }
+        return new CacheEntry(url, Collections.unmodifiableMap(varyHeaders), status, statusText, Collections.unmodifiableMap(headers),
+                requestTime, responseTime, null, bodyFile, bodyLength);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length == -1)
+            return null;
+        if (length < 0 || length > 1 << 20)
+            throw new IOException("Corrupt cache entry");
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // endregion
+
+    /**
+     * Reads a stored body into memory.
+     *
+     * @param entry   The entry.
+     * @param maxSize The largest body to read.
+     * @return The body, or {@code null} if it's larger than {@code maxSize} or couldn't be read.
+     */
+    static byte[] readBody(CacheEntry entry, long maxSize) {
+        if (entry.bodyLength > maxSize)
+            return null;
+        try (InputStream in = Files.newInputStream(entry.bodyFile)) {
+            byte[] body = new byte[(int) entry.bodyLength];
+            int off = 0;
+            int n;
+            while (off < body.length && (n = in.read(body, off, body.length - off)) != -1) {
+                off += n;
+            }
+            return off == body.length ? body : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return A stream writing a body to a temporary file.
+     */
+    static OutputStream openTemp(Path temp) throws IOException {
+        return new BufferedOutputStream(Files.newOutputStream(temp), 8192);
+    }
+
+}
@@ -0,0 +1,567 @@
+package net.insprill.fetch4j.cache;
+
+import net.insprill.fetch4j.FetchClient;
+import net.insprill.fetch4j.Params;
+import net.insprill.fetch4j.transport.Exchange;
+import net.insprill.fetch4j.transport.Transport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A private HTTP cache, as described in RFC 7234, storing responses in memory and optionally on disk.
+ * <p>
+ * Fresh responses are served without contacting the server, and stale ones with an {@code ETag} or
+ * {@code Last-Modified} header are revalidated with a conditional request, reusing the stored body
+ * when the server responds with {@code 304 Not Modified}.
+ * Only responses to GET requests are stored, and only while {@link Params#useCaches(boolean)} is enabled.
+ * Bodies are stored as they're received, so compressed responses stay compressed in the cache.
+ *
+ * @see FetchClient.Builder#cache(HttpCache)
+ */
+public final class HttpCache {
+
+    private final MemoryStore memory;
+    private final DiskStore disk;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong revalidatedCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    private HttpCache(Builder builder) {
+        this.memory = new MemoryStore(builder.maxMemorySize);
+        try {
+            this.disk = builder.directory == null ? null : new DiskStore(builder.directory, builder.maxDiskSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open cache directory " + builder.directory, e);
+        }
+    }
+
+    /**
+     * @return A new builder for configuring a cache.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Sends a request through the cache, serving it from the cache if possible,
+     * and storing the response if it's cacheable.
+     *
+     * @param url       The URL to request.
+     * @param params    The parameters of the request.
+     * @param transport The transport to send the request with if it can't be served from the cache.
+     * @return The exchange, which may not have touched the network.
+     * @throws IOException If the request fails.
+     */
+    public Exchange execute(URL url, Params params, Transport transport) throws IOException {
+        String key = url.toExternalForm();
+        Params.Method method = params.getMethod();
+        if (method != Params.Method.GET) {
+            Exchange exchange = transport.execute(url, params);
+            // Unsafe methods invalidate what's stored for the URL, as described in RFC 7234 section 4.4.
+            if (method != Params.Method.HEAD && method != Params.Method.OPTIONS && method != Params.Method.TRACE && exchange.getStatus() < 400) {
+                remove(key);
+            }
+            return exchange;
+        }
+        // Leave range and conditional requests made by the caller alone.
+        if (hasHeader(params, "Range") || hasHeader(params, "If-None-Match") || hasHeader(params, "If-Modified-Since")
+                || hasHeader(params, "If-Match") || hasHeader(params, "If-Unmodified-Since"))
+            return transport.execute(url, params);
+
+        CacheControl requestControl = CacheControl.parse(getHeaders(params, "Cache-Control"), getHeader(params, "Pragma"));
+        CacheEntry entry = requestControl.noStore ? null : get(key, params);
+        Params request = params;
+        if (entry != null) {
+            if (entry.isFresh(System.currentTimeMillis(), requestControl)) {
+                hitCount.incrementAndGet();
+                params.getEventListener().cacheHit();
+                return entry.toExchange();
+            }
+            if (!requestControl.onlyIfCached && entry.hasValidator()) {
+                request = params.copy();
+                String etag = entry.getHeader("ETag");
+                if (etag != null) {
+                    request.header("If-None-Match", etag);
+                }
+                String lastModified = entry.getHeader("Last-Modified");
+                if (lastModified != null) {
+                    request.header("If-Modified-Since", lastModified);
+                }
+            } else {
+                entry = null;
+            }
+        }
+        if (requestControl.onlyIfCached) {
+            missCount.incrementAndGet();
+            return new CachedExchange(504, "Gateway Timeout", Collections.emptyMap(), null);
+        }
+
+        long requestTime = System.currentTimeMillis();
+        Exchange exchange = transport.execute(url, request);
+        long responseTime = System.currentTimeMillis();
+        if (entry != null && exchange.getStatus() == 304) {
+            discard(exchange);
+            CacheEntry updated = entry.update(exchange.getHeaders(), requestTime, responseTime);
+            if (updated.body != null) {
+                memory.put(updated);
+            }
+            if (disk != null) {
+                disk.update(updated);
+            }
+            revalidatedCount.incrementAndGet();
+            return updated.toExchange();
+        }
+        missCount.incrementAndGet();
+        if (!isStorable(params, requestControl, exchange)) {
+            if (entry != null) {
+                remove(key);
+            }
+            return exchange;
+        }
+        Map<String, List<String>> headers = CacheEntry.copyHeaders(exchange.getHeaders());
+        CacheEntry template = new CacheEntry(key, getVaryHeaders(headers, params), exchange.getStatus(), exchange.getStatusText(),
+                headers, requestTime, responseTime, null, null, 0);
+        return new StoringExchange(exchange, template);
+    }
+
+    /**
+     * @return The number of requests served from the cache without contacting the server.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return The number of requests served from the cache after the server confirmed the stored response was still valid.
+     */
+    public long getRevalidatedCount() {
+        return revalidatedCount.get();
+    }
+
+    /**
+     * @return The number of GET requests that couldn't be served from the cache.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return The estimated number of bytes used by the in-memory tier.
+     */
+    public long getMemorySize() {
+        return memory.getSize();
+    }
+
+    /**
+     * @return The number of bytes used by the on-disk tier, or 0 if there isn't one.
+     */
+    public long getDiskSize() {
+        return disk == null ? 0 : disk.getSize();
+    }
+
+    /**
+     * Removes everything stored in the cache.
+     */
+    public void evictAll() {
+        memory.clear();
+        if (disk != null) {
+            disk.clear();
+        }
+    }
+
+    private CacheEntry get(String key, Params params) {
+        CacheEntry entry = memory.get(key);
+        if (entry == null && disk != null) {
+            entry = disk.get(key);
+            if (entry != null) {
+                byte[] body = DiskStore.readBody(entry, memory.getMaxBodySize());
+                if (body != null) {
+                    entry = entry.withBody(body);
+                    memory.put(entry);
+                }
+            }
+        }
+        if (entry == null)
+            return null;
+        for (Map.Entry<String, String> vary : entry.varyHeaders.entrySet()) {
+            String value = getHeader(params, vary.getKey());
+            if (value == null ? vary.getValue() != null : !value.equals(vary.getValue()))
+                return null;
+        }
+        return entry;
+    }
+
+    private void remove(String key) {
+        memory.remove(key);
+        if (disk != null) {
+            disk.remove(key);
+        }
+    }
+
+    /**
+     * Checks whether a response may be stored, as described in RFC 7234 section 3.
+     */
+    private static boolean isStorable(Params params, CacheControl requestControl, Exchange exchange) {
+        if (requestControl.noStore)
+            return false;
+        Map<String, List<String>> headers = exchange.getHeaders();
+        CacheControl responseControl = CacheControl.parse(getValues(headers, "Cache-Control"), exchange.getHeader("Pragma"));
+        if (responseControl.noStore)
+            return false;
+        String vary = exchange.getHeader("Vary");
+        if (vary != null && vary.trim().equals("*"))
+            return false;
+        if (hasHeader(params, "Authorization") && !responseControl.isPublic && !responseControl.mustRevalidate && responseControl.sMaxAge == -1)
+            return false;
+        int status = exchange.getStatus();
+        boolean explicitExpiry = responseControl.maxAge != -1 || exchange.getHeader("Expires") != null;
+        if (!isHeuristicallyCacheable(status) && !(explicitExpiry && (status == 302 || status == 307)))
+            return false;
+        // Responses that are never fresh and can't be revalidated are of no use.
+        return explicitExpiry || exchange.getHeader("ETag") != null || exchange.getHeader("Last-Modified") != null;
+    }
+
+    /**
+     * @param status The response code.
+     * @return True if responses with the code may be stored without explicit freshness information.
+     */
+    static boolean isHeuristicallyCacheable(int status) {
+        switch (status) {
+            case 200:
+            case 203:
+            case 204:
+            case 300:
+            case 301:
+            case 308:
+            case 404:
+            case 405:
+            case 410:
+            case 414:
+            case 501:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static Map<String, String> getVaryHeaders(Map<String, List<String>> headers, Params params) {
+        List<String> vary = headers.get("Vary");
+        if (vary == null)
+            return Collections.emptyMap();
+        Map<String, String> varyHeaders = new LinkedHashMap<>();
+        for (String value : vary) {
+            for (String name : value.split(",")) {
+                name = name.trim().toLowerCase(Locale.ROOT);
+                if (!name.isEmpty()) {
+                    varyHeaders.put(name, getHeader(params, name));
+                }
+            }
+        }
+        return Collections.unmodifiableMap(varyHeaders);
+    }
+
+    private static List<String> getValues(Map<String, List<String>> headers, String name) {
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey()))
+                return header.getValue();
+        }
+        return null;
+    }
+
+    private static String getHeader(Params params, String name) {
+        for (Map.Entry<String, String> header : params.getHeaders().entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey()))
+                return header.getValue();
+        }
+        return null;
+    }
+
+    private static List<String> getHeaders(Params params, String name) {
+        String value = getHeader(params, name);
+        return value == null ? null : Collections.singletonList(value);
+    }
+
+    private static boolean hasHeader(Params params, String name) {
+        return getHeader(params, name) != null;
+    }
+
+    private static void discard(Exchange exchange) {
+        try (InputStream body = exchange.getBody()) {
+            if (body == null)
+                return;
+            byte[] buf = new byte[512];
+            while (body.read(buf) != -1) ;
+        } catch (IOException ignored) {
+            exchange.disconnect();
+        }
+    }
+
+    /**
+     * An exchange storing its response in the cache once its body has been read until the end.
+     */
+    private final class StoringExchange implements Exchange {
+
+        private final Exchange exchange;
+        private final CacheEntry template;
+        private StoringStream body;
+
+        StoringExchange(Exchange exchange, CacheEntry template) {
+            this.exchange = exchange;
+            this.template = template;
+        }
+
+        @Override
+        public int getStatus() {
+            return exchange.getStatus();
+        }
+
+        @Override
+        public String getStatusText() {
+            return exchange.getStatusText();
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return exchange.getHeader(name);
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaders() {
+            return exchange.getHeaders();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (body == null) {
+                InputStream raw = exchange.getBody();
+                if (raw == null) {
+                    storeEmpty();
+                    return null;
+                }
+                body = new StoringStream(raw);
+            }
+            return body;
+        }
+
+        @Override
+        public void disconnect() {
+            exchange.disconnect();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (body != null) {
+                body.close();
+            } else {
+                exchange.close();
+            }
+        }
+
+        private void storeEmpty() {
+            CacheEntry entry = new CacheEntry(template.url, template.varyHeaders, template.status, template.statusText,
+                    template.headers, template.requestTime, template.responseTime, new byte[0], null, 0);
+            memory.put(entry);
+            if (disk != null) {
+                try {
+                    disk.put(entry, disk.newTempFile());
+                } catch (IOException ignored) {
+                    // Still stored in memory.
+                }
+            }
+        }
+
+        /**
+         * Copies the body into the cache as it's read.
+         */
+        private final class StoringStream extends InputStream {
+
+            private final InputStream raw;
+            private ByteArrayOutputStream memoryCopy = new ByteArrayOutputStream();
+            private Path diskFile;
+            private OutputStream diskCopy;
+            private long length;
+            private boolean done;
+
+            StoringStream(InputStream raw) {
+                this.raw = raw;
+                if (disk != null) {
+                    try {
+                        diskFile = disk.newTempFile();
+                        diskCopy = DiskStore.openTemp(diskFile);
+                    } catch (IOException e) {
+                        abortDisk();
+                    }
+                }
+            }
+
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n;
+                try {
+                    n = raw.read(b, off, len);
+                } catch (IOException | RuntimeException e) {
+                    abort();
+                    throw e;
+                }
+                if (n == -1) {
+                    finish();
+                    return -1;
+                }
+                copy(b, off, n);
+                return n;
+            }
+
+            @Override
+            public int available() throws IOException {
+                return raw.available();
+            }
+
+            @Override
+            public void close() throws IOException {
+                abort();
+                raw.close();
+            }
+
+            private void copy(byte[] b, int off, int n) {
+                if (done)
+                    return;
+                length += n;
+                if (memoryCopy != null) {
+                    if (length > memory.getMaxBodySize()) {
+                        memoryCopy = null;
+                    } else {
+                        memoryCopy.write(b, off, n);
+                    }
+                }
+                if (diskCopy != null) {
+                    try {
+                        diskCopy.write(b, off, n);
+                    } catch (IOException e) {
+                        abortDisk();
+                    }
+                }
+                if (memoryCopy == null && diskCopy == null) {
+                    done = true;
+                }
+            }
+
+            private void finish() {
+                if (done)
+                    return;
+                done = true;
+                Path file = null;
+                if (diskCopy != null) {
+                    try {
+                        diskCopy.close();
+                        file = diskFile;
+                    } catch (IOException e) {
+                        abortDisk();
+                    }
+                }
+                CacheEntry entry = new CacheEntry(template.url, template.varyHeaders, template.status, template.statusText,
+                        template.headers, template.requestTime, template.responseTime,
+                        memoryCopy == null ? null : memoryCopy.toByteArray(), null, length);
+                memory.put(entry);
+                if (file != null) {
+                    disk.put(entry, file);
+                }
+            }
+
+            private void abort() {
+                if (done)
+                    return;
+                done = true;
+                memoryCopy = null;
+                abortDisk();
+            }
+
+            private void abortDisk() {
+                if (diskCopy != null) {
+                    try {
+                        diskCopy.close();
+                    } catch (IOException ignored) {
+                        // Deleting it anyway.
+                    }
+                    diskCopy = null;
+                }
+                if (diskFile != null) {
+                    try {
+                        Files.deleteIfExists(diskFile);
+                    } catch (IOException ignored) {
+                        // Cleaned up on the next start.
+                    }
+                    diskFile = null;
+                }
+            }
+
+        }
+
+    }
+
+    /**
+     * Builder used to configure an {@link HttpCache}.
+     */
+    public static final class Builder {
+
+        private long maxMemorySize = 10 * 1024 * 1024;
+        private Path directory;
+        private long maxDiskSize;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the maximum number of bytes the in-memory tier may use. Defaults to 10 MiB.
+         * Bodies larger than a quarter of this are only stored on disk.
+         *
+         * @param maxSize Maximum size in bytes.
+         * @return The cache builder.
+         */
+        public Builder maxMemorySize(long maxSize) {
+            this.maxMemorySize = maxSize;
+            return this;
+        }
+
+        /**
+         * Enables the on-disk tier, which keeps responses across restarts.
+         *
+         * @param directory The directory to store responses in. Shouldn't be shared with anything else.
+         * @param maxSize   Maximum size in bytes.
+         * @return The cache builder.
+         */
+        public Builder directory(Path directory, long maxSize) {
+            this.directory = directory;
+            this.maxDiskSize = maxSize;
+            return this;
+        }
+
+        /**
+         * @return A new cache with this builder's configuration.
+         * @throws UncheckedIOException If the cache directory couldn't be opened.
+         */
+        public HttpCache build() {
+            return new HttpCache(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,66 @@
+package net.insprill.fetch4j.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The in-memory tier of the cache, evicting the least recently used entries once over its size.
+ */
+final class MemoryStore {
+
+    private final long maxSize;
+    private final Map<String, CacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+
+    MemoryStore(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return The largest body an entry may have to be kept in memory.
+     */
+    long getMaxBodySize() {
+        // Don't let a single entry push out everything else.
+        return maxSize / 4;
+    }
+
+    synchronized CacheEntry get(String url) {
+        return entries.get(url);
+    }
+
+    synchronized void put(CacheEntry entry) {
+        long weight = entry.getWeight();
+        if (entry.body == null || weight > maxSize) {
+            remove(entry.url);
+            return;
+        }
+        CacheEntry previous = entries.put(entry.url, entry);
+        if (previous != null) {
+            size -= previous.getWeight();
+        }
+        size += weight;
+        Iterator<CacheEntry> it = entries.values().iterator();
+        while (size > maxSize && it.hasNext()) {
+            size -= it.next().getWeight();
+            it.remove();
+        }
+    }
+
+    synchronized void remove(String url) {
+        CacheEntry previous = entries.remove(url);
+        if (previous != null) {
+            size -= previous.getWeight();
+        }
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    synchronized long getSize() {
+        return size;
+    }
+
+}
@@ -0,0 +1,22 @@
+package net.insprill.fetch4j.exception;
+
+/**
+ * Thrown when a request isn't sent because a client-side rate limit or concurrency limit
+ * couldn't be satisfied within the time allowed.
+ *
+ * @see net.insprill.fetch4j.RateLimiter
+ */
+public class RateLimitException extends FetchException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructs a new rate limit exception with the specified detail message.
+     *
+     * @param message The detail message.
+     */
+    public RateLimitException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,37 @@
+package net.insprill.fetch4j.transport;
+
+import net.insprill.fetch4j.Params;
+
+import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A transport which can send requests without blocking a thread while waiting for the response.
+ * {@link net.insprill.fetch4j.FetchClient#fetchAsync(String, Params)} sends requests through it when it can,
+ * instead of occupying one of the client's executor threads for the whole request.
+ *
+ * @see EventLoopTransport
+ */
+public interface AsyncTransport extends Transport {
+
+    /**
+     * Checks if a request can be sent with {@link #executeAsync(URL, Params)}.
+     * Requests which can't are sent with {@link #execute(URL, Params)} instead.
+     *
+     * @param params The parameters of the request.
+     * @return True if the request can be sent asynchronously, false otherwise.
+     */
+    boolean canExecuteAsync(Params params);
+
+    /**
+     * Sends a request without blocking the calling thread.
+     * The returned future may be completed on one of the transport's own threads,
+     * so stages depending on it must not block.
+     *
+     * @param url    The URL to request, including query parameters.
+     * @param params The parameters of the request.
+     * @return A future completed with the exchange, or exceptionally with an {@link java.io.IOException} if the request fails.
+     */
+    CompletableFuture<Exchange> executeAsync(URL url, Params params);
+
+}
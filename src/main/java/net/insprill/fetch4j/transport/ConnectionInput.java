@@ -0,0 +1,134 @@
+package net.insprill.fetch4j.transport;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ProtocolException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A buffered stream over a connection's socket. Unlike {@link java.io.BufferedInputStream} it isn't synchronized,
+ * as a connection is only read by one exchange at a time, and it finds lines straight in its buffer,
+ * so response heads can be parsed without copying each line out first.
+ */
+final class ConnectionInput extends InputStream {
+
+    private static final int MAX_LINE_LENGTH = 65536;
+
+    private final InputStream in;
+    private byte[] buffer;
+    private int position;
+    private int limit;
+    private int lineStart;
+
+    ConnectionInput(InputStream in, int bufferSize) {
+        this.in = in;
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * Reads a line terminated by CRLF (or a lone LF), which is left in the buffer.
+     * The line starts at {@link #lineStart()} in {@link #buffer()}, and is only valid until the stream is next read.
+     *
+     * @return The length of the line, without its terminator.
+     * @throws IOException If the stream ends before the line does, or the line is too long.
+     */
+    int readLine() throws IOException {
+        int scanned = 0;
+        while (true) {
+            for (int i = position + scanned; i < limit; i++) {
+                if (buffer[i] == '\n') {
+                    int end = i > position && buffer[i - 1] == '\r' ? i - 1 : i;
+                    lineStart = position;
+                    position = i + 1;
+                    return end - lineStart;
+                }
+            }
+            scanned = limit - position;
+            if (scanned >= MAX_LINE_LENGTH)
+                throw new ProtocolException("Line too long");
+            if (position > 0) {
+                System.arraycopy(buffer, position, buffer, 0, scanned);
+                limit = scanned;
+                position = 0;
+            } else if (limit == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            int n = in.read(buffer, limit, buffer.length - limit);
+            if (n == -1)
+                throw new EOFException("Unexpected end of stream");
+            limit += n;
+        }
+    }
+
+    /**
+     * Reads a line like {@link #readLine()}, decoding it as ISO-8859-1.
+     *
+     * @return The line, without its terminator.
+     * @throws IOException If the stream ends before the line does, or the line is too long.
+     */
+    String readLineString() throws IOException {
+        int length = readLine();
+        return new String(buffer, lineStart, length, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * @return The buffer holding the last line read.
+     */
+    byte[] buffer() {
+        return buffer;
+    }
+
+    /**
+     * @return The index of the last line read in the {@link #buffer()}.
+     */
+    int lineStart() {
+        return lineStart;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == limit && fill() == -1)
+            return -1;
+        return buffer[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+        if (position == limit) {
+            // Large reads go straight into the caller's array, rather than through the buffer.
+            if (len >= buffer.length)
+                return in.read(b, off, len);
+            if (fill() == -1)
+                return -1;
+        }
+        int n = Math.min(len, limit - position);
+        System.arraycopy(buffer, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (limit - position) + in.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private int fill() throws IOException {
+        position = 0;
+        limit = 0;
+        int n = in.read(buffer, 0, buffer.length);
+        if (n > 0) {
+            limit = n;
+        }
+        return n;
+    }
+
+}
@@ -0,0 +1,306 @@
+package net.insprill.fetch4j.transport;
+
+import lombok.Getter;
+import lombok.NonNull;
+import net.insprill.fetch4j.EventListener;
+import net.insprill.fetch4j.util.ExecutorUtil;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A pool of HTTP/1.1 connections, keyed by {@link Route}.
+ * Limits the number of connections open to each host, and closes connections once they've been idle
+ * for too long or have exceeded their keep-alive TTL.
+ * <p>
+ * With pipelining enabled, requests which allow it are sent on a connection already in use once a host has
+ * the maximum number of connections open, rather than waiting for one to be released.<br>
+ * <b>WARNING:</b> This class is not part of the API and breaking changes may occur here at any time.
+ */
+public class ConnectionPool implements Closeable {
+
+    @Getter
+    private final int maxConnectionsPerHost;
+    @Getter
+    private final int maxPipelineDepth;
+    private final long idleTimeoutNanos;
+    private final long keepAliveTtlNanos;
+    private final SocketConnector connector;
+    private final Map<Route, HostPool> hosts = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed;
+
+    /**
+     * Constructs a new connection pool.
+     *
+     * @param maxConnectionsPerHost The maximum number of connections, leased or idle, to a single host.
+     * @param idleTimeoutMillis     How long a connection may be idle before being closed.
+     * @param keepAliveTtlMillis    How long a connection may be reused for after being opened.
+     */
+    public ConnectionPool(int maxConnectionsPerHost, long idleTimeoutMillis, long keepAliveTtlMillis) {
+        this(maxConnectionsPerHost, idleTimeoutMillis, keepAliveTtlMillis, 1, SocketConnector.DEFAULT);
+    }
+
+    /**
+     * Constructs a new connection pool.
+     *
+     * @param maxConnectionsPerHost The maximum number of connections, leased or idle, to a single host.
+     * @param idleTimeoutMillis     How long a connection may be idle before being closed.
+     * @param keepAliveTtlMillis    How long a connection may be reused for after being opened.
+     * @param maxPipelineDepth      The maximum number of requests in flight on a single connection, or 1 to disable pipelining.
+     * @param connector             The connector to open new connections with.
+     */
+    public ConnectionPool(int maxConnectionsPerHost, long idleTimeoutMillis, long keepAliveTtlMillis, int maxPipelineDepth,
+                          @NonNull SocketConnector connector) {
+        if (maxConnectionsPerHost < 1)
+            throw new IllegalArgumentException("maxConnectionsPerHost must be positive");
+        if (maxPipelineDepth < 1)
+            throw new IllegalArgumentException("maxPipelineDepth must be positive");
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.maxPipelineDepth = maxPipelineDepth;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        this.keepAliveTtlNanos = TimeUnit.MILLISECONDS.toNanos(keepAliveTtlMillis);
+        this.connector = connector;
+        long evictionPeriod = Math.max(100, Math.min(idleTimeoutMillis, keepAliveTtlMillis) / 2);
+        this.evictor = Executors.newSingleThreadScheduledExecutor(ExecutorUtil.newThreadFactory("fetch4j-pool-evictor-"));
+        this.evictor.scheduleWithFixedDelay(this::evictExpired, evictionPeriod, evictionPeriod, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Leases a connection to a route, reusing an idle one if possible.
+     * If the route already has the maximum number of connections open, pipelines the request on one in use if allowed,
+     * or waits for one to be released otherwise.
+     *
+     * @param route         The route to connect to.
+     * @param timeoutMillis The connect timeout, also used as the maximum time to wait for a connection to be released.
+     * @param listener      The listener to notify of connect events if a new connection is opened.
+     * @param pipeline      Whether the request may be pipelined, and allows others to be pipelined behind it.
+     * @param fresh         Whether a new connection must be opened, closing any idle ones to the route,
+     *                      as they're likely stale if the server just closed another.
+     * @return The leased connection, which must be given back with {@link #release(PooledConnection, boolean)}.
+     * @throws IOException If connecting fails or times out.
+     */
+    PooledConnection acquire(Route route, int timeoutMillis, EventListener listener, boolean pipeline, boolean fresh) throws IOException {
+        pipeline &= maxPipelineDepth > 1 && !fresh;
+        if (closed)
+            throw new IOException("Connection pool has been closed");
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        HostPool host;
+        reserve:
+        while (true) {
+            host = hosts.computeIfAbsent(route, r -> new HostPool());
+            synchronized (host) {
+                while (true) {
+                    if (host.removed)
+                        continue reserve; // Pruned after emptying, so use the route's new pool.
+                    long now = System.nanoTime();
+                    PooledConnection conn;
+                    while ((conn = host.idle.pollFirst()) != null) {
+                        if (!fresh && !conn.isIdleExpired(now, idleTimeoutNanos))
+                            return lease(host, conn, pipeline);
+                        conn.close();
+                        host.open--;
+                    }
+                    if (host.open < maxConnectionsPerHost) {
+                        host.open++;
+                        break reserve;
+                    }
+                    if (pipeline && (conn = pipelineCandidate(host, now)) != null) {
+                        conn.leases++;
+                        conn.markPipelined();
+                        return conn;
+                    }
+                    long remaining = timeoutMillis == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(deadline - now);
+                    if (timeoutMillis != 0 && remaining <= 0)
+                        throw new SocketTimeoutException("Timed out waiting for a connection to " + route);
+                    try {
+                        host.wait(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while waiting for a connection to " + route, e);
+                    }
+                }
+            }
+        }
+
+        PooledConnection conn;
+        try {
+            conn = new PooledConnection(route, connector.connect(route, timeoutMillis, null, listener), keepAliveTtlNanos,
+                    connector.getOptions().getBufferSize());
+        } catch (IOException | RuntimeException e) {
+            synchronized (host) {
+                host.open--;
+                pruneIfEmpty(route, host);
+                host.notifyAll();
+            }
+            throw e;
+        }
+        if (maxPipelineDepth == 1)
+            return lease(host, conn, false);
+        synchronized (host) {
+            // Requests waiting to be pipelined may be able to use the new connection.
+            host.notifyAll();
+            return lease(host, conn, pipeline);
+        }
+    }
+
+    private PooledConnection lease(HostPool host, PooledConnection conn, boolean pipeline) {
+        conn.leases = 1;
+        conn.pipelining = pipeline;
+        if (maxPipelineDepth > 1) {
+            host.leased.add(conn);
+        }
+        return conn;
+    }
+
+    /**
+     * Finds the leased connection with the fewest requests in flight which more can be pipelined on.
+     */
+    private PooledConnection pipelineCandidate(HostPool host, long now) {
+        PooledConnection candidate = null;
+        for (PooledConnection conn : host.leased) {
+            if (conn.pipelining && conn.leases < maxPipelineDepth && !conn.isExpired(now)
+                    && (candidate == null || conn.leases < candidate.leases)) {
+                candidate = conn;
+            }
+        }
+        return candidate;
+    }
+
+    /**
+     * Gives a leased connection back to the pool. Pipelined connections are only returned once every request on them has been.
+     *
+     * @param conn     The connection.
+     * @param reusable Whether the connection can be reused. If false, it will be closed,
+     *                 failing any other requests pipelined on it.
+     */
+    void release(PooledConnection conn, boolean reusable) {
+        HostPool host = hosts.get(conn.getRoute());
+        long now = System.nanoTime();
+        synchronized (host) {
+            if (!reusable) {
+                conn.pipelining = false;
+                conn.close();
+            }
+            if (--conn.leases > 0)
+                return;
+            if (maxPipelineDepth > 1) {
+                host.leased.remove(conn);
+            }
+            if (reusable && !closed && !conn.isExpired(now)) {
+                conn.markIdle(now);
+                host.idle.addFirst(conn);
+            } else {
+                conn.close();
+                host.open--;
+                pruneIfEmpty(conn.getRoute(), host);
+            }
+            host.notifyAll();
+        }
+    }
+
+    /**
+     * Gets the number of open connections, both leased and idle.
+     *
+     * @return The number of open connections.
+     */
+    public int getConnectionCount() {
+        int count = 0;
+        for (HostPool host : hosts.values()) {
+            synchronized (host) {
+                count += host.open;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Gets the number of hosts the pool is tracking, which are those with connections open or being opened.
+     *
+     * @return The number of hosts.
+     */
+    public int getHostCount() {
+        return hosts.size();
+    }
+
+    /**
+     * Gets the number of idle connections waiting to be reused.
+     *
+     * @return The number of idle connections.
+     */
+    public int getIdleConnectionCount() {
+        int count = 0;
+        for (HostPool host : hosts.values()) {
+            synchronized (host) {
+                count += host.idle.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Closes all idle connections which have been idle for too long or have exceeded their TTL.
+     */
+    public void evictExpired() {
+        long now = System.nanoTime();
+        for (Map.Entry<Route, HostPool> entry : hosts.entrySet()) {
+            HostPool host = entry.getValue();
+            synchronized (host) {
+                for (Iterator<PooledConnection> it = host.idle.iterator(); it.hasNext(); ) {
+                    PooledConnection conn = it.next();
+                    if (closed || conn.isIdleExpired(now, idleTimeoutNanos)) {
+                        it.remove();
+                        conn.close();
+                        host.open--;
+                    }
+                }
+                pruneIfEmpty(entry.getKey(), host);
+            }
+        }
+    }
+
+    /**
+     * Closes all idle connections and stops the eviction timer.
+     * Leased connections are closed once released.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        evictExpired();
+    }
+
+    /**
+     * Removes a host's pool once it has no connections left, so clients talking to many hosts don't keep one for each.
+     * Must be called while holding the pool's lock. Threads waiting on a removed pool move to the route's new one.
+     */
+    private void pruneIfEmpty(Route route, HostPool host) {
+        if (host.open == 0 && !host.removed) {
+            host.removed = true;
+            hosts.remove(route, host);
+            host.notifyAll();
+        }
+    }
+
+    private static class HostPool {
+        private final Deque<PooledConnection> idle = new ArrayDeque<>();
+        /**
+         * Connections currently leased, only tracked when pipelining.
+         */
+        private final List<PooledConnection> leased = new ArrayList<>();
+        private int open;
+        private boolean removed;
+    }
+
+}
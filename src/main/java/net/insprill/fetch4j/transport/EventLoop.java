@@ -0,0 +1,403 @@
+package net.insprill.fetch4j.transport;
+
+import net.insprill.fetch4j.EventListener;
+import net.insprill.fetch4j.Params;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A thread multiplexing the connections of an {@link EventLoopTransport} with a {@link Selector}.
+ * Every connection to a route is handled by the same loop, which owns the route's idle connections
+ * and the requests waiting for one, so they need no locking.
+ * <p>
+ * Apart from {@link #execute(Runnable)} and {@link #close()}, methods must only be called from the loop's thread.
+ */
+final class EventLoop implements Runnable, Closeable {
+
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final int TICKS = 512;
+
+    private final EventLoopTransport transport;
+    private final Selector selector;
+    private final Thread thread;
+    private final TimerWheel timers;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Map<Route, RouteState> routes = new HashMap<>();
+    private volatile boolean closed;
+    private volatile boolean terminated;
+    private volatile IOException failure;
+
+    EventLoop(EventLoopTransport transport, ThreadFactory threadFactory) throws IOException {
+        this.transport = transport;
+        this.selector = Selector.open();
+        this.timers = new TimerWheel(TICK_NANOS, TICKS, System.nanoTime());
+        this.thread = threadFactory.newThread(this);
+        this.thread.start();
+    }
+
+    /**
+     * Runs a task on the loop's thread. If the loop has stopped, the task is run straight away,
+     * and is expected to fail its request as the loop {@link #isClosed() is closed}.
+     *
+     * @param task The task.
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        if (terminated) {
+            runTasks();
+        } else if (Thread.currentThread() != thread) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * @return True if the loop has been closed, or stopped after its selector failed.
+     */
+    boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!closed) {
+                long wait = timers.nanosUntilNextTimeout(System.nanoTime());
+                if (!tasks.isEmpty() || wait == 0) {
+                    selector.selectNow();
+                } else if (wait < 0) {
+                    selector.select();
+                } else {
+                    selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait + 999_999)));
+                }
+                Set<SelectionKey> selected = selector.selectedKeys();
+                for (SelectionKey key : selected) {
+                    ((NioConnection) key.attachment()).ready();
+                }
+                selected.clear();
+                runTasks();
+                timers.advance(System.nanoTime());
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            failure = new IOException("The event loop's selector failed", e);
+        } finally {
+            shutdown();
+        }
+    }
+
+    /**
+     * Stops the loop, failing all requests in flight or waiting for a connection, and closing its connections.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        selector.wakeup();
+    }
+
+    /**
+     * Sends a request on an idle connection to its route, opens a new connection if the route has fewer than the maximum,
+     * or waits for a connection to be released otherwise.
+     *
+     * @param call The request.
+     */
+    void dispatch(Call call) {
+        if (closed) {
+            call.fail(closedException());
+            return;
+        }
+        RouteState state = routes.computeIfAbsent(call.route, route -> new RouteState());
+        long now = System.nanoTime();
+        NioConnection conn;
+        while ((conn = state.idle.pollFirst()) != null) {
+            if (!conn.isExpired(now)) {
+                conn.start(call);
+                return;
+            }
+            conn.close();
+            state.open--;
+        }
+        if (state.open < transport.getMaxConnectionsPerHost()) {
+            state.open++;
+            open(call);
+            return;
+        }
+        state.waiting.add(call);
+        int timeoutMillis = call.params.getConnectionTimeout();
+        if (timeoutMillis > 0) {
+            call.timeout = schedule(TimeUnit.MILLISECONDS.toNanos(timeoutMillis), () -> {
+                if (state.waiting.remove(call)) {
+                    call.fail(new SocketTimeoutException("Timed out waiting for a connection to " + call.route));
+                }
+            });
+        }
+    }
+
+    /**
+     * Gives a connection back once it's done with a request, or has been closed.
+     * Reusable connections are given to the next request waiting for one, or kept idle until they time out.
+     *
+     * @param conn     The connection.
+     * @param reusable Whether another request can be sent on the connection.
+     */
+    void release(NioConnection conn, boolean reusable) {
+        RouteState state = routes.get(conn.getRoute());
+        if (state == null) {
+            conn.close();
+            return;
+        }
+        if (reusable && !closed) {
+            Call next = state.waiting.poll();
+            if (next != null) {
+                next.cancelTimeout();
+                conn.start(next);
+                return;
+            }
+            state.idle.addFirst(conn);
+            conn.idle(transport.getIdleTimeoutNanos());
+            return;
+        }
+        conn.close();
+        state.idle.remove(conn);
+        state.open--;
+        openForWaiting(conn.getRoute(), state);
+    }
+
+    /**
+     * Called when connecting to an address failed, to try the route's next address or fail the request.
+     *
+     * @param call       The request the connection was opened for.
+     * @param address    The address which couldn't be connected to.
+     * @param startNanos When the attempt started.
+     * @param error      Why the attempt failed.
+     */
+    void connectFailed(Call call, InetSocketAddress address, long startNanos, Throwable error) {
+        if (error instanceof IOException) {
+            call.listener.connectFailed(address, (IOException) error, System.nanoTime() - startNanos);
+        }
+        if (call.failure == null) {
+            call.failure = error;
+        } else {
+            call.failure.addSuppressed(error);
+        }
+        if (!closed && error instanceof IOException && ++call.addressIndex < call.addresses.size()) {
+            connect(call);
+            return;
+        }
+        openFailed(call);
+    }
+
+    /**
+     * Schedules a task on the loop's timer wheel.
+     *
+     * @param delayNanos How long to wait before running the task.
+     * @param task       The task.
+     * @return The timeout, which can be cancelled until it has run.
+     */
+    TimerWheel.Timeout schedule(long delayNanos, Runnable task) {
+        return timers.schedule(delayNanos, System.nanoTime(), task);
+    }
+
+    /**
+     * Registers a channel with the loop's selector.
+     *
+     * @param channel The channel, which must be non-blocking.
+     * @param conn    The connection handling the channel's events.
+     * @return The channel's key.
+     * @throws IOException If the channel couldn't be registered.
+     */
+    SelectionKey register(SocketChannel channel, NioConnection conn) throws IOException {
+        return channel.register(selector, 0, conn);
+    }
+
+    EventLoopTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Resolves the route's host on another thread, as resolvers may block, then connects to its first address.
+     */
+    private void open(Call call) {
+        if (closed) {
+            call.fail(closedException());
+            return;
+        }
+        try {
+            EventLoopTransport.RESOLVE_EXECUTOR.execute(() -> {
+                String host = call.route.getHost();
+                try {
+                    call.listener.dnsStart(host);
+                    long start = System.nanoTime();
+                    List<InetAddress> addresses = transport.getConnector().getResolver().resolve(host);
+                    if (addresses == null || addresses.isEmpty())
+                        throw new UnknownHostException(host + ": no addresses");
+                    call.listener.dnsEnd(host, addresses, System.nanoTime() - start);
+                    call.addresses = addresses;
+                } catch (IOException | RuntimeException e) {
+                    call.failure = e;
+                }
+                // Queuing the task publishes the addresses to the loop.
+                execute(() -> {
+                    if (call.failure != null) {
+                        openFailed(call);
+                    } else {
+                        connect(call);
+                    }
+                });
+            });
+        } catch (RejectedExecutionException e) {
+            call.failure = e;
+            openFailed(call);
+        }
+    }
+
+    private void connect(Call call) {
+        if (closed) {
+            call.fail(closedException());
+            return;
+        }
+        InetSocketAddress address = new InetSocketAddress(call.addresses.get(call.addressIndex), call.route.getPort());
+        long start = System.nanoTime();
+        NioConnection conn;
+        try {
+            call.listener.connectStart(address);
+            conn = new NioConnection(this, call.route, address);
+        } catch (IOException | RuntimeException e) {
+            connectFailed(call, address, start, e);
+            return;
+        }
+        conn.connect(call);
+    }
+
+    /**
+     * Gives up on opening a connection for a request, letting a request waiting for one try instead.
+     */
+    private void openFailed(Call call) {
+        call.fail(closed ? closedException() : call.failure);
+        RouteState state = routes.get(call.route);
+        if (state == null)
+            return;
+        state.open--;
+        openForWaiting(call.route, state);
+    }
+
+    private void openForWaiting(Route route, RouteState state) {
+        Call next = state.waiting.poll();
+        if (next != null) {
+            next.cancelTimeout();
+            state.open++;
+            open(next);
+        } else if (state.open == 0) {
+            routes.remove(route);
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException ignored) {
+                // Tasks fail their own requests, so this was thrown by a listener and there's nobody to tell.
+            }
+        }
+    }
+
+    private void shutdown() {
+        closed = true;
+        IOException error = closedException();
+        for (SelectionKey key : new ArrayList<>(selector.keys())) {
+            ((NioConnection) key.attachment()).failed(error);
+        }
+        for (RouteState state : routes.values()) {
+            for (Call call : state.waiting) {
+                call.fail(error);
+            }
+        }
+        routes.clear();
+        try {
+            selector.close();
+        } catch (IOException ignored) {
+            // Nothing we can do.
+        }
+        terminated = true;
+        runTasks();
+    }
+
+    private IOException closedException() {
+        return failure != null ? failure : new IOException("The transport has been closed");
+    }
+
+    /**
+     * The connections to a route, and the requests waiting for one.
+     */
+    private static final class RouteState {
+        private final Deque<NioConnection> idle = new ArrayDeque<>();
+        private final Deque<Call> waiting = new ArrayDeque<>();
+        private int open;
+    }
+
+    /**
+     * A request sent through the loop.
+     */
+    static final class Call {
+        final Route route;
+        final Params params;
+        final EventListener listener;
+        final byte[] request;
+        final long startNanos = System.nanoTime();
+        final CompletableFuture<Exchange> future = new CompletableFuture<>();
+        List<InetAddress> addresses;
+        int addressIndex;
+        Throwable failure;
+        TimerWheel.Timeout timeout;
+
+        /**
+         * @param route   The route to send the request on.
+         * @param params  The parameters of the request.
+         * @param request The encoded request head and body.
+         */
+        Call(Route route, Params params, byte[] request) {
+            this.route = route;
+            this.params = params;
+            this.listener = params.getEventListener();
+            this.request = request;
+        }
+
+        void complete(Exchange exchange) {
+            future.complete(exchange);
+        }
+
+        void fail(Throwable error) {
+            future.completeExceptionally(error);
+        }
+
+        void cancelTimeout() {
+            if (timeout != null) {
+                timeout.cancel();
+                timeout = null;
+            }
+        }
+    }
+
+}
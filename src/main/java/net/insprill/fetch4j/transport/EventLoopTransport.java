@@ -0,0 +1,175 @@
+package net.insprill.fetch4j.transport;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+import net.insprill.fetch4j.Params;
+import net.insprill.fetch4j.util.ExecutorUtil;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A non-blocking HTTP/1.1 transport, multiplexing connections over a few {@link java.nio.channels.Selector} threads
+ * instead of blocking a thread for each request. Connect, read and idle timeouts are tracked on a timing wheel
+ * per thread, so idle connections, like long polls, cost a file descriptor rather than a thread.
+ * <p>
+ * Requests complete once their whole response has been received, with its body buffered in memory.
+ * Requests with a streamed body, or whose response body is streamed, are sent with a blocking fallback transport instead.
+ * Every connection to a host is handled by the same thread, which also notifies {@link net.insprill.fetch4j.EventListener}s,
+ * so listeners must not block. Secure routes use the default {@link SSLContext}.<br>
+ * <b>WARNING:</b> This class is not part of the API and breaking changes may occur here at any time.
+ */
+public class EventLoopTransport implements AsyncTransport {
+
+    /**
+     * Resolves hosts for new connections, as resolvers may block.
+     */
+    static final ExecutorService RESOLVE_EXECUTOR = Executors.newCachedThreadPool(ExecutorUtil.newThreadFactory("fetch4j-resolve-"));
+
+    @Getter
+    private final int maxConnectionsPerHost;
+    @Getter(AccessLevel.PACKAGE)
+    private final long idleTimeoutNanos;
+    @Getter(AccessLevel.PACKAGE)
+    private final long keepAliveTtlNanos;
+    @Getter(AccessLevel.PACKAGE)
+    private final SocketConnector connector;
+    private final Transport fallback;
+    private final EventLoop[] loops;
+    private final AtomicInteger connections = new AtomicInteger();
+
+    /**
+     * Constructs a new event loop transport, starting its threads.
+     *
+     * @param threads               The number of event loop threads.
+     * @param maxConnectionsPerHost The maximum number of connections, in use or idle, to a single host.
+     * @param idleTimeoutMillis     How long a connection may be idle before being closed.
+     * @param keepAliveTtlMillis    How long a connection may be reused for after being opened.
+     * @param connector             The connector whose resolver and socket options are used for new connections.
+     * @param fallback              The transport to send requests with which can't be sent without blocking.
+     * @throws IllegalArgumentException If {@code threads} or {@code maxConnectionsPerHost} is less than 1.
+     * @throws UncheckedIOException     If a selector couldn't be opened.
+     */
+    public EventLoopTransport(int threads, int maxConnectionsPerHost, long idleTimeoutMillis, long keepAliveTtlMillis,
+                              @NonNull SocketConnector connector, @NonNull Transport fallback) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be positive");
+        if (maxConnectionsPerHost < 1)
+            throw new IllegalArgumentException("maxConnectionsPerHost must be positive");
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        this.keepAliveTtlNanos = TimeUnit.MILLISECONDS.toNanos(keepAliveTtlMillis);
+        this.connector = connector;
+        this.fallback = fallback;
+        this.loops = new EventLoop[threads];
+        ThreadFactory threadFactory = ExecutorUtil.newThreadFactory("fetch4j-event-loop-");
+        try {
+            for (int i = 0; i < threads; i++) {
+                loops[i] = new EventLoop(this, threadFactory);
+            }
+        } catch (IOException e) {
+            close();
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Gets the number of connections currently open, in use or idle.
+     *
+     * @return The number of open connections.
+     */
+    public int getConnectionCount() {
+        return connections.get();
+    }
+
+    @Override
+    public boolean canExecuteAsync(Params params) {
+        return !params.isStreamBody() && params.getBodySupplier() == null;
+    }
+
+    /**
+     * Sends a request, blocking until the whole response has been received, or with the fallback transport if it
+     * {@link #canExecuteAsync(Params) can't be sent without blocking}.
+     */
+    @Override
+    public Exchange execute(URL url, Params params) throws IOException {
+        if (!canExecuteAsync(params))
+            return fallback.execute(url, params);
+        try {
+            return executeAsync(url, params).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IOException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the response");
+        }
+    }
+
+    @Override
+    public CompletableFuture<Exchange> executeAsync(URL url, Params params) {
+        Route route = Route.of(url);
+        ByteArrayOutputStream request = new ByteArrayOutputStream(params.getBody() != null ? 512 + params.getBody().length : 512);
+        try {
+            Http1Transport.writeRequest(request, route, url, params);
+        } catch (IOException e) {
+            CompletableFuture<Exchange> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        EventLoop.Call call = new EventLoop.Call(route, params, request.toByteArray());
+        EventLoop loop = loops[Math.floorMod(route.hashCode(), loops.length)];
+        loop.execute(() -> loop.dispatch(call));
+        return call.future;
+    }
+
+    /**
+     * Stops the event loops, failing any requests still in flight and closing their connections, and closes the fallback transport.
+     */
+    @Override
+    public void close() {
+        for (EventLoop loop : loops) {
+            if (loop != null) {
+                loop.close();
+            }
+        }
+        fallback.close();
+    }
+
+    SSLContext getSslContext() throws SSLException {
+        try {
+            return SSLContext.getDefault();
+        } catch (NoSuchAlgorithmException e) {
+            throw new SSLException(e);
+        }
+    }
+
+    void connectionOpened() {
+        connections.incrementAndGet();
+    }
+
+    void connectionClosed() {
+        connections.decrementAndGet();
+    }
+
+}
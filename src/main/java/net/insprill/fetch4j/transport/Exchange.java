@@ -0,0 +1,57 @@
+package net.insprill.fetch4j.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A single request/response exchange performed by a {@link Transport}.
+ * Created once the response status and headers have been received, with the body left unread.
+ */
+public interface Exchange extends Closeable {
+
+    /**
+     * Gets the HTTP response code returned from the server.
+     *
+     * @return The response code.
+     */
+    int getStatus();
+
+    /**
+     * Gets the HTTP response message returned along with the response code.
+     *
+     * @return The response message, or {@code null} if none was sent.
+     */
+    String getStatusText();
+
+    /**
+     * Gets the last value of a response header, matching the name case-insensitively.
+     *
+     * @param name Header name.
+     * @return The header value, or {@code null} if it doesn't exist.
+     */
+    String getHeader(String name);
+
+    /**
+     * Gets an unmodifiable Map of all response headers.
+     *
+     * @return The response headers.
+     */
+    Map<String, List<String>> getHeaders();
+
+    /**
+     * Gets the response body. Closing it, or reading it until the end, releases the exchange.
+     *
+     * @return The response body, or {@code null} if the response has none.
+     * @throws IOException If an I/O error occurs while opening the body.
+     */
+    InputStream getBody() throws IOException;
+
+    /**
+     * Forces the underlying connection to be closed instead of being reused.
+     */
+    void disconnect();
+
+}
@@ -0,0 +1,75 @@
+package net.insprill.fetch4j.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+
+/**
+ * A stream compressing another with gzip as it's read, so request bodies can be compressed
+ * while being sent without buffering them.
+ */
+final class GzipEncodingStream extends InputStream {
+
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final CRC32 crc = new CRC32();
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final DeflaterInputStream deflated;
+    private byte[] pending = HEADER;
+    private int pendingOff;
+    private boolean finished;
+
+    GzipEncodingStream(InputStream in) {
+        this.deflated = new DeflaterInputStream(new CheckedInputStream(in, crc), deflater, 8192);
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+        if (pending == null) {
+            if (finished)
+                return -1;
+            int n = deflated.read(b, off, len);
+            if (n != -1)
+                return n;
+            finished = true;
+            pending = trailer();
+            pendingOff = 0;
+        }
+        int n = Math.min(len, pending.length - pendingOff);
+        System.arraycopy(pending, pendingOff, b, off, n);
+        pendingOff += n;
+        if (pendingOff == pending.length)
+            pending = null;
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            deflated.close();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private byte[] trailer() {
+        long crc = this.crc.getValue();
+        long size = deflater.getBytesRead();
+        return new byte[]{
+                (byte) crc, (byte) (crc >>> 8), (byte) (crc >>> 16), (byte) (crc >>> 24),
+                (byte) size, (byte) (size >>> 8), (byte) (size >>> 16), (byte) (size >>> 24),
+        };
+    }
+
+}
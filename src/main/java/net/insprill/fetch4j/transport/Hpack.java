@@ -0,0 +1,379 @@
+package net.insprill.fetch4j.transport;
+
+import java.io.ByteArrayOutputStream;
+import java.net.ProtocolException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * HPACK header compression for HTTP/2, as defined by RFC 7541.
+ */
+final class Hpack {
+
+    private static final String[][] STATIC_TABLE = {
+            {":authority", ""},
+            {":method", "GET"},
+            {":method", "POST"},
+            {":path", "/"},
+            {":path", "/index.html"},
+            {":scheme", "http"},
+            {":scheme", "https"},
+            {":status", "200"},
+            {":status", "204"},
+            {":status", "206"},
+            {":status", "304"},
+            {":status", "400"},
+            {":status", "404"},
+            {":status", "500"},
+            {"accept-charset", ""},
+            {"accept-encoding", "gzip, deflate"},
+            {"accept-language", ""},
+            {"accept-ranges", ""},
+            {"accept", ""},
+            {"access-control-allow-origin", ""},
+            {"age", ""},
+            {"allow", ""},
+            {"authorization", ""},
+            {"cache-control", ""},
+            {"content-disposition", ""},
+            {"content-encoding", ""},
+            {"content-language", ""},
+            {"content-length", ""},
+            {"content-location", ""},
+            {"content-range", ""},
+            {"content-type", ""},
+            {"cookie", ""},
+            {"date", ""},
+            {"etag", ""},
+            {"expect", ""},
+            {"expires", ""},
+            {"from", ""},
+            {"host", ""},
+            {"if-match", ""},
+            {"if-modified-since", ""},
+            {"if-none-match", ""},
+            {"if-range", ""},
+            {"if-unmodified-since", ""},
+            {"last-modified", ""},
+            {"link", ""},
+            {"location", ""},
+            {"max-forwards", ""},
+            {"proxy-authenticate", ""},
+            {"proxy-authorization", ""},
+            {"range", ""},
+            {"referer", ""},
+            {"refresh", ""},
+            {"retry-after", ""},
+            {"server", ""},
+            {"set-cookie", ""},
+            {"strict-transport-security", ""},
+            {"transfer-encoding", ""},
+            {"user-agent", ""},
+            {"vary", ""},
+            {"via", ""},
+            {"www-authenticate", ""},
+    };
+
+    /**
+     * Lengths of the canonical Huffman codes for each symbol, the last being EOS (RFC 7541, Appendix B).
+     */
+    private static final int[] HUFFMAN_CODE_LENGTHS = {
+            13, 23, 28, 28, 28, 28, 28, 28, 28, 24, 30, 28, 28, 30, 28, 28, 28, 28, 28, 28, 28, 28, 30, 28, 28, 28, 28, 28, 28, 28, 28, 28,
+            6, 10, 10, 12, 13, 6, 8, 11, 10, 10, 8, 11, 8, 6, 6, 6, 5, 5, 5, 6, 6, 6, 6, 6, 6, 6, 7, 8, 15, 6, 12, 10,
+            13, 6, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 8, 7, 8, 13, 19, 13, 14, 6,
+            15, 5, 6, 5, 6, 5, 6, 6, 6, 5, 7, 7, 6, 6, 6, 5, 6, 7, 6, 5, 5, 6, 7, 7, 7, 7, 7, 15, 11, 14, 13, 28,
+            20, 22, 20, 20, 22, 22, 22, 23, 22, 23, 23, 23, 23, 23, 24, 23, 24, 24, 22, 23, 24, 23, 23, 23, 23, 21, 22, 23, 22, 23, 23, 24,
+            22, 21, 20, 22, 22, 23, 23, 21, 23, 22, 22, 24, 21, 22, 23, 23, 21, 21, 22, 21, 23, 22, 23, 23, 20, 22, 22, 22, 23, 22, 22, 23,
+            26, 26, 20, 19, 22, 23, 22, 25, 26, 26, 26, 27, 27, 26, 24, 25, 19, 21, 26, 27, 27, 26, 27, 24, 21, 21, 26, 26, 28, 27, 27, 27,
+            20, 24, 20, 21, 22, 21, 21, 23, 22, 22, 25, 25, 24, 24, 26, 23, 26, 27, 26, 26, 27, 27, 27, 27, 27, 28, 27, 27, 27, 27, 27, 26,
+            30
+    };
+    private static final int[] HUFFMAN_CODES = new int[HUFFMAN_CODE_LENGTHS.length];
+    private static final int EOS = 256;
+    /**
+     * Decoding tree, where {@code HUFFMAN_TREE[node][bit]} is the next node, or the symbol's bitwise complement for leaves.
+     */
+    private static final int[][] HUFFMAN_TREE = new int[HUFFMAN_CODE_LENGTHS.length * 2][2];
+
+    private static final Map<String, Integer> STATIC_NAME_INDEX = new HashMap<>();
+    private static final Map<String, Integer> STATIC_FIELD_INDEX = new HashMap<>();
+
+    static {
+        // Codes are canonical: ordered by length, then by symbol.
+        int code = 0;
+        int prevLength = 0;
+        for (int length = 1; length <= 30; length++) {
+            for (int sym = 0; sym < HUFFMAN_CODE_LENGTHS.length; sym++) {
+                if (HUFFMAN_CODE_LENGTHS[sym] != length)
+                    continue;
+                if (prevLength != 0)
+                    code = (code + 1) << (length - prevLength);
+                prevLength = length;
+                HUFFMAN_CODES[sym] = code;
+            }
+        }
+        int nodes = 1;
+        for (int sym = 0; sym < HUFFMAN_CODES.length; sym++) {
+            int node = 0;
+            for (int bit = HUFFMAN_CODE_LENGTHS[sym] - 1; bit > 0; bit--) {
+                int b = (HUFFMAN_CODES[sym] >>> bit) & 1;
+                if (HUFFMAN_TREE[node][b] == 0)
+                    HUFFMAN_TREE[node][b] = nodes++;
+                node = HUFFMAN_TREE[node][b];
+            }
+            HUFFMAN_TREE[node][HUFFMAN_CODES[sym] & 1] = ~sym;
+        }
+
+        for (int i = STATIC_TABLE.length - 1; i >= 0; i--) {
+            STATIC_NAME_INDEX.put(STATIC_TABLE[i][0], i + 1);
+            STATIC_FIELD_INDEX.put(STATIC_TABLE[i][0] + ':' + STATIC_TABLE[i][1], i + 1);
+        }
+    }
+
+    private Hpack() {
+    }
+
+    /**
+     * Encodes header blocks. Never adds entries to the dynamic table, so it needs no synchronisation with the decoder on the other end.
+     */
+    static final class Encoder {
+
+        /**
+         * Encodes a single header field.
+         *
+         * @param out   The header block being written.
+         * @param name  The header name. Will be lower-cased.
+         * @param value The header value.
+         */
+        void encode(ByteArrayOutputStream out, String name, String value) {
+            name = name.toLowerCase(Locale.ROOT);
+            Integer index = STATIC_FIELD_INDEX.get(name + ':' + value);
+            if (index != null) {
+                writeInt(out, 0x80, 7, index);
+                return;
+            }
+            index = STATIC_NAME_INDEX.get(name);
+            if (index != null) {
+                // Literal Header Field without Indexing, indexed name.
+                writeInt(out, 0x00, 4, index);
+            } else {
+                out.write(0x00);
+                writeString(out, name);
+            }
+            writeString(out, value);
+        }
+
+        private static void writeString(ByteArrayOutputStream out, String s) {
+            byte[] raw = s.getBytes(StandardCharsets.ISO_8859_1);
+            long huffmanBits = 0;
+            for (byte b : raw) {
+                huffmanBits += HUFFMAN_CODE_LENGTHS[b & 0xFF];
+            }
+            int huffmanLength = (int) ((huffmanBits + 7) / 8);
+            if (huffmanLength >= raw.length) {
+                writeInt(out, 0x00, 7, raw.length);
+                out.write(raw, 0, raw.length);
+                return;
+            }
+            writeInt(out, 0x80, 7, huffmanLength);
+            long buffer = 0;
+            int bits = 0;
+            for (byte b : raw) {
+                int sym = b & 0xFF;
+                buffer = (buffer << HUFFMAN_CODE_LENGTHS[sym]) | HUFFMAN_CODES[sym];
+                bits += HUFFMAN_CODE_LENGTHS[sym];
+                while (bits >= 8) {
+                    bits -= 8;
+                    out.write((int) (buffer >>> bits));
+                }
+            }
+            if (bits > 0) {
+                // Pad with the most significant bits of EOS, which are all ones.
+                out.write((int) ((buffer << (8 - bits)) | (0xFF >>> bits)));
+            }
+        }
+
+        private static void writeInt(ByteArrayOutputStream out, int flags, int prefixBits, int value) {
+            int max = (1 << prefixBits) - 1;
+            if (value < max) {
+                out.write(flags | value);
+                return;
+            }
+            out.write(flags | max);
+            value -= max;
+            while (value >= 0x80) {
+                out.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.write(value);
+        }
+
+    }
+
+    /**
+     * Decodes header blocks, maintaining the dynamic table shared with the peer's encoder.
+     * Every header block received on a connection must be decoded, in order, by the same decoder.
+     */
+    static final class Decoder {
+
+        private final Deque<String[]> dynamicTable = new ArrayDeque<>();
+        private final int maxTableSizeLimit;
+        private int maxTableSize;
+        private int tableSize;
+
+        /**
+         * @param maxTableSize The {@code SETTINGS_HEADER_TABLE_SIZE} advertised to the peer.
+         */
+        Decoder(int maxTableSize) {
+            this.maxTableSizeLimit = maxTableSize;
+            this.maxTableSize = maxTableSize;
+        }
+
+        /**
+         * Decodes a complete header block.
+         *
+         * @param block The header block.
+         * @param sink  Receives each decoded header name and value.
+         * @throws ProtocolException If the block is malformed.
+         */
+        void decode(byte[] block, BiConsumer<String, String> sink) throws ProtocolException {
+            int[] pos = {0};
+            while (pos[0] < block.length) {
+                int b = block[pos[0]] & 0xFF;
+                if ((b & 0x80) != 0) {
+                    // Indexed Header Field.
+                    String[] field = lookup(readInt(block, pos, 7));
+                    sink.accept(field[0], field[1]);
+                } else if ((b & 0x40) != 0) {
+                    // Literal Header Field with Incremental Indexing.
+                    String[] field = readLiteral(block, pos, 6);
+                    add(field);
+                    sink.accept(field[0], field[1]);
+                } else if ((b & 0x20) != 0) {
+                    // Dynamic Table Size Update.
+                    int size = readInt(block, pos, 5);
+                    if (size > maxTableSizeLimit)
+                        throw new ProtocolException("HPACK table size update exceeds the advertised maximum");
+                    maxTableSize = size;
+                    evict();
+                } else {
+                    // Literal Header Field without Indexing, or Never Indexed.
+                    String[] field = readLiteral(block, pos, 4);
+                    sink.accept(field[0], field[1]);
+                }
+            }
+        }
+
+        private String[] readLiteral(byte[] block, int[] pos, int prefixBits) throws ProtocolException {
+            int index = readInt(block, pos, prefixBits);
+            String name = index == 0 ? readString(block, pos) : lookup(index)[0];
+            return new String[]{name, readString(block, pos)};
+        }
+
+        private String[] lookup(int index) throws ProtocolException {
+            if (index <= 0)
+                throw new ProtocolException("Invalid HPACK index: " + index);
+            if (index <= STATIC_TABLE.length)
+                return STATIC_TABLE[index - 1];
+            int dynamicIndex = index - STATIC_TABLE.length - 1;
+            if (dynamicIndex >= dynamicTable.size())
+                throw new ProtocolException("Invalid HPACK index: " + index);
+            Iterator<String[]> it = dynamicTable.iterator();
+            for (int i = 0; i < dynamicIndex; i++) {
+                it.next();
+            }
+            return it.next();
+        }
+
+        private void add(String[] field) {
+            int size = entrySize(field);
+            if (size > maxTableSize) {
+                dynamicTable.clear();
+                tableSize = 0;
+                return;
+            }
+            dynamicTable.addFirst(field);
+            tableSize += size;
+            evict();
+        }
+
+        private void evict() {
+            while (tableSize > maxTableSize) {
+                tableSize -= entrySize(dynamicTable.removeLast());
+            }
+        }
+
+        private static int entrySize(String[] field) {
+            return field[0].length() + field[1].length() + 32;
+        }
+
+        private static int readInt(byte[] block, int[] pos, int prefixBits) throws ProtocolException {
+            int max = (1 << prefixBits) - 1;
+            int value = block[pos[0]++] & max;
+            if (value < max)
+                return value;
+            for (int shift = 0; ; shift += 7) {
+                if (pos[0] >= block.length || shift > 28)
+                    throw new ProtocolException("Invalid HPACK integer");
+                int b = block[pos[0]++] & 0xFF;
+                value += (b & 0x7F) << shift;
+                if (value < 0)
+                    throw new ProtocolException("HPACK integer overflow");
+                if ((b & 0x80) == 0)
+                    return value;
+            }
+        }
+
+        private static String readString(byte[] block, int[] pos) throws ProtocolException {
+            if (pos[0] >= block.length)
+                throw new ProtocolException("Truncated HPACK string");
+            boolean huffman = (block[pos[0]] & 0x80) != 0;
+            int length = readInt(block, pos, 7);
+            if (length > block.length - pos[0])
+                throw new ProtocolException("Truncated HPACK string");
+            int start = pos[0];
+            pos[0] += length;
+            if (!huffman)
+                return new String(block, start, length, StandardCharsets.ISO_8859_1);
+            return huffmanDecode(block, start, length);
+        }
+
+        private static String huffmanDecode(byte[] block, int start, int length) throws ProtocolException {
+            StringBuilder sb = new StringBuilder(length * 8 / 5);
+            int node = 0;
+            int depth = 0;
+            boolean allOnes = true;
+            for (int i = start; i < start + length; i++) {
+                int b = block[i] & 0xFF;
+                for (int bit = 7; bit >= 0; bit--) {
+                    int v = (b >>> bit) & 1;
+                    allOnes &= v == 1;
+                    depth++;
+                    node = HUFFMAN_TREE[node][v];
+                    if (node < 0) {
+                        int sym = ~node;
+                        if (sym == EOS)
+                            throw new ProtocolException("EOS in HPACK Huffman string");
+                        sb.append((char) sym);
+                        node = 0;
+                        depth = 0;
+                        allOnes = true;
+                    } else if (node == 0) {
+                        throw new ProtocolException("Invalid HPACK Huffman code");
+                    }
+                }
+            }
+            if (depth > 7 || !allOnes)
+                throw new ProtocolException("Invalid HPACK Huffman padding");
+            return sb.toString();
+        }
+
+    }
+
+}
@@ -0,0 +1,272 @@
+package net.insprill.fetch4j.transport;
+
+import lombok.Getter;
+import net.insprill.fetch4j.Params;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Incrementally decodes an HTTP/1.1 response as it arrives, for connections which can't block waiting for more of it.
+ * The head is parsed with {@link Http1Parser}, and the body is buffered until the whole response has been received.
+ */
+final class Http1Decoder {
+
+    private static final int MAX_LINE_LENGTH = 65536;
+    /**
+     * The most memory reserved up front for a body, however large its {@code Content-Length} claims it is.
+     */
+    private static final int MAX_INITIAL_BODY_CAPACITY = 1 << 20;
+
+    private enum State {
+        STATUS_LINE, HEADERS, FIXED_LENGTH, CHUNK_SIZE, CHUNK_DATA, CHUNK_END, TRAILERS, UNTIL_CLOSE, DONE
+    }
+
+    private final Params.Method method;
+    private State state = State.STATUS_LINE;
+    private byte[] line = new byte[256];
+    private int lineLength;
+    private boolean started;
+    private Http1Parser.StatusLine statusLine;
+    private Map<String, List<String>> headers;
+    private long remaining;
+    private Body body;
+    @Getter
+    private boolean keepAlive;
+    /**
+     * The {@code timeout} of the response's {@code Keep-Alive} header in seconds, or -1 if it didn't have one.
+     */
+    @Getter
+    private long keepAliveTimeoutSeconds = -1;
+
+    Http1Decoder(Params.Method method) {
+        this.method = method;
+    }
+
+    /**
+     * Decodes bytes of the response, leaving any after its end in the buffer.
+     *
+     * @param in The bytes received.
+     * @return True if the response is complete, false if more bytes are needed.
+     * @throws IOException If the response is invalid.
+     */
+    boolean decode(ByteBuffer in) throws IOException {
+        if (in.hasRemaining()) {
+            started = true;
+        }
+        while (state != State.DONE && in.hasRemaining()) {
+            switch (state) {
+                case FIXED_LENGTH:
+                case CHUNK_DATA: {
+                    int n = (int) Math.min(remaining, in.remaining());
+                    body.write(in, n);
+                    remaining -= n;
+                    if (remaining == 0) {
+                        state = state == State.FIXED_LENGTH ? State.DONE : State.CHUNK_END;
+                    }
+                    break;
+                }
+                case UNTIL_CLOSE:
+                    body.write(in, in.remaining());
+                    break;
+                default:
+                    if (readLine(in)) {
+                        onLine();
+                    }
+                    break;
+            }
+        }
+        return state == State.DONE;
+    }
+
+    /**
+     * Called when the connection is closed by the server.
+     *
+     * @return True if the response is complete, which it is when its body was ended by closing the connection.
+     * @throws EOFException If the connection was closed before the end of the response.
+     */
+    boolean endOfStream() throws EOFException {
+        if (state == State.UNTIL_CLOSE) {
+            state = State.DONE;
+            return true;
+        }
+        if (state == State.DONE)
+            return true;
+        throw new EOFException("Unexpected end of stream");
+    }
+
+    /**
+     * @return True if any bytes of the response have been received.
+     */
+    boolean hasStarted() {
+        return started;
+    }
+
+    /**
+     * Creates an exchange for the decoded response.
+     *
+     * @return The exchange, with its buffered body.
+     * @throws IllegalStateException If the response isn't complete.
+     */
+    Exchange toExchange() {
+        if (state != State.DONE)
+            throw new IllegalStateException("The response is not complete");
+        return new BufferedExchange(statusLine.status, statusLine.statusText, headers, body == null ? null : body.toInputStream());
+    }
+
+    /**
+     * Appends bytes to the current line until its end is found.
+     *
+     * @return True if a whole line has been read.
+     */
+    private boolean readLine(ByteBuffer in) throws ProtocolException {
+        while (in.hasRemaining()) {
+            byte b = in.get();
+            if (b == '\n') {
+                if (lineLength > 0 && line[lineLength - 1] == '\r') {
+                    lineLength--;
+                }
+                return true;
+            }
+            if (lineLength == line.length) {
+                if (lineLength >= MAX_LINE_LENGTH)
+                    throw new ProtocolException("Line too long");
+                line = Arrays.copyOf(line, line.length * 2);
+            }
+            line[lineLength++] = b;
+        }
+        return false;
+    }
+
+    private void onLine() throws ProtocolException {
+        int length = lineLength;
+        lineLength = 0;
+        switch (state) {
+            case STATUS_LINE:
+                statusLine = Http1Parser.parseStatusLine(line, 0, length);
+                headers = Http1Parser.newHeaders();
+                state = State.HEADERS;
+                break;
+            case HEADERS:
+                if (length != 0) {
+                    Http1Parser.parseHeader(line, 0, length, headers);
+                } else {
+                    onHeadersEnd();
+                }
+                break;
+            case CHUNK_SIZE:
+                remaining = Http1Parser.parseChunkSize(line, 0, length);
+                state = remaining == 0 ? State.TRAILERS : State.CHUNK_DATA;
+                break;
+            case CHUNK_END:
+                if (length != 0)
+                    throw new ProtocolException("Missing CRLF after chunk");
+                state = State.CHUNK_SIZE;
+                break;
+            case TRAILERS:
+                if (length == 0) {
+                    state = State.DONE;
+                }
+                break;
+            default:
+                throw new IllegalStateException("Not reading a line in state " + state);
+        }
+    }
+
+    private void onHeadersEnd() throws ProtocolException {
+        int status = statusLine.status;
+        if (status >= 100 && status < 200 && status != 101) {
+            // Skip interim responses like 100 Continue.
+            state = State.STATUS_LINE;
+            return;
+        }
+        headers = Http1Parser.seal(headers);
+        keepAlive = Http1Parser.isKeepAlive(headers, statusLine.http10);
+        keepAliveTimeoutSeconds = Http1Parser.keepAliveTimeoutSeconds(headers);
+        long length = Http1Parser.bodyLength(method, status, headers);
+        if (length == 0) {
+            state = State.DONE;
+        } else if (length == Http1Parser.CHUNKED) {
+            body = new Body(8192);
+            state = State.CHUNK_SIZE;
+        } else if (length == Http1Parser.UNTIL_CLOSE) {
+            keepAlive = false;
+            body = new Body(8192);
+            state = State.UNTIL_CLOSE;
+        } else {
+            if (length > Integer.MAX_VALUE - 8)
+                throw new ProtocolException("Response body is too large to buffer: " + length + " bytes");
+            body = new Body((int) Math.min(length, MAX_INITIAL_BODY_CAPACITY));
+            remaining = length;
+            state = State.FIXED_LENGTH;
+        }
+    }
+
+    /**
+     * A growable buffer for the body, which can be read without copying it.
+     */
+    private static final class Body extends ByteArrayOutputStream {
+        Body(int capacity) {
+            super(capacity);
+        }
+
+        void write(ByteBuffer in, int length) {
+            write(in.array(), in.arrayOffset() + in.position(), length);
+            in.position(in.position() + length);
+        }
+
+        InputStream toInputStream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+    }
+
+    /**
+     * An exchange whose response has been received in full.
+     */
+    private static final class BufferedExchange implements Exchange {
+        @Getter
+        private final int status;
+        @Getter
+        private final String statusText;
+        @Getter
+        private final Map<String, List<String>> headers;
+        private final InputStream body;
+
+        BufferedExchange(int status, String statusText, Map<String, List<String>> headers, InputStream body) {
+            this.status = status;
+            this.statusText = statusText;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            List<String> values = headers.get(name);
+            return (values == null || values.isEmpty()) ? null : values.get(values.size() - 1);
+        }
+
+        @Override
+        public InputStream getBody() {
+            return body;
+        }
+
+        @Override
+        public void disconnect() {
+            // The connection was already given back.
+        }
+
+        @Override
+        public void close() {
+            // Nothing to release.
+        }
+    }
+
+}
@@ -0,0 +1,308 @@
+package net.insprill.fetch4j.transport;
+
+import lombok.experimental.UtilityClass;
+import net.insprill.fetch4j.Params;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Parses HTTP/1.1 response heads straight out of a {@link ConnectionInput}'s buffer, or any other byte array.
+ * Status codes are parsed from the bytes, and common header names are shared constants,
+ * so the only Strings created for a typical head are its header values.
+ */
+@UtilityClass
+class Http1Parser {
+
+    /**
+     * The {@link #bodyLength(Params.Method, int, Map) body length} of responses with a chunked body.
+     */
+    static final long CHUNKED = -1;
+    /**
+     * The {@link #bodyLength(Params.Method, int, Map) body length} of responses whose body ends when the connection is closed.
+     */
+    static final long UNTIL_CLOSE = -2;
+
+    private static final String[] KNOWN_HEADERS = {
+            "Accept-Ranges", "Age", "Cache-Control", "Connection", "Content-Encoding", "Content-Length", "Content-Range",
+            "Content-Type", "Date", "ETag", "Expires", "Keep-Alive", "Last-Modified", "Location", "Retry-After",
+            "Server", "Set-Cookie", "Transfer-Encoding", "Vary", "content-length", "content-type", "date", "server"
+    };
+    /**
+     * Known header names, indexed by their length.
+     */
+    private static final String[][] KNOWN_BY_LENGTH;
+
+    static {
+        int maxLength = 0;
+        for (String name : KNOWN_HEADERS) {
+            maxLength = Math.max(maxLength, name.length());
+        }
+        List<List<String>> byLength = new ArrayList<>();
+        for (int i = 0; i <= maxLength; i++) {
+            byLength.add(new ArrayList<>());
+        }
+        for (String name : KNOWN_HEADERS) {
+            byLength.get(name.length()).add(name);
+        }
+        KNOWN_BY_LENGTH = new String[maxLength + 1][];
+        for (int i = 0; i <= maxLength; i++) {
+            KNOWN_BY_LENGTH[i] = byLength.get(i).toArray(new String[0]);
+        }
+    }
+
+    /**
+     * A parsed status line.
+     */
+    static final class StatusLine {
+        final boolean http10;
+        final int status;
+        final String statusText;
+
+        StatusLine(boolean http10, int status, String statusText) {
+            this.http10 = http10;
+            this.status = status;
+            this.statusText = statusText;
+        }
+    }
+
+    /**
+     * Reads a status line, like {@code HTTP/1.1 200 OK}.
+     *
+     * @param in The stream to read from.
+     * @return The status line.
+     * @throws IOException If reading fails or the line is invalid.
+     */
+    StatusLine readStatusLine(ConnectionInput in) throws IOException {
+        int length = in.readLine();
+        return parseStatusLine(in.buffer(), in.lineStart(), length);
+    }
+
+    /**
+     * Parses a status line, like {@code HTTP/1.1 200 OK}.
+     *
+     * @param line   The buffer holding the line.
+     * @param start  The index the line starts at.
+     * @param length The length of the line, without its terminator.
+     * @return The status line.
+     * @throws ProtocolException If the line is invalid.
+     */
+    StatusLine parseStatusLine(byte[] line, int start, int length) throws ProtocolException {
+        if (length < 12 || !startsWith(line, start, "HTTP/") || line[start + 8] != ' ')
+            throw new ProtocolException("Invalid status line: " + new String(line, start, length, StandardCharsets.ISO_8859_1));
+        int status = 0;
+        for (int i = start + 9; i < start + 12; i++) {
+            int digit = line[i] - '0';
+            if (digit < 0 || digit > 9)
+                throw new ProtocolException("Invalid status line: " + new String(line, start, length, StandardCharsets.ISO_8859_1));
+            status = status * 10 + digit;
+        }
+        String statusText = length > 13 ? new String(line, start + 13, length - 13, StandardCharsets.ISO_8859_1) : null;
+        return new StatusLine(startsWith(line, start, "HTTP/1.0"), status, statusText);
+    }
+
+    /**
+     * Reads header fields until the empty line ending the head.
+     *
+     * @param in The stream to read from.
+     * @return An unmodifiable, case-insensitive Map of the headers.
+     * @throws IOException If reading fails or a header is invalid.
+     */
+    Map<String, List<String>> readHeaders(ConnectionInput in) throws IOException {
+        Map<String, List<String>> headers = newHeaders();
+        int length;
+        while ((length = in.readLine()) != 0) {
+            parseHeader(in.buffer(), in.lineStart(), length, headers);
+        }
+        return seal(headers);
+    }
+
+    /**
+     * @return A new case-insensitive Map for {@link #parseHeader(byte[], int, int, Map) parsing headers} into.
+     */
+    Map<String, List<String>> newHeaders() {
+        return new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    }
+
+    /**
+     * Parses a header field, like {@code Content-Type: text/plain}, adding it to a Map.
+     *
+     * @param line    The buffer holding the line.
+     * @param start   The index the line starts at.
+     * @param length  The length of the line, without its terminator.
+     * @param headers The Map to add the header to.
+     * @throws ProtocolException If the header is invalid.
+     */
+    void parseHeader(byte[] line, int start, int length, Map<String, List<String>> headers) throws ProtocolException {
+        int end = start + length;
+        int colon = start;
+        while (colon < end && line[colon] != ':') {
+            colon++;
+        }
+        int nameStart = skipWhitespace(line, start, colon);
+        int nameEnd = trimWhitespace(line, nameStart, colon);
+        if (colon == end || nameStart == nameEnd)
+            throw new ProtocolException("Invalid header: " + new String(line, start, length, StandardCharsets.ISO_8859_1));
+        int valueStart = skipWhitespace(line, colon + 1, end);
+        int valueEnd = trimWhitespace(line, valueStart, end);
+        String name = headerName(line, nameStart, nameEnd - nameStart);
+        String value = new String(line, valueStart, valueEnd - valueStart, StandardCharsets.ISO_8859_1);
+        headers.computeIfAbsent(name, k -> new ArrayList<>(1)).add(value);
+    }
+
+    /**
+     * Makes parsed headers unmodifiable.
+     *
+     * @param headers The headers.
+     * @return An unmodifiable view of the headers.
+     */
+    Map<String, List<String>> seal(Map<String, List<String>> headers) {
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            header.setValue(Collections.unmodifiableList(header.getValue()));
+        }
+        return Collections.unmodifiableMap(headers);
+    }
+
+    /**
+     * Parses the size of a chunk, like {@code 1f4;name=value}, ignoring any extensions.
+     *
+     * @param line   The buffer holding the line.
+     * @param start  The index the line starts at.
+     * @param length The length of the line, without its terminator.
+     * @return The chunk size.
+     * @throws ProtocolException If the size is invalid.
+     */
+    long parseChunkSize(byte[] line, int start, int length) throws ProtocolException {
+        int end = trimWhitespace(line, start, start + length);
+        int i = skipWhitespace(line, start, end);
+        long size = 0;
+        int digits = 0;
+        for (; i < end && line[i] != ';' && line[i] != ' ' && line[i] != '\t'; i++, digits++) {
+            int digit = Character.digit(line[i], 16);
+            if (digit == -1 || digits == 15)
+                throw new ProtocolException("Invalid chunk size: " + new String(line, start, length, StandardCharsets.ISO_8859_1));
+            size = size << 4 | digit;
+        }
+        if (digits == 0)
+            throw new ProtocolException("Invalid chunk size: " + new String(line, start, length, StandardCharsets.ISO_8859_1));
+        return size;
+    }
+
+    /**
+     * Checks if a connection can be reused after a response, from its {@code Connection} header.
+     *
+     * @param headers The response headers.
+     * @param http10  Whether the response was sent with HTTP/1.0.
+     * @return True if the connection can be kept alive, false otherwise.
+     */
+    boolean isKeepAlive(Map<String, List<String>> headers, boolean http10) {
+        String connection = lastValue(headers, "Connection");
+        if (connection == null)
+            return !http10;
+        if (http10)
+            return connection.toLowerCase(Locale.ROOT).contains("keep-alive");
+        return !connection.toLowerCase(Locale.ROOT).contains("close");
+    }
+
+    /**
+     * Gets how long the server keeps a connection open while idle, from the {@code timeout} parameter of its {@code Keep-Alive} header.
+     *
+     * @param headers The response headers.
+     * @return The timeout in seconds, or -1 if the server didn't send one.
+     */
+    long keepAliveTimeoutSeconds(Map<String, List<String>> headers) {
+        String keepAlive = lastValue(headers, "Keep-Alive");
+        if (keepAlive == null)
+            return -1;
+        for (String param : keepAlive.split(",")) {
+            String[] kv = param.trim().split("=", 2);
+            if (kv.length == 2 && kv[0].equalsIgnoreCase("timeout")) {
+                try {
+                    return Long.parseLong(kv[1].trim());
+                } catch (NumberFormatException ignored) {
+                    return -1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Works out how a response body is framed.
+     *
+     * @param method  The method of the request.
+     * @param status  The response code.
+     * @param headers The response headers.
+     * @return The length of the body, which is {@code 0} if it has none, {@link #CHUNKED} or {@link #UNTIL_CLOSE}.
+     * @throws ProtocolException If the {@code Content-Length} is invalid.
+     */
+    long bodyLength(Params.Method method, int status, Map<String, List<String>> headers) throws ProtocolException {
+        if (method == Params.Method.HEAD || status == 204 || status == 304 || status < 200)
+            return 0;
+        String transferEncoding = lastValue(headers, "Transfer-Encoding");
+        if (transferEncoding != null && transferEncoding.toLowerCase(Locale.ROOT).endsWith("chunked"))
+            return CHUNKED;
+        String contentLength = lastValue(headers, "Content-Length");
+        if (contentLength == null)
+            return UNTIL_CLOSE;
+        try {
+            long length = Long.parseLong(contentLength);
+            if (length >= 0)
+                return length;
+        } catch (NumberFormatException ignored) {
+            // Thrown below.
+        }
+        throw new ProtocolException("Invalid Content-Length: " + contentLength);
+    }
+
+    private static String lastValue(Map<String, List<String>> headers, String name) {
+        List<String> values = headers.get(name);
+        return values == null || values.isEmpty() ? null : values.get(values.size() - 1);
+    }
+
+    /**
+     * Gets a header name, reusing a constant if it's a common one.
+     */
+    private static String headerName(byte[] bytes, int offset, int length) {
+        if (length < KNOWN_BY_LENGTH.length) {
+            for (String known : KNOWN_BY_LENGTH[length]) {
+                if (startsWith(bytes, offset, known))
+                    return known;
+            }
+        }
+        return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+    }
+
+    private static boolean startsWith(byte[] bytes, int offset, String prefix) {
+        for (int i = 0; i < prefix.length(); i++) {
+            if (bytes[offset + i] != prefix.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Skips whitespace and control characters, like {@link String#trim()}.
+     */
+    private static int skipWhitespace(byte[] bytes, int start, int end) {
+        while (start < end && (bytes[start] & 0xFF) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    private static int trimWhitespace(byte[] bytes, int start, int end) {
+        while (end > start && (bytes[end - 1] & 0xFF) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+}
@@ -0,0 +1,258 @@
+package net.insprill.fetch4j.transport;
+
+import lombok.Getter;
+import net.insprill.fetch4j.EventListener;
+import net.insprill.fetch4j.Params;
+import net.insprill.fetch4j.RetryPolicy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An HTTP/1.1 transport reusing connections from a {@link ConnectionPool}.
+ * When the pool allows pipelining, {@code GET} and {@code HEAD} requests without a body which buffer their response
+ * may be sent on a connection before the responses to earlier requests on it have been read.<br>
+ * <b>WARNING:</b> This class is not part of the API and breaking changes may occur here at any time.
+ */
+public class Http1Transport implements Transport {
+
+    private static final String DEFAULT_USER_AGENT = "Java/" + System.getProperty("java.version");
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    @Getter
+    private final ConnectionPool connectionPool;
+
+    /**
+     * Constructs a new HTTP/1.1 transport.
+     *
+     * @param connectionPool The pool to lease connections from.
+     */
+    public Http1Transport(ConnectionPool connectionPool) {
+        this.connectionPool = connectionPool;
+    }
+
+    @Override
+    public Exchange execute(URL url, Params params) throws IOException {
+        Route route = Route.of(url);
+        EventListener listener = params.getEventListener();
+        boolean pipeline = isPipelinable(params);
+        boolean retried = false;
+        while (true) {
+            long acquireStart = System.nanoTime();
+            PooledConnection conn = connectionPool.acquire(route, params.getConnectionTimeout(), listener, pipeline, retried);
+            boolean reused = conn.isReused();
+            listener.connectionAcquired(reused, System.nanoTime() - acquireStart);
+            try {
+                long ticket;
+                synchronized (conn.getOutput()) {
+                    ticket = conn.nextTicket();
+                    writeRequest(conn.getOutput(), route, url, params);
+                }
+                conn.awaitTurn(ticket, params.getReadTimeout());
+                conn.setReadTimeout(params.getReadTimeout());
+                return readResponse(conn, params.getMethod());
+            } catch (IOException | RuntimeException e) {
+                connectionPool.release(conn, false);
+                // The server may have closed an idle connection right as we picked it up, or closed a connection
+                // with requests still pipelined on it, so try again on a new one. It may also have processed the
+                // request before closing, so only do so once, and only if sending it again is safe and possible.
+                if (!retried && reused && isReplayable(params, e)) {
+                    retried = true;
+                    continue;
+                }
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        connectionPool.close();
+    }
+
+    /**
+     * Checks if a request which failed on a reused connection can be sent again, which is only safe for idempotent
+     * requests whose body isn't streamed, as a stream may not be able to be opened twice.
+     */
+    private static boolean isReplayable(Params params, Exception e) {
+        return e instanceof IOException && !(e instanceof SocketTimeoutException)
+                && RetryPolicy.isIdempotent(params.getMethod())
+                && params.getBodySupplier() == null;
+    }
+
+    /**
+     * Checks if a request can be pipelined, which is only safe for idempotent requests without a body,
+     * and only worthwhile if its response is read straight away.
+     */
+    private static boolean isPipelinable(Params params) {
+        return (params.getMethod() == Params.Method.GET || params.getMethod() == Params.Method.HEAD)
+                && !params.isStreamBody()
+                && !RequestBodies.hasBody(params);
+    }
+
+    /**
+     * Writes a request's head and body, flushing the stream afterwards.
+     */
+    static void writeRequest(OutputStream out, Route route, URL url, Params params) throws IOException {
+        String path = url.getFile().isEmpty() ? "/" : url.getFile();
+        RequestHeaders.validate(path, params);
+        StringBuilder head = new StringBuilder(256)
+                .append(params.getMethod().name()).append(' ').append(path).append(" HTTP/1.1\r\n");
+        Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        headers.put("Host", route.getHostHeader());
+        headers.put("User-Agent", DEFAULT_USER_AGENT);
+        headers.put("Accept", "*/*");
+        headers.putAll(params.getHeaders());
+        boolean hasBody = RequestBodies.hasBody(params);
+        long length = RequestBodies.contentLength(params);
+        if (hasBody) {
+            if (length != -1) {
+                headers.put("Content-Length", String.valueOf(length));
+            } else {
+                headers.put("Transfer-Encoding", "chunked");
+            }
+            String contentEncoding = RequestBodies.contentEncoding(params);
+            if (contentEncoding != null) {
+                headers.put("Content-Encoding", contentEncoding);
+            }
+        } else if (params.getMethod() == Params.Method.POST || params.getMethod() == Params.Method.PUT) {
+            headers.put("Content-Length", "0");
+        }
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        head.append("\r\n");
+        out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+        if (hasBody) {
+            long start = System.nanoTime();
+            long written;
+            try (InputStream body = RequestBodies.open(params)) {
+                if (length != -1) {
+                    written = RequestBodies.copy(body, out, length);
+                } else {
+                    written = writeChunked(body, out);
+                }
+            }
+            out.flush();
+            params.getEventListener().requestBodyEnd(written, System.nanoTime() - start);
+            return;
+        }
+        out.flush();
+    }
+
+    private static long writeChunked(InputStream body, OutputStream out) throws IOException {
+        byte[] buf = new byte[8192];
+        long written = 0;
+        int n;
+        while ((n = body.read(buf)) != -1) {
+            if (n == 0)
+                continue;
+            written += n;
+            out.write(Integer.toHexString(n).getBytes(StandardCharsets.ISO_8859_1));
+            out.write(CRLF);
+            out.write(buf, 0, n);
+            out.write(CRLF);
+        }
+        out.write('0');
+        out.write(CRLF);
+        out.write(CRLF);
+        return written;
+    }
+
+    private Http1Exchange readResponse(PooledConnection conn, Params.Method method) throws IOException {
+        ConnectionInput in = conn.getInput();
+        while (true) {
+            Http1Parser.StatusLine statusLine = Http1Parser.readStatusLine(in);
+            Map<String, List<String>> headers = Http1Parser.readHeaders(in);
+            int status = statusLine.status;
+            if (status >= 100 && status < 200 && status != 101)
+                continue; // Skip interim responses like 100 Continue.
+            return new Http1Exchange(conn, method, status, statusLine.statusText, headers, statusLine.http10);
+        }
+    }
+
+    private class Http1Exchange implements Exchange, HttpBodyStreams.Listener {
+
+        private final PooledConnection conn;
+        @Getter
+        private final int status;
+        @Getter
+        private final String statusText;
+        @Getter
+        private final Map<String, List<String>> headers;
+        private final InputStream body;
+        private boolean keepAlive;
+        private boolean released;
+
+        Http1Exchange(PooledConnection conn, Params.Method method, int status, String statusText,
+                      Map<String, List<String>> headers, boolean http10) throws IOException {
+            this.conn = conn;
+            this.status = status;
+            this.statusText = statusText;
+            this.headers = headers;
+
+            keepAlive = Http1Parser.isKeepAlive(headers, http10);
+            long keepAliveTimeout = Http1Parser.keepAliveTimeoutSeconds(headers);
+            if (keepAliveTimeout != -1) {
+                conn.limitLifetime(TimeUnit.SECONDS.toNanos(keepAliveTimeout));
+            }
+
+            long length = Http1Parser.bodyLength(method, status, headers);
+            if (length == Http1Parser.CHUNKED) {
+                body = new HttpBodyStreams.Chunked(conn.getInput(), this);
+            } else if (length == Http1Parser.UNTIL_CLOSE) {
+                keepAlive = false;
+                body = new HttpBodyStreams.UntilClose(conn.getInput(), this);
+            } else {
+                body = new HttpBodyStreams.FixedLength(conn.getInput(), length, this);
+            }
+            if (!keepAlive) {
+                // Requests pipelined behind this one will fail, so don't add any more.
+                conn.pipelining = false;
+            }
+        }
+
+        @Override
+        public String getHeader(String name) {
+            List<String> values = headers.get(name);
+            return (values == null || values.isEmpty()) ? null : values.get(values.size() - 1);
+        }
+
+        @Override
+        public InputStream getBody() {
+            return body;
+        }
+
+        @Override
+        public void disconnect() {
+            keepAlive = false;
+            finished(false);
+        }
+
+        @Override
+        public void close() throws IOException {
+            body.close();
+        }
+
+        @Override
+        public synchronized void finished(boolean complete) {
+            if (released)
+                return;
+            released = true;
+            if (complete && keepAlive) {
+                conn.finishTurn();
+            }
+            connectionPool.release(conn, complete && keepAlive);
+        }
+
+    }
+
+}
@@ -0,0 +1,890 @@
+package net.insprill.fetch4j.transport;
+
+import lombok.Getter;
+import net.insprill.fetch4j.Params;
+import net.insprill.fetch4j.util.ExecutorUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single HTTP/2 connection, multiplexing concurrent requests as streams (RFC 9113).
+ * Frames are read by a dedicated thread, while requests are written by the threads performing them.
+ */
+class Http2Connection implements Closeable {
+
+    static final String[] APPLICATION_PROTOCOLS = {"h2", "http/1.1"};
+
+    private static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+    private static final int TYPE_DATA = 0x0;
+    private static final int TYPE_HEADERS = 0x1;
+    private static final int TYPE_RST_STREAM = 0x3;
+    private static final int TYPE_SETTINGS = 0x4;
+    private static final int TYPE_PUSH_PROMISE = 0x5;
+    private static final int TYPE_PING = 0x6;
+    private static final int TYPE_GOAWAY = 0x7;
+    private static final int TYPE_WINDOW_UPDATE = 0x8;
+    private static final int TYPE_CONTINUATION = 0x9;
+
+    private static final int FLAG_END_STREAM = 0x1;
+    private static final int FLAG_ACK = 0x1;
+    private static final int FLAG_END_HEADERS = 0x4;
+    private static final int FLAG_PADDED = 0x8;
+    private static final int FLAG_PRIORITY = 0x20;
+
+    private static final int SETTINGS_HEADER_TABLE_SIZE = 0x1;
+    private static final int SETTINGS_ENABLE_PUSH = 0x2;
+    private static final int SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+    private static final int SETTINGS_INITIAL_WINDOW_SIZE = 0x4;
+    private static final int SETTINGS_MAX_FRAME_SIZE = 0x5;
+
+    private static final int ERROR_NO_ERROR = 0x0;
+    private static final int ERROR_PROTOCOL = 0x1;
+    private static final int ERROR_FLOW_CONTROL = 0x3;
+    private static final int ERROR_FRAME_SIZE = 0x6;
+    private static final int ERROR_REFUSED_STREAM = 0x7;
+    private static final int ERROR_CANCEL = 0x8;
+
+    private static final int DEFAULT_WINDOW_SIZE = 65535;
+    private static final int DEFAULT_MAX_FRAME_SIZE = 16384;
+    private static final int HEADER_TABLE_SIZE = 4096;
+    private static final int STREAM_WINDOW_SIZE = 1 << 20;
+    private static final int CONNECTION_WINDOW_SIZE = 16 << 20;
+
+    private static final String DEFAULT_USER_AGENT = "Java/" + System.getProperty("java.version");
+    private static final Set<String> CONNECTION_SPECIFIC_HEADERS = new HashSet<>(Arrays.asList(
+            "connection", "host", "keep-alive", "proxy-connection", "te", "transfer-encoding", "upgrade"));
+
+    @Getter
+    private final Route route;
+    private final Socket socket;
+    private final DataInputStream in;
+    private final OutputStream out;
+    private final Object writeLock = new Object();
+    private final Hpack.Encoder encoder = new Hpack.Encoder();
+    private final Hpack.Decoder decoder = new Hpack.Decoder(HEADER_TABLE_SIZE);
+    private final Map<Integer, Stream> streams = new ConcurrentHashMap<>();
+
+    // Guarded by this.
+    private int nextStreamId = 1;
+    private int activeStreams;
+    private int peerMaxConcurrentStreams = Integer.MAX_VALUE;
+    private int peerInitialWindowSize = DEFAULT_WINDOW_SIZE;
+    private int peerMaxFrameSize = DEFAULT_MAX_FRAME_SIZE;
+    private long connectionSendWindow = DEFAULT_WINDOW_SIZE;
+    private boolean shutdown;
+    private IOException failure;
+
+    // Only accessed by the reader thread.
+    private long connectionReceiveUnacked;
+
+    /**
+     * Starts an HTTP/2 connection over a connected socket.
+     *
+     * @param route  The route the socket is connected to.
+     * @param socket The socket, which has negotiated {@code h2} if it's secure.
+     * @throws IOException If sending the connection preface fails.
+     */
+    Http2Connection(Route route, Socket socket) throws IOException {
+        this.route = route;
+        this.socket = socket;
+        this.socket.setSoTimeout(0);
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 16384));
+        this.out = new BufferedOutputStream(socket.getOutputStream(), 16384);
+        synchronized (writeLock) {
+            out.write(PREFACE);
+            writeSettings(new int[][]{
+                    {SETTINGS_ENABLE_PUSH, 0},
+                    {SETTINGS_INITIAL_WINDOW_SIZE, STREAM_WINDOW_SIZE},
+                    {SETTINGS_HEADER_TABLE_SIZE, HEADER_TABLE_SIZE},
+            });
+            writeWindowUpdate(0, CONNECTION_WINDOW_SIZE - DEFAULT_WINDOW_SIZE);
+            out.flush();
+        }
+        Thread reader = ExecutorUtil.newThreadFactory("fetch4j-h2-reader-" + route + "-").newThread(this::readLoop);
+        reader.start();
+    }
+
+    /**
+     * Checks if new requests can be sent over this connection.
+     *
+     * @return True if the connection is open and the server hasn't asked to stop using it.
+     */
+    synchronized boolean isUsable() {
+        return !shutdown;
+    }
+
+    /**
+     * Sends a request over a new stream and waits for the response headers.
+     *
+     * @param url    The URL to request.
+     * @param params The parameters of the request.
+     * @return The exchange.
+     * @throws IOException If the request fails. A {@link RefusedStreamException} means the server didn't process it.
+     */
+    Exchange execute(URL url, Params params) throws IOException {
+        long length = RequestBodies.contentLength(params);
+        boolean hasBody = RequestBodies.hasBody(params) && length != 0;
+        byte[] headerBlock = encodeHeaders(url, params, length);
+
+        synchronized (this) {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(params.getConnectionTimeout());
+            while (!shutdown && activeStreams >= peerMaxConcurrentStreams) {
+                awaitUntil(deadline, params.getConnectionTimeout(), "Timed out waiting for a free stream on " + route);
+            }
+            if (shutdown)
+                throw new RefusedStreamException("Connection to " + route + " is shutting down");
+            activeStreams++;
+        }
+
+        Stream stream;
+        synchronized (writeLock) {
+            // Stream IDs must be used in increasing order, so allocate them while holding the write lock.
+            int id;
+            synchronized (this) {
+                id = nextStreamId;
+                nextStreamId += 2;
+                if (nextStreamId < 0)
+                    shutdown = true;
+                stream = new Stream(id, peerInitialWindowSize, params.getReadTimeout());
+            }
+            streams.put(id, stream);
+            try {
+                writeHeaderBlock(id, headerBlock, !hasBody);
+                out.flush();
+            } catch (IOException e) {
+                fail(e);
+                throw e;
+            }
+        }
+
+        try {
+            if (hasBody) {
+                long start = System.nanoTime();
+                long written;
+                try (InputStream body = RequestBodies.open(params)) {
+                    written = writeData(stream, body, length);
+                }
+                params.getEventListener().requestBodyEnd(written, System.nanoTime() - start);
+            }
+            stream.awaitHeaders();
+        } catch (IOException | RuntimeException e) {
+            stream.cancel();
+            throw e;
+        }
+        return stream;
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            shutdown = true;
+            notifyAll();
+        }
+        try {
+            synchronized (writeLock) {
+                writeGoAway(ERROR_NO_ERROR);
+                out.flush();
+            }
+        } catch (IOException ignored) {
+            // Closing anyway.
+        }
+        fail(new IOException("Connection closed"));
+    }
+
+    private byte[] encodeHeaders(URL url, Params params, long contentLength) {
+        ByteArrayOutputStream block = new ByteArrayOutputStream(256);
+        String path = url.getFile().isEmpty() ? "/" : url.getFile();
+        RequestHeaders.validate(path, params);
+        encoder.encode(block, ":method", params.getMethod().name());
+        encoder.encode(block, ":scheme", route.isSecure() ? "https" : "http");
+        encoder.encode(block, ":authority", route.getHostHeader());
+        encoder.encode(block, ":path", path);
+        Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        headers.put("user-agent", DEFAULT_USER_AGENT);
+        headers.put("accept", "*/*");
+        headers.putAll(params.getHeaders());
+        if (contentLength != -1) {
+            headers.put("content-length", String.valueOf(contentLength));
+        }
+        String contentEncoding = RequestBodies.contentEncoding(params);
+        if (contentEncoding != null) {
+            headers.put("content-encoding", contentEncoding);
+        }
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            String name = header.getKey().toLowerCase(Locale.ROOT);
+            if (!CONNECTION_SPECIFIC_HEADERS.contains(name)) {
+                encoder.encode(block, name, header.getValue());
+            }
+        }
+        return block.toByteArray();
+    }
+
+    private long writeData(Stream stream, InputStream body, long length) throws IOException {
+        byte[] buf = new byte[DEFAULT_MAX_FRAME_SIZE];
+        int bufLen = 0;
+        long written = 0;
+        boolean eof = false;
+        while (true) {
+            // Keep a frame's worth of data read ahead, so the last frame can be flagged as the end of the stream.
+            while (!eof && bufLen < buf.length) {
+                int n = body.read(buf, bufLen, buf.length - bufLen);
+                if (n == -1) {
+                    eof = true;
+                } else {
+                    bufLen += n;
+                }
+            }
+            if (length != -1 && written + bufLen > length)
+                throw new ProtocolException("Request body is longer than its length of " + length + " bytes");
+            int off = 0;
+            do {
+                int n;
+                synchronized (this) {
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(stream.readTimeoutMillis);
+                    while (true) {
+                        if (failure != null)
+                            throw failure;
+                        stream.throwIfFailed();
+                        n = (int) Math.min(Math.min(bufLen - off, peerMaxFrameSize), Math.min(stream.sendWindow, connectionSendWindow));
+                        if (n > 0 || bufLen == 0)
+                            break;
+                        awaitUntil(deadline, stream.readTimeoutMillis, "Timed out waiting for the server's flow-control window");
+                    }
+                    stream.sendWindow -= n;
+                    connectionSendWindow -= n;
+                }
+                boolean last = eof && off + n == bufLen;
+                if (last && length != -1 && written + bufLen != length)
+                    throw new ProtocolException("Request body is " + (written + bufLen) + " bytes, but its length was " + length + " bytes");
+                synchronized (writeLock) {
+                    writeFrameHeader(n, TYPE_DATA, last ? FLAG_END_STREAM : 0, stream.id);
+                    out.write(buf, off, n);
+                    out.flush();
+                }
+                off += n;
+            } while (off < bufLen);
+            written += bufLen;
+            if (eof)
+                return written;
+            bufLen = 0;
+        }
+    }
+
+    private void awaitUntil(long deadline, int timeoutMillis, String timeoutMessage) throws IOException {
+        long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (timeoutMillis != 0 && remaining <= 0)
+            throw new SocketTimeoutException(timeoutMessage);
+        try {
+            wait(timeoutMillis == 0 ? 0 : remaining);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+    }
+
+    // region Frame writing. Must hold the write lock.
+
+    private void writeFrameHeader(int length, int type, int flags, int streamId) throws IOException {
+        out.write(length >>> 16);
+        out.write(length >>> 8);
+        out.write(length);
+        out.write(type);
+        out.write(flags);
+        writeInt(streamId);
+    }
+
+    private void writeInt(int value) throws IOException {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private void writeHeaderBlock(int streamId, byte[] block, boolean endStream) throws IOException {
+        int maxFrameSize;
+        synchronized (this) {
+            maxFrameSize = peerMaxFrameSize;
+        }
+        int off = 0;
+        int type = TYPE_HEADERS;
+        do {
+            int n = Math.min(block.length - off, maxFrameSize);
+            boolean last = off + n == block.length;
+            int flags = (last ? FLAG_END_HEADERS : 0) | (type == TYPE_HEADERS && endStream ? FLAG_END_STREAM : 0);
+            writeFrameHeader(n, type, flags, streamId);
+            out.write(block, off, n);
+            off += n;
+            type = TYPE_CONTINUATION;
+        } while (off < block.length);
+    }
+
+    private void writeSettings(int[][] settings) throws IOException {
+        writeFrameHeader(settings.length * 6, TYPE_SETTINGS, 0, 0);
+        for (int[] setting : settings) {
+            out.write(setting[0] >>> 8);
+            out.write(setting[0]);
+            writeInt(setting[1]);
+        }
+    }
+
+    private void writeWindowUpdate(int streamId, long increment) throws IOException {
+        writeFrameHeader(4, TYPE_WINDOW_UPDATE, 0, streamId);
+        writeInt((int) increment);
+    }
+
+    private void writeRstStream(int streamId, int errorCode) throws IOException {
+        writeFrameHeader(4, TYPE_RST_STREAM, 0, streamId);
+        writeInt(errorCode);
+    }
+
+    private void writeGoAway(int errorCode) throws IOException {
+        writeFrameHeader(8, TYPE_GOAWAY, 0, 0);
+        writeInt(0);
+        writeInt(errorCode);
+    }
+
+    /**
+     * Writes a control frame outside of a request, failing the connection if it can't be sent.
+     */
+    private void writeControl(ControlWriter writer) {
+        try {
+            synchronized (writeLock) {
+                writer.write();
+                out.flush();
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private interface ControlWriter {
+        void write() throws IOException;
+    }
+
+    // endregion
+
+    // region Frame reading.
+
+    private void readLoop() {
+        try {
+            ByteArrayOutputStream headerBlock = null;
+            int headerStreamId = 0;
+            boolean headerEndStream = false;
+            while (true) {
+                int length = in.readUnsignedByte() << 16 | in.readUnsignedByte() << 8 | in.readUnsignedByte();
+                int type = in.readUnsignedByte();
+                int flags = in.readUnsignedByte();
+                int streamId = in.readInt() & 0x7FFFFFFF;
+                if (length > DEFAULT_MAX_FRAME_SIZE)
+                    throw connectionError(ERROR_FRAME_SIZE, "Frame too large: " + length);
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+
+                if (headerBlock != null && (type != TYPE_CONTINUATION || streamId != headerStreamId))
+                    throw connectionError(ERROR_PROTOCOL, "Expected CONTINUATION frame");
+
+                switch (type) {
+                    case TYPE_DATA:
+                        onData(streamId, flags, payload);
+                        break;
+                    case TYPE_HEADERS: {
+                        int off = 0;
+                        int padding = 0;
+                        if ((flags & FLAG_PADDED) != 0) {
+                            padding = payload[off++] & 0xFF;
+                        }
+                        if ((flags & FLAG_PRIORITY) != 0) {
+                            off += 5;
+                        }
+                        if (off + padding > length)
+                            throw connectionError(ERROR_PROTOCOL, "Invalid HEADERS padding");
+                        headerBlock = new ByteArrayOutputStream(Math.max(length, 64));
+                        headerBlock.write(payload, off, length - off - padding);
+                        headerStreamId = streamId;
+                        headerEndStream = (flags & FLAG_END_STREAM) != 0;
+                        if ((flags & FLAG_END_HEADERS) != 0) {
+                            onHeaders(headerStreamId, headerBlock.toByteArray(), headerEndStream);
+                            headerBlock = null;
+                        }
+                        break;
+                    }
+                    case TYPE_CONTINUATION:
+                        if (headerBlock == null)
+                            throw connectionError(ERROR_PROTOCOL, "Unexpected CONTINUATION frame");
+                        headerBlock.write(payload, 0, length);
+                        if ((flags & FLAG_END_HEADERS) != 0) {
+                            onHeaders(headerStreamId, headerBlock.toByteArray(), headerEndStream);
+                            headerBlock = null;
+                        }
+                        break;
+                    case TYPE_RST_STREAM:
+                        onRstStream(streamId, readInt(payload, 0));
+                        break;
+                    case TYPE_SETTINGS:
+                        if ((flags & FLAG_ACK) == 0) {
+                            onSettings(payload);
+                        }
+                        break;
+                    case TYPE_PUSH_PROMISE:
+                        throw connectionError(ERROR_PROTOCOL, "Server push was disabled");
+                    case TYPE_PING:
+                        if ((flags & FLAG_ACK) == 0) {
+                            writeControl(() -> {
+                                writeFrameHeader(8, TYPE_PING, FLAG_ACK, 0);
+                                out.write(payload);
+                            });
+                        }
+                        break;
+                    case TYPE_GOAWAY:
+                        onGoAway(readInt(payload, 0) & 0x7FFFFFFF, readInt(payload, 4));
+                        break;
+                    case TYPE_WINDOW_UPDATE:
+                        onWindowUpdate(streamId, readInt(payload, 0) & 0x7FFFFFFF);
+                        break;
+                    default:
+                        // Unknown and PRIORITY frames are ignored.
+                        break;
+                }
+            }
+        } catch (IOException e) {
+            fail(e);
+        } catch (RuntimeException e) {
+            fail(new IOException(e));
+        }
+    }
+
+    private void onHeaders(int streamId, byte[] block, boolean endStream) throws IOException {
+        Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        int[] status = {-1};
+        // Always decode, even for unknown streams, to keep the dynamic table in sync.
+        decoder.decode(block, (name, value) -> {
+            if (name.equals(":status")) {
+                try {
+                    status[0] = Integer.parseInt(value);
+                } catch (NumberFormatException ignored) {
+                    // Treated as a missing status.
+                }
+            } else if (!name.startsWith(":")) {
+                headers.computeIfAbsent(name, k -> new ArrayList<>(1)).add(value);
+            }
+        });
+        Stream stream = streams.get(streamId);
+        if (stream != null) {
+            stream.onHeaders(status[0], headers, endStream);
+        }
+    }
+
+    private void onData(int streamId, int flags, byte[] payload) throws IOException {
+        int off = 0;
+        int padding = 0;
+        if ((flags & FLAG_PADDED) != 0) {
+            padding = payload[off++] & 0xFF;
+            if (off + padding > payload.length)
+                throw connectionError(ERROR_PROTOCOL, "Invalid DATA padding");
+        }
+        // The whole frame counts against flow control, but only the connection window is replenished right away.
+        // Stream windows are replenished as the body is read, bounding how much can be buffered.
+        connectionReceiveUnacked += payload.length;
+        if (connectionReceiveUnacked >= CONNECTION_WINDOW_SIZE / 2) {
+            long increment = connectionReceiveUnacked;
+            connectionReceiveUnacked = 0;
+            writeControl(() -> writeWindowUpdate(0, increment));
+        }
+        Stream stream = streams.get(streamId);
+        if (stream != null) {
+            stream.onData(Arrays.copyOfRange(payload, off, payload.length - padding), payload.length, (flags & FLAG_END_STREAM) != 0);
+        }
+    }
+
+    private void onRstStream(int streamId, int errorCode) {
+        Stream stream = streams.get(streamId);
+        if (stream == null)
+            return;
+        String message = "Stream reset by server with error code " + errorCode;
+        stream.fail(errorCode == ERROR_REFUSED_STREAM ? new RefusedStreamException(message) : new IOException(message));
+    }
+
+    private void onSettings(byte[] payload) throws IOException {
+        if (payload.length % 6 != 0)
+            throw connectionError(ERROR_FRAME_SIZE, "Invalid SETTINGS frame");
+        synchronized (this) {
+            for (int i = 0; i < payload.length; i += 6) {
+                int id = (payload[i] & 0xFF) << 8 | (payload[i + 1] & 0xFF);
+                int value = readInt(payload, i + 2);
+                switch (id) {
+                    case SETTINGS_MAX_CONCURRENT_STREAMS:
+                        peerMaxConcurrentStreams = value;
+                        break;
+                    case SETTINGS_INITIAL_WINDOW_SIZE:
+                        if (value < 0)
+                            throw connectionError(ERROR_FLOW_CONTROL, "Invalid initial window size");
+                        int delta = value - peerInitialWindowSize;
+                        peerInitialWindowSize = value;
+                        for (Stream stream : streams.values()) {
+                            stream.sendWindow += delta;
+                        }
+                        break;
+                    case SETTINGS_MAX_FRAME_SIZE:
+                        if (value < DEFAULT_MAX_FRAME_SIZE || value > 0xFFFFFF)
+                            throw connectionError(ERROR_PROTOCOL, "Invalid max frame size");
+                        peerMaxFrameSize = value;
+                        break;
+                    default:
+                        // Our encoder never uses the dynamic table, so the header table size doesn't matter.
+                        break;
+                }
+            }
+            notifyAll();
+        }
+        writeControl(() -> writeFrameHeader(0, TYPE_SETTINGS, FLAG_ACK, 0));
+    }
+
+    private void onGoAway(int lastStreamId, int errorCode) {
+        synchronized (this) {
+            shutdown = true;
+            notifyAll();
+        }
+        for (Stream stream : streams.values()) {
+            if (stream.id > lastStreamId) {
+                stream.fail(new RefusedStreamException("Server is shutting down the connection, error code " + errorCode));
+            }
+        }
+        closeIfIdle();
+    }
+
+    private void onWindowUpdate(int streamId, int increment) throws IOException {
+        if (increment == 0)
+            throw connectionError(ERROR_PROTOCOL, "Window increment of 0");
+        synchronized (this) {
+            if (streamId == 0) {
+                connectionSendWindow += increment;
+            } else {
+                Stream stream = streams.get(streamId);
+                if (stream != null) {
+                    stream.sendWindow += increment;
+                }
+            }
+            notifyAll();
+        }
+    }
+
+    private static int readInt(byte[] b, int off) {
+        return (b[off] & 0xFF) << 24 | (b[off + 1] & 0xFF) << 16 | (b[off + 2] & 0xFF) << 8 | (b[off + 3] & 0xFF);
+    }
+
+    private IOException connectionError(int errorCode, String message) {
+        writeControl(() -> writeGoAway(errorCode));
+        return new ProtocolException(message);
+    }
+
+    // endregion
+
+    /**
+     * Fails all streams and closes the socket.
+     */
+    private void fail(IOException e) {
+        synchronized (this) {
+            if (failure == null) {
+                failure = e instanceof EOFException ? new EOFException("Connection closed by server") : e;
+            }
+            shutdown = true;
+            notifyAll();
+        }
+        for (Stream stream : streams.values()) {
+            stream.fail(new IOException("HTTP/2 connection to " + route + " failed", e));
+        }
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // Nothing we can do.
+        }
+    }
+
+    private void closeIfIdle() {
+        boolean idle;
+        synchronized (this) {
+            idle = shutdown && activeStreams == 0;
+        }
+        if (idle) {
+            fail(new IOException("Connection closed"));
+        }
+    }
+
+    private void streamFinished(Stream stream) {
+        if (streams.remove(stream.id) == null)
+            return;
+        synchronized (this) {
+            activeStreams--;
+            notifyAll();
+        }
+        closeIfIdle();
+    }
+
+    /**
+     * Thrown when the server refused a stream without processing it, so the request can safely be retried.
+     */
+    static class RefusedStreamException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        RefusedStreamException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * A single request/response exchange on this connection.
+     */
+    private class Stream extends InputStream implements Exchange {
+
+        private final int id;
+        private final int readTimeoutMillis;
+        // Guarded by the connection.
+        private long sendWindow;
+
+        // Guarded by this.
+        private int status = -1;
+        private Map<String, List<String>> headers;
+        private final Deque<byte[]> chunks = new ArrayDeque<>();
+        private int chunkOffset;
+        private long receiveWindow = STREAM_WINDOW_SIZE;
+        private long receiveUnacked;
+        private boolean remoteEnded;
+        private boolean closed;
+        private IOException error;
+
+        Stream(int id, long sendWindow, int readTimeoutMillis) {
+            this.id = id;
+            this.sendWindow = sendWindow;
+            this.readTimeoutMillis = readTimeoutMillis;
+        }
+
+        synchronized void awaitHeaders() throws IOException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(readTimeoutMillis);
+            while (headers == null) {
+                throwIfFailed();
+                awaitData(deadline);
+            }
+        }
+
+        synchronized void throwIfFailed() throws IOException {
+            if (error != null)
+                throw error;
+        }
+
+        void onHeaders(int status, Map<String, List<String>> headers, boolean endStream) {
+            synchronized (this) {
+                if (this.headers == null) {
+                    if (status >= 100 && status < 200 && !endStream)
+                        return; // Interim response.
+                    this.status = status;
+                    this.headers = Collections.unmodifiableMap(headers);
+                }
+                // Anything after the first headers are trailers, which are ignored.
+                if (endStream) {
+                    remoteEnded = true;
+                }
+                notifyAll();
+            }
+            if (endStream) {
+                streamFinished(this);
+            }
+        }
+
+        void onData(byte[] data, int frameLength, boolean endStream) {
+            boolean flowControlError;
+            synchronized (this) {
+                receiveWindow -= frameLength;
+                flowControlError = receiveWindow < 0;
+                if (!flowControlError && !closed) {
+                    if (data.length > 0) {
+                        chunks.addLast(data);
+                    }
+                    // Padding is never read, so acknowledge it right away.
+                    receiveUnacked += frameLength - data.length;
+                }
+                if (endStream) {
+                    remoteEnded = true;
+                }
+                notifyAll();
+            }
+            if (flowControlError) {
+                fail(new ProtocolException("Server exceeded the flow-control window"));
+                writeControl(() -> writeRstStream(id, ERROR_FLOW_CONTROL));
+            } else if (endStream) {
+                streamFinished(this);
+            }
+        }
+
+        void fail(IOException e) {
+            synchronized (this) {
+                if (error == null) {
+                    error = e;
+                }
+                notifyAll();
+            }
+            streamFinished(this);
+        }
+
+        /**
+         * Abandons the stream, telling the server to stop sending if it hasn't finished yet.
+         */
+        void cancel() {
+            boolean reset;
+            synchronized (this) {
+                closed = true;
+                chunks.clear();
+                reset = !remoteEnded && error == null;
+                if (error == null) {
+                    error = new IOException("Stream closed");
+                }
+                notifyAll();
+            }
+            if (reset) {
+                writeControl(() -> writeRstStream(id, ERROR_CANCEL));
+            }
+            streamFinished(this);
+        }
+
+        private void awaitData(long deadline) throws IOException {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (readTimeoutMillis != 0 && remaining <= 0)
+                throw new SocketTimeoutException("Read timed out");
+            try {
+                wait(readTimeoutMillis == 0 ? 0 : remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted", e);
+            }
+        }
+
+        // region Exchange
+
+        @Override
+        public synchronized int getStatus() {
+            return status;
+        }
+
+        @Override
+        public String getStatusText() {
+            return null; // HTTP/2 has no reason phrases.
+        }
+
+        @Override
+        public synchronized String getHeader(String name) {
+            List<String> values = headers.get(name);
+            return (values == null || values.isEmpty()) ? null : values.get(values.size() - 1);
+        }
+
+        @Override
+        public synchronized Map<String, List<String>> getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public InputStream getBody() {
+            return this;
+        }
+
+        @Override
+        public void disconnect() {
+            cancel();
+        }
+
+        // endregion
+
+        // region InputStream
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            int n;
+            long increment = 0;
+            synchronized (this) {
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(readTimeoutMillis);
+                while (chunks.isEmpty()) {
+                    if (closed)
+                        throw new IOException("Stream closed");
+                    if (remoteEnded)
+                        return -1;
+                    throwIfFailed();
+                    awaitData(deadline);
+                }
+                byte[] chunk = chunks.peekFirst();
+                n = Math.min(len, chunk.length - chunkOffset);
+                System.arraycopy(chunk, chunkOffset, b, off, n);
+                chunkOffset += n;
+                if (chunkOffset == chunk.length) {
+                    chunks.removeFirst();
+                    chunkOffset = 0;
+                }
+                receiveUnacked += n;
+                if (!remoteEnded && receiveUnacked >= STREAM_WINDOW_SIZE / 2) {
+                    increment = receiveUnacked;
+                    receiveWindow += increment;
+                    receiveUnacked = 0;
+                }
+            }
+            if (increment > 0) {
+                long inc = increment;
+                writeControl(() -> writeWindowUpdate(id, inc));
+            }
+            return n;
+        }
+
+        @Override
+        public synchronized int available() {
+            int available = 0;
+            for (byte[] chunk : chunks) {
+                available += chunk.length;
+            }
+            return available - chunkOffset;
+        }
+
+        @Override
+        public void close() {
+            synchronized (this) {
+                if (closed || (remoteEnded && chunks.isEmpty()))
+                    return;
+            }
+            cancel();
+        }
+
+        // endregion
+
+    }
+
+}
@@ -0,0 +1,137 @@
+package net.insprill.fetch4j.transport;
+
+import lombok.NonNull;
+import net.insprill.fetch4j.EventListener;
+import net.insprill.fetch4j.Params;
+
+import javax.net.ssl.SSLSocket;
+import java.io.IOException;
+import java.net.Socket;
+import java.net.URL;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An HTTP/2 transport, multiplexing all requests to a host over a single connection.
+ * <p>
+ * For {@code https} URLs, HTTP/2 is negotiated with ALPN. Hosts which don't support it are remembered,
+ * and requests to them are sent through the fallback transport instead.
+ * For {@code http} URLs, HTTP/2 is only used with prior knowledge (h2c), as upgrading isn't supported.
+ */
+public class Http2Transport implements Transport {
+
+    private final Transport fallback;
+    private final boolean priorKnowledge;
+    private final SocketConnector connector;
+    private final Map<Route, Http2Connection> connections = new ConcurrentHashMap<>();
+    private final Map<Route, Object> connectLocks = new ConcurrentHashMap<>();
+    private final Set<Route> http1Routes = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Constructs a new HTTP/2 transport.
+     *
+     * @param fallback       The transport to use for hosts which don't support HTTP/2.
+     * @param priorKnowledge Whether to assume plain {@code http} hosts support HTTP/2 (h2c).
+     *                       If false, {@code http} URLs are always sent through the fallback transport.
+     */
+    public Http2Transport(Transport fallback, boolean priorKnowledge) {
+        this(fallback, priorKnowledge, SocketConnector.DEFAULT);
+    }
+
+    /**
+     * Constructs a new HTTP/2 transport.
+     *
+     * @param fallback       The transport to use for hosts which don't support HTTP/2.
+     * @param priorKnowledge Whether to assume plain {@code http} hosts support HTTP/2 (h2c).
+     *                       If false, {@code http} URLs are always sent through the fallback transport.
+     * @param connector      The connector to open new connections with.
+     */
+    public Http2Transport(Transport fallback, boolean priorKnowledge, @NonNull SocketConnector connector) {
+        this.fallback = fallback;
+        this.priorKnowledge = priorKnowledge;
+        this.connector = connector;
+    }
+
+    @Override
+    public Exchange execute(URL url, Params params) throws IOException {
+        Route route = Route.of(url);
+        if ((!route.isSecure() && !priorKnowledge) || http1Routes.contains(route))
+            return fallback.execute(url, params);
+        for (int attempt = 0; ; attempt++) {
+            Http2Connection conn = connection(route, params.getConnectionTimeout(), params.getEventListener());
+            if (conn == null)
+                return fallback.execute(url, params);
+            try {
+                return conn.execute(url, params);
+            } catch (Http2Connection.RefusedStreamException e) {
+                // The server didn't process the request, so it's safe to try again on a new connection.
+                connections.remove(route, conn);
+                if (attempt > 0)
+                    throw e;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of open HTTP/2 connections.
+     *
+     * @return The number of open connections.
+     */
+    public int getConnectionCount() {
+        int count = 0;
+        for (Http2Connection conn : connections.values()) {
+            if (conn.isUsable()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public void close() {
+        for (Http2Connection conn : connections.values()) {
+            conn.close();
+        }
+        connections.clear();
+        fallback.close();
+    }
+
+    /**
+     * Gets a usable connection to a route, connecting if needed.
+     * The listener is notified once a connection is acquired, but not when falling back to HTTP/1.1.
+     *
+     * @return The connection, or {@code null} if the server doesn't support HTTP/2.
+     */
+    private Http2Connection connection(Route route, int timeoutMillis, EventListener listener) throws IOException {
+        long start = System.nanoTime();
+        Http2Connection conn = connections.get(route);
+        if (conn != null && conn.isUsable()) {
+            listener.connectionAcquired(true, System.nanoTime() - start);
+            return conn;
+        }
+        synchronized (connectLocks.computeIfAbsent(route, r -> new Object())) {
+            conn = connections.get(route);
+            if (conn != null && conn.isUsable()) {
+                listener.connectionAcquired(true, System.nanoTime() - start);
+                return conn;
+            }
+            Socket socket = connector.connect(route, timeoutMillis, Http2Connection.APPLICATION_PROTOCOLS, listener);
+            if (socket instanceof SSLSocket && !"h2".equals(((SSLSocket) socket).getApplicationProtocol())) {
+                socket.close();
+                http1Routes.add(route);
+                return null;
+            }
+            try {
+                conn = new Http2Connection(route, socket);
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+            connections.put(route, conn);
+            listener.connectionAcquired(false, System.nanoTime() - start);
+            return conn;
+        }
+    }
+
+}
@@ -0,0 +1,199 @@
+package net.insprill.fetch4j.transport;
+
+import lombok.experimental.UtilityClass;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ProtocolException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streams decoding HTTP/1.1 message bodies, notifying their owner once the body has been fully read or abandoned.
+ */
+@UtilityClass
+class HttpBodyStreams {
+
+    /**
+     * Notified when a body stream is finished with.
+     */
+    interface Listener {
+        /**
+         * @param complete True if the body was read until the end, false if it was closed early or failed.
+         */
+        void finished(boolean complete);
+    }
+
+    /**
+     * Reads a line terminated by CRLF (or a lone LF) as ISO-8859-1.
+     *
+     * @param in The stream to read from.
+     * @return The line, without its terminator.
+     * @throws IOException If the stream ends before the line does.
+     */
+    String readLine(InputStream in) throws IOException {
+        if (in instanceof ConnectionInput)
+            return ((ConnectionInput) in).readLineString();
+        StringBuilder line = new StringBuilder(64);
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b == -1)
+                throw new EOFException("Unexpected end of stream");
+            if (line.length() >= 65536)
+                throw new ProtocolException("Line too long");
+            line.append((char) b);
+        }
+        int len = line.length();
+        if (len > 0 && line.charAt(len - 1) == '\r')
+            line.setLength(len - 1);
+        return line.toString();
+    }
+
+    /**
+     * Base for body streams, handling completion and early closing.
+     */
+    abstract static class BodyStream extends InputStream {
+
+        protected final InputStream in;
+        private final Listener listener;
+        private boolean finished;
+
+        BodyStream(InputStream in, Listener listener) {
+            this.in = in;
+            this.listener = listener;
+        }
+
+        protected abstract int readBody(byte[] b, int off, int len) throws IOException;
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (finished)
+                return -1;
+            if (len == 0)
+                return 0;
+            int n;
+            try {
+                n = readBody(b, off, len);
+            } catch (IOException | RuntimeException e) {
+                finish(false);
+                throw e;
+            }
+            if (n == -1)
+                finish(true);
+            return n;
+        }
+
+        @Override
+        public void close() {
+            finish(false);
+        }
+
+        protected void finish(boolean complete) {
+            if (finished)
+                return;
+            finished = true;
+            listener.finished(complete);
+        }
+
+    }
+
+    /**
+     * A body delimited by a {@code Content-Length} header.
+     */
+    static class FixedLength extends BodyStream {
+
+        private long remaining;
+
+        FixedLength(InputStream in, long length, Listener listener) {
+            super(in, listener);
+            this.remaining = length;
+            if (length == 0)
+                finish(true);
+        }
+
+        @Override
+        protected int readBody(byte[] b, int off, int len) throws IOException {
+            if (remaining == 0)
+                return -1;
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n == -1)
+                throw new EOFException("Connection closed with " + remaining + " bytes of the body remaining");
+            remaining -= n;
+            if (remaining == 0)
+                finish(true);
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+    }
+
+    /**
+     * A body using the {@code chunked} transfer coding.
+     */
+    static class Chunked extends BodyStream {
+
+        private long chunkRemaining;
+        private boolean lastChunk;
+
+        Chunked(InputStream in, Listener listener) {
+            super(in, listener);
+        }
+
+        @Override
+        protected int readBody(byte[] b, int off, int len) throws IOException {
+            if (lastChunk)
+                return -1;
+            if (chunkRemaining == 0) {
+                byte[] size = readLine(in).getBytes(StandardCharsets.ISO_8859_1);
+                // Parsed like the non-blocking decoder does, so both accept the same sizes.
+                chunkRemaining = Http1Parser.parseChunkSize(size, 0, size.length);
+                if (chunkRemaining == 0) {
+                    // Skip trailers.
+                    while (!readLine(in).isEmpty()) ;
+                    lastChunk = true;
+                    return -1;
+                }
+            }
+            int n = in.read(b, off, (int) Math.min(len, chunkRemaining));
+            if (n == -1)
+                throw new EOFException("Connection closed in the middle of a chunk");
+            chunkRemaining -= n;
+            if (chunkRemaining == 0 && !readLine(in).isEmpty())
+                throw new ProtocolException("Missing CRLF after chunk");
+            return n;
+        }
+
+    }
+
+    /**
+     * A body delimited by the server closing the connection.
+     */
+    static class UntilClose extends BodyStream {
+
+        UntilClose(InputStream in, Listener listener) {
+            super(in, listener);
+        }
+
+        @Override
+        protected int readBody(byte[] b, int off, int len) throws IOException {
+            return in.read(b, off, len);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return in.available();
+        }
+
+    }
+
+}
@@ -0,0 +1,543 @@
+package net.insprill.fetch4j.transport;
+
+import lombok.Getter;
+import net.insprill.fetch4j.SocketOptions;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A non-blocking HTTP/1.1 connection driven by an {@link EventLoop}, sending one request at a time
+ * and decoding its response with an {@link Http1Decoder} as it arrives. Secure routes use an {@link SSLEngine}.
+ * <p>
+ * Only used from its loop's thread.
+ */
+final class NioConnection {
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private enum State {
+        CONNECTING, HANDSHAKING, WRITING, READING, IDLE, CLOSED
+    }
+
+    private final EventLoop loop;
+    @Getter
+    private final Route route;
+    private final InetSocketAddress address;
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final SSLEngine engine;
+    /**
+     * Decrypted bytes read from the connection, in write mode.
+     */
+    private ByteBuffer appIn;
+    /**
+     * Encrypted bytes read from the connection, in write mode.
+     */
+    private ByteBuffer netIn;
+    /**
+     * Encrypted bytes to write to the connection, in read mode.
+     */
+    private ByteBuffer netOut;
+    /**
+     * The request being written, in read mode.
+     */
+    private ByteBuffer out;
+    private State state = State.CONNECTING;
+    private EventLoop.Call call;
+    private Http1Decoder decoder;
+    private TimerWheel.Timeout timeout;
+    private long connectStart;
+    private long handshakeStart;
+    private long expiresAt;
+    private long lastActivity;
+    private long readTimeoutNanos;
+    private boolean reused;
+
+    /**
+     * Opens a channel for a connection, without connecting it yet.
+     *
+     * @param loop    The loop handling the connection.
+     * @param route   The route of the connection.
+     * @param address The address to connect to.
+     * @throws IOException If the channel couldn't be opened.
+     */
+    NioConnection(EventLoop loop, Route route, InetSocketAddress address) throws IOException {
+        this.loop = loop;
+        this.route = route;
+        this.address = address;
+        SocketOptions options = loop.getTransport().getConnector().getOptions();
+        this.channel = SocketChannel.open();
+        try {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, options.isTcpNoDelay());
+            channel.setOption(StandardSocketOptions.SO_KEEPALIVE, options.isKeepAlive());
+            if (options.getSendBufferSize() > 0) {
+                channel.setOption(StandardSocketOptions.SO_SNDBUF, options.getSendBufferSize());
+            }
+            if (options.getReceiveBufferSize() > 0) {
+                channel.setOption(StandardSocketOptions.SO_RCVBUF, options.getReceiveBufferSize());
+            }
+            if (route.isSecure()) {
+                engine = loop.getTransport().getSslContext().createSSLEngine(route.getHost(), route.getPort());
+                engine.setUseClientMode(true);
+                SSLParameters sslParameters = engine.getSSLParameters();
+                sslParameters.setEndpointIdentificationAlgorithm("HTTPS");
+                engine.setSSLParameters(sslParameters);
+                netIn = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+                netOut = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+                netOut.flip();
+                appIn = ByteBuffer.allocate(Math.max(options.getBufferSize(), engine.getSession().getApplicationBufferSize()));
+            } else {
+                engine = null;
+                appIn = ByteBuffer.allocate(options.getBufferSize());
+            }
+            key = loop.register(channel, this);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        loop.getTransport().connectionOpened();
+    }
+
+    /**
+     * Starts connecting, then sends a request once connected.
+     *
+     * @param call The request the connection is opened for.
+     */
+    void connect(EventLoop.Call call) {
+        this.call = call;
+        connectStart = System.nanoTime();
+        int timeoutMillis = call.params.getConnectionTimeout();
+        if (timeoutMillis > 0) {
+            timeout = loop.schedule(TimeUnit.MILLISECONDS.toNanos(timeoutMillis), () -> failed(new SocketTimeoutException("Connect timed out")));
+        }
+        try {
+            if (channel.connect(address)) {
+                connected();
+            } else {
+                key.interestOps(SelectionKey.OP_CONNECT);
+            }
+        } catch (IOException | RuntimeException e) {
+            failed(e);
+        }
+    }
+
+    /**
+     * Sends a request on the connection.
+     *
+     * @param call The request.
+     */
+    void start(EventLoop.Call call) {
+        this.call = call;
+        state = State.WRITING;
+        cancelTimeout();
+        decoder = new Http1Decoder(call.params.getMethod());
+        out = ByteBuffer.wrap(call.request);
+        readTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(call.params.getReadTimeout());
+        lastActivity = System.nanoTime();
+        // Like a socket's read timeout, this is the longest the server may go without making progress, so it also applies to writes.
+        if (readTimeoutNanos > 0) {
+            scheduleReadTimeout(readTimeoutNanos);
+        }
+        try {
+            call.listener.connectionAcquired(reused, lastActivity - call.startNanos);
+            write();
+        } catch (IOException | RuntimeException e) {
+            failed(e);
+        }
+    }
+
+    /**
+     * Keeps the connection open until it's next used, it times out, or the server closes it.
+     *
+     * @param idleTimeoutNanos How long the connection may be idle for.
+     */
+    void idle(long idleTimeoutNanos) {
+        state = State.IDLE;
+        key.interestOps(SelectionKey.OP_READ);
+        timeout = loop.schedule(idleTimeoutNanos, this::closeIdle);
+    }
+
+    /**
+     * @param now The current {@link System#nanoTime()}.
+     * @return True if the connection has exceeded its keep-alive TTL or was closed, false otherwise.
+     */
+    boolean isExpired(long now) {
+        return now - expiresAt >= 0 || !channel.isOpen();
+    }
+
+    /**
+     * Handles the events the connection's key was selected for.
+     */
+    void ready() {
+        try {
+            if (!key.isValid())
+                return;
+            int ops = key.readyOps();
+            if ((ops & SelectionKey.OP_CONNECT) != 0) {
+                if (channel.finishConnect()) {
+                    connected();
+                }
+                return;
+            }
+            if ((ops & SelectionKey.OP_WRITE) != 0) {
+                onWritable();
+            }
+            if ((ops & SelectionKey.OP_READ) != 0 && key.isValid()) {
+                onReadable();
+            }
+        } catch (IOException | RuntimeException e) {
+            failed(e);
+        }
+    }
+
+    /**
+     * Closes the connection after an error, failing its request, or retrying it if a reused connection was
+     * closed by the server before it responded.
+     *
+     * @param error The error.
+     */
+    void failed(Throwable error) {
+        if (state == State.CLOSED)
+            return;
+        State previous = state;
+        EventLoop.Call failed = call;
+        call = null;
+        close();
+        if (previous == State.CONNECTING || previous == State.HANDSHAKING) {
+            loop.connectFailed(failed, address, connectStart, error);
+            return;
+        }
+        loop.release(this, false);
+        if (failed == null)
+            return;
+        if (reused && !decoder.hasStarted() && error instanceof IOException && !(error instanceof SocketTimeoutException) && !loop.isClosed()) {
+            loop.dispatch(failed);
+        } else {
+            failed.fail(error);
+        }
+    }
+
+    /**
+     * Closes the channel, without telling the loop.
+     */
+    void close() {
+        if (state == State.CLOSED)
+            return;
+        state = State.CLOSED;
+        cancelTimeout();
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // Nothing we can do.
+        }
+        loop.getTransport().connectionClosed();
+    }
+
+    private void connected() throws IOException {
+        if (engine == null) {
+            established();
+            return;
+        }
+        state = State.HANDSHAKING;
+        handshakeStart = System.nanoTime();
+        engine.beginHandshake();
+        handshake();
+    }
+
+    private void established() {
+        cancelTimeout();
+        long now = System.nanoTime();
+        if (engine != null) {
+            call.listener.secureConnectEnd(engine.getSession().getProtocol(), now - handshakeStart);
+        }
+        call.listener.connectEnd(address, now - connectStart);
+        expiresAt = now + loop.getTransport().getKeepAliveTtlNanos();
+        start(call);
+    }
+
+    private void onWritable() throws IOException {
+        if (state == State.HANDSHAKING) {
+            handshake();
+        } else if (state == State.WRITING) {
+            write();
+        } else if (engine != null && flush()) {
+            // Answered a handshake message while reading, like a key update.
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    private void onReadable() throws IOException {
+        switch (state) {
+            case HANDSHAKING:
+                handshake();
+                break;
+            case READING:
+                read();
+                break;
+            case IDLE:
+                // Idle connections are only read to notice the server closing them, so anything else is unexpected too.
+                if (fill() != 0) {
+                    closeIdle();
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void write() throws IOException {
+        if (engine == null) {
+            while (out.hasRemaining()) {
+                if (channel.write(out) == 0) {
+                    key.interestOps(SelectionKey.OP_WRITE);
+                    return;
+                }
+                lastActivity = System.nanoTime();
+            }
+        } else {
+            while (out.hasRemaining() || netOut.hasRemaining()) {
+                if (!wrap(out))
+                    return;
+                lastActivity = System.nanoTime();
+            }
+        }
+        out = null;
+        state = State.READING;
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    private void read() throws IOException {
+        int n;
+        while ((n = fill()) > 0) {
+            lastActivity = System.nanoTime();
+            appIn.flip();
+            boolean complete;
+            try {
+                complete = decoder.decode(appIn);
+            } finally {
+                appIn.compact();
+            }
+            if (complete) {
+                complete();
+                return;
+            }
+        }
+        if (n == -1 && decoder.endOfStream()) {
+            complete();
+        }
+    }
+
+    private void complete() {
+        cancelTimeout();
+        EventLoop.Call done = call;
+        call = null;
+        // Anything sent after the response wasn't asked for, so the connection can't be trusted with another request.
+        boolean reusable = decoder.isKeepAlive() && appIn.position() == 0 && channel.isOpen();
+        long keepAliveTimeout = decoder.getKeepAliveTimeoutSeconds();
+        if (keepAliveTimeout != -1) {
+            expiresAt = Math.min(expiresAt, System.nanoTime() + TimeUnit.SECONDS.toNanos(keepAliveTimeout));
+        }
+        Exchange exchange = decoder.toExchange();
+        reused = true;
+        if (!reusable) {
+            close();
+        }
+        loop.release(this, reusable);
+        done.complete(exchange);
+    }
+
+    private void closeIdle() {
+        close();
+        loop.release(this, false);
+    }
+
+    private void scheduleReadTimeout(long delayNanos) {
+        timeout = loop.schedule(delayNanos, () -> {
+            long sinceActivity = System.nanoTime() - lastActivity;
+            if (sinceActivity < readTimeoutNanos) {
+                scheduleReadTimeout(readTimeoutNanos - sinceActivity);
+            } else {
+                failed(new SocketTimeoutException("Read timed out"));
+            }
+        });
+    }
+
+    private void cancelTimeout() {
+        if (timeout != null) {
+            timeout.cancel();
+            timeout = null;
+        }
+    }
+
+    /**
+     * Reads from the connection into {@link #appIn}, decrypting it on secure routes.
+     *
+     * @return The number of bytes added, 0 if none are available yet, or -1 if the server closed the connection.
+     */
+    private int fill() throws IOException {
+        if (engine == null)
+            return channel.read(appIn);
+        while (true) {
+            SSLEngineResult result = unwrap();
+            switch (result.getStatus()) {
+                case BUFFER_OVERFLOW:
+                    appIn = grow(appIn, appIn.position() + engine.getSession().getApplicationBufferSize());
+                    continue;
+                case CLOSED:
+                    return -1;
+                case OK:
+                    if (result.bytesProduced() > 0)
+                        return result.bytesProduced();
+                    if (result.bytesConsumed() > 0)
+                        continue; // A handshake message, like a TLS 1.3 session ticket.
+                    break;
+                default:
+                    break;
+            }
+            int n = readNet();
+            if (n <= 0)
+                return n;
+        }
+    }
+
+    private void handshake() throws IOException {
+        while (true) {
+            switch (engine.getHandshakeStatus()) {
+                case NEED_TASK:
+                    runDelegatedTasks();
+                    break;
+                case NEED_WRAP:
+                    if (!wrap(EMPTY))
+                        return;
+                    break;
+                case NEED_UNWRAP: {
+                    SSLEngineResult result = unwrap();
+                    if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                        appIn = grow(appIn, appIn.position() + engine.getSession().getApplicationBufferSize());
+                    } else if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                        throw new SSLException("Connection closed during TLS handshake");
+                    } else if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                        int n = readNet();
+                        if (n == -1)
+                            throw new EOFException("Connection closed during TLS handshake");
+                        if (n == 0) {
+                            key.interestOps(SelectionKey.OP_READ);
+                            return;
+                        }
+                    }
+                    break;
+                }
+                default:
+                    // Finished, once the last handshake message has been written.
+                    if (!flush())
+                        return;
+                    established();
+                    return;
+            }
+        }
+    }
+
+    private SSLEngineResult unwrap() throws IOException {
+        netIn.flip();
+        SSLEngineResult result;
+        try {
+            result = engine.unwrap(netIn, appIn);
+        } finally {
+            netIn.compact();
+        }
+        // Messages like key updates need answering, even once the handshake has finished.
+        if (state != State.HANDSHAKING) {
+            SSLEngineResult.HandshakeStatus status = result.getHandshakeStatus();
+            if (status == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+                runDelegatedTasks();
+                status = engine.getHandshakeStatus();
+            }
+            if (status == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+                wrap(EMPTY);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads encrypted bytes into {@link #netIn}, growing it if a record doesn't fit.
+     */
+    private int readNet() throws IOException {
+        if (!netIn.hasRemaining()) {
+            netIn = grow(netIn, netIn.capacity() + engine.getSession().getPacketBufferSize());
+        }
+        return channel.read(netIn);
+    }
+
+    /**
+     * Encrypts bytes and writes them, along with any written before which didn't fit in the socket's send buffer.
+     *
+     * @return True if everything was written, false if the connection is waiting to be writable.
+     */
+    private boolean wrap(ByteBuffer src) throws IOException {
+        if (!flush())
+            return false;
+        netOut.clear();
+        SSLEngineResult result;
+        try {
+            result = engine.wrap(src, netOut);
+        } finally {
+            netOut.flip();
+        }
+        if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+            netOut = ByteBuffer.allocate(netOut.capacity() + engine.getSession().getPacketBufferSize());
+            netOut.flip();
+            return true;
+        }
+        if (result.getStatus() == SSLEngineResult.Status.CLOSED)
+            throw new SSLException("The TLS connection has been closed");
+        if (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+            runDelegatedTasks();
+        }
+        return flush();
+    }
+
+    private boolean flush() throws IOException {
+        while (netOut.hasRemaining()) {
+            if (channel.write(netOut) == 0) {
+                boolean reading = state == State.READING || state == State.IDLE;
+                key.interestOps(reading ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_WRITE);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Runs the handshake's CPU intensive tasks, like verifying certificates. They're run on the loop, as handshakes
+     * only happen when a connection is opened.
+     */
+    private void runDelegatedTasks() {
+        Runnable task;
+        while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int capacity) {
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(capacity, buffer.capacity() * 2));
+        buffer.flip();
+        grown.put(buffer);
+        return grown;
+    }
+
+}
@@ -0,0 +1,137 @@
+package net.insprill.fetch4j.transport;
+
+import lombok.Getter;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A socket owned by a {@link ConnectionPool}.
+ * <p>
+ * When pipelining, several exchanges lease the connection at once. Each takes a ticket when writing its request,
+ * and reads its response once the responses to all earlier tickets have been read.
+ */
+class PooledConnection {
+
+    @Getter
+    private final Route route;
+    private final Socket socket;
+    @Getter
+    private final ConnectionInput input;
+    @Getter
+    private final OutputStream output;
+    private final long createdAt = System.nanoTime();
+    private long expiresAt;
+    private long idleSince;
+    @Getter
+    private boolean reused;
+    /**
+     * The number of exchanges leasing this connection, which is more than one when pipelining.
+     * Guarded by the pool.
+     */
+    int leases;
+    /**
+     * Whether more requests may be pipelined behind the ones in flight.
+     */
+    volatile boolean pipelining;
+    private long requestsWritten;
+    private long responsesRead;
+
+    PooledConnection(Route route, Socket socket, long ttlNanos, int bufferSize) throws IOException {
+        this.route = route;
+        this.socket = socket;
+        this.input = new ConnectionInput(socket.getInputStream(), bufferSize);
+        this.output = new BufferedOutputStream(socket.getOutputStream(), bufferSize);
+        this.expiresAt = createdAt + ttlNanos;
+    }
+
+    void setReadTimeout(int timeoutMillis) throws SocketException {
+        socket.setSoTimeout(timeoutMillis);
+    }
+
+    /**
+     * Shortens the lifetime of this connection, e.g. when the server advertises a keep-alive timeout.
+     *
+     * @param ttlNanos The remaining time this connection may be reused for, starting now.
+     */
+    void limitLifetime(long ttlNanos) {
+        expiresAt = Math.min(expiresAt, System.nanoTime() + ttlNanos);
+    }
+
+    void markIdle(long now) {
+        idleSince = now;
+        reused = true;
+    }
+
+    void markPipelined() {
+        reused = true;
+    }
+
+    /**
+     * Takes the next ticket. Must be called while holding the lock on the {@link #getOutput() output},
+     * which is held until the request has been written, so requests are written in ticket order.
+     *
+     * @return The ticket.
+     */
+    synchronized long nextTicket() {
+        return requestsWritten++;
+    }
+
+    /**
+     * Waits for the responses to all earlier tickets to be read.
+     *
+     * @param ticket        The ticket of the request whose response is to be read.
+     * @param timeoutMillis How long to wait, or {@code 0} to wait indefinitely.
+     * @throws IOException If the connection is closed or the wait times out.
+     */
+    synchronized void awaitTurn(long ticket, int timeoutMillis) throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (responsesRead != ticket) {
+            if (socket.isClosed())
+                throw new IOException("Connection closed before the pipelined response was read");
+            long remaining = timeoutMillis == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (timeoutMillis != 0 && remaining <= 0)
+                throw new SocketTimeoutException("Timed out waiting for earlier pipelined responses");
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for earlier pipelined responses", e);
+            }
+        }
+    }
+
+    /**
+     * Lets the exchange with the next ticket read its response.
+     */
+    synchronized void finishTurn() {
+        responsesRead++;
+        notifyAll();
+    }
+
+    boolean isExpired(long now) {
+        return now - expiresAt >= 0 || socket.isClosed();
+    }
+
+    boolean isIdleExpired(long now, long idleTimeoutNanos) {
+        return isExpired(now) || now - idleSince >= idleTimeoutNanos;
+    }
+
+    void close() {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // Nothing we can do.
+        }
+        // Wake exchanges waiting for their turn, so they fail instead of waiting forever.
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+}
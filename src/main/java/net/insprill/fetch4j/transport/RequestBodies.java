@@ -0,0 +1,93 @@
+package net.insprill.fetch4j.transport;
+
+import lombok.experimental.UtilityClass;
+import net.insprill.fetch4j.Params;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+
+/**
+ * Helpers for sending the request body of {@link Params}, whichever way it was set.
+ */
+@UtilityClass
+class RequestBodies {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * @param params The request parameters.
+     * @return True if the request has a body to send, false otherwise.
+     */
+    boolean hasBody(Params params) {
+        return params.getBody() != null || params.getBodySupplier() != null;
+    }
+
+    /**
+     * @param params The request parameters.
+     * @return The number of bytes that will be sent, or -1 if unknown.
+     */
+    long contentLength(Params params) {
+        if (params.isCompressBody())
+            return -1;
+        if (params.getBody() != null)
+            return params.getBody().length;
+        if (params.getBodySupplier() != null)
+            return params.getBodyLength();
+        return -1;
+    }
+
+    /**
+     * @param params The request parameters.
+     * @return The value of the {@code Content-Encoding} header to send, or {@code null} if the body isn't encoded.
+     */
+    String contentEncoding(Params params) {
+        return params.isCompressBody() && hasBody(params) ? "gzip" : null;
+    }
+
+    /**
+     * Opens the body as it should be sent, compressing it if enabled.
+     *
+     * @param params The request parameters.
+     * @return A stream of the body, which must be closed.
+     * @throws IOException If the body couldn't be opened.
+     */
+    InputStream open(Params params) throws IOException {
+        InputStream body;
+        if (params.getBody() != null) {
+            body = new ByteArrayInputStream(params.getBody());
+        } else {
+            body = params.getBodySupplier().get();
+            if (body == null)
+                throw new IOException("The request body supplier returned null");
+        }
+        return params.isCompressBody() ? new GzipEncodingStream(body) : body;
+    }
+
+    /**
+     * Copies a body to the connection, making sure it matches the {@code Content-Length} sent with it.
+     *
+     * @param body   The body.
+     * @param out    The stream to write to.
+     * @param length The expected length of the body, or -1 to copy it all.
+     * @return The number of bytes copied.
+     * @throws IOException If an I/O error occurs, or the body's length didn't match.
+     */
+    long copy(InputStream body, OutputStream out, long length) throws IOException {
+        byte[] buf = new byte[BUFFER_SIZE];
+        long written = 0;
+        int n;
+        while ((n = body.read(buf)) != -1) {
+            written += n;
+            if (length != -1 && written > length)
+                throw new ProtocolException("Request body is longer than its length of " + length + " bytes");
+            out.write(buf, 0, n);
+        }
+        if (length != -1 && written != length)
+            throw new ProtocolException("Request body is " + written + " bytes, but its length was " + length + " bytes");
+        return written;
+    }
+
+}
@@ -0,0 +1,64 @@
+package net.insprill.fetch4j.transport;
+
+import lombok.experimental.UtilityClass;
+import net.insprill.fetch4j.Params;
+
+import java.util.Map;
+
+/**
+ * Checks the parts of a request written into its head, so a header can't be used to inject other headers
+ * or requests. Invalid headers are rejected with an {@link IllegalArgumentException}, like {@link java.net.HttpURLConnection} does.
+ */
+@UtilityClass
+class RequestHeaders {
+
+    private static final String TOKEN_SYMBOLS = "!#$%&'*+-.^_`|~";
+
+    /**
+     * Checks the request target and headers of a request.
+     *
+     * @param target The request target, like {@code /path?query}.
+     * @param params The request parameters.
+     * @throws IllegalArgumentException If the target or a header is invalid.
+     */
+    void validate(String target, Params params) {
+        for (int i = 0; i < target.length(); i++) {
+            char c = target.charAt(i);
+            if (c < ' ' || c == 0x7f)
+                throw new IllegalArgumentException("Illegal character in request target: " + target);
+        }
+        for (Map.Entry<String, String> header : params.getHeaders().entrySet()) {
+            validateName(header.getKey());
+            validateValue(header.getKey(), header.getValue());
+        }
+    }
+
+    /**
+     * Checks that a header name is a token as defined by RFC 7230.
+     */
+    private void validateName(String name) {
+        if (name == null || name.isEmpty())
+            throw new IllegalArgumentException("Header name can't be empty");
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            boolean token = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || TOKEN_SYMBOLS.indexOf(c) != -1;
+            if (!token)
+                throw new IllegalArgumentException("Illegal character in header name: " + name);
+        }
+    }
+
+    /**
+     * Checks that a header value doesn't contain a line break, or a NUL some servers end strings at.
+     */
+    private void validateValue(String name, String value) {
+        if (value == null)
+            return;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\r' || c == '\n' || c == '\0')
+                throw new IllegalArgumentException("Illegal character in value of header " + name);
+        }
+    }
+
+}
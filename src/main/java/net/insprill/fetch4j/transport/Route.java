@@ -0,0 +1,50 @@
+package net.insprill.fetch4j.transport;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.net.URL;
+import java.util.Locale;
+
+/**
+ * The destination of a connection, identified by its scheme, host and port.<br>
+ * <b>WARNING:</b> This class is not part of the API and breaking changes may occur here at any time.
+ */
+@Getter
+@EqualsAndHashCode
+@RequiredArgsConstructor
+public class Route {
+
+    private final boolean secure;
+    private final String host;
+    private final int port;
+
+    /**
+     * Gets the route a URL connects to.
+     *
+     * @param url The URL.
+     * @return The URL's route.
+     */
+    public static Route of(URL url) {
+        boolean secure = url.getProtocol().equalsIgnoreCase("https");
+        int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+        return new Route(secure, url.getHost().toLowerCase(Locale.ROOT), port);
+    }
+
+    /**
+     * Gets the value of the {@code Host} header for requests on this route.
+     *
+     * @return The host, followed by the port if it isn't the scheme's default.
+     */
+    public String getHostHeader() {
+        String host = this.host.indexOf(':') != -1 && !this.host.startsWith("[") ? "[" + this.host + "]" : this.host;
+        return port == (secure ? 443 : 80) ? host : host + ":" + port;
+    }
+
+    @Override
+    public String toString() {
+        return (secure ? "https://" : "http://") + getHostHeader();
+    }
+
+}
@@ -0,0 +1,264 @@
+package net.insprill.fetch4j.transport;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+import net.insprill.fetch4j.EventListener;
+import net.insprill.fetch4j.Resolver;
+import net.insprill.fetch4j.SocketOptions;
+import net.insprill.fetch4j.util.ExecutorUtil;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opens sockets for transports, performing the TLS handshake for secure routes.
+ * <p>
+ * Hosts are resolved with a {@link Resolver}. When a host has several addresses and happy eyeballs is enabled,
+ * connections are attempted as described in RFC 8305: address families are interleaved, and a new attempt is
+ * started every {@value #ATTEMPT_DELAY_MILLIS}ms, or as soon as the previous one fails, with the first to connect
+ * being used. Otherwise the addresses are tried one after another.<br>
+ * <b>WARNING:</b> This class is not part of the API and breaking changes may occur here at any time.
+ */
+public class SocketConnector {
+
+    /**
+     * Connects with {@link Resolver#SYSTEM}, happy eyeballs enabled and {@link SocketOptions#DEFAULT}.
+     */
+    public static final SocketConnector DEFAULT = new SocketConnector(Resolver.SYSTEM, true, SocketOptions.DEFAULT);
+
+    /**
+     * How long to wait for a connection attempt before starting the next, as recommended by RFC 8305.
+     */
+    static final long ATTEMPT_DELAY_MILLIS = 250;
+
+    private static final ExecutorService ATTEMPT_EXECUTOR = Executors.newCachedThreadPool(ExecutorUtil.newThreadFactory("fetch4j-connect-"));
+
+    @Getter(AccessLevel.PACKAGE)
+    private final Resolver resolver;
+    private final boolean happyEyeballs;
+    @Getter
+    private final SocketOptions options;
+
+    /**
+     * Constructs a new socket connector.
+     *
+     * @param resolver      The resolver to look up hosts with.
+     * @param happyEyeballs Whether to race connections to hosts with several addresses.
+     * @param options       The options to open sockets with.
+     */
+    public SocketConnector(@NonNull Resolver resolver, boolean happyEyeballs, @NonNull SocketOptions options) {
+        this.resolver = resolver;
+        this.happyEyeballs = happyEyeballs;
+        this.options = options;
+    }
+
+    /**
+     * Connects to a route.
+     *
+     * @param route                The route to connect to.
+     * @param timeoutMillis        The connect timeout, also used for the TLS handshake.
+     * @param applicationProtocols The protocols to offer with ALPN on secure routes, or {@code null} to not use ALPN.
+     * @param listener             The listener to notify of DNS, connect and TLS events.
+     * @return The connected socket, which is an {@link SSLSocket} with a completed handshake for secure routes.
+     * @throws IOException If connecting fails.
+     */
+    Socket connect(Route route, int timeoutMillis, String[] applicationProtocols, EventListener listener) throws IOException {
+        listener.dnsStart(route.getHost());
+        long dnsStart = System.nanoTime();
+        List<InetAddress> addresses = resolver.resolve(route.getHost());
+        if (addresses == null || addresses.isEmpty())
+            throw new UnknownHostException(route.getHost() + ": no addresses");
+        listener.dnsEnd(route.getHost(), addresses, System.nanoTime() - dnsStart);
+
+        Attempt attempt = happyEyeballs && addresses.size() > 1
+                ? race(route, interleave(addresses), timeoutMillis, listener)
+                : sequential(route, addresses, timeoutMillis, listener);
+        Socket socket = attempt.socket;
+        try {
+            if (!route.isSecure()) {
+                listener.connectEnd(attempt.address, System.nanoTime() - attempt.startNanos);
+                return socket;
+            }
+            long handshakeStart = System.nanoTime();
+            SSLSocket sslSocket = (SSLSocket) HttpsURLConnection.getDefaultSSLSocketFactory()
+                    .createSocket(socket, route.getHost(), route.getPort(), true);
+            SSLParameters sslParameters = sslSocket.getSSLParameters();
+            sslParameters.setEndpointIdentificationAlgorithm("HTTPS");
+            if (applicationProtocols != null) {
+                sslParameters.setApplicationProtocols(applicationProtocols);
+            }
+            sslSocket.setSSLParameters(sslParameters);
+            sslSocket.setSoTimeout(timeoutMillis);
+            sslSocket.startHandshake();
+            long now = System.nanoTime();
+            listener.secureConnectEnd(sslSocket.getSession().getProtocol(), now - handshakeStart);
+            listener.connectEnd(attempt.address, now - attempt.startNanos);
+            return sslSocket;
+        } catch (IOException e) {
+            socket.close();
+            listener.connectFailed(attempt.address, e, System.nanoTime() - attempt.startNanos);
+            throw e;
+        } catch (RuntimeException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Tries each address in turn, until one connects.
+     */
+    private Attempt sequential(Route route, List<InetAddress> addresses, int timeoutMillis, EventListener listener) throws IOException {
+        IOException failure = null;
+        for (InetAddress address : addresses) {
+            Attempt attempt = new Attempt(new InetSocketAddress(address, route.getPort()));
+            listener.connectStart(attempt.address);
+            attempt.run(timeoutMillis, options);
+            if (attempt.error == null)
+                return attempt;
+            listener.connectFailed(attempt.address, attempt.error, System.nanoTime() - attempt.startNanos);
+            failure = suppress(failure, attempt.error);
+        }
+        throw failure;
+    }
+
+    /**
+     * Starts connecting to each address in turn, without waiting for earlier attempts to finish, and uses the first to connect.
+     */
+    private Attempt race(Route route, List<InetAddress> addresses, int timeoutMillis, EventListener listener) throws IOException {
+        BlockingQueue<Attempt> finished = new LinkedBlockingQueue<>();
+        List<Attempt> started = new ArrayList<>(addresses.size());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        IOException failure = null;
+        Attempt winner = null;
+        int pending = 0;
+        try {
+            while (true) {
+                if (started.size() < addresses.size()) {
+                    Attempt attempt = new Attempt(new InetSocketAddress(addresses.get(started.size()), route.getPort()));
+                    started.add(attempt);
+                    pending++;
+                    listener.connectStart(attempt.address);
+                    ATTEMPT_EXECUTOR.execute(() -> {
+                        attempt.run(timeoutMillis, options);
+                        finished.add(attempt);
+                    });
+                }
+                if (pending == 0)
+                    throw failure;
+                long remaining = timeoutMillis == 0 ? Long.MAX_VALUE : deadline - System.nanoTime();
+                if (remaining <= 0)
+                    throw new SocketTimeoutException("Connect timed out");
+                long wait = started.size() < addresses.size() ? Math.min(TimeUnit.MILLISECONDS.toNanos(ATTEMPT_DELAY_MILLIS), remaining) : remaining;
+                Attempt attempt = finished.poll(wait, TimeUnit.NANOSECONDS);
+                if (attempt == null)
+                    continue;
+                pending--;
+                if (attempt.error == null) {
+                    winner = attempt;
+                    return attempt;
+                }
+                listener.connectFailed(attempt.address, attempt.error, System.nanoTime() - attempt.startNanos);
+                failure = suppress(failure, attempt.error);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while connecting to " + route);
+        } finally {
+            // Closing the losing sockets also aborts any attempts still connecting.
+            for (Attempt attempt : started) {
+                if (attempt != winner) {
+                    attempt.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Orders addresses so their families alternate, starting with the family of the first.
+     */
+    static List<InetAddress> interleave(List<InetAddress> addresses) {
+        boolean firstIpv6 = addresses.get(0) instanceof Inet6Address;
+        Deque<InetAddress> preferred = new ArrayDeque<>();
+        Deque<InetAddress> other = new ArrayDeque<>();
+        for (InetAddress address : addresses) {
+            (address instanceof Inet6Address == firstIpv6 ? preferred : other).add(address);
+        }
+        List<InetAddress> ordered = new ArrayList<>(addresses.size());
+        while (!preferred.isEmpty() || !other.isEmpty()) {
+            if (!preferred.isEmpty()) {
+                ordered.add(preferred.poll());
+            }
+            if (!other.isEmpty()) {
+                ordered.add(other.poll());
+            }
+        }
+        return ordered;
+    }
+
+    private static IOException suppress(IOException failure, IOException error) {
+        if (failure == null)
+            return error;
+        failure.addSuppressed(error);
+        return failure;
+    }
+
+    /**
+     * An attempt to connect to a single address.
+     */
+    private static final class Attempt {
+        private final InetSocketAddress address;
+        private final Socket socket = new Socket();
+        private final long startNanos = System.nanoTime();
+        private volatile IOException error;
+
+        Attempt(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        void run(int timeoutMillis, SocketOptions options) {
+            try {
+                socket.setTcpNoDelay(options.isTcpNoDelay());
+                socket.setKeepAlive(options.isKeepAlive());
+                if (options.getSendBufferSize() > 0) {
+                    socket.setSendBufferSize(options.getSendBufferSize());
+                }
+                // Set before connecting, so a large enough window scale is negotiated.
+                if (options.getReceiveBufferSize() > 0) {
+                    socket.setReceiveBufferSize(options.getReceiveBufferSize());
+                }
+                socket.connect(address, timeoutMillis);
+            } catch (IOException e) {
+                error = e;
+                close();
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // Already failed, or lost the race.
+            }
+        }
+    }
+
+}
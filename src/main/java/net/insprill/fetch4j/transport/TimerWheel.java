@@ -0,0 +1,178 @@
+package net.insprill.fetch4j.transport;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A hashed timing wheel, scheduling the timeouts of an {@link EventLoop}.
+ * Time is divided into ticks, and each timeout is put in the bucket of the tick it expires in, so scheduling
+ * and cancelling are constant time no matter how many connections have a timeout pending.
+ * Timeouts expire at the end of their tick, so may run up to one tick late.
+ * <p>
+ * Not thread-safe, as it's only used from its loop's thread.
+ */
+final class TimerWheel {
+
+    private final long tickNanos;
+    private final long startNanos;
+    private final Timeout[] buckets;
+    private final int mask;
+    /**
+     * The next tick to expire timeouts in.
+     */
+    private long tick;
+    private int size;
+
+    /**
+     * Constructs a new timer wheel.
+     *
+     * @param tickNanos The length of a tick.
+     * @param ticks     The number of buckets, which must be a power of two.
+     * @param now       The current {@link System#nanoTime()}.
+     */
+    TimerWheel(long tickNanos, int ticks, long now) {
+        if (tickNanos <= 0)
+            throw new IllegalArgumentException("tickNanos must be positive");
+        if (ticks <= 0 || Integer.bitCount(ticks) != 1)
+            throw new IllegalArgumentException("ticks must be a power of two");
+        this.tickNanos = tickNanos;
+        this.startNanos = now;
+        this.buckets = new Timeout[ticks];
+        this.mask = ticks - 1;
+    }
+
+    /**
+     * Schedules a task.
+     *
+     * @param delayNanos How long to wait before running the task.
+     * @param now        The current {@link System#nanoTime()}.
+     * @param task       The task.
+     * @return The timeout, which can be cancelled until it has run.
+     */
+    Timeout schedule(long delayNanos, long now, Runnable task) {
+        if (size == 0) {
+            // The wheel may not have been advanced while empty, so catch up rather than walking every tick since.
+            tick = Math.max(tick, (now - startNanos) / tickNanos);
+        }
+        long elapsed = now - startNanos + Math.max(0, delayNanos);
+        long deadline = Math.max(tick, (elapsed + tickNanos - 1) / tickNanos);
+        Timeout timeout = new Timeout(task, deadline);
+        int bucket = (int) (deadline & mask);
+        timeout.next = buckets[bucket];
+        if (timeout.next != null) {
+            timeout.next.prev = timeout;
+        }
+        buckets[bucket] = timeout;
+        size++;
+        return timeout;
+    }
+
+    /**
+     * Runs the tasks of all timeouts which have expired.
+     *
+     * @param now The current {@link System#nanoTime()}.
+     * @return The number of tasks run.
+     */
+    int advance(long now) {
+        long target = (now - startNanos) / tickNanos;
+        List<Timeout> expired = null;
+        for (; tick <= target && size > 0; tick++) {
+            Timeout timeout = buckets[(int) (tick & mask)];
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.deadline <= tick) {
+                    timeout.unlink();
+                    if (expired == null) {
+                        expired = new ArrayList<>();
+                    }
+                    expired.add(timeout);
+                }
+                timeout = next;
+            }
+        }
+        if (size == 0 && tick <= target) {
+            // Nothing is pending, so skip straight to the current tick.
+            tick = target + 1;
+        }
+        if (expired == null)
+            return 0;
+        // Tasks run once every expired timeout has been unlinked, as they may schedule or cancel others.
+        int run = 0;
+        for (Timeout timeout : expired) {
+            if (!timeout.cancelled) {
+                timeout.cancelled = true;
+                timeout.task.run();
+                run++;
+            }
+        }
+        return run;
+    }
+
+    /**
+     * Gets how long the loop can wait before calling {@link #advance(long)}, which is until the end of the next tick
+     * with a timeout in its bucket. The timeout may be in a later round, in which case the wait is just cut short.
+     *
+     * @param now The current {@link System#nanoTime()}.
+     * @return The time until a timeout may expire, or -1 if none are pending.
+     */
+    long nanosUntilNextTimeout(long now) {
+        if (size == 0)
+            return -1;
+        long next = tick;
+        while (buckets[(int) (next & mask)] == null) {
+            next++;
+        }
+        return Math.max(0, startNanos + next * tickNanos - now);
+    }
+
+    /**
+     * @return The number of pending timeouts.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * A task scheduled on the wheel.
+     */
+    final class Timeout {
+        private final Runnable task;
+        private final long deadline;
+        private Timeout prev;
+        private Timeout next;
+        private boolean cancelled;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancels the timeout, so its task won't be run. Does nothing if it has already run.
+         */
+        void cancel() {
+            if (cancelled)
+                return;
+            cancelled = true;
+            unlink();
+        }
+
+        private void unlink() {
+            int bucket = (int) (deadline & mask);
+            if (prev == null && buckets[bucket] != this)
+                return; // Already unlinked.
+            if (prev != null) {
+                prev.next = next;
+            } else {
+                buckets[bucket] = next;
+            }
+            if (next != null) {
+                next.prev = prev;
+            }
+            prev = null;
+            next = null;
+            size--;
+        }
+    }
+
+}
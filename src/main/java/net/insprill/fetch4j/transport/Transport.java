@@ -0,0 +1,36 @@
+package net.insprill.fetch4j.transport;
+
+import net.insprill.fetch4j.Params;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * Performs requests on behalf of a {@link net.insprill.fetch4j.FetchClient}, which can be given a custom transport
+ * with {@link net.insprill.fetch4j.FetchClient.Builder#transport(Transport)}.
+ * Redirects are handled by the client, so transports should never follow them on their own.
+ *
+ * @see Http1Transport
+ * @see Http2Transport
+ */
+public interface Transport extends Closeable {
+
+    /**
+     * Sends a request and waits for the response headers.
+     *
+     * @param url    The URL to request, including query parameters.
+     * @param params The parameters of the request.
+     * @return The exchange, with the response body left unread.
+     * @throws IOException If the request fails.
+     */
+    Exchange execute(URL url, Params params) throws IOException;
+
+    /**
+     * Releases any resources held by the transport. Called when the client using it is closed.
+     */
+    @Override
+    default void close() {
+    }
+
+}
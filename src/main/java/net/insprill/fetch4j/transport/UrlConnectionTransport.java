@@ -0,0 +1,148 @@
+package net.insprill.fetch4j.transport;
+
+import lombok.RequiredArgsConstructor;
+import net.insprill.fetch4j.Params;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A transport backed by {@link HttpURLConnection}, leaving connection reuse to the JDK.
+ * Used when a request relies on JVM-wide settings only {@link HttpURLConnection} honours,
+ * such as proxies or an installed {@link java.net.ResponseCache}.<br>
+ * <b>WARNING:</b> This class is not part of the API and breaking changes may occur here at any time.
+ */
+public class UrlConnectionTransport implements Transport {
+
+    @Override
+    public Exchange execute(URL url, Params params) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        for (Map.Entry<String, String> header : params.getHeaders().entrySet()) {
+            conn.setRequestProperty(header.getKey(), header.getValue());
+        }
+        conn.setRequestMethod(params.getMethod().name());
+        conn.setInstanceFollowRedirects(false);
+        conn.setConnectTimeout(params.getConnectionTimeout());
+        conn.setReadTimeout(params.getReadTimeout());
+        conn.setUseCaches(params.isUseCaches());
+        if (RequestBodies.hasBody(params)) {
+            String contentEncoding = RequestBodies.contentEncoding(params);
+            if (contentEncoding != null) {
+                conn.setRequestProperty("Content-Encoding", contentEncoding);
+            }
+            long length = RequestBodies.contentLength(params);
+            // Stream the body instead of letting HttpURLConnection buffer it to work out its length.
+            if (length != -1) {
+                conn.setFixedLengthStreamingMode(length);
+            } else {
+                conn.setChunkedStreamingMode(0);
+            }
+            conn.setDoOutput(true);
+            long start = System.nanoTime();
+            long written;
+            try (InputStream body = RequestBodies.open(params);
+                 OutputStream out = conn.getOutputStream()) {
+                written = RequestBodies.copy(body, out, length);
+            }
+            params.getEventListener().requestBodyEnd(written, System.nanoTime() - start);
+        }
+        conn.connect(); // Connect if we don't have a body to send. Won't do anything if already connected.
+        conn.getResponseCode();
+        return new UrlConnectionExchange(conn);
+    }
+
+    /**
+     * An exchange over an {@link HttpURLConnection}.
+     */
+    @RequiredArgsConstructor
+    public static class UrlConnectionExchange implements Exchange {
+
+        private final HttpURLConnection conn;
+        private InputStream body;
+        /**
+         * The response code, cached as {@link HttpURLConnection#getResponseCode()} synchronizes on every call.
+         */
+        private int status = -1;
+        private Map<String, List<String>> headers;
+
+        @Override
+        public int getStatus() {
+            if (status == -1) {
+                try {
+                    status = conn.getResponseCode();
+                } catch (IOException e) {
+                    return -1;
+                }
+            }
+            return status;
+        }
+
+        @Override
+        public String getStatusText() {
+            try {
+                return conn.getResponseMessage();
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return conn.getHeaderField(name);
+        }
+
+        /**
+         * Gets the response headers, with names matched case-insensitively and values in the order they were received,
+         * like other transports. {@link HttpURLConnection#getHeaderFields()} does neither, and includes the status line.
+         */
+        @Override
+        public Map<String, List<String>> getHeaders() {
+            if (headers == null) {
+                Map<String, List<String>> fields = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+                String value;
+                for (int i = 0; (value = conn.getHeaderField(i)) != null; i++) {
+                    String name = conn.getHeaderFieldKey(i);
+                    if (name != null) {
+                        fields.computeIfAbsent(name, key -> new ArrayList<>(1)).add(value);
+                    }
+                }
+                for (Map.Entry<String, List<String>> field : fields.entrySet()) {
+                    field.setValue(Collections.unmodifiableList(field.getValue()));
+                }
+                headers = Collections.unmodifiableMap(fields);
+            }
+            return headers;
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (body == null) {
+                body = (getStatus() >= 400) ? conn.getErrorStream() : conn.getInputStream();
+            }
+            return body;
+        }
+
+        @Override
+        public void disconnect() {
+            conn.disconnect();
+        }
+
+        @Override
+        public void close() throws IOException {
+            InputStream body = getBody();
+            if (body != null) {
+                body.close();
+            }
+        }
+
+    }
+
+}
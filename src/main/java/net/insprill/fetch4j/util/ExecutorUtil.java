@@ -0,0 +1,62 @@
+package net.insprill.fetch4j.util;
+
+import lombok.experimental.UtilityClass;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A utility class for creating the executors used by asynchronous fetch operations.<br>
+ * On Java 21 and newer, a version of this class using virtual threads is loaded from the multi-release jar instead.<br>
+ * <b>WARNING:</b> This class is not part of the API and breaking changes may occur here at any time.
+ */
+@UtilityClass
+public class ExecutorUtil {
+
+    private static final int MAX_THREADS = Math.max(8, Runtime.getRuntime().availableProcessors() * 4);
+
+    /**
+     * Creates the executor used for asynchronous fetch operations when none is specified.
+     * This is a bounded pool of daemon threads, which are discarded after being idle for a minute.
+     *
+     * @return A new executor.
+     */
+    public ExecutorService newDefaultExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), newThreadFactory("fetch4j-async-"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Creates a factory for threads running a single long-lived task, like reading a stream of events,
+     * which would otherwise hold one of the default executor's threads for as long as it runs.
+     * These are named daemon threads.
+     *
+     * @param prefix The prefix of the thread names, followed by an incrementing number.
+     * @return A new thread factory.
+     */
+    public ThreadFactory newLongRunningThreadFactory(String prefix) {
+        return newThreadFactory(prefix);
+    }
+
+    /**
+     * Creates a factory for named daemon threads.
+     *
+     * @param prefix The prefix of the thread names, followed by an incrementing number.
+     * @return A new thread factory.
+     */
+    public ThreadFactory newThreadFactory(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+}
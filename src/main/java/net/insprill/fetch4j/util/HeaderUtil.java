@@ -11,17 +11,57 @@ public class HeaderUtil {
 
     /**
      * Get the charset from a Content-Type header.
+     * The header is scanned in place, without splitting it into parameters.
      *
      * @param contentType The value of a Content-Type header.
-     * @return The name of the charset, or null if none was found.
+     * @return The name of the charset, without any quotes, or null if none was found.
      */
     public String getContentCharset(String contentType) {
-        for (String s : contentType.split(";")) {
-            String[] data = s.trim().split("=");
-            if (data[0].equalsIgnoreCase("charset"))
-                return data[1];
+        int length = contentType.length();
+        int pos = contentType.indexOf(';');
+        while (pos != -1) {
+            pos = skipWhitespace(contentType, pos + 1, length);
+            int end = contentType.indexOf(';', pos);
+            if (end == -1)
+                end = length;
+            if (contentType.regionMatches(true, pos, "charset", 0, 7)) {
+                int equals = skipWhitespace(contentType, pos + 7, end);
+                if (equals < end && contentType.charAt(equals) == '=')
+                    return parameterValue(contentType, equals + 1, end);
+            }
+            pos = end < length ? end : -1;
         }
         return null;
     }
 
+    /**
+     * Get the media type from a Content-Type header, which is the value without any parameters.
+     *
+     * @param contentType The value of a Content-Type header.
+     * @return The media type, like {@code text/html}.
+     */
+    public String getMediaType(String contentType) {
+        int end = contentType.indexOf(';');
+        return (end == -1 ? contentType : contentType.substring(0, end)).trim();
+    }
+
+    private String parameterValue(String header, int start, int end) {
+        start = skipWhitespace(header, start, end);
+        while (end > start && Character.isWhitespace(header.charAt(end - 1))) {
+            end--;
+        }
+        if (end - start >= 2 && header.charAt(start) == '"' && header.charAt(end - 1) == '"') {
+            start++;
+            end--;
+        }
+        return start < end ? header.substring(start, end) : null;
+    }
+
+    private int skipWhitespace(String header, int pos, int end) {
+        while (pos < end && Character.isWhitespace(header.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
 }
@@ -0,0 +1,44 @@
+package net.insprill.fetch4j.util;
+
+import lombok.experimental.UtilityClass;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+/**
+ * Parses the date formats HTTP allows, as described in RFC 7231 section 7.1.1.1.<br>
+ * <b>WARNING:</b> This class is not part of the API and breaking changes may occur here at any time.
+ */
+@UtilityClass
+public class HttpDates {
+
+    private static final DateTimeFormatter[] FORMATS = {
+            DateTimeFormatter.RFC_1123_DATE_TIME,
+            // Obsolete RFC 850 format.
+            DateTimeFormatter.ofPattern("EEEE, dd-MMM-yy HH:mm:ss zzz", Locale.US),
+            // ANSI C's asctime() format.
+            DateTimeFormatter.ofPattern("EEE MMM d HH:mm:ss yyyy", Locale.US).withZone(ZoneOffset.UTC),
+    };
+
+    /**
+     * @param date The date.
+     * @return The date in milliseconds since the epoch, or -1 if it's invalid.
+     */
+    public long parse(String date) {
+        if (date == null)
+            return -1;
+        String trimmed = date.trim().replaceAll(" +", " ");
+        for (DateTimeFormatter format : FORMATS) {
+            try {
+                return ZonedDateTime.parse(trimmed, format).toInstant().toEpochMilli();
+            } catch (DateTimeParseException ignored) {
+                // Try the next format.
+            }
+        }
+        return -1;
+    }
+
+}
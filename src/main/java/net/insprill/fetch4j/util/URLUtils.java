@@ -7,6 +7,7 @@
 
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.nio.charset.Charset;
 import java.util.Map;
 import java.util.StringJoiner;
 
@@ -17,6 +18,8 @@
 @UtilityClass
 public class URLUtils {
 
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
     /**
      * Adds query parameters from a {@link Params} object to the provided URL.
      *
@@ -28,13 +31,7 @@ public class URLUtils {
     public String addQueryParams(String url, Params params) throws InvalidCharsetException {
         if (params.getQueries().isEmpty())
             return url;
-        String charset = Fetch.DEFAULT_CHARSET.name();
-        if (params.getHeaders().containsKey("Content-Type")) {
-            String contentCharset = HeaderUtil.getContentCharset(params.getHeaders().get("Content-Type"));
-            if (contentCharset != null) {
-                charset = contentCharset;
-            }
-        }
+        String charset = getQueryCharset(params);
         StringJoiner joiner = new StringJoiner("&", url + "?", "");
         try {
             for (Map.Entry<String, Object> entry : params.getQueries().entrySet()) {
@@ -47,4 +44,54 @@ public String addQueryParams(String url, Params params) throws InvalidCharsetExc
         return joiner.toString();
     }
 
+    /**
+     * Gets the name of the charset query parameters are encoded with,
+     * which is the charset of the Content-Type header if set, or {@link Fetch#DEFAULT_CHARSET} otherwise.
+     *
+     * @param params The params containing the headers.
+     * @return The charset name.
+     */
+    public String getQueryCharset(Params params) {
+        if (params.getHeaders().containsKey("Content-Type")) {
+            String contentCharset = HeaderUtil.getContentCharset(params.getHeaders().get("Content-Type"));
+            if (contentCharset != null)
+                return contentCharset;
+        }
+        return Fetch.DEFAULT_CHARSET.name();
+    }
+
+    /**
+     * Percent-encodes a value so it can be used anywhere in a URL, leaving only unreserved characters
+     * ({@code A-Z a-z 0-9 - . _ ~}) as they are.
+     *
+     * @param value   The value to encode.
+     * @param charset The charset to encode other characters with.
+     * @param out     The builder to append the encoded value to.
+     */
+    public void encode(String value, Charset charset, StringBuilder out) {
+        int length = value.length();
+        int i = 0;
+        while (i < length) {
+            char c = value.charAt(i);
+            if (isUnreserved(c)) {
+                out.append(c);
+                i++;
+                continue;
+            }
+            int end = i + 1;
+            while (end < length && !isUnreserved(value.charAt(end))) {
+                end++;
+            }
+            for (byte b : value.substring(i, end).getBytes(charset)) {
+                out.append('%').append(HEX_DIGITS[(b >> 4) & 0xF]).append(HEX_DIGITS[b & 0xF]);
+            }
+            i = end;
+        }
+    }
+
+    private boolean isUnreserved(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '-' || c == '.' || c == '_' || c == '~';
+    }
+
 }
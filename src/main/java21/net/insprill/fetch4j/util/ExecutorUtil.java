@@ -0,0 +1,54 @@
+package net.insprill.fetch4j.util;
+
+import lombok.experimental.UtilityClass;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A utility class for creating the executors used by asynchronous fetch operations.<br>
+ * This is the Java 21 version of this class, which runs asynchronous fetch operations on virtual threads.<br>
+ * <b>WARNING:</b> This class is not part of the API and breaking changes may occur here at any time.
+ */
+@UtilityClass
+public class ExecutorUtil {
+
+    /**
+     * Creates the executor used for asynchronous fetch operations when none is specified.
+     * This starts a new virtual thread for each task.
+     *
+     * @return A new executor.
+     */
+    public ExecutorService newDefaultExecutor() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("fetch4j-async-", 1).factory());
+    }
+
+    /**
+     * Creates a factory for threads running a single long-lived task, like reading a stream of events.
+     * These are named virtual threads, so are cheap to keep blocked.
+     *
+     * @param prefix The prefix of the thread names, followed by an incrementing number.
+     * @return A new thread factory.
+     */
+    public ThreadFactory newLongRunningThreadFactory(String prefix) {
+        return Thread.ofVirtual().name(prefix, 1).factory();
+    }
+
+    /**
+     * Creates a factory for named daemon threads.
+     *
+     * @param prefix The prefix of the thread names, followed by an incrementing number.
+     * @return A new thread factory.
+     */
+    public ThreadFactory newThreadFactory(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+}
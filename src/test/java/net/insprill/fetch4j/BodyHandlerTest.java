@@ -0,0 +1,100 @@
+package net.insprill.fetch4j;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static net.insprill.fetch4j.Fetch.fetch;
+import static net.insprill.fetch4j.Params.params;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BodyHandlerTest {
+
+    private static final byte[] BODY = new byte[10_000];
+
+    private static TestServer server;
+    private static volatile CountDownLatch firstLine;
+    private static volatile boolean firstLineReceived;
+
+    @BeforeAll
+    static void setUp() {
+        Arrays.fill(BODY, (byte) 'x');
+        server = new TestServer()
+                .handle("/lines", exchange -> {
+                    exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson; charset=utf-8");
+                    exchange.sendResponseHeaders(200, 0);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write("{\"id\":1}\n".getBytes(StandardCharsets.UTF_8));
+                        out.flush();
+                        // Only continue once the client has handled the first record.
+                        firstLineReceived = firstLine.await(5, TimeUnit.SECONDS);
+                        out.write("\n{\"id\":\"\u00e9\"}\r\n".getBytes(StandardCharsets.UTF_8));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                })
+                .handle("/bytes", exchange -> {
+                    exchange.sendResponseHeaders(200, 0);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(BODY);
+                    }
+                });
+    }
+
+    @AfterAll
+    static void tearDown() {
+        server.close();
+    }
+
+    @Test
+    void ofLines_HandledBeforeBodyEnds() {
+        firstLine = new CountDownLatch(1);
+        List<String> lines = new ArrayList<>();
+        long count = fetch(server.url("/lines"), BodyHandler.ofLines(line -> {
+            lines.add(line);
+            firstLine.countDown();
+        }));
+
+        assertTrue(firstLineReceived);
+        assertEquals(3, count);
+        assertEquals(Arrays.asList("{\"id\":1}", "", "{\"id\":\"\u00e9\"}"), lines);
+    }
+
+    @Test
+    void ofNdjson_SkipsBlankLines() {
+        firstLine = new CountDownLatch(0);
+        List<Integer> lengths = new ArrayList<>();
+        long count = fetch(server.url("/lines"), params(), BodyHandler.ofNdjson(String::length, lengths::add));
+
+        assertEquals(2, count);
+        assertEquals(Arrays.asList(8, 10), lengths);
+    }
+
+    @Test
+    void ofChunks_FixedSize() {
+        List<Integer> sizes = new ArrayList<>();
+        long total = fetch(server.url("/bytes"), BodyHandler.ofChunks(4096, chunk -> sizes.add(chunk.remaining())));
+
+        assertEquals(BODY.length, total);
+        assertEquals(Arrays.asList(4096, 4096, 1808), sizes);
+    }
+
+    @Test
+    void ofSink_WritesBody() {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        assertEquals(BODY.length, fetch(server.url("/bytes"), BodyHandler.ofSink(sink)));
+        assertArrayEquals(BODY, sink.toByteArray());
+    }
+
+}
@@ -0,0 +1,114 @@
+package net.insprill.fetch4j;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
+
+class BufferPoolTest {
+
+    private static final byte[] BODY = new byte[100_000];
+
+    private static TestServer server;
+
+    @BeforeAll
+    static void setUp() {
+        for (int i = 0; i < BODY.length; i++) {
+            BODY[i] = (byte) i;
+        }
+        server = new TestServer()
+                .handle("/sized", exchange -> {
+                    exchange.sendResponseHeaders(200, BODY.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(BODY);
+                    }
+                })
+                .handle("/chunked", exchange -> {
+                    exchange.sendResponseHeaders(200, 0);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(BODY);
+                    }
+                });
+    }
+
+    @AfterAll
+    static void tearDown() {
+        server.close();
+    }
+
+    @Test
+    void acquire_Released_Reused() {
+        BufferPool pool = BufferPool.builder().build();
+        ByteBuffer buffer = pool.acquire(5000);
+        assertEquals(8192, buffer.capacity());
+        buffer.put((byte) 1);
+        pool.release(buffer);
+        assertEquals(8192, pool.getPooledBytes());
+
+        ByteBuffer reused = pool.acquire(6000);
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertEquals(0, pool.getPooledBytes());
+    }
+
+    @Test
+    void release_PoolFull_Dropped() {
+        BufferPool pool = BufferPool.builder().maxBufferSize(8192).maxPooledBytes(8192).build();
+        ByteBuffer first = pool.acquire(8192);
+        ByteBuffer second = pool.acquire(8192);
+        ByteBuffer large = pool.acquire(10_000);
+        assertEquals(10_000, large.capacity());
+        pool.release(first);
+        pool.release(second);
+        pool.release(large);
+        assertEquals(8192, pool.getPooledBytes());
+        assertNotSame(pool.acquire(8192), pool.acquire(8192));
+    }
+
+    @Test
+    void response_Pooled_ReleasedOnClose() throws IOException {
+        BufferPool pool = BufferPool.builder().build();
+        try (FetchClient client = FetchClient.builder().bufferPool(pool).build()) {
+            Response response = client.fetch(server.url("/sized"));
+            assertArrayEquals(BODY, response.getBodyBytes());
+            response.close();
+            assertEquals(131072, pool.getPooledBytes());
+            assertThrowsExactly(IllegalStateException.class, response::getBodyBytes);
+
+            try (Response chunked = client.fetch(server.url("/chunked"))) {
+                // Grown through 4 KiB to 64 KiB, which were released, before reusing the 128 KiB buffer.
+                assertEquals(131072 - 4096, pool.getPooledBytes());
+                assertArrayEquals(BODY, chunked.getBodyBytes());
+            }
+        }
+    }
+
+    @Test
+    void response_Direct_ReadsBody() throws IOException {
+        BufferPool pool = BufferPool.builder().direct(true).build();
+        try (FetchClient client = FetchClient.builder().bufferPool(pool).build();
+             Response response = client.fetch(server.url("/chunked"))) {
+            assertArrayEquals(BODY, response.getBodyBytes());
+            InputStream body = response.getBodyStream();
+            byte[] streamed = new byte[BODY.length];
+            int read = 0;
+            int n;
+            while ((n = body.read(streamed, read, streamed.length - read)) > 0) {
+                read += n;
+            }
+            assertArrayEquals(BODY, streamed);
+            assertEquals(-1, body.read());
+        }
+    }
+
+}
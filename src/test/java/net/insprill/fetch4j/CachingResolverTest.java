@@ -0,0 +1,118 @@
+package net.insprill.fetch4j;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CachingResolverTest {
+
+    private static final InetAddress ADDRESS = InetAddress.getLoopbackAddress();
+
+    private final AtomicInteger lookups = new AtomicInteger();
+    private final Resolver counting = host -> {
+        lookups.incrementAndGet();
+        if (host.startsWith("missing"))
+            throw new UnknownHostException(host);
+        return Collections.singletonList(ADDRESS);
+    };
+
+    @Test
+    void resolve_Cached_LooksUpOnce() throws UnknownHostException {
+        CachingResolver resolver = CachingResolver.builder().delegate(counting).build();
+        List<InetAddress> first = resolver.resolve("example.com");
+        assertSame(first, resolver.resolve("EXAMPLE.com"));
+        assertEquals(1, lookups.get());
+    }
+
+    @Test
+    void resolve_Concurrent_SharesLookup() throws Exception {
+        CompletableFuture<Void> release = new CompletableFuture<>();
+        CachingResolver resolver = CachingResolver.builder().delegate(host -> {
+            lookups.incrementAndGet();
+            release.join();
+            return Collections.singletonList(ADDRESS);
+        }).build();
+        CompletableFuture<List<InetAddress>> first = CompletableFuture.supplyAsync(() -> resolveUnchecked(resolver));
+        CompletableFuture<List<InetAddress>> second = CompletableFuture.supplyAsync(() -> resolveUnchecked(resolver));
+        Thread.sleep(100);
+        release.complete(null);
+        assertSame(first.get(5, TimeUnit.SECONDS), second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, lookups.get());
+    }
+
+    @Test
+    void resolve_Expired_LooksUpAgain() throws Exception {
+        CachingResolver resolver = CachingResolver.builder().delegate(counting).ttl(50).refreshAhead(false).build();
+        resolver.resolve("example.com");
+        Thread.sleep(100);
+        resolver.resolve("example.com");
+        assertEquals(2, lookups.get());
+    }
+
+    @Test
+    void resolve_Failure_NotCached() {
+        CachingResolver resolver = CachingResolver.builder().delegate(counting).build();
+        assertThrows(UnknownHostException.class, () -> resolver.resolve("missing.example.com"));
+        assertThrows(UnknownHostException.class, () -> resolver.resolve("missing.example.com"));
+        assertEquals(2, lookups.get());
+        assertEquals(0, resolver.size());
+    }
+
+    @Test
+    void resolve_Pinned_SkipsLookup() throws UnknownHostException {
+        CachingResolver resolver = CachingResolver.builder().delegate(counting).pin("Pinned.example.com", ADDRESS).build();
+        assertEquals(Collections.singletonList(ADDRESS), resolver.resolve("pinned.example.com"));
+        assertEquals(0, lookups.get());
+    }
+
+    @Test
+    void prefetch_Resolves_EvictsOverLimit() throws Exception {
+        CachingResolver resolver = CachingResolver.builder().delegate(counting).maxEntries(2).build();
+        resolver.prefetch("a.example.com", "b.example.com").get(5, TimeUnit.SECONDS);
+        assertEquals(2, lookups.get());
+        resolver.resolve("c.example.com");
+        assertTrue(resolver.size() <= 2);
+    }
+
+    @Test
+    void resolve_OverLimitWhileLookingUp_InFlightLookupShared() throws Exception {
+        CompletableFuture<Void> release = new CompletableFuture<>();
+        CachingResolver resolver = CachingResolver.builder().delegate(host -> {
+            if (host.equals("example.com")) {
+                lookups.incrementAndGet();
+                release.join();
+            }
+            return Collections.singletonList(ADDRESS);
+        }).maxEntries(1).build();
+        CompletableFuture<List<InetAddress>> first = CompletableFuture.supplyAsync(() -> resolveUnchecked(resolver));
+        while (lookups.get() == 0) {
+            Thread.sleep(10);
+        }
+        resolver.resolve("other.example.com");
+        CompletableFuture<List<InetAddress>> second = CompletableFuture.supplyAsync(() -> resolveUnchecked(resolver));
+        Thread.sleep(100);
+        release.complete(null);
+        assertSame(first.get(5, TimeUnit.SECONDS), second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, lookups.get());
+    }
+
+    private static List<InetAddress> resolveUnchecked(Resolver resolver) {
+        try {
+            return resolver.resolve("example.com");
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
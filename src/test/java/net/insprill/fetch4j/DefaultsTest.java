@@ -0,0 +1,99 @@
+package net.insprill.fetch4j;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static net.insprill.fetch4j.Params.params;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
+
+class DefaultsTest {
+
+    private static final Defaults DEFAULTS = Defaults.builder()
+            .header("X-Tenant", "a")
+            .header("X-Token", "default")
+            .query("format", "json")
+            .readTimeout(1234)
+            .build();
+
+    private static TestServer server;
+
+    @BeforeAll
+    static void setUp() {
+        server = new TestServer()
+                .handle("/headers", exchange -> {
+                    byte[] response = (exchange.getRequestHeaders().getFirst("X-Tenant") + " " + exchange.getRequestHeaders().getFirst("X-Token")
+                            + " " + exchange.getRequestURI().getRawQuery()).getBytes(StandardCharsets.UTF_8);
+                    exchange.sendResponseHeaders(200, response.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(response);
+                    }
+                });
+    }
+
+    @AfterAll
+    static void tearDown() {
+        server.close();
+    }
+
+    @Test
+    void params_NothingOverridden_SharesDefaults() {
+        Params params = params(DEFAULTS);
+        assertSame(DEFAULTS.getHeaders(), params.mergedHeaders());
+        assertEquals(DEFAULTS.getQueries(), params.getQueries());
+        assertEquals(1234, params.getReadTimeout());
+    }
+
+    @Test
+    void params_Overrides_LayeredOverDefaults() {
+        Params params = params(DEFAULTS).header("X-Token", "request").readTimeout(10);
+        Map<String, String> expected = new HashMap<>();
+        expected.put("X-Tenant", "a");
+        expected.put("X-Token", "request");
+        assertEquals(expected, params.getHeaders());
+        assertEquals(10, params.getReadTimeout());
+        assertEquals("default", DEFAULTS.getHeaders().get("X-Token"));
+    }
+
+    @Test
+    void getHeaders_Changed_WritesThroughToRequest() {
+        Params params = params(DEFAULTS);
+        assertEquals("default", params.getHeaders().put("X-Token", "other"));
+        assertEquals("a", params.getHeaders().remove("X-Tenant"));
+        params.getQueries().put("page", 2);
+        Map<String, String> expected = new HashMap<>();
+        expected.put("X-Token", "other");
+        assertEquals(expected, params.getHeaders());
+        assertEquals(expected, params.copy().getHeaders());
+        assertEquals(2, params.getQueries().size());
+        assertEquals("default", DEFAULTS.getHeaders().get("X-Token"));
+        assertThrowsExactly(UnsupportedOperationException.class, () -> params.getHeaders().keySet().clear());
+    }
+
+    @Test
+    void toBuilder_LeavesOriginalUnchanged() {
+        Defaults changed = DEFAULTS.toBuilder().header("X-Tenant", null).followRedirects(false).build();
+        assertFalse(changed.getHeaders().containsKey("X-Tenant"));
+        assertFalse(changed.isFollowRedirects());
+        assertEquals("a", DEFAULTS.getHeaders().get("X-Tenant"));
+    }
+
+    @Test
+    void client_Defaults_AppliedToRequestsWithoutTheirOwn() {
+        try (FetchClient client = FetchClient.builder().defaults(DEFAULTS).build()) {
+            assertEquals("a default format=json", client.fetch(server.url("/headers")).getBody());
+            assertEquals("a request format=json", client.fetch(server.url("/headers"), params().header("X-Token", "request")).getBody());
+            Defaults other = Defaults.builder().header("X-Tenant", "b").build();
+            assertEquals("b null null", client.fetch(server.url("/headers"), params(other)).getBody());
+        }
+    }
+
+}
@@ -0,0 +1,209 @@
+package net.insprill.fetch4j;
+
+import net.insprill.fetch4j.exception.HostNotFoundException;
+import net.insprill.fetch4j.exception.TimeoutException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+import static net.insprill.fetch4j.Params.params;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventLoopTest {
+
+    private static final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+
+    private static TestServer server;
+
+    @BeforeAll
+    static void setUp() {
+        server = new TestServer()
+                .handle("/echo", exchange -> {
+                    clientPorts.add(exchange.getRemoteAddress().getPort());
+                    ByteArrayOutputStream body = new ByteArrayOutputStream();
+                    try (InputStream in = exchange.getRequestBody()) {
+                        byte[] buf = new byte[4096];
+                        int n;
+                        while ((n = in.read(buf)) != -1) {
+                            body.write(buf, 0, n);
+                        }
+                    }
+                    byte[] response = (exchange.getRequestMethod() + " " + body.toString("UTF-8")).getBytes(StandardCharsets.UTF_8);
+                    exchange.sendResponseHeaders(200, response.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(response);
+                    }
+                })
+                .handle("/chunked", exchange -> {
+                    exchange.sendResponseHeaders(200, 0);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        for (int i = 0; i < 100; i++) {
+                            out.write(("line " + i + "\n").getBytes(StandardCharsets.UTF_8));
+                            out.flush();
+                        }
+                    }
+                })
+                .handle("/gzip", exchange -> {
+                    exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                    exchange.sendResponseHeaders(200, 0);
+                    try (OutputStream out = new GZIPOutputStream(exchange.getResponseBody())) {
+                        out.write("Howdy".getBytes(StandardCharsets.UTF_8));
+                    }
+                })
+                .handle("/slow", exchange -> {
+                    try {
+                        Thread.sleep(300);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    exchange.sendResponseHeaders(204, -1);
+                    exchange.close();
+                })
+                .handle("/redirect", exchange -> {
+                    exchange.getResponseHeaders().set("Location", "/echo");
+                    exchange.sendResponseHeaders(302, -1);
+                    exchange.close();
+                });
+    }
+
+    @AfterAll
+    static void tearDown() {
+        server.close();
+    }
+
+    @Test
+    void fetch_SequentialRequests_ReuseConnection() {
+        try (FetchClient client = FetchClient.builder().eventLoops(1).build()) {
+            clientPorts.clear();
+            for (int i = 0; i < 10; i++) {
+                assertEquals("GET ", client.fetch(server.url("/echo")).getBody());
+            }
+            assertEquals(1, clientPorts.size());
+            assertEquals(0, client.getConnectionPool().getConnectionCount());
+        }
+    }
+
+    @Test
+    void fetch_Post_SendsBody() {
+        try (FetchClient client = FetchClient.builder().eventLoops(1).build()) {
+            Response response = client.fetch(server.url("/echo"), params()
+                    .method(Params.Method.POST)
+                    .body("Howdy"));
+            assertEquals("POST Howdy", response.getBody());
+        }
+    }
+
+    @Test
+    void fetch_ChunkedResponse_ReadFully() {
+        try (FetchClient client = FetchClient.builder().eventLoops(1).build()) {
+            StringBuilder expected = new StringBuilder();
+            for (int i = 0; i < 100; i++) {
+                expected.append("line ").append(i).append('\n');
+            }
+            assertEquals(expected.toString(), client.fetch(server.url("/chunked")).getBody());
+            assertEquals("GET ", client.fetch(server.url("/echo")).getBody());
+        }
+    }
+
+    @Test
+    void fetch_GzipResponse_Decompressed() {
+        try (FetchClient client = FetchClient.builder().eventLoops(1).build()) {
+            assertEquals("Howdy", client.fetch(server.url("/gzip")).getBody());
+        }
+    }
+
+    @Test
+    void fetch_Redirect_Followed() {
+        try (FetchClient client = FetchClient.builder().eventLoops(1).build()) {
+            Response response = client.fetch(server.url("/redirect"));
+            assertEquals(200, response.getStatus());
+            assertEquals("GET ", response.getBody());
+        }
+    }
+
+    @Test
+    void fetch_ReadTimeout_Throws() {
+        try (FetchClient client = FetchClient.builder().eventLoops(1).build()) {
+            assertThrowsExactly(TimeoutException.class, () -> client.fetch(server.url("/slow"), params().readTimeout(50)));
+            assertEquals("GET ", client.fetch(server.url("/echo")).getBody());
+        }
+    }
+
+    @Test
+    void fetch_ConnectionRefused_Throws() {
+        try (FetchClient client = FetchClient.builder().eventLoops(1).build()) {
+            assertThrowsExactly(HostNotFoundException.class, () -> client.fetch("http://127.0.0.1:1"));
+        }
+    }
+
+    @Test
+    void stream_FallsBackToBlockingTransport() throws Exception {
+        try (FetchClient client = FetchClient.builder().eventLoops(1).build();
+             Response response = client.stream(server.url("/chunked"))) {
+            assertTrue(response.isStreamed());
+            assertTrue(response.getBody().startsWith("line 0\n"));
+            assertEquals(1, client.getConnectionPool().getConnectionCount());
+        }
+    }
+
+    @Test
+    void fetchAsync_ManySlowRequests_DoNotHoldExecutorThreads() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (FetchClient client = FetchClient.builder().eventLoops(1).maxConnectionsPerHost(32).build()) {
+            long start = System.nanoTime();
+            List<CompletableFuture<Response>> futures = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                futures.add(client.fetchAsync(server.url("/slow"), params(), executor));
+            }
+            for (CompletableFuture<Response> future : futures) {
+                assertEquals(204, future.join().getStatus());
+            }
+            // Blocking the executor's only thread for each request would take over 9 seconds.
+            assertTrue(System.nanoTime() - start < 5_000_000_000L);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void fetchAsync_ReadTimeout_CompletesExceptionally() {
+        try (FetchClient client = FetchClient.builder().eventLoops(1).build()) {
+            CompletableFuture<Response> future = client.fetchAsync(server.url("/slow"), params().readTimeout(50));
+            CompletionException e = assertThrowsExactly(CompletionException.class, future::join);
+            assertInstanceOf(TimeoutException.class, e.getCause());
+        }
+    }
+
+    @Test
+    void fetchAsync_Closed_CompletesExceptionally() {
+        FetchClient client = FetchClient.builder().eventLoops(1).build();
+        client.close();
+        CompletableFuture<Response> future = client.fetchAsync(server.url("/echo"));
+        assertThrowsExactly(CompletionException.class, future::join);
+        assertFalse(future.isCancelled());
+    }
+
+    @Test
+    void build_EventLoopsWithHttp2_Throws() {
+        assertThrowsExactly(IllegalStateException.class, () -> FetchClient.builder().eventLoops(1).version(FetchClient.Version.HTTP_2).build());
+    }
+
+}
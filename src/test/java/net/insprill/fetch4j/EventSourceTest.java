@@ -0,0 +1,158 @@
+package net.insprill.fetch4j;
+
+import net.insprill.fetch4j.exception.FetchException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static net.insprill.fetch4j.Params.params;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventSourceTest {
+
+    private static TestServer server;
+    private static final List<String> lastEventIds = Collections.synchronizedList(new ArrayList<>());
+    private static final AtomicInteger connections = new AtomicInteger();
+    private static final CountDownLatch released = new CountDownLatch(1);
+
+    @BeforeAll
+    static void setUp() {
+        server = new TestServer()
+                .handle("/events", exchange -> {
+                    lastEventIds.add(exchange.getRequestHeaders().getFirst("Last-Event-ID"));
+                    int connection = connections.incrementAndGet();
+                    if (connection == 3) {
+                        exchange.sendResponseHeaders(204, -1);
+                        exchange.close();
+                        return;
+                    }
+                    exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+                    exchange.sendResponseHeaders(200, 0);
+                    String body = connection == 1
+                            ? ": comment\nretry: 10\nid: 1\nevent: greeting\ndata: hello\ndata:world\n\ndata: incomplete"
+                            : "id: 2\r\ndata: caf\u00e9\r\n\r\n";
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(body.getBytes(StandardCharsets.UTF_8));
+                    }
+                })
+                .handle("/open", exchange -> {
+                    exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+                    exchange.sendResponseHeaders(200, 0);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write("data: first\n\n".getBytes(StandardCharsets.UTF_8));
+                        out.flush();
+                        released.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                })
+                .handle("/json", exchange -> {
+                    exchange.getResponseHeaders().set("Content-Type", "application/json");
+                    exchange.sendResponseHeaders(200, 2);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write("{}".getBytes(StandardCharsets.UTF_8));
+                    }
+                });
+    }
+
+    @AfterAll
+    static void tearDown() {
+        released.countDown();
+        server.close();
+    }
+
+    @Test
+    void subscribe_Reconnects_WithLastEventId() throws InterruptedException {
+        RecordingListener listener = new RecordingListener();
+        EventSource source = Fetch.subscribe(server.url("/events"), params(), listener);
+
+        assertTrue(listener.closed.await(5, TimeUnit.SECONDS));
+        assertTrue(source.isClosed());
+        assertEquals(10, source.getReconnectDelayMillis());
+        assertEquals("2", source.getLastEventId());
+        assertEquals(Arrays.asList(null, "1", "2"), lastEventIds);
+        assertEquals(Arrays.asList("greeting 1 hello\nworld", "message 2 caf\u00e9"), new ArrayList<>(listener.events));
+        assertEquals(2, listener.opened.get());
+    }
+
+    @Test
+    void close_StopsOpenStream() throws InterruptedException {
+        RecordingListener listener = new RecordingListener();
+        EventSource source = Fetch.subscribe(server.url("/open"), listener);
+
+        assertEquals("message  first", listener.events.poll(5, TimeUnit.SECONDS));
+        source.close();
+        assertTrue(listener.closed.await(2, TimeUnit.SECONDS));
+        assertTrue(listener.failures.isEmpty());
+    }
+
+    @Test
+    void subscribe_DoesNotHoldExecutorThread() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (FetchClient client = FetchClient.builder().executor(executor).build();
+             EventSource source = client.subscribe(server.url("/open"), listener)) {
+            assertEquals("message  first", listener.events.poll(5, TimeUnit.SECONDS));
+            assertEquals(200, client.fetchAsync(server.url("/json")).get(5, TimeUnit.SECONDS).getStatus());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void subscribe_WrongContentType_Closes() throws InterruptedException {
+        RecordingListener listener = new RecordingListener();
+        Fetch.subscribe(server.url("/json"), listener);
+
+        assertTrue(listener.closed.await(5, TimeUnit.SECONDS));
+        assertEquals(1, listener.failures.size());
+        assertInstanceOf(FetchException.class, listener.failures.peek());
+        assertEquals(0, listener.opened.get());
+    }
+
+    private static final class RecordingListener extends EventSource.Listener {
+
+        private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+        private final BlockingQueue<Throwable> failures = new LinkedBlockingQueue<>();
+        private final AtomicInteger opened = new AtomicInteger();
+        private final CountDownLatch closed = new CountDownLatch(1);
+
+        @Override
+        public void onOpen(EventSource source, Response response) {
+            opened.incrementAndGet();
+        }
+
+        @Override
+        public void onEvent(EventSource source, ServerSentEvent event) {
+            events.add(event.getType() + " " + event.getLastEventId() + " " + event.getData());
+        }
+
+        @Override
+        public void onFailure(EventSource source, Throwable error) {
+            failures.add(error);
+        }
+
+        @Override
+        public void onClosed(EventSource source) {
+            closed.countDown();
+        }
+
+    }
+
+}
@@ -0,0 +1,74 @@
+package net.insprill.fetch4j;
+
+import net.insprill.fetch4j.exception.HostNotFoundException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static net.insprill.fetch4j.Fetch.fetchAsync;
+import static net.insprill.fetch4j.Params.params;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
+
+class FetchAsyncTest {
+
+    private static TestServer server;
+
+    @BeforeAll
+    static void setUp() {
+        server = new TestServer()
+                .handle("/echo", exchange -> {
+                    byte[] body = exchange.getRequestURI().getQuery().getBytes(StandardCharsets.UTF_8);
+                    exchange.sendResponseHeaders(200, body.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(body);
+                    }
+                });
+    }
+
+    @AfterAll
+    static void tearDown() {
+        server.close();
+    }
+
+    @Test
+    void fetchAsync_Many_AllComplete() {
+        List<CompletableFuture<Response>> futures = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            futures.add(fetchAsync(server.url("/echo"), params().query("i", i)));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            assertEquals("i=" + i, futures.get(i).join().getBody());
+        }
+    }
+
+    @Test
+    void fetchAsync_CustomExecutor() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Response response = fetchAsync(server.url("/echo"), params().query("a", "b"), executor).get();
+            assertEquals("a=b", response.getBody());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void fetchAsync_UnknownHost_CompletesExceptionally() {
+        String url = "https://www." + UUID.randomUUID() + ".gov";
+        ExecutionException e = assertThrowsExactly(ExecutionException.class, () -> fetchAsync(url).get());
+        assertInstanceOf(HostNotFoundException.class, e.getCause());
+    }
+
+}
@@ -0,0 +1,468 @@
+package net.insprill.fetch4j;
+
+import net.insprill.fetch4j.exception.FetchException;
+import net.insprill.fetch4j.exception.HostNotFoundException;
+import net.insprill.fetch4j.exception.InvalidURLException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static net.insprill.fetch4j.Params.params;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FetchClientTest {
+
+    private static final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    private static final AtomicInteger inFlight = new AtomicInteger();
+    private static final AtomicInteger maxInFlight = new AtomicInteger();
+
+    private static TestServer server;
+
+    @BeforeAll
+    static void setUp() {
+        server = new TestServer()
+                .handle("/echo", exchange -> {
+                    clientPorts.add(exchange.getRemoteAddress().getPort());
+                    ByteArrayOutputStream body = new ByteArrayOutputStream();
+                    try (InputStream in = exchange.getRequestBody()) {
+                        byte[] buf = new byte[4096];
+                        int n;
+                        while ((n = in.read(buf)) != -1) {
+                            body.write(buf, 0, n);
+                        }
+                    }
+                    byte[] response = (exchange.getRequestMethod() + " " + body.toString("UTF-8")).getBytes(StandardCharsets.UTF_8);
+                    exchange.sendResponseHeaders(200, response.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(response);
+                    }
+                })
+                .handle("/chunked", exchange -> {
+                    exchange.sendResponseHeaders(200, 0);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        for (int i = 0; i < 100; i++) {
+                            out.write(("line " + i + "\n").getBytes(StandardCharsets.UTF_8));
+                            out.flush();
+                        }
+                    }
+                })
+                .handle("/upload", exchange -> {
+                    String transferEncoding = exchange.getRequestHeaders().getFirst("Transfer-Encoding");
+                    InputStream in = exchange.getRequestBody();
+                    if ("gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+                        in = new GZIPInputStream(in);
+                    }
+                    long size = 0;
+                    int b;
+                    try (InputStream body = in) {
+                        while ((b = body.read()) != -1) {
+                            size += b;
+                        }
+                    }
+                    byte[] response = (transferEncoding + " " + size).getBytes(StandardCharsets.UTF_8);
+                    exchange.sendResponseHeaders(200, response.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(response);
+                    }
+                })
+                .handle("/accept-encoding", exchange -> {
+                    exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                    exchange.sendResponseHeaders(200, 0);
+                    try (OutputStream out = new GZIPOutputStream(exchange.getResponseBody())) {
+                        out.write(exchange.getRequestHeaders().getFirst("Accept-Encoding").getBytes(StandardCharsets.UTF_8));
+                    }
+                })
+                .handle("/truncated", exchange -> {
+                    exchange.sendResponseHeaders(200, 100);
+                    exchange.getResponseBody().write("Howdy".getBytes(StandardCharsets.UTF_8));
+                    exchange.getResponseBody().flush();
+                    // Failing the handler makes the server drop the connection with the body cut short.
+                    throw new IOException("Truncated");
+                })
+                .handle("/slow", exchange -> {
+                    int current = inFlight.incrementAndGet();
+                    maxInFlight.accumulateAndGet(current, Math::max);
+                    try {
+                        Thread.sleep(50);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    inFlight.decrementAndGet();
+                    exchange.sendResponseHeaders(204, -1);
+                    exchange.close();
+                })
+                .handle("/redirect", exchange -> {
+                    exchange.getResponseHeaders().set("Location", "/echo");
+                    exchange.sendResponseHeaders(302, -1);
+                    exchange.close();
+                });
+    }
+
+    @AfterAll
+    static void tearDown() {
+        server.close();
+    }
+
+    @Test
+    void sequentialRequests_ReuseConnection() {
+        try (FetchClient client = FetchClient.builder().build()) {
+            clientPorts.clear();
+            for (int i = 0; i < 10; i++) {
+                assertEquals("GET ", client.fetch(server.url("/echo")).getBody());
+            }
+            assertEquals(1, clientPorts.size());
+            assertEquals(1, client.getConnectionPool().getConnectionCount());
+            assertEquals(1, client.getConnectionPool().getIdleConnectionCount());
+        }
+    }
+
+    @Test
+    void post_SendsBody() {
+        try (FetchClient client = FetchClient.builder().build()) {
+            Response response = client.fetch(server.url("/echo"), params()
+                    .method(Params.Method.POST)
+                    .body("Howdy"));
+            assertEquals("POST Howdy", response.getBody());
+        }
+    }
+
+    @Test
+    void post_StreamedBody_FixedLength() {
+        try (FetchClient client = FetchClient.builder().build()) {
+            Response response = client.fetch(server.url("/upload"), params()
+                    .method(Params.Method.POST)
+                    .body(new ByteArrayInputStream(ones(100_000)), 100_000));
+            assertEquals("null 100000", response.getBody());
+        }
+    }
+
+    @Test
+    void post_StreamedBody_Chunked() {
+        try (FetchClient client = FetchClient.builder().build()) {
+            Response response = client.fetch(server.url("/upload"), params()
+                    .method(Params.Method.POST)
+                    .body(() -> new ByteArrayInputStream(ones(100_000)), -1));
+            assertEquals("chunked 100000", response.getBody());
+            assertEquals(1, client.getConnectionPool().getIdleConnectionCount());
+        }
+    }
+
+    @Test
+    void post_CompressedBody() {
+        try (FetchClient client = FetchClient.builder().build()) {
+            Response response = client.fetch(server.url("/upload"), params()
+                    .method(Params.Method.POST)
+                    .body(ones(100_000))
+                    .compressBody(true));
+            assertEquals("chunked 100000", response.getBody());
+        }
+    }
+
+    @Test
+    void post_StreamedBody_WrongLength_Throws() {
+        try (FetchClient client = FetchClient.builder().build()) {
+            Params params = params()
+                    .method(Params.Method.POST)
+                    .body(() -> new ByteArrayInputStream(ones(10)), 20);
+            assertThrowsExactly(HostNotFoundException.class, () -> client.fetch(server.url("/upload"), params));
+        }
+    }
+
+    @Test
+    void chunkedResponse_ReadFully() {
+        try (FetchClient client = FetchClient.builder().build()) {
+            String body = client.fetch(server.url("/chunked")).getBody();
+            assertTrue(body.startsWith("line 0\n"));
+            assertTrue(body.endsWith("line 99\n"));
+            assertEquals(1, client.getConnectionPool().getIdleConnectionCount());
+        }
+    }
+
+    @Test
+    void contentDecoder_Advertised_ConnectionReused() {
+        try (FetchClient client = FetchClient.builder().contentDecoder("br", in -> in).build()) {
+            assertEquals("gzip, deflate, br", client.fetch(server.url("/accept-encoding")).getBody());
+            assertEquals(1, client.getConnectionPool().getIdleConnectionCount());
+        }
+    }
+
+    @Test
+    void maxConnectionsPerHost_Respected() {
+        try (FetchClient client = FetchClient.builder().maxConnectionsPerHost(2).build()) {
+            maxInFlight.set(0);
+            List<CompletableFuture<Response>> futures = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                futures.add(client.fetchAsync(server.url("/slow")));
+            }
+            futures.forEach(future -> assertEquals(204, future.join().getStatus()));
+            assertTrue(maxInFlight.get() <= 2);
+            assertTrue(client.getConnectionPool().getConnectionCount() <= 2);
+        }
+    }
+
+    @Test
+    void pipelining_ConcurrentGets_ShareConnection() {
+        try (FetchClient client = FetchClient.builder().maxConnectionsPerHost(1).pipelining(4).build()) {
+            clientPorts.clear();
+            List<CompletableFuture<Response>> futures = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                futures.add(client.fetchAsync(server.url("/echo")));
+            }
+            futures.forEach(future -> assertEquals("GET ", future.join().getBody()));
+            assertEquals(1, clientPorts.size());
+            assertEquals(1, client.getConnectionPool().getConnectionCount());
+        }
+    }
+
+    @Test
+    void pipelining_PostWaitsForConnection() {
+        try (FetchClient client = FetchClient.builder().maxConnectionsPerHost(1).pipelining(4).build()) {
+            List<CompletableFuture<Response>> futures = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                Params params = i % 2 == 0 ? params() : params().method(Params.Method.POST).body(String.valueOf(i));
+                futures.add(client.fetchAsync(server.url("/echo"), params));
+            }
+            for (int i = 0; i < 10; i++) {
+                assertEquals(i % 2 == 0 ? "GET " : "POST " + i, futures.get(i).join().getBody());
+            }
+        }
+    }
+
+    @Test
+    void socketOptions_Applied() {
+        SocketOptions options = SocketOptions.builder().socketBufferSizes(65536, 65536).bufferSize(512).build();
+        try (FetchClient client = FetchClient.builder().socketOptions(options).build()) {
+            assertEquals("POST Howdy", client.fetch(server.url("/echo"), params().method(Params.Method.POST).body("Howdy")).getBody());
+            assertEquals(100, client.fetch(server.url("/chunked")).getBody().split("\n").length);
+        }
+    }
+
+    @Test
+    void idleConnections_Evicted() throws InterruptedException {
+        try (FetchClient client = FetchClient.builder().idleTimeout(100).build()) {
+            client.fetch(server.url("/echo"));
+            assertEquals(1, client.getConnectionPool().getIdleConnectionCount());
+            Thread.sleep(500);
+            assertEquals(0, client.getConnectionPool().getConnectionCount());
+            assertEquals(0, client.getConnectionPool().getHostCount());
+        }
+    }
+
+    @Test
+    void redirect_Followed() {
+        try (FetchClient client = FetchClient.builder().build()) {
+            Response response = client.fetch(server.url("/redirect"), params()
+                    .method(Params.Method.POST)
+                    .body("Howdy"));
+            assertEquals(200, response.getStatus());
+            assertEquals("GET ", response.getBody());
+        }
+    }
+
+    @Test
+    void redirect_NotFollowed() {
+        try (FetchClient client = FetchClient.builder().build()) {
+            Response response = client.fetch(server.url("/redirect"), params().followRedirects(false));
+            assertEquals(302, response.getStatus());
+            assertTrue(response.getHeader("location").endsWith("/echo"));
+        }
+    }
+
+    @Test
+    void fetchAll_ResultsInOrder_FailuresCaptured() {
+        try (FetchClient client = FetchClient.builder().build()) {
+            List<Request> requests = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                requests.add(Request.of(server.url("/echo"), params().method(Params.Method.POST).body(String.valueOf(i))));
+            }
+            requests.add(25, Request.of("not a url"));
+            List<BatchResult> results = client.fetchAll(requests, BatchOptions.batchOptions().maxConcurrency(4));
+            assertEquals(51, results.size());
+            assertThrowsExactly(InvalidURLException.class, () -> {
+                throw results.get(25).getError();
+            });
+            for (int i = 0; i < 50; i++) {
+                BatchResult result = results.get(i < 25 ? i : i + 1);
+                assertTrue(result.isSuccess());
+                assertEquals("POST " + i, result.getResponse().getBody());
+            }
+        }
+    }
+
+    @Test
+    void fetchAll_MaxConcurrencyPerHost_Respected() {
+        try (FetchClient client = FetchClient.builder().build()) {
+            maxInFlight.set(0);
+            List<Request> requests = new ArrayList<>();
+            for (int i = 0; i < 12; i++) {
+                requests.add(Request.of(server.url("/slow")));
+            }
+            client.fetchAll(requests, BatchOptions.batchOptions().maxConcurrencyPerHost(3))
+                    .forEach(result -> assertEquals(204, result.getResponse().getStatus()));
+            assertTrue(maxInFlight.get() <= 3);
+            assertTrue(client.getConnectionPool().getConnectionCount() <= 3);
+        }
+    }
+
+    @Test
+    void fetchAllAsCompleted_AllDelivered() {
+        try (FetchClient client = FetchClient.builder().build()) {
+            List<Request> requests = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                requests.add(Request.of(server.url("/echo")));
+            }
+            Set<Integer> indices = new HashSet<>();
+            client.fetchAllAsCompleted(requests, BatchOptions.batchOptions())
+                    .forEach(result -> assertTrue(result.isSuccess() && indices.add(result.getIndex())));
+            assertEquals(20, indices.size());
+        }
+    }
+
+    @Test
+    void fetchAll_TruncatedBody_FailureCaptured() {
+        try (FetchClient client = FetchClient.builder().build()) {
+            List<Request> requests = Arrays.asList(Request.of(server.url("/truncated")), Request.of(server.url("/echo")));
+            CompletableFuture<List<BatchResult>> results = CompletableFuture.supplyAsync(() -> client.fetchAll(requests));
+            List<BatchResult> completed = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> results.get());
+            assertInstanceOf(FetchException.class, completed.get(0).getError());
+            assertTrue(completed.get(1).isSuccess());
+            assertEquals(2, client.fetchAllAsCompleted(requests, BatchOptions.batchOptions()).count());
+        }
+    }
+
+    @Test
+    void eventListener_PhasesInOrder() {
+        List<String> events = new ArrayList<>();
+        try (FetchClient client = FetchClient.builder().eventListenerFactory((url, params) -> new RecordingListener(events)).build()) {
+            client.fetch(server.url("/echo"), params().method(Params.Method.POST).body("Howdy"));
+            assertEquals(Arrays.asList("callStart", "dnsStart", "dnsEnd", "connectStart", "connectEnd", "connectionAcquired false",
+                    "requestBodyEnd 5", "responseHeadersEnd 200", "responseBodyEnd 10", "callEnd"), events);
+            events.clear();
+            client.fetch(server.url("/echo"));
+            assertEquals(Arrays.asList("callStart", "connectionAcquired true", "responseHeadersEnd 200", "responseBodyEnd 4", "callEnd"), events);
+        }
+    }
+
+    @Test
+    void eventListener_ConnectFailed_CallFailed() {
+        List<String> events = new ArrayList<>();
+        try (FetchClient client = FetchClient.builder().build()) {
+            assertThrowsExactly(HostNotFoundException.class, () -> client.fetch("http://127.0.0.1:1", params().eventListener(new RecordingListener(events))));
+            assertEquals(Arrays.asList("callStart", "dnsStart", "dnsEnd", "connectStart", "connectFailed", "callFailed"), events);
+        }
+    }
+
+    @Test
+    void resolver_UnreachableAddressFirst_RacesToReachable() throws IOException {
+        // 192.0.2.0/24 is reserved for documentation, so never accepts connections.
+        List<InetAddress> addresses = Arrays.asList(InetAddress.getByName("192.0.2.1"), InetAddress.getLoopbackAddress());
+        try (FetchClient client = FetchClient.builder().resolver(host -> addresses).build()) {
+            String url = server.url("/echo").replace(InetAddress.getLoopbackAddress().getHostAddress(), "fetch4j.test");
+            long start = System.nanoTime();
+            assertEquals("GET ", client.fetch(url, params().connectionTimeout(10000)).getBody());
+            assertTrue(System.nanoTime() - start < 5_000_000_000L);
+        }
+    }
+
+    private static class RecordingListener extends EventListener {
+
+        private final List<String> events;
+
+        RecordingListener(List<String> events) {
+            this.events = events;
+        }
+
+        @Override
+        public void callStart(URL url, Params params) {
+            events.add("callStart");
+        }
+
+        @Override
+        public void dnsStart(String host) {
+            events.add("dnsStart");
+        }
+
+        @Override
+        public void dnsEnd(String host, List<InetAddress> addresses, long durationNanos) {
+            events.add("dnsEnd");
+        }
+
+        @Override
+        public void connectStart(InetSocketAddress address) {
+            events.add("connectStart");
+        }
+
+        @Override
+        public void connectEnd(InetSocketAddress address, long durationNanos) {
+            events.add("connectEnd");
+        }
+
+        @Override
+        public void connectFailed(InetSocketAddress address, IOException error, long durationNanos) {
+            events.add("connectFailed");
+        }
+
+        @Override
+        public void connectionAcquired(boolean reused, long durationNanos) {
+            events.add("connectionAcquired " + reused);
+        }
+
+        @Override
+        public void requestBodyEnd(long bytes, long durationNanos) {
+            events.add("requestBodyEnd " + bytes);
+        }
+
+        @Override
+        public void responseHeadersEnd(int status, long timeToFirstByteNanos) {
+            events.add("responseHeadersEnd " + status);
+        }
+
+        @Override
+        public void responseBodyEnd(long bytes, long durationNanos) {
+            events.add("responseBodyEnd " + bytes);
+        }
+
+        @Override
+        public void callEnd(long durationNanos) {
+            events.add("callEnd");
+        }
+
+        @Override
+        public void callFailed(Throwable error, long durationNanos) {
+            events.add("callFailed");
+        }
+
+    }
+
+    private static byte[] ones(int length) {
+        byte[] bytes = new byte[length];
+        Arrays.fill(bytes, (byte) 1);
+        return bytes;
+    }
+
+}
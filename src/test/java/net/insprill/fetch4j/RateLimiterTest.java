@@ -0,0 +1,112 @@
+package net.insprill.fetch4j;
+
+import net.insprill.fetch4j.exception.RateLimitException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static net.insprill.fetch4j.Params.params;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimiterTest {
+
+    private static TestServer server;
+
+    @BeforeAll
+    static void setUp() {
+        server = new TestServer()
+                .handle("/ok", exchange -> {
+                    byte[] body = "Howdy".getBytes(StandardCharsets.UTF_8);
+                    exchange.sendResponseHeaders(200, body.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(body);
+                    }
+                })
+                .handle("/throttled", exchange -> {
+                    exchange.getResponseHeaders().set("Retry-After", "5");
+                    exchange.sendResponseHeaders(429, -1);
+                    exchange.close();
+                })
+                .handle("/exhausted", exchange -> {
+                    exchange.getResponseHeaders().set("RateLimit", "limit=10, remaining=0, reset=5");
+                    exchange.sendResponseHeaders(200, -1);
+                    exchange.close();
+                });
+    }
+
+    @AfterAll
+    static void tearDown() {
+        server.close();
+    }
+
+    @Test
+    void rate_BurstExceeded_FailsFast() {
+        RateLimiter limiter = RateLimiter.builder().rate(0.5, 2).maxWait(0).build();
+        try (FetchClient client = FetchClient.builder().rateLimiter(limiter).build()) {
+            client.fetch(server.url("/ok"));
+            client.fetch(server.url("/ok"));
+            assertThrows(RateLimitException.class, () -> client.fetch(server.url("/ok")));
+        }
+    }
+
+    @Test
+    void rate_Exceeded_WaitsForSlot() {
+        RateLimiter limiter = RateLimiter.builder().rate(20, 1).build();
+        try (FetchClient client = FetchClient.builder().rateLimiter(limiter).build()) {
+            long start = System.nanoTime();
+            for (int i = 0; i < 5; i++) {
+                assertEquals("Howdy", client.fetch(server.url("/ok")).getBody());
+            }
+            // The first request is sent straight away, and the rest 50ms apart.
+            assertTrue(System.nanoTime() - start >= 190_000_000L);
+        }
+    }
+
+    @Test
+    void maxInFlight_ReleasedOnClose() throws IOException {
+        RateLimiter limiter = RateLimiter.builder().maxInFlight(2).maxWait(0).build();
+        try (FetchClient client = FetchClient.builder().rateLimiter(limiter).build()) {
+            Response first = client.stream(server.url("/ok"));
+            Response second = client.stream(server.url("/ok"));
+            assertThrows(RateLimitException.class, () -> client.fetch(server.url("/ok")));
+            first.close();
+            assertEquals("Howdy", client.fetch(server.url("/ok")).getBody());
+            second.close();
+        }
+    }
+
+    @Test
+    void adaptive_RetryAfter_PausesKey() {
+        RateLimiter limiter = RateLimiter.builder().maxWait(0).build();
+        try (FetchClient client = FetchClient.builder().rateLimiter(limiter).build()) {
+            assertEquals(429, client.fetch(server.url("/throttled")).getStatus());
+            assertThrows(RateLimitException.class, () -> client.fetch(server.url("/ok")));
+        }
+    }
+
+    @Test
+    void adaptive_QuotaExhausted_PausesKey() {
+        RateLimiter limiter = RateLimiter.builder().maxWait(0).build();
+        try (FetchClient client = FetchClient.builder().rateLimiter(limiter).build()) {
+            client.fetch(server.url("/exhausted"));
+            assertThrows(RateLimitException.class, () -> client.fetch(server.url("/ok")));
+        }
+    }
+
+    @Test
+    void key_Custom_LimitsIndependently() {
+        RateLimiter limiter = RateLimiter.builder().rate(0.5, 1).maxWait(0).key(url -> url.getPath()).build();
+        try (FetchClient client = FetchClient.builder().rateLimiter(limiter).build()) {
+            client.fetch(server.url("/ok"));
+            client.fetch(server.url("/exhausted"));
+            assertThrows(RateLimitException.class, () -> client.fetch(server.url("/ok")));
+        }
+    }
+
+}
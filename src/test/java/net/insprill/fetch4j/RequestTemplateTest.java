@@ -0,0 +1,85 @@
+package net.insprill.fetch4j;
+
+import net.insprill.fetch4j.exception.InvalidURLException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static net.insprill.fetch4j.Params.params;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
+
+class RequestTemplateTest {
+
+    private static TestServer server;
+
+    @BeforeAll
+    static void setUp() {
+        server = new TestServer()
+                .handle("/items", exchange -> {
+                    byte[] response = (exchange.getRequestURI().getRawPath() + " " + exchange.getRequestURI().getRawQuery() + " "
+                            + exchange.getRequestHeaders().getFirst("X-Token")).getBytes(StandardCharsets.UTF_8);
+                    exchange.sendResponseHeaders(200, response.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(response);
+                    }
+                });
+    }
+
+    @AfterAll
+    static void tearDown() {
+        server.close();
+    }
+
+    @Test
+    void fetch_NoPlaceholders_QueriesAndHeadersSent() {
+        try (FetchClient client = FetchClient.builder().build()) {
+            RequestTemplate template = client.compile(server.url("/items"), params().query("page", 2).header("X-Token", "abc"));
+            assertEquals("/items page=2 abc", template.fetch().getBody());
+            assertEquals("/items page=2 abc", template.fetch().getBody());
+        }
+    }
+
+    @Test
+    void fetch_Placeholders_Encoded() {
+        try (FetchClient client = FetchClient.builder().build()) {
+            RequestTemplate template = client.compile(server.url("/items/{id}/{name}"), params().query("q", "a b"));
+            assertEquals(Arrays.asList("id", "name"), template.getVariables());
+            assertEquals("/items/42/fetch%204j%2F%C3%A9 q=a+b null", template.fetch(42, "fetch 4j/\u00e9").getBody());
+            Map<String, Object> values = new HashMap<>();
+            values.put("id", 7);
+            values.put("name", "x");
+            assertEquals("/items/7/x q=a+b null", template.fetch(values).getBody());
+        }
+    }
+
+    @Test
+    void compile_ParamsChangedLater_TemplateUnaffected() {
+        try (FetchClient client = FetchClient.builder().build()) {
+            Params params = params().header("X-Token", "abc");
+            RequestTemplate template = client.compile(server.url("/items"), params);
+            params.header("X-Token", "def").query("page", 1);
+            assertEquals("/items null abc", template.fetch().getBody());
+        }
+    }
+
+    @Test
+    void expand_WrongValueCount_Throws() {
+        RequestTemplate template = FetchClient.getDefault().compile("https://example.com/{id}", params());
+        assertThrowsExactly(IllegalArgumentException.class, template::expand);
+        assertThrowsExactly(IllegalArgumentException.class, () -> template.expand(1, 2));
+    }
+
+    @Test
+    void compile_InvalidURL_Throws() {
+        assertThrowsExactly(InvalidURLException.class, () -> FetchClient.getDefault().compile("example.com/{id}", params()));
+        assertThrowsExactly(InvalidURLException.class, () -> FetchClient.getDefault().compile("https://example.com/{id", params()));
+    }
+
+}
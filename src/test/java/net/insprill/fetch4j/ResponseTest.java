@@ -0,0 +1,307 @@
+package net.insprill.fetch4j;
+
+import net.insprill.fetch4j.cache.CacheControl;
+import net.insprill.fetch4j.transport.UrlConnectionTransport;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static net.insprill.fetch4j.Fetch.download;
+import static net.insprill.fetch4j.Fetch.fetch;
+import static net.insprill.fetch4j.Fetch.stream;
+import static net.insprill.fetch4j.Params.params;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResponseTest {
+
+    private static final int LARGE_BODY_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * Longer than the heap can hold, so buffers presized to it can't be allocated.
+     */
+    static final long HUGE_LENGTH = Math.min(Runtime.getRuntime().maxMemory(), Integer.MAX_VALUE - 8);
+
+    private static final String JSON = String.join(",", Collections.nCopies(1000, "{\"name\":\"fetch4j\"}"));
+
+    private static TestServer server;
+    private static volatile String acceptEncoding;
+
+    @BeforeAll
+    static void setUp() {
+        server = new TestServer()
+                .handle("/text", exchange -> {
+                    byte[] body = "Howdy".getBytes(StandardCharsets.UTF_8);
+                    exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+                    exchange.sendResponseHeaders(200, body.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(body);
+                    }
+                })
+                .handle("/gzip", exchange -> {
+                    acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+                    exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                    exchange.sendResponseHeaders(200, 0);
+                    try (OutputStream out = new GZIPOutputStream(exchange.getResponseBody())) {
+                        out.write(JSON.getBytes(StandardCharsets.UTF_8));
+                    }
+                })
+                .handle("/deflate", exchange -> {
+                    // Raw deflate, without the zlib wrapper.
+                    Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+                    exchange.getResponseHeaders().set("Content-Encoding", "deflate");
+                    exchange.sendResponseHeaders(200, 0);
+                    try (OutputStream out = new DeflaterOutputStream(exchange.getResponseBody(), deflater)) {
+                        out.write(JSON.getBytes(StandardCharsets.UTF_8));
+                    } finally {
+                        deflater.end();
+                    }
+                })
+                .handle("/headers", exchange -> {
+                    exchange.getResponseHeaders().set("Content-Type", "text/html ; Charset=\"ISO-8859-1\"");
+                    exchange.getResponseHeaders().set("Cache-Control", "public, max-age=60");
+                    exchange.getResponseHeaders().add("X-Multi", "1");
+                    exchange.getResponseHeaders().add("X-Multi", "2");
+                    exchange.sendResponseHeaders(204, -1);
+                    exchange.close();
+                })
+                .handle("/huge", exchange -> {
+                    exchange.getResponseHeaders().set("Content-Length", String.valueOf(HUGE_LENGTH));
+                    exchange.sendResponseHeaders(200, -1);
+                    exchange.close();
+                })
+                .handle("/large", exchange -> {
+                    exchange.sendResponseHeaders(200, 0);
+                    byte[] chunk = new byte[8192];
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        for (int i = 0; i < LARGE_BODY_SIZE / chunk.length; i++) {
+                            out.write(chunk);
+                        }
+                    }
+                });
+    }
+
+    @AfterAll
+    static void tearDown() {
+        server.close();
+    }
+
+    @Test
+    void buffered_Body() {
+        Response response = fetch(server.url("/text"));
+
+        assertFalse(response.isStreamed());
+        assertEquals("Howdy", response.getBody());
+        assertEquals(5, response.getContentLength());
+    }
+
+    @Test
+    void headers_IndexedCaseInsensitively() {
+        assertHeadersIndexed(fetch(server.url("/headers")));
+    }
+
+    @Test
+    void headers_UrlConnectionTransport_IndexedCaseInsensitively() {
+        try (FetchClient client = FetchClient.builder().transport(new UrlConnectionTransport()).build()) {
+            Response response = client.fetch(server.url("/headers"));
+            assertHeadersIndexed(response);
+            assertTrue(response.getHeaders().keySet().stream().allMatch(Objects::nonNull));
+        }
+    }
+
+    @Test
+    void headers_Missing() {
+        Response response = fetch(server.url("/deflate"));
+
+        assertNull(response.getContentType());
+        assertEquals("UTF-8", response.getContentEncoding());
+        assertSame(CacheControl.EMPTY, response.getCacheControl());
+        assertTrue(response.getHeaderValues("X-Multi").isEmpty());
+    }
+
+    @Test
+    void head_LargeContentLength_NotPresized() {
+        Response response = fetch(server.url("/huge"), params().method(Params.Method.HEAD));
+
+        assertEquals(HUGE_LENGTH, response.getContentLength());
+        assertEquals(0, response.getBodyBytes().length);
+    }
+
+    @Test
+    void head_LargeContentLength_Pooled_NotPresized() throws IOException {
+        try (FetchClient client = FetchClient.builder().bufferPool(BufferPool.builder().build()).build();
+             Response response = client.fetch(server.url("/huge"), params().method(Params.Method.HEAD))) {
+            assertEquals(0, response.asByteBuffer().remaining());
+        }
+    }
+
+    @Test
+    void views_ShareBufferedBody() throws IOException {
+        Response response = fetch(server.url("/text"));
+
+        ByteBuffer view = response.asByteBuffer();
+        assertTrue(view.isReadOnly());
+        assertEquals(5, view.remaining());
+        assertEquals('H', view.get());
+        assertEquals(5, response.asByteBuffer().remaining());
+        assertEquals('H', response.asInputStream().read());
+        assertSame(response.getBody(), response.asCharSequence());
+        try (BufferedReader reader = new BufferedReader(response.asReader())) {
+            assertEquals("Howdy", reader.readLine());
+        }
+    }
+
+    @Test
+    void asReader_Streamed_DecodesWithoutString() throws IOException {
+        try (Response response = stream(server.url("/gzip"));
+             BufferedReader reader = new BufferedReader(response.asReader())) {
+            assertEquals(JSON, reader.readLine());
+            assertTrue(response.asInputStream().available() > 0);
+        }
+    }
+
+    @Test
+    void stream_ReadsWholeBody() throws IOException {
+        long read = 0;
+        try (Response response = stream(server.url("/large"))) {
+            assertTrue(response.isStreamed());
+            InputStream body = response.getBodyStream();
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = body.read(buf)) != -1) {
+                read += n;
+            }
+        }
+        assertEquals(LARGE_BODY_SIZE, read);
+    }
+
+    @Test
+    void stream_BufferedLazily() throws IOException {
+        try (Response response = stream(server.url("/text"))) {
+            assertEquals("Howdy", response.getBody());
+            assertFalse(response.isStreamed());
+        }
+    }
+
+    @Test
+    void stream_ParamsNotChanged() {
+        Params params = params();
+        try (Response response = stream(server.url("/text"), params)) {
+            assertTrue(response.isStreamed());
+        }
+        assertFalse(params.isStreamBody());
+        assertFalse(fetch(server.url("/text"), params).isStreamed());
+    }
+
+    @Test
+    void stream_BodyConsumed_ThrowsOnBuffer() throws IOException {
+        try (Response response = stream(server.url("/text"))) {
+            response.getBodyStream();
+            assertThrowsExactly(IllegalStateException.class, response::getBody);
+        }
+    }
+
+    @Test
+    void decompress_Gzip() {
+        Response response = fetch(server.url("/gzip"));
+
+        assertEquals("gzip, deflate", acceptEncoding);
+        assertEquals(JSON, response.getBody());
+        assertEquals("utf-8", response.getContentEncoding());
+        assertFalse(response.hasHeader("Content-Encoding"));
+        assertEquals(JSON.length(), response.getContentLength());
+    }
+
+    @Test
+    void decompress_Gzip_HeadersCaseInsensitive() {
+        Response response = fetch(server.url("/gzip"));
+
+        assertTrue(response.getHeaders().containsKey("content-type"));
+        assertTrue(response.getHeaders().containsKey("CONTENT-TYPE"));
+        assertFalse(response.getHeaders().containsKey("content-encoding"));
+    }
+
+    @Test
+    void decompress_Gzip_Streamed() throws IOException {
+        try (Response response = stream(server.url("/gzip"));
+             InputStream body = response.getBodyStream()) {
+            ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+            byte[] buf = new byte[100];
+            int n;
+            while ((n = body.read(buf)) != -1) {
+                decoded.write(buf, 0, n);
+            }
+            assertEquals(JSON, decoded.toString("UTF-8"));
+        }
+    }
+
+    @Test
+    void decompress_RawDeflate() {
+        assertEquals(JSON, fetch(server.url("/deflate")).getBody(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void decompress_Disabled_ReturnsWireBytes() throws IOException {
+        Response response = fetch(server.url("/gzip"), params().decompress(false).header("Accept-Encoding", "gzip"));
+
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        try (InputStream body = new GZIPInputStream(response.getBodyStream())) {
+            ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            int n;
+            while ((n = body.read(buf)) != -1) {
+                decoded.write(buf, 0, n);
+            }
+            assertEquals(JSON, decoded.toString("UTF-8"));
+        }
+    }
+
+    @Test
+    void download_WritesFile(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("large.bin");
+        assertEquals(LARGE_BODY_SIZE, download(server.url("/large"), file));
+        assertEquals(LARGE_BODY_SIZE, Files.size(file));
+    }
+
+    @Test
+    void transferTo_Buffered_WritesFile(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("text.txt");
+        assertEquals(5, fetch(server.url("/text")).transferTo(file));
+        assertEquals("Howdy", new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+    }
+
+    private static void assertHeadersIndexed(Response response) {
+        assertEquals("2", response.getHeader("x-multi"));
+        assertEquals(Arrays.asList("1", "2"), response.getHeaderValues("X-MULTI"));
+        assertEquals("text/html", response.getContentType());
+        assertEquals("ISO-8859-1", response.getContentEncoding());
+        assertEquals(StandardCharsets.ISO_8859_1, response.getCharset());
+        assertTrue(response.getCacheControl().isPublic());
+        assertEquals(60, response.getCacheControl().getMaxAge());
+        assertSame(response.getCacheControl(), response.getCacheControl());
+    }
+
+}
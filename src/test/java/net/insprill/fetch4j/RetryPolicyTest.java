@@ -0,0 +1,231 @@
+package net.insprill.fetch4j;
+
+import com.sun.net.httpserver.HttpExchange;
+import net.insprill.fetch4j.exception.HostNotFoundException;
+import net.insprill.fetch4j.transport.Exchange;
+import net.insprill.fetch4j.transport.Transport;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static net.insprill.fetch4j.Params.params;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetryPolicyTest {
+
+    private static final AtomicInteger served = new AtomicInteger();
+
+    private static TestServer server;
+
+    @BeforeAll
+    static void setUp() {
+        server = new TestServer()
+                .handle("/flaky", exchange -> {
+                    if (served.incrementAndGet() < 3) {
+                        send(exchange, 503, "unavailable");
+                    } else {
+                        send(exchange, 200, "ok");
+                    }
+                })
+                .handle("/throttled", exchange -> {
+                    served.incrementAndGet();
+                    exchange.getResponseHeaders().set("Retry-After", "120");
+                    send(exchange, 429, "slow down");
+                })
+                .handle("/slow-first", exchange -> {
+                    if (served.incrementAndGet() == 1) {
+                        try {
+                            Thread.sleep(2000);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        send(exchange, 200, "primary");
+                    } else {
+                        send(exchange, 200, "hedge");
+                    }
+                });
+    }
+
+    @AfterAll
+    static void tearDown() {
+        server.close();
+    }
+
+    @BeforeEach
+    void reset() {
+        served.set(0);
+    }
+
+    @Test
+    void retryableStatus_RetriedUntilSuccess() {
+        RetryPolicy policy = RetryPolicy.builder().maxAttempts(3).backoff(1, 1, 1).build();
+        try (FetchClient client = FetchClient.builder().retryPolicy(policy).build()) {
+            Response response = client.fetch(server.url("/flaky"));
+            assertEquals(200, response.getStatus());
+            assertEquals("ok", response.getBody());
+            assertEquals(3, served.get());
+        }
+    }
+
+    @Test
+    void retryableStatus_AttemptsExhausted_LastResponseReturned() {
+        RetryPolicy policy = RetryPolicy.builder().maxAttempts(2).backoff(1, 1, 1).build();
+        try (FetchClient client = FetchClient.builder().build()) {
+            assertEquals(503, client.fetch(server.url("/flaky"), params().retryPolicy(policy)).getStatus());
+            assertEquals(2, served.get());
+        }
+    }
+
+    @Test
+    void nonIdempotent_NotRetried() {
+        RetryPolicy policy = RetryPolicy.builder().backoff(1, 1, 1).build();
+        try (FetchClient client = FetchClient.builder().retryPolicy(policy).build()) {
+            assertEquals(503, client.fetch(server.url("/flaky"), params().method(Params.Method.POST).body("Howdy")).getStatus());
+            assertEquals(1, served.get());
+        }
+    }
+
+    @Test
+    void retryAfter_TooLong_NotRetried() {
+        RetryPolicy policy = RetryPolicy.builder().respectRetryAfter(true, 1000).build();
+        try (FetchClient client = FetchClient.builder().retryPolicy(policy).build()) {
+            assertEquals(429, client.fetch(server.url("/throttled")).getStatus());
+            assertEquals(1, served.get());
+        }
+    }
+
+    @Test
+    void connectionRefused_Retried_Throws() {
+        AtomicInteger attempts = new AtomicInteger();
+        EventListener listener = new EventListener() {
+            @Override
+            public void callStart(URL url, Params params) {
+                attempts.incrementAndGet();
+            }
+        };
+        RetryPolicy policy = RetryPolicy.builder().maxAttempts(3).backoff(1, 1, 1).build();
+        try (FetchClient client = FetchClient.builder().retryPolicy(policy).eventListener(listener).build()) {
+            assertThrowsExactly(HostNotFoundException.class, () -> client.fetch("http://127.0.0.1:1"));
+            assertEquals(3, attempts.get());
+        }
+    }
+
+    @Test
+    void hedge_SlowAttempt_FasterResponseUsed() {
+        RetryPolicy policy = RetryPolicy.builder().maxAttempts(1).hedgeDelay(50).build();
+        try (FetchClient client = FetchClient.builder().retryPolicy(policy).build()) {
+            long start = System.nanoTime();
+            assertEquals("hedge", client.fetch(server.url("/slow-first")).getBody());
+            assertTrue(System.nanoTime() - start < 1_500_000_000L);
+            assertEquals(2, served.get());
+        }
+    }
+
+    @Test
+    void hedge_FromSaturatedExecutor_AttemptMadeInline() throws Exception {
+        RetryPolicy policy = RetryPolicy.builder().maxAttempts(1).hedgeDelay(50).build();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (FetchClient client = FetchClient.builder().retryPolicy(policy).executor(executor).build()) {
+            // The executor's only thread waits for the attempt, so it has to be made there rather than queued behind it.
+            assertEquals("primary", client.fetchAsync(server.url("/slow-first")).get(10, TimeUnit.SECONDS).getBody());
+            assertEquals(1, served.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void hedgeAtPercentile_SubMillisecondLatencies_NotHedged() {
+        RetryPolicy policy = RetryPolicy.builder().maxAttempts(1).hedgeAtPercentile(95, 1000).build();
+        for (int i = 0; i < 20; i++) {
+            policy.recordLatency(100_000);
+        }
+        assertEquals(1_000_000, policy.currentHedgeDelayNanos());
+
+        AtomicInteger executed = new AtomicInteger();
+        Transport transport = (url, params) -> {
+            executed.incrementAndGet();
+            return new EmptyExchange();
+        };
+        try (FetchClient client = FetchClient.builder().retryPolicy(policy).transport(transport).build()) {
+            for (int i = 0; i < 20; i++) {
+                assertEquals(204, client.fetch(server.url("/fast")).getStatus());
+            }
+            // A zero delay hedges nearly every request, while a slow scheduler may still let an odd one reach 1ms.
+            assertTrue(executed.get() < 30);
+        }
+    }
+
+    @Test
+    void retryAfter_Parsed() {
+        assertEquals(5000, RetryPolicy.parseRetryAfter("5"));
+        assertEquals(0, RetryPolicy.parseRetryAfter("Thu, 01 Jan 1970 00:00:00 GMT"));
+        assertEquals(-1, RetryPolicy.parseRetryAfter("soon"));
+        assertEquals(-1, RetryPolicy.parseRetryAfter(null));
+    }
+
+    /**
+     * A response without a body, served without any network I/O.
+     */
+    private static final class EmptyExchange implements Exchange {
+
+        @Override
+        public int getStatus() {
+            return 204;
+        }
+
+        @Override
+        public String getStatusText() {
+            return "No Content";
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return null;
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaders() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public InputStream getBody() {
+            return null;
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+}
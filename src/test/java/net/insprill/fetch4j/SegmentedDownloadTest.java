@@ -0,0 +1,175 @@
+package net.insprill.fetch4j;
+
+import com.sun.net.httpserver.HttpExchange;
+import net.insprill.fetch4j.exception.FetchException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static net.insprill.fetch4j.DownloadOptions.downloadOptions;
+import static net.insprill.fetch4j.Fetch.download;
+import static net.insprill.fetch4j.Params.params;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SegmentedDownloadTest {
+
+    private static final byte[] BODY = new byte[3 * 1024 * 1024];
+    private static final int SEGMENT_SIZE = BODY.length / 4;
+    private static final DownloadOptions OPTIONS = downloadOptions().segments(4).minSegmentSize(512 * 1024);
+
+    private static TestServer server;
+    private static final List<String> ranges = Collections.synchronizedList(new ArrayList<>());
+    private static volatile boolean failSecondSegment;
+
+    @BeforeAll
+    static void setUp() {
+        new Random(42).nextBytes(BODY);
+        server = new TestServer()
+                .handle("/ranged", exchange -> serve(exchange, true))
+                .handle("/plain", exchange -> serve(exchange, false))
+                .handle("/huge", exchange -> {
+                    if (exchange.getRequestMethod().equals("HEAD")) {
+                        exchange.getResponseHeaders().set("Content-Length", String.valueOf(ResponseTest.HUGE_LENGTH));
+                        exchange.sendResponseHeaders(200, -1);
+                        exchange.close();
+                        return;
+                    }
+                    serve(exchange, false);
+                });
+    }
+
+    @AfterAll
+    static void tearDown() {
+        server.close();
+    }
+
+    @BeforeEach
+    void reset() {
+        ranges.clear();
+        failSecondSegment = false;
+    }
+
+    private static void serve(HttpExchange exchange, boolean acceptRanges) throws IOException {
+        exchange.getResponseHeaders().set("ETag", "\"v1\"");
+        if (acceptRanges) {
+            exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+        }
+        if (exchange.getRequestMethod().equals("HEAD")) {
+            exchange.getResponseHeaders().set("Content-Length", String.valueOf(BODY.length));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+            return;
+        }
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        try (OutputStream out = exchange.getResponseBody()) {
+            if (range == null || !acceptRanges) {
+                exchange.sendResponseHeaders(200, BODY.length);
+                out.write(BODY);
+                return;
+            }
+            ranges.add(range);
+            String[] bounds = range.substring("bytes=".length()).split("-");
+            int start = Integer.parseInt(bounds[0]);
+            int end = Integer.parseInt(bounds[1]);
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + BODY.length);
+            if (failSecondSegment && start == SEGMENT_SIZE) {
+                // Claim the whole range, but end the body early.
+                exchange.sendResponseHeaders(206, 0);
+                out.write(BODY, start, 100_000);
+                return;
+            }
+            exchange.sendResponseHeaders(206, end - start + 1);
+            out.write(BODY, start, end - start + 1);
+        }
+    }
+
+    @Test
+    void download_Ranged_FetchesSegmentsInParallel(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("file.bin");
+        assertEquals(BODY.length, download(server.url("/ranged"), params(), file, OPTIONS));
+
+        assertArrayEquals(BODY, Files.readAllBytes(file));
+        assertEquals(4, ranges.size());
+        assertTrue(ranges.contains("bytes=" + SEGMENT_SIZE + "-" + (2 * SEGMENT_SIZE - 1)));
+        assertFalse(Files.exists(dir.resolve("file.bin.download")));
+    }
+
+    @Test
+    void download_ProbeOfHugeResource_NotBuffered(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("file.bin");
+        assertEquals(BODY.length, download(server.url("/huge"), params(), file, OPTIONS));
+
+        assertArrayEquals(BODY, Files.readAllBytes(file));
+    }
+
+    @Test
+    void download_Failed_ResumesRemainingRanges(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("file.bin");
+        failSecondSegment = true;
+        assertThrows(FetchException.class, () -> download(server.url("/ranged"), params(), file, OPTIONS));
+        assertTrue(Files.exists(dir.resolve("file.bin.download")));
+
+        failSecondSegment = false;
+        ranges.clear();
+        assertEquals(BODY.length, download(server.url("/ranged"), params(), file, OPTIONS));
+
+        assertArrayEquals(BODY, Files.readAllBytes(file));
+        assertTrue(ranges.contains("bytes=" + (SEGMENT_SIZE + 100_000) + "-" + (2 * SEGMENT_SIZE - 1)));
+        assertFalse(ranges.contains("bytes=" + SEGMENT_SIZE + "-" + (2 * SEGMENT_SIZE - 1)));
+        assertFalse(Files.exists(dir.resolve("file.bin.download")));
+    }
+
+    @Test
+    void download_FromSaturatedExecutor_SegmentsFetchedInline(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("file.bin");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (FetchClient client = FetchClient.builder().executor(executor).build()) {
+            // The executor's only thread waits for the segments, so they have to be fetched there rather than queued behind it.
+            CompletableFuture<Long> download = CompletableFuture.supplyAsync(() -> client.download(server.url("/ranged"), params(), file, OPTIONS), executor);
+            assertEquals(BODY.length, download.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+
+        assertArrayEquals(BODY, Files.readAllBytes(file));
+        assertEquals(4, ranges.size());
+    }
+
+    @Test
+    void download_NotFound_Throws(@TempDir Path dir) {
+        Path file = dir.resolve("file.bin");
+        assertThrows(FetchException.class, () -> download(server.url("/missing"), params(), file, OPTIONS));
+
+        assertFalse(Files.exists(file));
+        assertFalse(Files.exists(dir.resolve("file.bin" + SegmentedDownload.STATE_SUFFIX)));
+    }
+
+    @Test
+    void download_RangesUnsupported_SingleStream(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("file.bin");
+        assertEquals(BODY.length, download(server.url("/plain"), params(), file, OPTIONS));
+
+        assertArrayEquals(BODY, Files.readAllBytes(file));
+        assertTrue(ranges.isEmpty());
+    }
+
+}
@@ -0,0 +1,108 @@
+package net.insprill.fetch4j;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static net.insprill.fetch4j.Params.params;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SingleFlightTest {
+
+    private static final AtomicInteger requests = new AtomicInteger();
+    private static volatile CountDownLatch release;
+
+    private static TestServer server;
+
+    @BeforeAll
+    static void setUp() {
+        server = new TestServer()
+                .handle("/slow", exchange -> {
+                    requests.incrementAndGet();
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    byte[] body = (exchange.getRequestMethod() + " " + exchange.getRequestHeaders().getFirst("X-Variant")).getBytes(StandardCharsets.UTF_8);
+                    exchange.sendResponseHeaders(200, body.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(body);
+                    }
+                });
+    }
+
+    @AfterAll
+    static void tearDown() {
+        server.close();
+    }
+
+    @BeforeEach
+    void reset() {
+        requests.set(0);
+        release = new CountDownLatch(1);
+    }
+
+    @Test
+    void identicalGets_ShareSingleRequest() throws Exception {
+        try (FetchClient client = FetchClient.builder().singleFlight(true).build()) {
+            List<CompletableFuture<Response>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(client.fetchAsync(server.url("/slow"), params().header("X-Variant", "a")));
+            }
+            Thread.sleep(200);
+            release.countDown();
+            Set<Response> responses = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (CompletableFuture<Response> future : futures) {
+                Response response = future.get(5, TimeUnit.SECONDS);
+                assertEquals(200, response.getStatus());
+                assertEquals("GET a", response.getBody());
+                responses.add(response);
+            }
+            assertEquals(1, requests.get());
+            assertEquals(futures.size(), responses.size());
+        }
+    }
+
+    @Test
+    void differentHeadersOrMethods_NotCoalesced() throws Exception {
+        try (FetchClient client = FetchClient.builder().singleFlight(true).build()) {
+            CompletableFuture<Response> a = client.fetchAsync(server.url("/slow"), params().header("X-Variant", "a"));
+            CompletableFuture<Response> b = client.fetchAsync(server.url("/slow"), params().header("X-Variant", "b"));
+            CompletableFuture<Response> post = client.fetchAsync(server.url("/slow"), params().method(Params.Method.POST).header("X-Variant", "a"));
+            Thread.sleep(200);
+            release.countDown();
+            assertEquals("GET a", a.get(5, TimeUnit.SECONDS).getBody());
+            assertEquals("GET b", b.get(5, TimeUnit.SECONDS).getBody());
+            assertEquals("POST a", post.get(5, TimeUnit.SECONDS).getBody());
+            assertEquals(3, requests.get());
+        }
+    }
+
+    @Test
+    void disabled_EachRequestSent() throws Exception {
+        try (FetchClient client = FetchClient.builder().build()) {
+            CompletableFuture<Response> a = client.fetchAsync(server.url("/slow"), params().header("X-Variant", "a"));
+            CompletableFuture<Response> b = client.fetchAsync(server.url("/slow"), params().header("X-Variant", "a"));
+            Thread.sleep(200);
+            release.countDown();
+            a.get(5, TimeUnit.SECONDS);
+            b.get(5, TimeUnit.SECONDS);
+            assertEquals(2, requests.get());
+        }
+    }
+
+}
@@ -0,0 +1,238 @@
+package net.insprill.fetch4j.cache;
+
+import com.sun.net.httpserver.HttpExchange;
+import net.insprill.fetch4j.FetchClient;
+import net.insprill.fetch4j.Params;
+import net.insprill.fetch4j.Response;
+import net.insprill.fetch4j.TestServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import static net.insprill.fetch4j.Params.params;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HttpCacheTest {
+
+    private static final AtomicInteger served = new AtomicInteger();
+    private static final AtomicInteger version = new AtomicInteger();
+
+    private static TestServer server;
+
+    @BeforeAll
+    static void setUp() {
+        server = new TestServer()
+                .handle("/fresh", exchange -> {
+                    exchange.getResponseHeaders().set("Cache-Control", "max-age=60");
+                    send(exchange, "fresh " + version.get());
+                })
+                .handle("/etag", exchange -> {
+                    String etag = "\"v" + version.get() + "\"";
+                    if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                        exchange.getResponseHeaders().set("ETag", etag);
+                        exchange.sendResponseHeaders(304, -1);
+                        exchange.close();
+                        return;
+                    }
+                    exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+                    exchange.getResponseHeaders().set("ETag", etag);
+                    send(exchange, "etag " + version.get());
+                })
+                .handle("/no-store", exchange -> {
+                    exchange.getResponseHeaders().set("Cache-Control", "no-store, max-age=60");
+                    send(exchange, "no-store " + version.get());
+                })
+                .handle("/gzip", exchange -> {
+                    served.incrementAndGet();
+                    exchange.getResponseHeaders().set("Cache-Control", "max-age=60");
+                    exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                    exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+                    exchange.sendResponseHeaders(200, 0);
+                    try (OutputStream out = new GZIPOutputStream(exchange.getResponseBody())) {
+                        out.write(("gzip " + version.get()).getBytes(StandardCharsets.UTF_8));
+                    }
+                });
+    }
+
+    @AfterAll
+    static void tearDown() {
+        server.close();
+    }
+
+    @BeforeEach
+    void reset() {
+        served.set(0);
+        version.incrementAndGet();
+    }
+
+    @Test
+    void fresh_ServedFromCache() {
+        HttpCache cache = HttpCache.builder().build();
+        try (FetchClient client = FetchClient.builder().cache(cache).build()) {
+            String first = client.fetch(server.url("/fresh")).getBody();
+            version.incrementAndGet();
+            assertEquals(first, client.fetch(server.url("/fresh")).getBody());
+            assertEquals(1, served.get());
+            assertEquals(1, cache.getHitCount());
+        }
+    }
+
+    @Test
+    void useCachesDisabled_Bypassed() {
+        HttpCache cache = HttpCache.builder().build();
+        try (FetchClient client = FetchClient.builder().cache(cache).build()) {
+            client.fetch(server.url("/fresh"));
+            client.fetch(server.url("/fresh"), params().useCaches(false));
+            assertEquals(2, served.get());
+            assertEquals(0, cache.getHitCount());
+        }
+    }
+
+    @Test
+    void requestNoCache_Revalidated() {
+        HttpCache cache = HttpCache.builder().build();
+        try (FetchClient client = FetchClient.builder().cache(cache).build()) {
+            client.fetch(server.url("/fresh"));
+            version.incrementAndGet();
+            assertEquals("fresh " + version.get(), client.fetch(server.url("/fresh"), params().header("Cache-Control", "no-cache")).getBody());
+            assertEquals(2, served.get());
+        }
+    }
+
+    @Test
+    void etag_NotModified_ReusesBody() {
+        HttpCache cache = HttpCache.builder().build();
+        try (FetchClient client = FetchClient.builder().cache(cache).build()) {
+            String first = client.fetch(server.url("/etag")).getBody();
+            Response second = client.fetch(server.url("/etag"));
+            assertEquals(200, second.getStatus());
+            assertEquals(first, second.getBody());
+            assertEquals(1, served.get());
+            assertEquals(1, cache.getRevalidatedCount());
+        }
+    }
+
+    @Test
+    void etag_Modified_ReplacesEntry() {
+        HttpCache cache = HttpCache.builder().build();
+        try (FetchClient client = FetchClient.builder().cache(cache).build()) {
+            client.fetch(server.url("/etag"));
+            version.incrementAndGet();
+            assertEquals("etag " + version.get(), client.fetch(server.url("/etag")).getBody());
+            assertEquals("etag " + version.get(), client.fetch(server.url("/etag")).getBody());
+            assertEquals(2, served.get());
+            assertEquals(1, cache.getRevalidatedCount());
+        }
+    }
+
+    @Test
+    void noStore_NotCached() {
+        HttpCache cache = HttpCache.builder().build();
+        try (FetchClient client = FetchClient.builder().cache(cache).build()) {
+            client.fetch(server.url("/no-store"));
+            client.fetch(server.url("/no-store"));
+            assertEquals(2, served.get());
+        }
+    }
+
+    @Test
+    void post_InvalidatesEntry() {
+        HttpCache cache = HttpCache.builder().build();
+        try (FetchClient client = FetchClient.builder().cache(cache).build()) {
+            client.fetch(server.url("/fresh"));
+            client.fetch(server.url("/fresh"), params().method(Params.Method.POST).body("Howdy"));
+            client.fetch(server.url("/fresh"));
+            assertEquals(3, served.get());
+        }
+    }
+
+    @Test
+    void compressedBody_StoredCompressed_Decoded() {
+        HttpCache cache = HttpCache.builder().build();
+        try (FetchClient client = FetchClient.builder().cache(cache).build()) {
+            String expected = "gzip " + version.get();
+            assertEquals(expected, client.fetch(server.url("/gzip")).getBody());
+            assertEquals(expected, client.fetch(server.url("/gzip")).getBody());
+            assertEquals(1, served.get());
+            // A request accepting other codings doesn't match the stored variant.
+            client.fetch(server.url("/gzip"), params().header("Accept-Encoding", "identity"));
+            assertEquals(2, served.get());
+        }
+    }
+
+    @Test
+    void streamedBody_StoredOnceRead() throws IOException {
+        HttpCache cache = HttpCache.builder().build();
+        try (FetchClient client = FetchClient.builder().cache(cache).build()) {
+            try (Response response = client.stream(server.url("/fresh"))) {
+                // Closed without being read, so not stored.
+            }
+            try (Response response = client.stream(server.url("/fresh"));
+                 InputStream body = response.getBodyStream()) {
+                while (body.read() != -1) ;
+            }
+            client.fetch(server.url("/fresh"));
+            assertEquals(2, served.get());
+            assertEquals(1, cache.getHitCount());
+        }
+    }
+
+    @Test
+    void diskTier_SurvivesRestart(@TempDir Path dir) {
+        try (FetchClient client = FetchClient.builder().cache(HttpCache.builder().directory(dir, 1024 * 1024).build()).build()) {
+            client.fetch(server.url("/fresh"));
+        }
+        HttpCache cache = HttpCache.builder().directory(dir, 1024 * 1024).build();
+        assertTrue(cache.getDiskSize() > 0);
+        try (FetchClient client = FetchClient.builder().cache(cache).build()) {
+            assertEquals("fresh " + version.get(), client.fetch(server.url("/fresh")).getBody());
+            assertEquals(1, served.get());
+            assertEquals(1, cache.getHitCount());
+        }
+    }
+
+    @Test
+    void memoryTier_Bounded() {
+        HttpCache cache = HttpCache.builder().maxMemorySize(4096).build();
+        try (FetchClient client = FetchClient.builder().cache(cache).build()) {
+            for (int i = 0; i < 20; i++) {
+                client.fetch(server.url("/fresh?i=" + i));
+            }
+            assertTrue(cache.getMemorySize() <= 4096);
+            client.fetch(server.url("/fresh?i=19"));
+            assertEquals(1, cache.getHitCount());
+        }
+    }
+
+    @Test
+    void cacheControl_Parsed() {
+        CacheControl cacheControl = CacheControl.parse(Arrays.asList("public, max-age=\"60\"", "max-stale, no-cache=\"Set-Cookie, Foo\""), null);
+        assertTrue(cacheControl.isPublic);
+        assertTrue(cacheControl.noCache);
+        assertEquals(60, cacheControl.maxAge);
+        assertEquals(Long.MAX_VALUE, cacheControl.maxStale);
+        assertTrue(CacheControl.parse(null, "no-cache").noCache);
+    }
+
+    private static void send(HttpExchange exchange, String body) throws IOException {
+        served.incrementAndGet();
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+}
@@ -0,0 +1,128 @@
+package net.insprill.fetch4j.transport;
+
+import net.insprill.fetch4j.FetchClient;
+import net.insprill.fetch4j.Params;
+import net.insprill.fetch4j.exception.FetchException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static net.insprill.fetch4j.Params.params;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
+
+class Http1TransportTest {
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private ServerSocket serverSocket;
+
+    /**
+     * Starts a server which answers the first request on each connection,
+     * then closes it when the next arrives, like a server timing out an idle connection as it's reused.
+     */
+    @BeforeEach
+    void setUp() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        executor.execute(() -> {
+            while (!serverSocket.isClosed()) {
+                try {
+                    Socket socket = serverSocket.accept();
+                    executor.execute(() -> serveOnce(socket));
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        });
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        serverSocket.close();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void execute_StaleConnection_IdempotentRequestRetried() {
+        try (FetchClient client = FetchClient.builder().build()) {
+            assertEquals(200, client.fetch(url()).getStatus());
+            assertEquals(200, client.fetch(url()).getStatus());
+            assertEquals(3, requests.get());
+        }
+    }
+
+    @Test
+    void execute_StaleConnection_NonIdempotentRequestNotRetried() {
+        try (FetchClient client = FetchClient.builder().build()) {
+            assertEquals(200, client.fetch(url()).getStatus());
+            assertThrows(FetchException.class, () -> client.fetch(url(), params().method(Params.Method.POST).body("Howdy")));
+            assertEquals(2, requests.get());
+        }
+    }
+
+    @Test
+    void execute_HeaderValueWithLineBreak_Rejected() {
+        try (FetchClient client = FetchClient.builder().build()) {
+            assertThrowsExactly(IllegalArgumentException.class, () -> client.fetch(url(), params().header("X-A", "v\r\nX-Injected: evil")));
+            assertThrowsExactly(IllegalArgumentException.class, () -> client.fetch(url(), params().header("X-A: b\r\nX-Injected", "evil")));
+            assertEquals(0, requests.get());
+        }
+    }
+
+    @Test
+    void executeAsync_HeaderValueWithLineBreak_Rejected() {
+        try (FetchClient client = FetchClient.builder().eventLoops(1).build()) {
+            assertThrowsExactly(IllegalArgumentException.class, () -> client.fetch(url(), params().header("X-A", "v\r\nX-Injected: evil")));
+            assertEquals(0, requests.get());
+        }
+    }
+
+    private String url() {
+        return "http://127.0.0.1:" + serverSocket.getLocalPort() + "/";
+    }
+
+    private void serveOnce(Socket socket) {
+        try (Socket s = socket) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.ISO_8859_1));
+            OutputStream out = s.getOutputStream();
+            for (int served = 0; readRequest(in); served++) {
+                requests.incrementAndGet();
+                if (served > 0)
+                    return;
+                out.write("HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+                out.flush();
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static boolean readRequest(BufferedReader in) throws IOException {
+        String line = in.readLine();
+        if (line == null)
+            return false;
+        int length = 0;
+        while ((line = in.readLine()) != null && !line.isEmpty()) {
+            if (line.regionMatches(true, 0, "Content-Length:", 0, 15)) {
+                length = Integer.parseInt(line.substring(15).trim());
+            }
+        }
+        for (int i = 0; i < length; i++) {
+            in.read();
+        }
+        return true;
+    }
+
+}
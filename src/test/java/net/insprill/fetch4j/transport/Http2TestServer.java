@@ -0,0 +1,258 @@
+package net.insprill.fetch4j.transport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * A minimal in-process h2c (prior knowledge) server for testing {@link Http2Transport}.
+ * Each request is handled on its own thread once its body has been received.
+ */
+class Http2TestServer implements AutoCloseable {
+
+    private final ServerSocket serverSocket;
+    private final Function<Request, Reply> handler;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicInteger connections = new AtomicInteger();
+
+    Http2TestServer(Function<Request, Reply> handler) {
+        this.handler = handler;
+        try {
+            serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        executor.execute(this::acceptLoop);
+    }
+
+    String url(String path) {
+        return "http://127.0.0.1:" + serverSocket.getLocalPort() + path;
+    }
+
+    int getConnectionCount() {
+        return connections.get();
+    }
+
+    @Override
+    public void close() {
+        try {
+            serverSocket.close();
+        } catch (IOException ignored) {
+        }
+        executor.shutdownNow();
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                connections.incrementAndGet();
+                executor.execute(new ServerConnection(socket)::run);
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    static class Request {
+        final Map<String, String> headers = new HashMap<>();
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    }
+
+    static class Reply {
+        final int status;
+        final Map<String, String> headers = new HashMap<>();
+        final byte[] body;
+
+        Reply(int status, byte[] body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        Reply header(String name, String value) {
+            headers.put(name, value);
+            return this;
+        }
+    }
+
+    private class ServerConnection {
+
+        private final Socket socket;
+        private final OutputStream out;
+        private final Map<Integer, Request> requests = new HashMap<>();
+        private final Map<Integer, Long> streamWindows = new HashMap<>();
+        private final Hpack.Decoder decoder = new Hpack.Decoder(4096);
+        private final Hpack.Encoder encoder = new Hpack.Encoder();
+        private long connectionWindow = 65535;
+        private long initialWindow = 65535;
+
+        ServerConnection(Socket socket) {
+            this.socket = socket;
+            try {
+                this.out = socket.getOutputStream();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void run() {
+            try (Socket s = socket) {
+                DataInputStream in = new DataInputStream(s.getInputStream());
+                in.readFully(new byte[24]); // Preface
+                writeFrame(0x4, 0, 0, new byte[]{0, 0x3, 0, 0, 0, 100}); // MAX_CONCURRENT_STREAMS = 100
+                ByteArrayOutputStream headerBlock = null;
+                int headerStream = 0;
+                boolean headerEnd = false;
+                while (true) {
+                    int length = in.readUnsignedByte() << 16 | in.readUnsignedByte() << 8 | in.readUnsignedByte();
+                    int type = in.readUnsignedByte();
+                    int flags = in.readUnsignedByte();
+                    int stream = in.readInt() & 0x7FFFFFFF;
+                    byte[] payload = new byte[length];
+                    in.readFully(payload);
+                    switch (type) {
+                        case 0x0: { // DATA
+                            Request request = requests.get(stream);
+                            request.body.write(payload, 0, length);
+                            if (length > 0) {
+                                writeFrame(0x8, 0, 0, intBytes(length));
+                                if ((flags & 0x1) == 0)
+                                    writeFrame(0x8, 0, stream, intBytes(length));
+                            }
+                            if ((flags & 0x1) != 0)
+                                dispatch(stream);
+                            break;
+                        }
+                        case 0x1: // HEADERS
+                            headerBlock = new ByteArrayOutputStream();
+                            headerBlock.write(payload, 0, length);
+                            headerStream = stream;
+                            headerEnd = (flags & 0x1) != 0;
+                            if ((flags & 0x4) == 0)
+                                break;
+                            // Fall through
+                        case 0x9: // CONTINUATION
+                            if (type == 0x9)
+                                headerBlock.write(payload, 0, length);
+                            if ((flags & 0x4) != 0) {
+                                Request request = new Request();
+                                decoder.decode(headerBlock.toByteArray(), request.headers::put);
+                                synchronized (this) {
+                                    requests.put(headerStream, request);
+                                    streamWindows.put(headerStream, initialWindow);
+                                }
+                                if (headerEnd)
+                                    dispatch(headerStream);
+                                headerBlock = null;
+                            }
+                            break;
+                        case 0x4: // SETTINGS
+                            if ((flags & 0x1) == 0) {
+                                synchronized (this) {
+                                    for (int i = 0; i < length; i += 6) {
+                                        if (payload[i + 1] == 0x4) {
+                                            initialWindow = readInt(payload, i + 2);
+                                        }
+                                    }
+                                }
+                                writeFrame(0x4, 0x1, 0, new byte[0]);
+                            }
+                            break;
+                        case 0x6: // PING
+                            if ((flags & 0x1) == 0)
+                                writeFrame(0x6, 0x1, 0, payload);
+                            break;
+                        case 0x8: // WINDOW_UPDATE
+                            synchronized (this) {
+                                int increment = readInt(payload, 0);
+                                if (stream == 0) {
+                                    connectionWindow += increment;
+                                } else {
+                                    streamWindows.merge(stream, (long) increment, Long::sum);
+                                }
+                                notifyAll();
+                            }
+                            break;
+                        case 0x7: // GOAWAY
+                            return;
+                        default:
+                            break;
+                    }
+                }
+            } catch (IOException ignored) {
+                // Client went away.
+            }
+        }
+
+        private void dispatch(int stream) {
+            Request request;
+            synchronized (this) {
+                request = requests.get(stream);
+            }
+            executor.execute(() -> {
+                try {
+                    respond(stream, handler.apply(request));
+                } catch (IOException | InterruptedException ignored) {
+                    // Client went away.
+                }
+            });
+        }
+
+        private void respond(int stream, Reply reply) throws IOException, InterruptedException {
+            ByteArrayOutputStream block = new ByteArrayOutputStream();
+            encoder.encode(block, ":status", String.valueOf(reply.status));
+            for (Map.Entry<String, String> header : reply.headers.entrySet()) {
+                encoder.encode(block, header.getKey(), header.getValue());
+            }
+            boolean hasBody = reply.body.length > 0;
+            writeFrame(0x1, 0x4 | (hasBody ? 0 : 0x1), stream, block.toByteArray());
+            int off = 0;
+            while (off < reply.body.length) {
+                int n;
+                synchronized (this) {
+                    while ((n = (int) Math.min(Math.min(reply.body.length - off, 16384), Math.min(connectionWindow, streamWindows.get(stream)))) <= 0) {
+                        wait();
+                    }
+                    connectionWindow -= n;
+                    streamWindows.merge(stream, (long) -n, Long::sum);
+                }
+                byte[] chunk = new byte[n];
+                System.arraycopy(reply.body, off, chunk, 0, n);
+                off += n;
+                writeFrame(0x0, off == reply.body.length ? 0x1 : 0, stream, chunk);
+            }
+        }
+
+        private synchronized void writeFrame(int type, int flags, int stream, byte[] payload) throws IOException {
+            byte[] header = {
+                    (byte) (payload.length >>> 16), (byte) (payload.length >>> 8), (byte) payload.length,
+                    (byte) type, (byte) flags,
+                    (byte) (stream >>> 24), (byte) (stream >>> 16), (byte) (stream >>> 8), (byte) stream
+            };
+            out.write(header);
+            out.write(payload);
+            out.flush();
+        }
+
+        private byte[] intBytes(int value) {
+            return new byte[]{(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+        }
+
+        private int readInt(byte[] b, int off) {
+            return (b[off] & 0xFF) << 24 | (b[off + 1] & 0xFF) << 16 | (b[off + 2] & 0xFF) << 8 | (b[off + 3] & 0xFF);
+        }
+
+    }
+
+}
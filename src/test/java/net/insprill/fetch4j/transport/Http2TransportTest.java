@@ -0,0 +1,146 @@
+package net.insprill.fetch4j.transport;
+
+import net.insprill.fetch4j.FetchClient;
+import net.insprill.fetch4j.Params;
+import net.insprill.fetch4j.Response;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.ProtocolException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static net.insprill.fetch4j.Params.params;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
+
+class Http2TransportTest {
+
+    private static final int LARGE_BODY_SIZE = 4 * 1024 * 1024;
+
+    private static Http2TestServer server;
+    private static FetchClient client;
+
+    @BeforeAll
+    static void setUp() {
+        server = new Http2TestServer(request -> {
+            String path = request.headers.get(":path");
+            if (path.equals("/large"))
+                return new Http2TestServer.Reply(200, new byte[LARGE_BODY_SIZE]);
+            String body = request.headers.get(":method") + " " + path + " " + request.body.size();
+            return new Http2TestServer.Reply(200, body.getBytes(StandardCharsets.UTF_8))
+                    .header("content-type", "text/plain; charset=utf-8")
+                    .header("x-user-agent", request.headers.get("user-agent"));
+        });
+        client = FetchClient.builder().version(FetchClient.Version.HTTP_2_PRIOR_KNOWLEDGE).build();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    void get() {
+        Response response = client.fetch(server.url("/echo"), params().userAgent("fetch4j"));
+
+        assertEquals(200, response.getStatus());
+        assertEquals("GET /echo 0", response.getBody());
+        assertEquals("text/plain", response.getContentType());
+        assertEquals("fetch4j", response.getHeader("X-User-Agent"));
+        assertNull(response.getStatusText());
+    }
+
+    @Test
+    void get_HeaderValueWithLineBreak_Rejected() {
+        assertThrowsExactly(IllegalArgumentException.class, () -> client.fetch(server.url("/echo"), params().header("X-A", "v\r\nX-Injected: evil")));
+        assertEquals("GET /echo 0", client.fetch(server.url("/echo")).getBody());
+    }
+
+    @Test
+    void post_LargeBody_FlowControlled() {
+        Response response = client.fetch(server.url("/echo"), params()
+                .method(Params.Method.POST)
+                .body(new byte[300_000]));
+
+        assertEquals("POST /echo 300000", response.getBody());
+    }
+
+    @Test
+    void post_StreamedBody_UnknownLength() {
+        Response response = client.fetch(server.url("/echo"), params()
+                .method(Params.Method.POST)
+                .body(() -> new ByteArrayInputStream(new byte[100_000]), -1));
+
+        assertEquals("POST /echo 100000", response.getBody());
+    }
+
+    @Test
+    void get_LargeResponse_FlowControlled() {
+        assertEquals(LARGE_BODY_SIZE, client.fetch(server.url("/large")).getBodyBytes().length);
+    }
+
+    @Test
+    void concurrentRequests_Multiplexed() {
+        List<CompletableFuture<Response>> futures = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            futures.add(client.fetchAsync(server.url("/echo?i=" + i)));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            assertEquals("GET /echo?i=" + i + " 0", futures.get(i).join().getBody());
+        }
+        assertEquals(1, server.getConnectionCount());
+    }
+
+    @Test
+    void hpack_DecodesRfcExamples() throws ProtocolException {
+        Hpack.Decoder decoder = new Hpack.Decoder(4096);
+        // RFC 7541, C.4.1 and C.4.2: requests with Huffman coding, the second referencing the dynamic table.
+        Map<String, String> first = decode(decoder, "828684418cf1e3c2e5f23a6ba0ab90f4ff");
+        assertEquals("www.example.com", first.get(":authority"));
+        assertEquals("GET", first.get(":method"));
+        Map<String, String> second = decode(decoder, "828684be5886a8eb10649cbf");
+        assertEquals("www.example.com", second.get(":authority"));
+        assertEquals("no-cache", second.get("cache-control"));
+    }
+
+    @Test
+    void hpack_RoundTrip() throws ProtocolException {
+        Hpack.Encoder encoder = new Hpack.Encoder();
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        encoder.encode(block, ":method", "GET");
+        encoder.encode(block, "Content-Type", "application/json");
+        encoder.encode(block, "x-custom", "Mon, 21 Oct 2013 20:13:21 GMT ~\u00ff");
+
+        Map<String, String> headers = new LinkedHashMap<>();
+        new Hpack.Decoder(4096).decode(block.toByteArray(), headers::put);
+        assertEquals("GET", headers.get(":method"));
+        assertEquals("application/json", headers.get("content-type"));
+        assertEquals("Mon, 21 Oct 2013 20:13:21 GMT ~\u00ff", headers.get("x-custom"));
+    }
+
+    @Test
+    void hpack_InvalidIndex_Throws() {
+        assertThrowsExactly(ProtocolException.class, () -> decode(new Hpack.Decoder(4096), "ff00"));
+    }
+
+    private static Map<String, String> decode(Hpack.Decoder decoder, String hex) throws ProtocolException {
+        byte[] block = new byte[hex.length() / 2];
+        for (int i = 0; i < block.length; i++) {
+            block[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        Map<String, String> headers = new LinkedHashMap<>();
+        decoder.decode(block, headers::put);
+        return headers;
+    }
+
+}
@@ -0,0 +1,45 @@
+package net.insprill.fetch4j.transport;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ProtocolException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
+
+class HttpBodyStreamsTest {
+
+    @Test
+    void chunked_ReadWithExtensions() throws IOException {
+        assertEquals("Howdy, world", read("5;name=value\r\nHowdy\r\n7\r\n, world\r\n0\r\nTrailer: yes\r\n\r\n"));
+    }
+
+    @Test
+    void chunked_SignedSize_Throws() {
+        assertThrowsExactly(ProtocolException.class, () -> read("-1\r\nHowdy\r\n0\r\n\r\n"));
+        assertThrowsExactly(ProtocolException.class, () -> read("+5\r\nHowdy\r\n0\r\n\r\n"));
+    }
+
+    @Test
+    void chunked_OverflowingSize_Throws() {
+        assertThrowsExactly(ProtocolException.class, () -> read("10000000000000000\r\nHowdy\r\n0\r\n\r\n"));
+    }
+
+    private static String read(String body) throws IOException {
+        InputStream in = new HttpBodyStreams.Chunked(new ByteArrayInputStream(body.getBytes(StandardCharsets.ISO_8859_1)), complete -> {
+        });
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[4];
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            out.write(buf, 0, n);
+        }
+        return out.toString("UTF-8");
+    }
+
+}
@@ -0,0 +1,97 @@
+package net.insprill.fetch4j.transport;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimerWheelTest {
+
+    private static final long TICK = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    void advance_RunsExpiredInOrderOfTicks() {
+        TimerWheel wheel = new TimerWheel(TICK, 8, 0);
+        List<Integer> run = new ArrayList<>();
+        wheel.schedule(3 * TICK, 0, () -> run.add(3));
+        wheel.schedule(TICK, 0, () -> run.add(1));
+        wheel.schedule(2 * TICK, 0, () -> run.add(2));
+        assertEquals(0, wheel.advance(TICK - 1));
+        assertEquals(1, wheel.advance(TICK));
+        assertEquals(2, wheel.advance(3 * TICK));
+        assertEquals(Arrays.asList(1, 2, 3), run);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void schedule_LongerThanWheel_WaitsForLaterRound() {
+        TimerWheel wheel = new TimerWheel(TICK, 8, 0);
+        List<Integer> run = new ArrayList<>();
+        wheel.schedule(20 * TICK, 0, () -> run.add(20));
+        wheel.schedule(4 * TICK, 0, () -> run.add(4));
+        for (long tick = 1; tick < 20; tick++) {
+            wheel.advance(tick * TICK);
+        }
+        assertEquals(Arrays.asList(4), run);
+        wheel.advance(20 * TICK);
+        assertEquals(Arrays.asList(4, 20), run);
+    }
+
+    @Test
+    void cancel_TaskNotRun() {
+        TimerWheel wheel = new TimerWheel(TICK, 8, 0);
+        List<Integer> run = new ArrayList<>();
+        TimerWheel.Timeout first = wheel.schedule(TICK, 0, () -> run.add(1));
+        wheel.schedule(TICK, 0, () -> run.add(2));
+        first.cancel();
+        first.cancel();
+        assertEquals(1, wheel.size());
+        wheel.advance(TICK);
+        assertEquals(Arrays.asList(2), run);
+    }
+
+    @Test
+    void advance_TaskCancellingAnotherExpired_OtherNotRun() {
+        TimerWheel wheel = new TimerWheel(TICK, 8, 0);
+        List<Integer> run = new ArrayList<>();
+        TimerWheel.Timeout[] timeouts = new TimerWheel.Timeout[2];
+        timeouts[0] = wheel.schedule(TICK, 0, () -> {
+            run.add(0);
+            timeouts[1].cancel();
+        });
+        timeouts[1] = wheel.schedule(TICK, 0, () -> {
+            run.add(1);
+            timeouts[0].cancel();
+        });
+        assertEquals(1, wheel.advance(TICK));
+        assertEquals(1, run.size());
+    }
+
+    @Test
+    void nanosUntilNextTimeout_SkipsEmptyTicks() {
+        TimerWheel wheel = new TimerWheel(TICK, 8, 0);
+        assertEquals(-1, wheel.nanosUntilNextTimeout(0));
+        wheel.schedule(5 * TICK, 0, () -> {
+        });
+        assertEquals(5 * TICK, wheel.nanosUntilNextTimeout(0));
+        assertTrue(wheel.nanosUntilNextTimeout(6 * TICK) == 0);
+    }
+
+    @Test
+    void schedule_AfterIdling_NeverRunsEarly() {
+        TimerWheel wheel = new TimerWheel(TICK, 8, 0);
+        List<Integer> run = new ArrayList<>();
+        long now = 1000 * TICK + TICK / 2;
+        wheel.schedule(3 * TICK, now, () -> run.add(1));
+        wheel.advance(now + 3 * TICK - 1);
+        assertTrue(run.isEmpty());
+        wheel.advance(now + 4 * TICK);
+        assertEquals(Arrays.asList(1), run);
+    }
+
+}